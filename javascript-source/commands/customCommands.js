@@ -20,7 +20,8 @@
     var reCommandTag = new RegExp(/\(command\s([\w]+)\)/),
             customCommands = [],
             ScriptEventManager = Packages.tv.phantombot.script.ScriptEventManager,
-            CommandEvent = Packages.tv.phantombot.event.command.CommandEvent;
+            CommandEvent = Packages.tv.phantombot.event.command.CommandEvent,
+            CommandRegistry = Packages.tv.phantombot.scripts.core.CommandRegistry;
 
     /*
      * @function runCommand
@@ -121,8 +122,10 @@
      * @returns 1 | 0 - Not a boolean
      */
     function priceCom(username, command, subCommand, isMod) {
-        if ((subCommand !== '' && $.inidb.exists('pricecom', command + ' ' + subCommand)) || $.inidb.exists('pricecom', command)) {
-            if ((((isMod && $.getIniDbBoolean('settings', 'pricecomMods', false) && !$.isBot(username)) || !isMod)) && $.bot.isModuleEnabled('./systems/pointSystem.js')) {
+        var registry = CommandRegistry.instance();
+
+        if (registry.hasPrice(command, subCommand)) {
+            if ((((isMod && registry.isPriceForMods() && !$.isBot(username)) || !isMod)) && $.bot.isModuleEnabled('./systems/pointSystem.js')) {
                 if ($.getUserPoints(username) < getCommandPrice(command, subCommand, '')) {
                     return 1;
                 }
@@ -140,7 +143,7 @@
      * @returns 1 | 0 - Not a boolean
      */
     function payCom(command) {
-        return ($.inidb.exists('paycom', command) ? 0 : 1);
+        return (CommandRegistry.instance().hasPay(command) ? 0 : 1);
     }
 
     /*
@@ -156,12 +159,7 @@
         command = command.toLowerCase();
         subCommand = subCommand.toLowerCase();
         subCommandAction = subCommandAction.toLowerCase();
-        return parseInt($.inidb.exists('pricecom', command + ' ' + subCommand + ' ' + subCommandAction) ?
-                $.inidb.get('pricecom', command + ' ' + subCommand + ' ' + subCommandAction) :
-                $.inidb.exists('pricecom', command + ' ' + subCommand) ?
-                $.inidb.get('pricecom', command + ' ' + subCommand) :
-                $.inidb.exists('pricecom', command) ?
-                $.inidb.get('pricecom', command) : 0);
+        return CommandRegistry.instance().getPrice(command, subCommand, subCommandAction);
     }
 
     /*
@@ -172,7 +170,7 @@
      * @returns {Number}
      */
     function getCommandPay(command) {
-        return ($.inidb.exists('paycom', command) ? $.inidb.get('paycom', command) : 0);
+        return CommandRegistry.instance().getPay(command);
     }
 
     /*
@@ -224,7 +222,7 @@
          */
         if (customCommands[command] !== undefined
                 && !$.inidb.exists('disabledCommands', command)) {
-            var tag = $.tags(event, customCommands[command], true);
+            var tag = $.tags(event, customCommands[command], true, undefined, undefined, command);
             if (tag !== null) {
                 $.say(tag);
             }
@@ -310,6 +308,7 @@
             });
             $.registerChatCommand('./commands/customCommands.js', action, 7);
             $.inidb.set('command', action, argsString);
+            $.invalidateTags(action);
             customCommands[action] = argsString;
             return;
         }
@@ -383,6 +382,7 @@
             $.inidb.del('hiddenCommands', action);
             $.inidb.del('commandtoken', action);
             $.unregisterChatCommand(action);
+            $.invalidateTags(action);
             delete customCommands[action];
             return;
         }
@@ -944,6 +944,7 @@
                 extra = args[3] == null ? {} : JSON.parse(args[3]);
             if (eventName === 'remove') {
                 if (customCommands[commandLower] !== undefined) {
+                    $.invalidateTags(commandLower);
                     delete customCommands[commandLower];
                     $.unregisterChatCommand(commandLower);
                     $.coolDown.remove(commandLower);
@@ -953,6 +954,7 @@
                 $.registerChatCommand('./commands/customCommands.js', commandLower);
                 handleExtraCooldown(commandLower, extra);
             } else if (eventName === 'edit') {
+                $.invalidateTags(commandLower);
                 customCommands[commandLower] = args[2];
                 handleExtraCooldown(commandLower, extra);
                 handleExtraDisabled(commandLower, extra);
@@ -447,6 +447,7 @@
                 return true;
             }
         }
+
         return false;
     }
 
@@ -545,6 +546,7 @@
 
     /**
      * @function performModeration
+     * @returns {Boolean} true if the message was punished
      */
     function performModeration(event) {
         var sender = event.getSender(),
@@ -555,7 +557,7 @@
         if (!$.isModv3(sender, tags)) {
             // Blacklist
             if (checkBlackList(sender, event, message, tags)) {
-                return;
+                return true;
             }
 
             // Links filter
@@ -569,7 +571,7 @@
                 timeout(sender, warningTime.Links, timeoutTime.Links, silentTimeout.LinkMessage, tags);
                 sendMessage(sender, linksMessage, silentTimeout.Links);
                 $.patternDetector.logLastLink(event);
-                return;
+                return true;
             }
 
             // Symbol filter
@@ -581,7 +583,7 @@
 
                     timeout(sender, warningTime.Symbols, timeoutTime.Symbols, silentTimeout.SymbolMessage, tags);
                     sendMessage(sender, symbolsMessage, silentTimeout.Symbols);
-                    return;
+                    return true;
                 }
             }
 
@@ -593,7 +595,7 @@
 
                 timeout(sender, warningTime.Spam, timeoutTime.Spam, silentTimeout.SpamMessage, tags);
                 sendMessage(sender, spamMessage, silentTimeout.Spam);
-                return;
+                return true;
             }
 
             // Long msg filter
@@ -604,7 +606,7 @@
 
                 timeout(sender, warningTime.LongMsg, timeoutTime.LongMsg, silentTimeout.LongMessage, tags);
                 sendMessage(sender, longMessageMessage, silentTimeout.LongMsg);
-                return;
+                return true;
             }
 
             // Fake purge filter
@@ -615,7 +617,7 @@
 
                 timeout(sender, warningTime.FakePurge, timeoutTime.FakePurge, silentTimeout.FakePurgeMessage, tags);
                 sendMessage(sender, fakePurgeMessage, silentTimeout.FakePurge);
-                return;
+                return true;
             }
 
             // Emotes folter
@@ -626,7 +628,7 @@
 
                 timeout(sender, warningTime.Emotes, timeoutTime.Emotes, silentTimeout.EmoteMessage, tags);
                 sendMessage(sender, emotesMessage, silentTimeout.Emotes);
-                return;
+                return true;
             }
 
             // Caps filter
@@ -638,7 +640,7 @@
 
                     timeout(sender, warningTime.Caps, timeoutTime.Caps, silentTimeout.CapMessage, tags);
                     sendMessage(sender, capsMessage, silentTimeout.Caps);
-                    return;
+                    return true;
                 }
             }
 
@@ -650,7 +652,7 @@
 
                 timeout(sender, warningTime.Colors, timeoutTime.Colors, silentTimeout.ColorMessage, tags);
                 sendMessage(sender, colorsMessage, silentTimeout.Colors);
-                return;
+                return true;
             }
 
             // Spam tracker
@@ -671,9 +673,11 @@
                     timeout(sender, warningTime.SpamTracker, timeoutTime.SpamTracker, silentTimeout.SpamTrackerMessage, tags);
                     sendMessage(sender, spamTrackerMessage, silentTimeout.SpamTracker);
                     delete spamTracker[sender];
+                    return true;
                 }
             }
         }
+        return false;
     }
 
     /**
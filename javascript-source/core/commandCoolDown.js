@@ -26,50 +26,16 @@
 (function() {
     var defaultCooldownTime = $.getSetIniDbNumber('cooldownSettings', 'defaultCooldownTime', 5),
         modCooldown = $.getSetIniDbBoolean('cooldownSettings', 'modCooldown', false),
-        defaultCooldowns = {},
-        cooldowns = {};
+        cooldowns = Packages.tv.phantombot.scripts.core.CommandCooldowns.instance();
 
     $.raffleCommand = null;
 
     /*
-     * @class Cooldown
-     *
-     * @param {String}  command
-     * @param {Number}  seconds
-     * @param {Boolean} isGlobal
-     */
-    function Cooldown(command, seconds, isGlobal) {
-        this.isGlobal = isGlobal;
-        this.command = command;
-        this.seconds = seconds;
-        this.cooldowns = [];
-        this.time = 0;
-    }
-
-    /*
-     * @function loadCooldowns
-     */
-    function loadCooldowns() {
-        var commands = $.inidb.GetKeyList('cooldown', ''),
-            json,
-            i;
-
-        for (i in commands) {
-            json = JSON.parse($.inidb.get('cooldown', commands[i]));
-
-            cooldowns[commands[i]] = new Cooldown(json.command, json.seconds, json.isGlobal.toString().equals('true'));
-        }
-    }
-
-    /*
-     * @function canIgnore
-     *
-     * @param  {String} username
-     * @param  {Boolean} isMod
-     * @return {Boolean}
+     * @function loadSettings
      */
-    function canIgnore(username, isMod) {
-        return (!modCooldown && isMod) || $.isAdmin(username);
+    function loadSettings() {
+        cooldowns.setDefaultSeconds(defaultCooldownTime);
+        cooldowns.setModCooldown(modCooldown);
     }
 
     /*
@@ -95,40 +61,26 @@
      * @param  {String}  command
      * @param  {String}  username
      * @param  {Boolean} isMod
-     * @return {Number}
+     * @return {Number} 0 if the command can be used, otherwise the milliseconds left
      */
     function get(command, username, isMod) {
-        var cooldown = cooldowns[command];
+        var remaining;
 
         if (isSpecial(command)) {
-            if (command == 'adventure' && defaultCooldowns[command] !== undefined && defaultCooldowns[command] > $.systemTime()) {
-                return defaultCooldowns[command];
-            } else {
-                return 0;
-            }
-        } else {
-            if (cooldown !== undefined && cooldown.seconds > 0) {
-                if (cooldown.isGlobal) {
-                    if (cooldown.time > $.systemTime()) {
-                        return (canIgnore(username, isMod) ? 0 : cooldown.time);
-                    } else {
-                        return set(command, true, cooldown.seconds, isMod);
-                    }
-                } else {
-                    if (cooldown.cooldowns[username] !== undefined && cooldown.cooldowns[username] > $.systemTime()) {
-                        return (canIgnore(username, isMod) ? 0 : cooldown.cooldowns[username]);
-                    } else {
-                        return set(command, true, cooldown.seconds, isMod, username);
-                    }
-                }
-            } else {
-                if (defaultCooldowns[command] !== undefined && defaultCooldowns[command] > $.systemTime()) {
-                    return (canIgnore(username, isMod) ? 0 : defaultCooldowns[command]);
-                } else {
-                    return set(command, false, defaultCooldownTime, isMod);
-                }
+            if (command == 'adventure') {
+                return cooldowns.getDefaultRemaining(command);
             }
+            return 0;
+        }
+
+        // Checks and starts the cooldown in one step.
+        remaining = cooldowns.check(command, username, isMod);
+
+        // Admins skip cooldowns, only looked up when a cooldown is running.
+        if (remaining !== 0 && $.isAdmin(username)) {
+            return 0;
         }
+        return remaining;
     }
 
     /*
@@ -140,29 +92,9 @@
      * @return {Number}
      */
     function getSecs(username, command, isMod) {
-        var cooldown = cooldowns[command];
+        var remaining = cooldowns.getRemaining(command, username);
 
-        if (cooldown !== undefined && cooldown.seconds > 0) {
-            if (cooldown.isGlobal) {
-                if (cooldown.time > $.systemTime()) {
-                    return (cooldown.time - $.systemTime() > 1000 ? Math.ceil(((cooldown.time - $.systemTime()) / 1000)) : 1);
-                } else {
-                    return set(command, true, cooldown.seconds, isMod);
-                }
-            } else {
-                if (cooldown.cooldowns[username] !== undefined && cooldown.cooldowns[username] > $.systemTime()) {
-                    return (cooldown.cooldowns[username] - $.systemTime() > 1000 ? Math.ceil(((cooldown.cooldowns[username] - $.systemTime()) / 1000)) : 1);
-                }
-            }
-        } else {
-            if (defaultCooldowns[command] !== undefined && defaultCooldowns[command] > $.systemTime()) {
-                return (defaultCooldowns[command] - $.systemTime() > 1000 ? Math.ceil(((defaultCooldowns[command] - $.systemTime()) / 1000)) : 1);
-            } else {
-                return set(command, false, defaultCooldownTime, isMod);
-            }
-        }
-
-        return 0;
+        return (remaining > 1000 ? Math.ceil(remaining / 1000) : (remaining > 0 ? 1 : 0));
     }
 
     /*
@@ -177,17 +109,7 @@
      * @return {Number}
      */
     function set(command, hasCooldown, seconds, isMod, username) {
-        seconds = (seconds > 0 ? ((parseInt(seconds) * 1e3) + $.systemTime()) : 0);
-
-        if (hasCooldown) {
-            if (username === undefined) {
-                cooldowns[command].time = seconds;
-            } else {
-                cooldowns[command].cooldowns[username] = seconds;
-            }
-        } else {
-            defaultCooldowns[command] = seconds;
-        }
+        cooldowns.start(command, hasCooldown, (username === undefined ? null : username), parseInt(seconds));
         return 0;
     }
 
@@ -205,22 +127,12 @@
     		seconds = (parseInt(seconds + ''));
     	}
 
-        if (cooldowns[command] === undefined) {
-            cooldowns[command] = new Cooldown(command, seconds, isGlobal);
-            $.inidb.set('cooldown', command, JSON.stringify({
-                command: String(command),
-                seconds: String(seconds),
-                isGlobal: String(isGlobal)
-            }));
-        } else {
-            cooldowns[command].isGlobal = isGlobal;
-            cooldowns[command].seconds = seconds;
-            $.inidb.set('cooldown', command, JSON.stringify({
-                command: String(command),
-                seconds: String(seconds),
-                isGlobal: String(isGlobal)
-            }));
-        }
+        // The command registry reads the cooldown table again after this.
+        $.inidb.set('cooldown', command, JSON.stringify({
+            command: String(command),
+            seconds: String(seconds),
+            isGlobal: String(isGlobal)
+        }));
     }
 
     /*
@@ -231,9 +143,7 @@
      */
     function remove(command) {
         $.inidb.del('cooldown', command);
-        if (cooldowns[command] !== undefined) {
-            delete cooldowns[command];
-        }
+        cooldowns.reset(command);
     }
 
     /*
@@ -243,9 +153,7 @@
      * @param {String}  command
      */
     function clear(command) {
-        if (cooldowns[command] !== undefined) {
-            cooldowns[command].time = 0;
-        }
+        cooldowns.clear(command);
     }
 
     /*
@@ -295,6 +203,7 @@
             if (action.equalsIgnoreCase('togglemoderators')) {
                 modCooldown = !modCooldown;
                 $.setIniDbBoolean('cooldownSettings', 'modCooldown', modCooldown);
+                loadSettings();
                 $.say($.whisperPrefix(sender) + $.lang.get('cooldown.set.togglemodcooldown', (modCooldown ? $.lang.get('common.enabled') : $.lang.get('common.disabled'))));
                 return;
             }
@@ -313,6 +222,7 @@
 
                 defaultCooldownTime = parseInt(subAction);
                 $.setIniDbNumber('cooldownSettings', 'defaultCooldownTime', defaultCooldownTime);
+                loadSettings();
                 $.say($.whisperPrefix(sender) + $.lang.get('cooldown.default.set', defaultCooldownTime));
             }
         }
@@ -327,7 +237,7 @@
         $.registerChatCommand('./core/commandCoolDown.js', 'cooldown', 1);
         $.registerChatSubcommand('cooldown', 'togglemoderators', 1);
         $.registerChatSubcommand('cooldown', 'setdefault', 1);
-        loadCooldowns();
+        loadSettings();
     });
 
     /*
@@ -340,6 +250,7 @@
             } else if (event.getArgs()[0] == 'update') {
                 defaultCooldownTime = $.getIniDbNumber('cooldownSettings', 'defaultCooldownTime', 5);
                 modCooldown = $.getIniDbBoolean('cooldownSettings', 'modCooldown', false);
+                loadSettings();
             } else {
                 remove(event.getArgs()[1]);
             }
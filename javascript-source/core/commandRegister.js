@@ -24,8 +24,7 @@
  * The commandEvent will not get fired to your module if the registry does not know about it!
  */
 (function() {
-    var commands = {},
-        aliases = {};
+    var registry = Packages.tv.phantombot.scripts.core.CommandRegistry.instance();
 
     /*
      * @function registerChatCommand
@@ -47,11 +46,7 @@
             if ($.inidb.exists('permcom', command)) {
                 $.inidb.del('permcom', command);
             }
-            commands[command] = {
-                groupId: groupId,
-                script: script,
-                subcommands: {}
-            };
+            registry.register(command, script, groupId);
             return;
         }
 
@@ -66,11 +61,7 @@
         // Get and set the command permission.
         groupId = $.getSetIniDbNumber('permcom', command, groupId);
 
-        commands[command] = {
-            groupId: groupId,
-            script: script,
-            subcommands: {}
-        };
+        registry.register(command, script, groupId);
     }
 
     /*
@@ -91,9 +82,7 @@
         // Get and set the command permission.
         groupId = $.getSetIniDbNumber('permcom', (command + ' ' + subcommand), groupId);
 
-        commands[command].subcommands[subcommand] = {
-            groupId: groupId
-        }
+        registry.registerSubcommand(command, subcommand, groupId);
     }
 
     /*
@@ -102,9 +91,7 @@
      * @param {String} alias
      */
     function registerChatAlias(alias) {
-        if (!aliasExists(alias)) {
-            aliases[alias] = true;
-        }
+        registry.registerAlias(alias);
     }
 
     /*
@@ -113,10 +100,7 @@
      * @param {String} command
      */
     function unregisterChatCommand(command) {
-        if (commandExists(command)) {
-            delete commands[command];
-            delete aliases[command];
-        }
+        registry.unregister(command);
 
         $.inidb.del('permcom', command);
         $.inidb.del('pricecom', command);
@@ -131,11 +115,11 @@
      * @param {String} command
      */
     function tempUnRegisterChatCommand(command) {
-        $.inidb.set('tempDisabledCommandScript', command, commands[command].script);
+        $.inidb.set('tempDisabledCommandScript', command, registry.getScript(command));
         if (commandExists(command)) {
-            delete commands[command];
+            registry.unregister(command);
         } else if (aliasExists(command)) {
-            delete aliases[command];
+            registry.unregisterAlias(command);
         }
     }
 
@@ -146,9 +130,7 @@
      * @param {String} subcommand
      */
     function unregisterChatSubcommand(command, subcommand) {
-        if (subCommandExists(command, subcommand)) {
-            delete commands[command].subcommands[subcommand];
-        }
+        registry.unregisterSubcommand(command, subcommand);
 
         $.inidb.del('permcom', command + ' ' + subcommand);
         $.inidb.del('pricecom', command + ' ' + subcommand);
@@ -161,11 +143,13 @@
      * @return {String}
      */
     function getCommandScript(command) {
-        if (commands[command] === undefined) {
+        var script = registry.getScript(command);
+
+        if (script === null) {
             return "Undefined";
         }
 
-        return commands[command].script;
+        return String(script);
     }
 
     /*
@@ -175,7 +159,7 @@
      * @return {Boolean}
      */
     function commandExists(command) {
-        return (commands[command] !== undefined);
+        return registry.exists(command);
     }
 
     /*
@@ -184,7 +168,7 @@
      * @param {String} command
      */
     function aliasExists(alias) {
-        return (aliases[alias] !== undefined);
+        return registry.aliasExists(alias);
     }
 
     /*
@@ -195,10 +179,7 @@
      * @return {Boolean}
      */
     function subCommandExists(command, subcommand) {
-        if (commandExists(command)) {
-            return (commands[command].subcommands[subcommand] !== undefined);
-        }
-        return false;
+        return registry.subcommandExists(command, subcommand);
     }
 
     /*
@@ -209,7 +190,7 @@
      */
     function getCommandGroup(command) {
         if (commandExists(command)) {
-            var groupid = commands[command].groupId;
+            var groupid = registry.getGroup(command);
 
             if ($.isSwappedSubscriberVIP() && groupid == 3) {
                 groupid = 5;
@@ -229,24 +210,25 @@
      * @return {String}
      */
     function getCommandGroupName(command) {
-        var group = '';
+        var group = '',
+            groupId = registry.getGroup(command);
 
         if (commandExists(command)) {
-            if (commands[command].groupId == 0) {
+            if (groupId == 0) {
                 group = 'Caster';
-            } else if (commands[command].groupId == 1) {
+            } else if (groupId == 1) {
                 group = 'Administrator';
-            } else if (commands[command].groupId == 2) {
+            } else if (groupId == 2) {
                 group = 'Moderator';
-            } else if (commands[command].groupId == $.getSubscriberGroupID()) {
+            } else if (groupId == $.getSubscriberGroupID()) {
                 group = 'Subscriber';
-            } else if (commands[command].groupId == 4) {
+            } else if (groupId == 4) {
                 group = 'Donator';
-            } else if (commands[command].groupId == $.getVIPGroupID()) {
+            } else if (groupId == $.getVIPGroupID()) {
                 group = 'VIP';
-            } else if (commands[command].groupId == 6) {
+            } else if (groupId == 6) {
                 group = 'Regular';
-            } else if (commands[command].groupId == 7) {
+            } else if (groupId == 7) {
                 group = 'Viewer';
             }
             return group;
@@ -264,7 +246,7 @@
     function getSubcommandGroup(command, subcommand) {
         if (commandExists(command)) {
             if (subCommandExists(command, subcommand)) {
-                return commands[command].subcommands[subcommand].groupId;
+                return registry.getSubcommandGroup(command, subcommand);
             }
             return getCommandGroup(command);
         }
@@ -279,24 +261,25 @@
      * @return {String}
      */
     function getSubCommandGroupName(command, subcommand) {
-        var group = '';
+        var group = '',
+            groupId = registry.getSubcommandGroup(command, subcommand);
 
         if (subCommandExists(command, subcommand)) {
-            if (commands[command].subcommands[subcommand].groupId == 0) {
+            if (groupId == 0) {
                 group = 'Caster';
-            } else if (commands[command].subcommands[subcommand].groupId == 1) {
+            } else if (groupId == 1) {
                 group = 'Administrator';
-            } else if (commands[command].subcommands[subcommand].groupId == 2) {
+            } else if (groupId == 2) {
                 group = 'Moderator';
-            } else if (commands[command].subcommands[subcommand].groupId == $.getSubscriberGroupID()) {
+            } else if (groupId == $.getSubscriberGroupID()) {
                 group = 'Subscriber';
-            } else if (commands[command].subcommands[subcommand].groupId == 4) {
+            } else if (groupId == 4) {
                 group = 'Donator';
-            } else if (commands[command].subcommands[subcommand].groupId == $.getVIPGroupID()) {
+            } else if (groupId == $.getVIPGroupID()) {
                 group = 'VIP';
-            } else if (commands[command].subcommands[subcommand].groupId == 6) {
+            } else if (groupId == 6) {
                 group = 'Regular';
-            } else if (commands[command].subcommands[subcommand].groupId == 7) {
+            } else if (groupId == 7) {
                 group = 'Viewer';
             }
             return group;
@@ -311,9 +294,7 @@
      * @param {Number} groupId
      */
     function updateCommandGroup(command, groupId) {
-        if (commandExists(command)) {
-            commands[command].groupId = groupId;
-        }
+        registry.updateGroup(command, groupId);
     }
 
     /*
@@ -324,9 +305,7 @@
      * @param {Number} groupId
      */
     function updateSubcommandGroup(command, subcommand, groupId) {
-        if (subCommandExists(command, subcommand)) {
-            commands[command].subcommands[subcommand].groupId = groupId;
-        }
+        registry.updateSubcommandGroup(command, subcommand, groupId);
     }
 
     /*
@@ -336,16 +315,11 @@
      * @param {String[]} args
      */
     function getSubCommandFromArguments(command, args) {
-        if (!commandExists(command) || args[0] === undefined) {
-            return '';
-        } else {
-            var subCommand = args[0].toLowerCase();
-
-            if (subCommandExists(command, subCommand)) {
-                return subCommand;
-            }
+        if (args[0] === undefined) {
             return '';
         }
+
+        return String(registry.getSubcommand(command, args[0]));
     }
 
     /** Export functions to API */
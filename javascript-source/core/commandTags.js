@@ -16,15 +16,8 @@
  */
 
 (function () {
-    /*
-     * @function getCustomAPIValue
-     *
-     * @param {string} url
-     * @returns {string}
-     */
-    function getCustomAPIValue(url) {
-        return $.customAPI.get(url).content;
-    }
+    var TagTemplate = Packages.tv.phantombot.scripts.core.TagTemplate,
+            TagTemplateCache = Packages.tv.phantombot.scripts.core.TagTemplateCache;
 
     /*
      * @function unescapeTags
@@ -36,15 +29,6 @@
         return args.replace(/([\\()])/g, '\\$1');
     }
 
-    /*
-     * @function unescapeTags
-     *
-     * @param {string} args
-     */
-    function unescapeTags(args) {
-        return args.replace(/\\([\\()])/g, '$1');
-    }
-
     var transformers = (function () {
         var cmd,
                 flag,
@@ -368,8 +352,7 @@
                     return {result: $.lang.get('customcommands.customapi.404', cmd)};
                 }
                 return {
-                    result: String(getCustomAPIValue(encodeURI(match[1]))),
-                    cache: false
+                    future: $.customAPI.getAsync(encodeURI(match[1]))
                 };
             }
         }
@@ -392,7 +375,6 @@
                     jsonCheckList,
                     jsonItems,
                     jsonObject,
-                    response,
                     responsePart,
                     result = '';
             if ((match = args.match(/^ (\S+) (.+)$/))) {
@@ -414,68 +396,74 @@
                     return {result: $.lang.get('customcommands.customapi.404', cmd)};
                 }
 
-                result = '';
-                response = getCustomAPIValue(encodeURI(match[1]));
                 jsonItems = match[2].split(' ');
-                for (j = 0; j < jsonItems.length; j++) {
-                    if (jsonItems[j].startsWith('{') && jsonItems[j].endsWith('}')) {
-                        result += " " + jsonItems[j].match(reCustomAPITextTag)[1];
-                    } else if (jsonItems[j].startsWith('{') && !jsonItems[j].endsWith('}')) {
-                        customJSONStringTag = '';
-                        while (!jsonItems[j].endsWith('}')) {
-                            customJSONStringTag += jsonItems[j++] + " ";
-                        }
-                        customJSONStringTag += jsonItems[j];
-                        result += " " + customJSONStringTag.match(reCustomAPITextTag)[1];
-                    } else {
-                        jsonCheckList = jsonItems[j].split('.');
-                        if (jsonCheckList.length === 1) {
-                            try {
-                                responsePart = new JSONObject(response).get(jsonCheckList[0]);
-                            } catch (ex) {
-                                $.log.error('Failed to get data from API: ' + ex.message);
-                                return {result: $.lang.get('customcommands.customapijson.err', cmd)};
-                            }
-                            result += responsePart;
-                        } else {
-                            for (i = 0; i < jsonCheckList.length - 1; i++) {
-                                if (i === 0) {
-                                    try {
-                                        jsonObject = new JSONObject(response).get(jsonCheckList[i]);
-                                    } catch (ex) {
-                                        $.log.error('Failed to get data from API: ' + ex.message);
-                                        return {result: $.lang.get('customcommands.customapijson.err', cmd)};
-                                    }
-                                } else if (!isNaN(jsonCheckList[i + 1])) {
+                return {
+                    future: $.customAPI.getAsync(encodeURI(match[1])),
+                    then: function (response) {
+                        var i,
+                                j;
+
+                        for (j = 0; j < jsonItems.length; j++) {
+                            if (jsonItems[j].startsWith('{') && jsonItems[j].endsWith('}')) {
+                                result += " " + jsonItems[j].match(reCustomAPITextTag)[1];
+                            } else if (jsonItems[j].startsWith('{') && !jsonItems[j].endsWith('}')) {
+                                customJSONStringTag = '';
+                                while (!jsonItems[j].endsWith('}')) {
+                                    customJSONStringTag += jsonItems[j++] + " ";
+                                }
+                                customJSONStringTag += jsonItems[j];
+                                result += " " + customJSONStringTag.match(reCustomAPITextTag)[1];
+                            } else {
+                                jsonCheckList = jsonItems[j].split('.');
+                                if (jsonCheckList.length === 1) {
                                     try {
-                                        jsonObject = jsonObject.get(jsonCheckList[i]);
+                                        responsePart = new JSONObject(response).get(jsonCheckList[0]);
                                     } catch (ex) {
                                         $.log.error('Failed to get data from API: ' + ex.message);
-                                        return {result: $.lang.get('customcommands.customapijson.err', cmd)};
+                                        return {result: $.lang.get('customcommands.customapijson.err', event.getCommand())};
                                     }
+                                    result += responsePart;
                                 } else {
+                                    for (i = 0; i < jsonCheckList.length - 1; i++) {
+                                        if (i === 0) {
+                                            try {
+                                                jsonObject = new JSONObject(response).get(jsonCheckList[i]);
+                                            } catch (ex) {
+                                                $.log.error('Failed to get data from API: ' + ex.message);
+                                                return {result: $.lang.get('customcommands.customapijson.err', event.getCommand())};
+                                            }
+                                        } else if (!isNaN(jsonCheckList[i + 1])) {
+                                            try {
+                                                jsonObject = jsonObject.get(jsonCheckList[i]);
+                                            } catch (ex) {
+                                                $.log.error('Failed to get data from API: ' + ex.message);
+                                                return {result: $.lang.get('customcommands.customapijson.err', event.getCommand())};
+                                            }
+                                        } else {
+                                            try {
+                                                jsonObject = jsonObject.get(jsonCheckList[i]);
+                                            } catch (ex) {
+                                                $.log.error('Failed to get data from API: ' + ex.message);
+                                                return {result: $.lang.get('customcommands.customapijson.err', event.getCommand())};
+                                            }
+                                        }
+                                    }
                                     try {
-                                        jsonObject = jsonObject.get(jsonCheckList[i]);
+                                        responsePart = jsonObject.get(jsonCheckList[i]);
                                     } catch (ex) {
                                         $.log.error('Failed to get data from API: ' + ex.message);
-                                        return {result: $.lang.get('customcommands.customapijson.err', cmd)};
+                                        return {result: $.lang.get('customcommands.customapijson.err', event.getCommand())};
                                     }
+                                    result += responsePart;
                                 }
                             }
-                            try {
-                                responsePart = jsonObject.get(jsonCheckList[i]);
-                            } catch (ex) {
-                                $.log.error('Failed to get data from API: ' + ex.message);
-                                return {result: $.lang.get('customcommands.customapijson.err', cmd)};
-                            }
-                            result += responsePart;
                         }
-                    }
-                }
 
-                return {
-                    result: String(result),
-                    cache: false
+                        return {
+                            result: String(result),
+                            cache: false
+                        };
+                    }
                 };
             }
         }
@@ -1604,6 +1592,31 @@
         return transformers;
     })();
 
+    /*
+     * @function toTagResult
+     *
+     * @param {object} transformed
+     * @return {TagTemplate.Result}
+     */
+    function toTagResult(transformed) {
+        if (!transformed) {
+            return null;
+        }
+
+        if (transformed.hasOwnProperty('cancel') && transformed.cancel) {
+            return TagTemplate.Result.CANCEL;
+        }
+
+        if (transformed.hasOwnProperty('future')) {
+            return TagTemplate.Result.async(transformed.future, transformed.hasOwnProperty('then') ? function (value) {
+                return toTagResult(transformed.then(String(value)));
+            } : null);
+        }
+
+        return TagTemplate.Result.of(String(transformed.result), transformed.hasOwnProperty('cache') && transformed.cache,
+                transformed.hasOwnProperty('raw') && transformed.raw);
+    }
+
     /*
      * @function tags
      * @export $
@@ -1612,13 +1625,12 @@
      * @param {bool} atEnabled
      * @param {object} localTransformers
      * @param {bool} disableGlobalTransformers
+     * @param {string} cacheKey
      * @return {string}
      */
-    function tags(event, message, atEnabled, localTransformers, disableGlobalTransformers) {
-        var match,
-                tagFound = false,
-                transformed,
-                transformCache = {};
+    function tags(event, message, atEnabled, localTransformers, disableGlobalTransformers, cacheKey) {
+        var template,
+                tagFound;
 
         if (atEnabled === undefined) {
             atEnabled = false;
@@ -1633,56 +1645,40 @@
         }
 
         message += '';  // make sure this is a JS string, not a Java string
-        while ((match = message.match(/(?:[^\\]|^)(\(([^\\\s\|=()]*)([\s=\|](?:\\\(|\\\)|[^()])*)?\))/))) {
-            var wholeMatch = match[1],
-                    tagName = match[2].toLowerCase(),
-                    tagArgs = match[3] ? unescapeTags(match[3]) : '',
-                    thisTagFound = false;
-            if (transformCache.hasOwnProperty(wholeMatch)) {
-                $.replace(message, wholeMatch, transformCache[wholeMatch]);
-                thisTagFound = true;
-            } else {
-                if (localTransformers.hasOwnProperty(tagName)
-                        && (transformed = localTransformers[tagName](tagArgs, event))) {
-                    thisTagFound = true;
-                } else if (!disableGlobalTransformers && transformers.hasOwnProperty(tagName)
-                        && (transformed = transformers[tagName](tagArgs, event))) {
-                    thisTagFound = true;
-                }
+        template = cacheKey === undefined ? TagTemplateCache.instance().get(message) : TagTemplateCache.instance().get(cacheKey, message);
+        tagFound = template.hasTags();
 
-                if (thisTagFound) {
-                    tagFound = true;
-                    if (transformed.hasOwnProperty('cancel') && transformed.cancel) {
-                        return null;
-                    }
-                    if (!transformed.hasOwnProperty('raw') || !transformed.raw) {
-                        transformed.result = escapeTags(transformed.result)
-                    }
-                    if (transformed.hasOwnProperty('cache') && transformed.cache) {
-                        transformCache[wholeMatch] = transformed.result;
-                        message = $.replace(message, wholeMatch, transformed.result);
-                    } else {
-                        // only replace the first appearance
-                        message = message.replace(wholeMatch, transformed.result);
-                    }
-                }
-            }
+        // Tags are resolved left to right, only the ones in the response are called and nothing after a cancel.
+        message = template.render(function (tagName, tagArgs) {
+            var transformed;
 
-            if (!thisTagFound) {
-                message = $.replace(message, wholeMatch, '\\(' + wholeMatch.slice(1, -1) + '\\)');
+            tagName = String(tagName);
+            tagArgs = String(tagArgs);
+            if (localTransformers.hasOwnProperty(tagName)
+                    && (transformed = localTransformers[tagName](tagArgs, event))) {
+                return toTagResult(transformed);
+            } else if (!disableGlobalTransformers && transformers.hasOwnProperty(tagName)
+                    && (transformed = transformers[tagName](tagArgs, event))) {
+                return toTagResult(transformed);
             }
+
+            return null;
+        });
+
+        if (message === null) {
+            return null;
         }
 
+        message = String(message);
+
         // custom commands without tags can be directed towards users by mods
         if (tagFound === -1
                 && atEnabled
                 && event.getArgs()[0] !== undefined
                 && $.isModv3(event.getSender(), event.getTags())) {
-            return event.getArgs()[0] + ' -> ' + unescapeTags(message);
+            return event.getArgs()[0] + ' -> ' + message;
         }
 
-        message = unescapeTags(message);
-
         if (message) {
             if (message.match('\n')) {
                 var splitMessage = message.split('\n');
@@ -1697,6 +1693,15 @@
         return message;
     }
 
+    /*
+     * @function invalidateTags
+     * @export $
+     * @param {string} cacheKey
+     */
+    function invalidateTags(cacheKey) {
+        TagTemplateCache.instance().invalidate(cacheKey);
+    }
+
     /*
      * @function addTagTransformer
      * @export $
@@ -1710,4 +1715,5 @@
     $.tags = tags;
     $.escapeTags = escapeTags;
     $.addTagTransformer = addTagTransformer;
+    $.invalidateTags = invalidateTags;
 })();
@@ -28,7 +28,8 @@ var setTimeout,
 
 (function() {
     var counter = 1,
-        registry = {};
+        registry = {},
+        ScriptExecutors = Packages.tv.phantombot.script.ScriptExecutors;
 
     /**
      * @function setTimeout
@@ -42,6 +43,12 @@ var setTimeout,
         var id = counter++,
             timer;
 
+        // Run on the executor of the caller instead of a new thread.
+        if (ScriptExecutors.instance().isEnabled()) {
+            registry[id] = ScriptExecutors.instance().schedule(fn, delay, 0);
+            return id;
+        }
+
         if (name !== undefined) {
             timer = new java.util.Timer(name);
         } else {
@@ -68,6 +75,12 @@ var setTimeout,
         var id = counter++,
             timer;
 
+        // Run on the executor of the caller instead of a new thread.
+        if (ScriptExecutors.instance().isEnabled()) {
+            registry[id] = ScriptExecutors.instance().schedule(fn, interval, interval);
+            return id;
+        }
+
         if (name !== undefined) {
             timer = new java.util.Timer(name);
         } else {
@@ -107,7 +107,7 @@
         });
         $.log.file('customCommands', lines.join('\r\n'));
         if (!$.hasDiscordToken && cmdLogEnabled && cmdDiscordLogChannel) {
-            $.discordAPI.sendMessageEmbed(cmdDiscordLogChannel, 'blue', lines.join('\r\n\r\n'));
+            $.discordAPI.sendMessageEmbedQueued(cmdDiscordLogChannel, 'blue', lines.join('\r\n\r\n'));
         }
     }
 
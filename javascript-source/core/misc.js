@@ -583,6 +583,91 @@
         $.inidb.set(fileName, key, value.toString());
     }
 
+    /**
+     * @function getIniDbMany
+     * @export $
+     * @param {string} fileName
+     * @param {Array}  keys
+     * @returns {Object} The value of each key that exists, in one query
+     */
+    function getIniDbMany(fileName, keys) {
+        var values = $.inidb.getMany(fileName, keys),
+            result = {},
+            i;
+
+        for (i = 0; i < values.length; i++) {
+            if (values[i] !== null) {
+                result[keys[i]] = String(values[i]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @function getIniDbAll
+     * @export $
+     * @param {string} fileName
+     * @returns {Object} Every key and value of the table, in one query
+     */
+    function getIniDbAll(fileName) {
+        var rows = $.inidb.getAll(fileName),
+            result = {},
+            i;
+
+        for (i = 0; i < rows.length; i++) {
+            result[String(rows[i].getKey())] = String(rows[i].getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * @function findIniDbKeyByValue
+     * @export $
+     * @param {string} fileName
+     * @param {string} value
+     * @returns {string} A key with the value, or null
+     */
+    function findIniDbKeyByValue(fileName, value) {
+        var key = $.inidb.findKeyByValue(fileName, value);
+
+        return (key === null ? null : String(key));
+    }
+
+    /**
+     * @function setIniDbMany
+     * @export $
+     * @param {string} fileName
+     * @param {Object} values Keys and values to set, in one query
+     */
+    function setIniDbMany(fileName, values) {
+        var keys = Object.keys(values),
+            strings = [],
+            i;
+
+        for (i = 0; i < keys.length; i++) {
+            strings.push(String(values[keys[i]]));
+        }
+
+        if (keys.length > 0) {
+            $.inidb.setMany(fileName, keys, strings);
+        }
+    }
+
+    /**
+     * @function incrIniDbMany
+     * @export $
+     * @param {string} fileName
+     * @param {Array}  keys
+     * @param {number} amount Added to each key, missing keys are set to it
+     */
+    function incrIniDbMany(fileName, keys, amount) {
+        if (keys.length > 0) {
+            $.inidb.incrMany(fileName, keys, amount);
+        }
+    }
+
     /**
      * @function paginateArray
      * @export $
@@ -789,6 +874,11 @@
     $.setIniDbString = setIniDbString;
     $.setIniDbNumber = setIniDbNumber;
     $.setIniDbFloat = setIniDbFloat;
+    $.getIniDbMany = getIniDbMany;
+    $.getIniDbAll = getIniDbAll;
+    $.findIniDbKeyByValue = findIniDbKeyByValue;
+    $.setIniDbMany = setIniDbMany;
+    $.incrIniDbMany = incrIniDbMany;
     $.getOrdinal = getOrdinal;
     $.getPercentage = getPercentage;
     $.outOfRange = outOfRange;
@@ -20,6 +20,16 @@
  */
 
 (function() {
+    /*
+     * @function isTransferFile
+     * @param {String} fileName
+     * @returns {Boolean}
+     */
+    function isTransferFile(fileName) {
+        // Only files in the bot folder.
+        return fileName !== undefined && /^[\w.-]+\.(csv|json|ndjson)$/i.test(fileName) && fileName.indexOf('..') === -1;
+    }
+
     $.bind('command', function(event) {
         var sender = event.getSender(),
             command = event.getCommand(),
@@ -430,6 +440,28 @@
             return;
         }
 
+        /*
+         * Exports points and time to a file in the bot folder
+         */
+        if (command.equalsIgnoreCase('pointsexportpanel')) {
+            if (!$.isBot(sender) || !isTransferFile(action)) {
+                return;
+            }
+            Packages.com.gmt2001.datastore.DataStoreTransfer.exportPointsAndTimeAsync($.inidb, action);
+            return;
+        }
+
+        /*
+         * Imports points and time from a file in the bot folder
+         */
+        if (command.equalsIgnoreCase('pointsimportpanel')) {
+            if (!$.isBot(sender) || !isTransferFile(action)) {
+                return;
+            }
+            Packages.com.gmt2001.datastore.DataStoreTransfer.importPointsAndTimeAsync($.inidb, action);
+            return;
+        }
+
         /*
          * Takes points from everyone in the channel
          */
@@ -530,6 +562,8 @@
             $.registerChatCommand('./core/panelCommands.js', 'pointsallpanel', 30);
             $.registerChatCommand('./core/panelCommands.js', 'pointsbonuspanel', 30);
             $.registerChatCommand('./core/panelCommands.js', 'pointstakeallpanel', 30);
+            $.registerChatCommand('./core/panelCommands.js', 'pointsexportpanel', 30);
+            $.registerChatCommand('./core/panelCommands.js', 'pointsimportpanel', 30);
             $.registerChatCommand('./core/panelCommands.js', 'reloadraffle', 30);
             $.registerChatCommand('./core/panelCommands.js', 'rankreloadtable', 30);
             $.registerChatCommand('./core/panelCommands.js', 'reloadtraffle', 30);
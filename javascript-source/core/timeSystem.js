@@ -494,13 +494,22 @@
 
     // Interval for auto level to regular
     inter = setInterval(function() {
-        var username,
+        var usernames = [],
+            times,
+            username,
             i;
 
         if (levelWithTime) {
             for (i in $.users) {
-                username = $.users[i].toLowerCase();
-                if (!$.isMod(username) && !$.isAdmin(username) && !$.isSub(username) && !$.isVIP(username) && $.inidb.exists('time', username) && Math.floor(parseInt($.inidb.get('time', username)) / 3600) >= hoursForLevelUp && parseInt($.getUserGroupId(username)) > regularsGroupId) {
+                usernames.push($.users[i].toLowerCase());
+            }
+
+            // Get the time of every user in one query.
+            times = $.getIniDbMany('time', usernames);
+
+            for (i in usernames) {
+                username = usernames[i];
+                if (!$.isMod(username) && !$.isAdmin(username) && !$.isSub(username) && !$.isVIP(username) && times[username] !== undefined && Math.floor(parseInt(times[username]) / 3600) >= hoursForLevelUp && parseInt($.getUserGroupId(username)) > regularsGroupId) {
                     if (!$.hasModList(username)) { // Added a second check here to be 100% sure the user is not a mod.
                         $.setUserGroupById(username, regularsGroupId);
                         if (timeLevelWarning) {
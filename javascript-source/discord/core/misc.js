@@ -94,12 +94,33 @@
 
     /**
      * @function say
+     * Sends without waiting, messages to the same channel are kept in order. Use sayAndWait to get the message object.
      *
      * @export $.discord
      * @param {string} channel
      * @param {string} message
      */
     function say(channel, message) {
+        if (embedReg.test(message)) {
+            $.discordAPI.sendMessageEmbedQueued(channel, message.match(embedReg)[1], message.match(embedReg)[2]);
+        } else if (fileRegMsg.test(message)) {
+            $.discordAPI.sendFileQueued(channel, message.match(fileRegMsg)[2], message.match(fileRegMsg)[1]);
+        } else if (fileReg.test(message)) {
+            $.discordAPI.sendFileQueued(channel, '', message.match(fileReg)[1]);
+        } else {
+            $.discordAPI.sendMessageQueued(channel, message);
+        }
+    }
+
+    /**
+     * @function sayAndWait
+     *
+     * @export $.discord
+     * @param {string} channel
+     * @param {string} message
+     * @return {Message}
+     */
+    function sayAndWait(channel, message) {
         if (embedReg.test(message)) {
             return $.discordAPI.sendMessageEmbed(channel, message.match(embedReg)[1], message.match(embedReg)[2]);
         } else if (fileRegMsg.test(message)) {
@@ -416,6 +437,7 @@
         setGame: setGame,
         setRole: setRole,
         say: say,
+        sayAndWait: sayAndWait,
         handleDeleteReaction: handleDeleteReaction,
         sanitizeChannelName: sanitizeChannelName,
         resolve: {
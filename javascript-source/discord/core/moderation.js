@@ -164,7 +164,7 @@
                 toSend += keys[i].replace(/_/g, ' ') + ' ' + obj[keys[i]] + '\r\n\r\n';
             }
         }
-        $.discordAPI.sendMessageEmbed(modLogChannel, 'blue', toSend);
+        $.discordAPI.sendMessageEmbedQueued(modLogChannel, 'blue', toSend);
     }
 
     /*
@@ -194,7 +194,7 @@
                 toSend += keys[i].replace(/_/g, ' ') + ' ' + obj[keys[i]] + '\r\n\r\n';
             }
         }
-        $.discordAPI.sendMessageEmbed(modLogChannel, 'yellow', toSend);
+        $.discordAPI.sendMessageEmbedQueued(modLogChannel, 'yellow', toSend);
     }
 
     /*
@@ -221,7 +221,7 @@
                 toSend += keys[i].replace(/_/g, ' ') + ' ' + obj[keys[i]] + '\r\n\r\n';
             }
         }
-        $.discordAPI.sendMessageEmbed(modLogChannel, 'red', toSend);
+        $.discordAPI.sendMessageEmbedQueued(modLogChannel, 'red', toSend);
     }
     
     /*
@@ -267,7 +267,7 @@
             return;
         }
 
-        $.discordAPI.sendMessageEmbed(modLogChannel, 'green', '**Timeout removed from:** ' + '[' + username + '](https://twitch.tv/' + username.toLowerCase() + ')' + ' \r\n\r\n **Creator:** ' + creator);
+        $.discordAPI.sendMessageEmbedQueued(modLogChannel, 'green', '**Timeout removed from:** ' + '[' + username + '](https://twitch.tv/' + username.toLowerCase() + ')' + ' \r\n\r\n **Creator:** ' + creator);
     });
 
     /*
@@ -281,7 +281,7 @@
             return;
         }
 
-        $.discordAPI.sendMessageEmbed(modLogChannel, 'green', '**Ban removed from:** ' + '[' + username + '](https://twitch.tv/' + username.toLowerCase() + ')' + ' \r\n\r\n **Creator:** ' + creator);
+        $.discordAPI.sendMessageEmbedQueued(modLogChannel, 'green', '**Ban removed from:** ' + '[' + username + '](https://twitch.tv/' + username.toLowerCase() + ')' + ' \r\n\r\n **Creator:** ' + creator);
     });
 
     /*
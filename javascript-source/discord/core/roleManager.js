@@ -32,7 +32,8 @@
      */
     function roleUpdateCheck() {
         if ($.discord.isConnected()) {
-            var users = $.inidb.GetKeyList('discordToTwitch', ''),
+            var links = $.getIniDbAll('discordToTwitch'),
+                users = Object.keys(links),
                 i;
 
             // If both options are disabled, stop here.
@@ -47,8 +48,8 @@
             setTimeout(function() {
                 for (i in users) {
                     try {
-                        if (hasRankOrPermission($.getIniDbString('discordToTwitch', users[i]))) {
-                            updateRoles(users[i], getRanksAndPermissions($.getIniDbString('discordToTwitch', users[i])));
+                        if (hasRankOrPermission(links[users[i]])) {
+                            updateRoles(users[i], getRanksAndPermissions(links[users[i]]));
                         }
                     } catch (e){
                         $.log.error(e);
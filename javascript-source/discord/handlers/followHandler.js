@@ -57,7 +57,7 @@
             s = $.replace(s, '(name)', follower);
         }
 
-        $.discordAPI.sendMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
+        $.discordAPI.sendMessageEmbedQueued(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
                     .withColor(20, 184, 102)
                     .withThumbnail('https://raw.githubusercontent.com/PhantomBot/Miscellaneous/master/Discord-Embed-Icons/follow-embed-icon.png')
                     .withTitle($.lang.get('discord.followhandler.follow.embedtitle'))
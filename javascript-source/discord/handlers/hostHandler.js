@@ -74,7 +74,7 @@
             s = $.replace(s, '(viewers)', String(viewers));
         }
 
-        $.discordAPI.sendMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
+        $.discordAPI.sendMessageEmbedQueued(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
                     .withColor(255, 0, 0)
                     .withThumbnail('https://raw.githubusercontent.com/PhantomBot/Miscellaneous/master/Discord-Embed-Icons/host-embed-icon.png')
                     .withTitle($.lang.get('discord.hosthandler.host.embedtitle'))
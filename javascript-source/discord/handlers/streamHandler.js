@@ -133,7 +133,7 @@
 
                 // Only say this when there is a mention.
                 if (s.indexOf('@') !== -1) {
-                    msg = $.discord.say(channelName, s);
+                    msg = $.discord.sayAndWait(channelName, s);
                     if (deleteMessageToggle) {
                         offlineMessages.push(msg)
                     }
@@ -187,7 +187,7 @@
 
                     // Only say this when there is a mention.
                     if (s.indexOf('@') !== -1) {
-                        msg = $.discord.say(channelName, s);
+                        msg = $.discord.sayAndWait(channelName, s);
                         if(deleteMessageToggle) {
                             liveMessages.push(msg);
                         }
@@ -234,7 +234,7 @@
 
         // Only say this when there is a mention.
         if (s.indexOf('@') !== -1) {
-            liveMessages.push($.discord.say(channelName, s));
+            liveMessages.push($.discord.sayAndWait(channelName, s));
         }
         liveMessages.push($.discordAPI.sendMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
             .withColor(100, 65, 164)
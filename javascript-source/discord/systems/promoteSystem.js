@@ -305,7 +305,7 @@
                 if (biography.equals('')) {
                     biography = $.lang.get('discord.promotesystem.promotemsg.nobio');
                 }
-                $.discordAPI.sendMessageEmbed($.inidb.get('promotesettings', 'channel'), new Packages.tv.phantombot.discord.util.EmbedBuilder()
+                $.discordAPI.sendMessageEmbedQueued($.inidb.get('promotesettings', 'channel'), new Packages.tv.phantombot.discord.util.EmbedBuilder()
                                               .withThumbnail('http://iotv.me/i/followontwitch.jpg')
                                               .withTitle('https://twitch.tv/' + twitchName)
                                               .withDesc($.lang.get('discord.promotesystem.promotemsg.description', $.username.resolve(twitchName)))
@@ -392,7 +392,7 @@
      
                         embedBuilder.withFooterText($.inidb.get('promotebio', twitchID))
                                     .withUrl('https://twitch.tv/' + twitchName);
-                        $.discordAPI.sendMessageEmbed($.inidb.get('promotesettings', 'streamchannel'), embedBuilder.build());
+                        $.discordAPI.sendMessageEmbedQueued($.inidb.get('promotesettings', 'streamchannel'), embedBuilder.build());
                     }
                 }
             }
@@ -433,7 +433,7 @@
             if (biography.equals('')) {
                 biography = $.lang.get('discord.promotesystem.promotemsg.nobio');
             }
-            $.discordAPI.sendMessageEmbed($.inidb.get('promotesettings', 'channel'), new Packages.tv.phantombot.discord.util.EmbedBuilder()
+            $.discordAPI.sendMessageEmbedQueued($.inidb.get('promotesettings', 'channel'), new Packages.tv.phantombot.discord.util.EmbedBuilder()
                                           .withThumbnail('http://iotv.me/i/followontwitch.jpg')
                                           .withTitle('https://twitch.tv/' + twitchName)
                                           .withDesc($.lang.get('discord.promotesystem.promotemsg.description', $.username.resolve(twitchName)))
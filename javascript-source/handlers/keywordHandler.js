@@ -16,7 +16,7 @@
  */
 
 (function() {
-    var keywords = [];
+    var keywords = {};
 
     /*
      * @function loadKeywords
@@ -25,22 +25,14 @@
         var keys = $.inidb.GetKeyList('keywords', ''),
             i;
 
-        keywords = [];
+        keywords = {};
 
         for (i = 0; i < keys.length; i++) {
-            var json = JSON.parse($.inidb.get('keywords', keys[i]));
-
-            if (json.isRegex) {
-                try {
-                    json.regexKey = new RegExp(json.keyword, json.isCaseSensitive ? '' : 'i');
-                } catch (ex) {
-                    $.log.error('Bad regex detected in keyword [' + keys[i] + ']: ' + ex.message);
-                    continue;
-                }
-            }
-
-            keywords.push(json);
+            keywords[$.jsString(keys[i])] = JSON.parse($.inidb.get('keywords', keys[i]));
         }
+
+        // Matching is done by the Java keyword index, drop it so it's rebuilt with the new keywords.
+        $.keywordIndex.invalidate();
     }
 
     /*
@@ -65,39 +57,17 @@
 
         var message = event.getMessage(),
             sender = event.getSender(),
-            messagePartsLower = message.toLowerCase().split(' '),
-            messageParts = message.split(' '),
-            json;
+            key;
 
         // Don't say the keyword if someone tries to remove it.
         if (message.startsWith('!keyword')) {
             return;
         }
 
-        for (var i = 0; i < keywords.length; i++) {
-            json = keywords[i];
+        key = $.keywordIndex.match(message);
 
-            if (json.isRegex) {
-                if (json.regexKey.test(message)) {
-                    executeKeyword(json, event);
-                    break;
-                }
-            } else {
-                var str = '',
-                  caseAdjustedMessageParts = messageParts;
-                if (!json.isCaseSensitive) {
-                    caseAdjustedMessageParts = messagePartsLower;
-                }
-                for (var idx = 0; idx < caseAdjustedMessageParts.length; idx++) {
-                    // Create a string to match on the keyword.
-                    str += (caseAdjustedMessageParts[idx] + ' ');
-                    // Either match on the exact word or phrase if it contains it.
-                    if ((json.keyword.includes(' ') && str.includes(json.keyword)) || (caseAdjustedMessageParts[idx] + '') === (json.keyword + '')) {
-                        executeKeyword(json, event);
-                        break;
-                    }
-                }
-            }
+        if (key !== null && keywords[$.jsString(key)] !== undefined) {
+            executeKeyword(keywords[$.jsString(key)], event);
         }
     });
 
@@ -46,7 +46,7 @@
                 }
 
                 subAction = subAction.replace(action, '').toLowerCase();
-                $.inidb.set('wordCounter', subAction, 0);
+                $.wordCounter.add(subAction);
                 $.say(subAction + $.lang.get('wordcounter.added'));
                 $.log.event(sender + ' added "' + subAction + '" to the word counter list');
             }
@@ -58,13 +58,13 @@
                 if (!subAction) {
                     $.say($.whisperPrefix(sender) + $.lang.get('wordcounter.remove.usage'));
                     return;
-                } else if (!$.inidb.exists('wordCounter', subAction)) {
+                } else if (!$.wordCounter.exists(subAction)) {
                     $.say($.whisperPrefix(sender) + $.lang.get('wordcounter.err.404'));
                     return;
                 }
 
                 subAction = subAction.replace(action, '').toLowerCase();
-                $.inidb.del('wordCounter', subAction);
+                $.wordCounter.remove(subAction);
                 $.say(subAction + $.lang.get('wordcounter.removed'));
                 $.log.event(sender + ' removed "' + subAction + '" from the word counter list');
             }
@@ -74,12 +74,12 @@
          * @commandpath count [word] - Tells you how many times that word as been said in chat.
          */
         if (command.equalsIgnoreCase('count')) {
-            if (!action || !$.inidb.exists('wordCounter', action.toLowerCase())) {
+            if (!action || !$.wordCounter.exists(action)) {
                 $.say($.whisperPrefix(sender) + $.lang.get('wordcounter.err.404'));
                 return;
             }
 
-            $.say($.lang.get('wordcounter.count', action, $.inidb.get('wordCounter', action.toLowerCase())));
+            $.say($.lang.get('wordcounter.count', action, $.wordCounter.getCount(action)));
         }
     });
 
@@ -88,20 +88,9 @@
      * @event ircChannelMessage
      */
     $.bind('ircChannelMessage', function(event) {
-        var message = event.getMessage().toLowerCase(),
-            keys = $.inidb.GetKeyList('wordCounter', ''),
-            word,
-            key;
-
         if ($.bot.isModuleEnabled('./handlers/wordCounter.js')) {
-            for (i in keys) {
-                key = keys[i].toLowerCase();
-                word = new RegExp('\\b' + key + '\\b', 'ig');
-                if (word.exec(message)) {
-                    $.inidb.incr('wordCounter', key, 1);
-                    break;
-                }
-            }
+            // The word list is cached in Java and increments are buffered, so this doesn't touch the database.
+            $.wordCounter.countMessage(event.getMessage());
         }
     });
 
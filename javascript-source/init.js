@@ -21,8 +21,11 @@
  */
 (function () {
     var isReady = false,
+            lazyLoadModules = false,
             modules = [],
-            hooks = [];
+            hooks = [],
+            CommandRegistry = Packages.tv.phantombot.scripts.core.CommandRegistry,
+            ScriptExecutors = Packages.tv.phantombot.script.ScriptExecutors;
 
     /*
      * @class Module
@@ -129,12 +132,23 @@
      * @param {Boolean} silent
      */
     function loadScript(scriptName, force, silent) {
-        if (!isModuleLoaded(scriptName) || force) {
+        if (!isModuleLoaded(scriptName) || force || modules[scriptName].script === null) {
             if (scriptName.endsWith('.js')) {
                 try {
                     var enabled,
                             script;
 
+                    // Disabled modules are loaded when they are enabled.
+                    if (lazyLoadModules && !isModuleLoaded(scriptName) && !isCoreModule(scriptName)
+                            && !$.getSetIniDbBoolean('modules', scriptName, true)) {
+                        modules[scriptName] = new Module(scriptName, null, false);
+
+                        if (!silent) {
+                            consoleLn('Deferred module: ' + scriptName.replace(/\.\//g, '') + ' (Disabled)');
+                        }
+                        return;
+                    }
+
                     if ($api.getScript($script, scriptName) != null) {
                         script = $api.reloadScriptR($script, scriptName);
                     } else {
@@ -155,6 +169,16 @@
         }
     }
 
+    /*
+     * @function isCoreModule
+     *
+     * @param  {String}  scriptName
+     * @return {Boolean}
+     */
+    function isCoreModule(scriptName) {
+        return scriptName.indexOf('./core/') === 0 || scriptName.indexOf('./discord/core/') === 0 || scriptName.indexOf('./lang/') === 0;
+    }
+
     /*
      * @function loadScriptRecursive
      *
@@ -302,32 +326,62 @@
         if (hookName === 'command') {
             i = getHookIndex($.getCommandScript(event.getCommand()), hookName);
 
-            try {
-                hook.handlers[i].handler(event);
-            } catch (ex) {
-                $.log.error('Error with Event Handler [' + hookName + '] Script [' + hook.handlers[i].scriptName + '] Stacktrace [' + ex.stack.trim().replace(/\r/g, '').split('\n').join(' > ').replace(/anonymous\(\)@|callHook\(\)@/g, '') + '] Exception [' + ex + ']');
-                if (ex.javaException !== undefined) {
-                    $.consoleLn("Sending stack trace to error log...");
-                    Packages.com.gmt2001.Console.err.printStackTrace(ex.javaException);
-                }
-            }
+            dispatchHook(hookName, hook.handlers[i], event);
         } else {
             for (i in hook.handlers) {
                 if (isModuleEnabled(hook.handlers[i].scriptName) || force) {
-                    try {
-                        hook.handlers[i].handler(event);
-                    } catch (ex) {
-                        $.log.error('Error with Event Handler [' + hookName + '] Script [' + hook.handlers[i].scriptName + '] Stacktrace [' + ex.stack.trim().replace(/\r/g, '').split('\n').join(' > ').replace(/anonymous\(\)@|callHook\(\)@/g, '') + '] Exception [' + ex + ']');
-                        if (ex.javaException !== undefined) {
-                            $.consoleLn("Sending stack trace to error log...");
-                            Packages.com.gmt2001.Console.err.printStackTrace(ex.javaException);
-                        }
-                    }
+                    dispatchHook(hookName, hook.handlers[i], event);
                 }
             }
         }
     }
 
+    /*
+     * @function dispatchHook - runs a handler on the executor of its script when script executors are on, otherwise now.
+     * The handler is passed rather than its index, so a script reloaded before the task runs can't swap in another handler.
+     *
+     * @param {String} hookName
+     * @param {Object} handler
+     * @param {Object} event
+     */
+    function dispatchHook(hookName, handler, event) {
+        var previousOwner;
+
+        if (hookName !== 'initReady' && handler !== undefined && ScriptExecutors.instance().isEnabled()) {
+            ScriptExecutors.instance().execute(handler.scriptName, function () {
+                runHook(hookName, handler, event);
+            });
+        } else {
+            // Timers started by the handler belong to the executor of its script, not of the one running it.
+            previousOwner = ScriptExecutors.instance().setOwner(handler === undefined ? null : handler.scriptName);
+
+            try {
+                runHook(hookName, handler, event);
+            } finally {
+                ScriptExecutors.instance().setOwner(previousOwner);
+            }
+        }
+    }
+
+    /*
+     * @function runHook
+     *
+     * @param {String} hookName
+     * @param {Object} handler
+     * @param {Object} event
+     */
+    function runHook(hookName, handler, event) {
+        try {
+            handler.handler(event);
+        } catch (ex) {
+            $.log.error('Error with Event Handler [' + hookName + '] Script [' + handler.scriptName + '] Stacktrace [' + ex.stack.trim().replace(/\r/g, '').split('\n').join(' > ').replace(/anonymous\(\)@|callHook\(\)@|runHook\(\)@/g, '') + '] Exception [' + ex + ']');
+            if (ex.javaException !== undefined) {
+                $.consoleLn("Sending stack trace to error log...");
+                Packages.com.gmt2001.Console.err.printStackTrace(ex.javaException);
+            }
+        }
+    }
+
     /*
      * @function init - Loads everything for the scripts.
      */
@@ -335,6 +389,9 @@
         // Do not print a line to the console for each module (script) that is loaded.
         var silentScriptsLoad = Packages.tv.phantombot.PhantomBot.getSilentScriptsLoad().toString().equals('true');
 
+        // Wait until a disabled module is enabled to load it.
+        lazyLoadModules = Packages.tv.phantombot.PhantomBot.getLazyLoadModules().toString().equals('true');
+
         // Generate JavaScript trampolines for Java functions.
         generateJavaTrampolines();
         // Register events.
@@ -420,59 +477,30 @@
      * @function events - registers all events with the core.
      */
     function events() {
-        // Load all API events.
-
-        /*
-         * @event ircModeration
-         */
-        $api.on($script, 'ircModeration', function (event) {
-            $.performModeration(event);
-        });
-
-        /*
-         * @event ircChannelMessage
-         */
-        $api.on($script, 'ircChannelMessage', function (event) {
-            callHook('ircChannelMessage', event, false);
-        });
-
-        /*
-         * @event ircChannelUserMode
-         */
-        $api.on($script, 'ircChannelUserMode', function (event) {
-            callHook('ircChannelUserMode', event, false);
-
-            if (event.getUser().equalsIgnoreCase($.botName) && event.getMode().equalsIgnoreCase('O')) {
-                if (event.getAdd().toString().equals('true')) {
-                    if (isReady === false) {
-                        // Bot is now ready.
-                        consoleLn($.botName + ' ready!');
-                        // Call the initReady event.
-                        callHook('initReady', null, false);
-                    }
-                    isReady = true;
-                }
-            }
-        });
-
         /*
-         * @event command
+         * @function handleCommand - checks and runs a command, from chat or from another script.
+         *
+         * @param {CommandEvent} event
          */
-        $api.on($script, 'command', function (event) {
+        function handleCommand(event) {
             var sender = event.getSender(),
                     command = event.getCommand(),
                     args = event.getArgs(),
-                    subCommand = $.getSubCommandFromArguments(command, args),
-                    isMod = $.isModv3(sender, event.getTags());
+                    dispatch = CommandRegistry.instance().dispatch(command, args[0] === undefined ? null : args[0]),
+                    subCommand,
+                    isMod;
 
             // Check if the command exists or if the module is disabled.
-            if (!$.commandExists(command) || !isModuleEnabled($.getCommandScript(command))) {
+            if (!dispatch.exists() || !isModuleEnabled(dispatch.getScript())) {
                 return;
-            } else
+            }
+
+            subCommand = String(dispatch.getSubcommand());
+            isMod = $.isModv3(sender, event.getTags());
 
             // Check if the command has an alias.
-            if ($.aliasExists(command)) {
-                var alias = $.getIniDbString('aliases', command),
+            if (dispatch.getAlias() !== null) {
+                var alias = String(dispatch.getAlias()),
                         aliasCommand,
                         aliasArguments,
                         subcmd,
@@ -500,21 +528,21 @@
 
             // Check the command permission.
             if ($.permCom(sender, command, subCommand, event.getTags()) !== 0) {
-                $.sayWithTimeout($.whisperPrefix(sender) + $.lang.get('cmd.perm.404', (!$.subCommandExists(command, subCommand) ? $.getCommandGroupName(command) : $.getSubCommandGroupName(command, subCommand))), $.getIniDbBoolean('settings', 'permComMsgEnabled', false));
+                $.sayWithTimeout($.whisperPrefix(sender) + $.lang.get('cmd.perm.404', (subCommand === '' ? $.getCommandGroupName(command) : $.getSubCommandGroupName(command, subCommand))), dispatch.isPermMessageEnabled());
                 consoleDebug('Command !' + command + ' was not sent due to the user not having permission for it.');
                 return;
             } else
 
             // Check the command cooldown.
             if ($.coolDown.get(command, sender, isMod) !== 0) {
-                $.sayWithTimeout($.whisperPrefix(sender) + $.lang.get('init.cooldown.msg', command, $.coolDown.getSecs(sender, command, isMod)), $.getIniDbBoolean('settings', 'coolDownMsgEnabled', false));
+                $.sayWithTimeout($.whisperPrefix(sender) + $.lang.get('init.cooldown.msg', command, $.coolDown.getSecs(sender, command, isMod)), dispatch.isCooldownMessageEnabled());
                 consoleDebug('Command !' + command + ' was not sent due to it being on cooldown.');
                 return;
             } else
 
             // Check the command cost.
             if ($.priceCom(sender, command, subCommand, isMod) === 1) {
-                $.sayWithTimeout($.whisperPrefix(sender) + $.lang.get('cmd.needpoints', $.getPointsString($.getCommandPrice(command, subCommand, ''))), $.getIniDbBoolean('settings', 'priceComMsgEnabled', false));
+                $.sayWithTimeout($.whisperPrefix(sender) + $.lang.get('cmd.needpoints', $.getPointsString(dispatch.getPrice())), dispatch.isPriceMessageEnabled());
                 consoleDebug('Command !' + command + ' was not sent due to the user not having enough points.');
                 return;
             }
@@ -523,15 +551,72 @@
             callHook('command', event, false);
 
             // Decrease or add points after the command is sent to not slow anything down.
-            if ($.priceCom(sender, command, subCommand, isMod) === 0) {
-                $.inidb.decr('points', sender, $.getCommandPrice(command, subCommand, ''));
+            if (dispatch.hasPrice() && $.priceCom(sender, command, subCommand, isMod) === 0) {
+                $.inidb.decr('points', sender, dispatch.getPrice());
+            }
+
+            if (dispatch.hasPay()) {
+                $.inidb.incr('points', sender, dispatch.getPay());
+            }
+        }
+
+        // Load all API events.
+
+        /*
+         * @event ircModeration
+         */
+        $api.on($script, 'ircModeration', function (event) {
+            $.performModeration(event);
+        });
+
+        /*
+         * @event ircChatMessage - sent once per chat message before ircChannelMessage, runs moderation, then the command.
+         */
+        $api.on($script, 'ircChatMessage', function (event) {
+            // Nothing else sees a message that moderation acted on.
+            if ($.performModeration(event) === true) {
+                event.getChannelMessageEvent().setModerated();
+                return;
             }
 
-            if ($.payCom(command) === 0) {
-                $.inidb.incr('points', sender, $.getCommandPay(command));
+            if (event.getCommandEvent() !== null) {
+                handleCommand(event.getCommandEvent());
             }
         });
 
+        /*
+         * @event ircChannelMessage
+         */
+        $api.on($script, 'ircChannelMessage', function (event) {
+            if (!event.isModerated()) {
+                callHook('ircChannelMessage', event, false);
+            }
+        });
+
+        /*
+         * @event ircChannelUserMode
+         */
+        $api.on($script, 'ircChannelUserMode', function (event) {
+            callHook('ircChannelUserMode', event, false);
+
+            if (event.getUser().equalsIgnoreCase($.botName) && event.getMode().equalsIgnoreCase('O')) {
+                if (event.getAdd().toString().equals('true')) {
+                    if (isReady === false) {
+                        // Bot is now ready.
+                        consoleLn($.botName + ' ready!');
+                        // Call the initReady event.
+                        callHook('initReady', null, false);
+                    }
+                    isReady = true;
+                }
+            }
+        });
+
+        /*
+         * @event command
+         */
+        $api.on($script, 'command', handleCommand);
+
         /*
          * @event discordChannelCommand
          */
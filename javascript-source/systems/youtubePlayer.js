@@ -37,6 +37,7 @@
         skipCount,
         lastSkipTime = 0,
         playlistDJname = $.getSetIniDbString('ytSettings', 'playlistDJname', $.botName),
+        ytMetadata = Packages.com.gmt2001.YouTubeMetadata,
 
         /* enum for player status */
         playerStateEnum = {
@@ -100,6 +101,7 @@
         if (currentPlaylist === null && connectedPlayerClient !== null) {
             /** Pre-load last activated playlist */
             currentPlaylist = new BotPlayList(activePlaylistname, true);
+            Packages.tv.phantombot.ytplayer.YTPlaylist.setActive(currentPlaylist.getplayListDbId(), activePlaylistname);
             /** if the current playlist is "default" and it's empty, add some default songs. */
             if (currentPlaylist.getPlaylistname().equals('default') && currentPlaylist.getplaylistLength() == 0) {
                 /** whatfunk - Waves FREE CC0 No Copyright Royalty Free Music */
@@ -270,12 +272,11 @@
             }
         }
 
-        if ($.inidb.exists('ytcache', searchQuery)) {
-            var jsonString = $.inidb.get('ytcache', searchQuery);
-            var jsonData = JSON.parse(jsonString);
-            videoId = jsonData["id"];
-            videoTitle = jsonData["title"];
-            videoLength = jsonData["time"];
+        var metadata = ytMetadata.instance().get(ytMetadata.parseVideoId(searchQuery));
+
+        if (metadata !== null && metadata.isFound()) {
+            videoId = metadata.getId();
+            videoTitle = metadata.getTitle();
         } else {
             var data = null;
             var attempts = 0;
@@ -298,16 +299,9 @@
             if (videoTitle.equalsIgnoreCase('video marked private') || videoTitle.equalsIgnoreCase('no search results found')) {
                 throw videoTitle;
             }
-
-            this.getVideoLength();
-            var jsonData = {};
-            jsonData["id"] = videoId + '';
-            jsonData["title"] = videoTitle + '';
-            jsonData["time"] = videoLength;
-            var jsonString = JSON.stringify(jsonData);
-            $.inidb.set('ytcache', videoId, jsonString);
         }
 
+        this.getVideoLength();
         this.getVideoInfo();
         if (license == 0 && playCCOnly) {
             throw 'Video is not licensed as Creative Commons (ID: ' + videoId + ')';
@@ -331,14 +325,21 @@
         var previousVideo = null,
             currentVideo = null,
             playListDbId = playlistDbPrefix + playlistName,
-            defaultPlaylist = [], // @type { Integer[] }
-            defaultPlaylistReadOnly = [], // @type { Integer[] }
             requests = new java.util.concurrent.ConcurrentLinkedQueue, // @type { YoutubeVideo[] }
             requestFailReason = '';
 
         this.playlistName = playlistName;
         this.loaded = false;
 
+        /**
+         * @function playlist
+         * @param {String} [dbId]
+         * @return {YTPlaylist}
+         */
+        function playlist(dbId) {
+            return Packages.tv.phantombot.ytplayer.YTPlaylist.get(dbId ? dbId : playListDbId);
+        }
+
         /**
          * @function importPlaylistFile
          * @param {String}
@@ -350,12 +351,18 @@
                 importCount = 0,
                 failCount = 0,
                 playlistFailCount = 0,
+                importTo = playlist(playlistDbPrefix + listName),
                 spaceMacther = new RegExp('\\s');
 
             if ($.inidb.exists('yt_playlists_registry', 'ytPlaylist_' + listName)) {
                 if ($.fileExists("./addons/youtubePlayer/" + fileName)) {
                     $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.importpl.file.start'));
                     importedList = $.readFile("./addons/youtubePlayer/" + fileName);
+
+                    // Looks up the videos 50 at a time, instead of one by one below.
+                    ytMetadata.instance().getMany(importedList.map(function(line) {
+                        return ytMetadata.parseVideoId(line);
+                    }));
                     for (var i = 0; i < importedList.length; i++) {
                         if (importedList[i].contains('&list')) {
                             playlistFailCount++;
@@ -367,14 +374,17 @@
 
                         try {
                             var youtubeVideo = new YoutubeVideo(importedList[i], 'importPlaylistFile');
-                            $.inidb.set(playlistDbPrefix + listName, importCount, youtubeVideo.getVideoId());
-                            importCount++;
+                            if (importTo.add(youtubeVideo.getVideoId(), youtubeVideo.getVideoTitle(), youtubeVideo.getVideoLength()) < 0) {
+                                failCount++;
+                            } else {
+                                importCount++;
+                            }
                         } catch (ex) {
                             $.log.error("importPlaylistFile::skipped [" + importedList[i] + "]: " + ex);
                             failCount++;
                         }
                     }
-                    $.inidb.set(playlistDbPrefix + listName, 'lastkey', importCount);
+                    importTo.flush();
 
                     if (playlistFailCount > 0) {
                         return $.lang.get('ytplayer.command.importpl.file.success.plerror', importCount, failCount, fileName, listName, playlistFailCount);
@@ -396,6 +406,7 @@
             if ($.inidb.exists('yt_playlists_registry', 'ytPlaylist_' + listName)) {
                 this.playlistName = listName;
                 playListDbId = playlistDbPrefix + listName;
+                Packages.tv.phantombot.ytplayer.YTPlaylist.setActive(playListDbId, listName);
                 this.loadPlaylistKeys();
                 connectedPlayerClient.pushPlayList();
             }
@@ -441,12 +452,9 @@
                 return -2;
             }
             if (targetPlaylistName) {
-                newKey = (!$.inidb.exists(playlistDbPrefix + targetPlaylistName, 'lastkey') ? 0 : parseInt($.inidb.get(playlistDbPrefix + targetPlaylistName, 'lastkey')) + 1);
-                $.inidb.set(playlistDbPrefix + targetPlaylistName, newKey, youtubeVideo.getVideoId());
-                $.inidb.set(playlistDbPrefix + targetPlaylistName, 'lastkey', newKey);
+                newKey = playlist(playlistDbPrefix + targetPlaylistName).add(youtubeVideo.getVideoId(), youtubeVideo.getVideoTitle(), youtubeVideo.getVideoLength());
             }
             if (targetPlaylistName.equals(this.playlistName)) {
-                this.loadPlaylistKeys();
                 connectedPlayerClient.pushPlayList();
             }
             return newKey;
@@ -457,19 +465,9 @@
          * @returns {Number}
          */
         this.deleteCurrentVideo = function() {
-            var keyList = $.inidb.GetKeyList(playListDbId, ''),
-                i;
+            playlist().remove(currentVideo.getVideoId());
 
-            for (i = 0; i < keyList.length; i++) {
-                if (!keyList[i].equals("lastkey")) {
-                    if ($.inidb.get(playListDbId, keyList[i]) == currentVideo.getVideoId()) {
-                        $.inidb.del(playListDbId, keyList[i]);
-                        break;
-                    }
-                }
-            }
-
-            if (this.loadPlaylistKeys() > 0) {
+            if (playlist().size() > 0) {
                 connectedPlayerClient.pushPlayList();
                 this.nextVideo();
             } else {
@@ -485,16 +483,7 @@
          * @returns {Number}
          */
         this.deleteVideoByID = function(videoId) {
-            var keyList = $.inidb.GetKeyList(playListDbId, ''),
-                i;
-
-            for (i = 0; i < keyList.length; i++) {
-                if ($.inidb.get(playListDbId, keyList[i]).equals(videoId)) {
-                    $.inidb.del(playListDbId, keyList[i]);
-                    break;
-                }
-            }
-            this.loadPlaylistKeys();
+            playlist().remove(videoId);
             connectedPlayerClient.pushPlayList();
         }
 
@@ -505,6 +494,7 @@
         this.deletePlaylist = function(listName) {
             if ($.inidb.exists('yt_playlists_registry', 'ytPlaylist_' + listName)) {
                 $.inidb.del('yt_playlists_registry', 'ytPlaylist_' + listName);
+                Packages.tv.phantombot.ytplayer.YTPlaylist.delete('ytPlaylist_' + listName);
                 $.inidb.RemoveFile('ytPlaylist_' + listName);
                 return true;
             }
@@ -532,7 +522,7 @@
          * @returns {Number}
          */
         this.getplaylistLength = function() {
-            return defaultPlaylist.length;
+            return playlist().remaining();
         };
 
         /**
@@ -540,9 +530,30 @@
          * @returns {String}[]
          */
         this.getReadOnlyPlaylistData = function() {
-            return defaultPlaylistReadOnly;
+            return playlist().getVideoIds();
         }
 
+        /**
+         * @function loadMissingInfo
+         * Looks up the videos of the playlist which are not in the ytcache table yet.
+         */
+        this.loadMissingInfo = function() {
+            var missing = playlist().getMissingInfo(),
+                youtubeObject,
+                i;
+
+            ytMetadata.instance().getMany(missing);
+
+            for (i = 0; i < missing.length; i++) {
+                try {
+                    youtubeObject = new YoutubeVideo(missing[i], $.botName);
+                    playlist().setInfo(missing[i], youtubeObject.getVideoTitle(), youtubeObject.getVideoLength());
+                } catch (ex) {
+                    $.log.error('YouTube API Failed Lookup: Playlist [' + this.playlistName + '] YT ID [' + missing[i] + '] Error [' + ex + ']');
+                }
+            }
+        };
+
         /**
          * @function getPreviousVideo
          * @returns {YoutubeVideo}
@@ -599,14 +610,15 @@
                     return false;
                 }
             } else {
-                if (defaultPlaylistReadOnly.length == 0 || defaultPlaylistReadOnly.length < playlistPosition) {
+                var videoId = playlist().getVideoIdAt(playlistPosition);
+
+                if (videoId === null) {
                     return false;
                 }
 
                 previousVideo = currentVideo;
                 try {
-                    var playListIndex = defaultPlaylistReadOnly[playlistPosition];
-                    currentVideo = new YoutubeVideo($.inidb.get(playListDbId, playListIndex), playlistDJname);
+                    currentVideo = new YoutubeVideo(videoId, playlistDJname);
                 } catch (ex) {
                     $.log.error("YoutubeVideo::exception: " + ex);
                     return false;
@@ -651,23 +663,21 @@
                     }
                 }
             } else {
-                if (defaultPlaylistReadOnly.length == 0) {
+                this.loadMissingInfo();
+
+                var videoId = playlist().findByTitle(songTitle);
+
+                if (videoId === null) {
                     return false;
                 }
 
-                for (var i in defaultPlaylistReadOnly) {
-                    try {
-                        examineVideo = new YoutubeVideo($.inidb.get(playListDbId, defaultPlaylistReadOnly[i]), playlistDJname);
-                        if (examineVideo.getVideoTitle().toLowerCase().indexOf(songTitle.toLowerCase()) >= 0) {
-                            previousVideo = currentVideo;
-                            currentVideo = new YoutubeVideo($.inidb.get(playListDbId, defaultPlaylistReadOnly[i]), playlistDJname);
-                            match = true;
-                            break;
-                        }
-                    } catch (ex) {
-                        $.log.error("YoutubeVideo::exception: " + ex);
-                        return false;
-                    }
+                try {
+                    previousVideo = currentVideo;
+                    currentVideo = new YoutubeVideo(videoId, playlistDJname);
+                    match = true;
+                } catch (ex) {
+                    $.log.error("YoutubeVideo::exception: " + ex);
+                    return false;
                 }
             }
 
@@ -693,22 +703,9 @@
          * @returns {number}
          */
         this.loadPlaylistKeys = function() {
-            var keyList = $.inidb.GetKeyList(playListDbId, '');
-
-            defaultPlaylist = [];
-            defaultPlaylistReadOnly = [];
-
-            for (var i = 0; i < keyList.length; i++) {
-                if (!keyList[i].equals("lastkey")) {
-                    defaultPlaylist.push(keyList[i]);
-                }
-            }
-            defaultPlaylist = (randomizePlaylist ? $.arrayShuffle(defaultPlaylist) : defaultPlaylist);
-            for (var i = 0; i < defaultPlaylist.length; i++) {
-                defaultPlaylistReadOnly.push(defaultPlaylist[i]);
-            }
+            playlist().reset(randomizePlaylist);
             this.loaded = true;
-            return keyList.length;
+            return playlist().size();
         };
 
         /**
@@ -728,7 +725,9 @@
                     currentVideo = requests.poll();
                     exception = false;
                 } else {
-                    if (defaultPlaylist.length == 0) {
+                    var videoId = playlist().next();
+
+                    if (videoId === null) {
                         if (this.loadPlaylistKeys() == 0) {
                             return new YoutubeVideo('r9NsG7pMwNk', playlistDJname);
                         }
@@ -736,8 +735,7 @@
                     }
 
                     try {
-                        var playListIndex = defaultPlaylist.shift();
-                        currentVideo = new YoutubeVideo($.inidb.get(playListDbId, playListIndex), playlistDJname);
+                        currentVideo = new YoutubeVideo(videoId, playlistDJname);
                         exception = false
                     } catch (ex) {
                         $.log.error("YoutubeVideo::exception: " + ex);
@@ -905,17 +903,7 @@
          * @returns {boolean}
          */
         this.videoExistsInPlaylist = function(youtubeVideo, targetPlaylistName) {
-            var keyList = $.inidb.GetKeyList(playlistDbPrefix + targetPlaylistName, ''),
-                i;
-
-            for (i in keyList) {
-                if (!keyList[i].equals("lastkey")) {
-                    if ($.inidb.get(playlistDbPrefix + targetPlaylistName, keyList[i]) == youtubeVideo.getVideoId()) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+            return playlist(playlistDbPrefix + targetPlaylistName).contains(youtubeVideo.getVideoId());
         };
 
         /**
@@ -986,62 +974,9 @@
          * @function pushPlayList
          */
         this.pushPlayList = function() {
-            var jsonList = {},
-                playList = [],
-                jsonString,
-                jsonData,
-                youtubeObject,
-                videoId,
-                videoTitle,
-                videoLength,
-                youTubeDbId,
-                i;
-
             if (currentPlaylist) {
-
-                jsonList['playlistname'] = currentPlaylist.getPlaylistname() + '';
-                jsonList['playlist'] = [];
-                playList = currentPlaylist.getReadOnlyPlaylistData();
-
-                for (i = 0; i < playList.length; i++) {
-
-                    youTubeDbId = $.inidb.get(currentPlaylist.getplayListDbId(), playList[i]);
-
-                    if ($.inidb.exists('ytcache', youTubeDbId)) {
-                        jsonString = $.inidb.get('ytcache', youTubeDbId);
-                        jsonData = JSON.parse(jsonString);
-                        videoId = jsonData["id"];
-                        videoTitle = jsonData["title"];
-                        videoLength = jsonData["time"];
-
-                        min = (videoLength / 60 < 10 ? "0" : "") + Math.floor(videoLength / 60);
-                        sec = (videoLength % 60 < 10 ? "0" : "") + Math.floor(videoLength % 60);
-                        videoLength = min + ':' + sec;
-
-                        jsonList['playlist'].push({ "song": videoId, "title": videoTitle, "duration": videoLength });
-                    } else {
-                        try {
-                            youtubeObject = new YoutubeVideo(youTubeDbId, $.botName);
-                            videoId = youtubeObject.getVideoId() + '';
-                            videoTitle = youtubeObject.getVideoTitle() + '';
-                            videoLength = youtubeObject.getVideoLengthMMSS() + '';
-
-                            // Store in the YTCache so that we do not have to hit the API again later.
-                            jsonData = {};
-                            jsonData["id"] = videoId;
-                            jsonData["title"] = videoTitle;
-                            jsonData["time"] = youtubeObject.getVideoLength();
-                            jsonString = JSON.stringify(jsonData);
-                            $.inidb.set('ytcache', videoId, jsonString);
-
-                            jsonList['playlist'].push({ "song": videoId, "title": videoTitle, "duration": videoLength });
-                        } catch (ex) {
-                            $.log.error('YouTube API Failed Lookup: Playlist [' + jsonList['playlistname'] +
-                                '] Index [' + playList[i] + '] YT ID [' + youTubeDbId + '] Error [' + ex + ']');
-                        }
-                    }
-                }
-                client.sendJSONToAll(JSON.stringify(jsonList));
+                currentPlaylist.loadMissingInfo();
+                client.sendLatestJSONToAll('playlist', Packages.tv.phantombot.ytplayer.YTPlaylist.get(currentPlaylist.getplayListDbId()).toJSON(currentPlaylist.getPlaylistname()));
             }
         };
 
@@ -1066,7 +1001,7 @@
                         "requester": youtubeObject.getOwner() + ''
                     });
                 }
-                client.sendJSONToAll(JSON.stringify(jsonList));
+                client.sendLatestJSONToAll('songlist', JSON.stringify(jsonList));
             }
         };
 
@@ -1356,6 +1291,7 @@
                 } else {
                     if (actionArgs[0].equalsIgnoreCase('now')) {
                         $.inidb.RemoveFile('ytcache');
+                        ytMetadata.instance().clear();
                         $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.ytp.clearcache.success'));
                     } else {
                         $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.ytp.clearcache.warning'));
@@ -62,9 +62,12 @@ $(function() {
     // Follow handler settings.
     $('#followHandlerSettings').on('click', function() {
         socket.getDBValues('alerts_follow_get_settings', {
-            tables: ['settings', 'settings', 'settings', 'settings'],
-            keys: ['followToggle', 'followReward', 'followMessage', 'followDelay']
+            tables: ['settings', 'settings', 'settings', 'settings', 'followedSync', 'followedSync', 'followedSync'],
+            keys: ['followToggle', 'followReward', 'followMessage', 'followDelay', 'status', 'fetched', 'total']
         }, true, function(e) {
+            let syncStatus = (e.status === null || e.status === undefined ? 'Never run' :
+                    e.status.charAt(0).toUpperCase() + e.status.slice(1) + ', ' + e.fetched + ' of ' + e.total + ' followers read');
+
             helpers.getModal('follow-alert', 'Follower Alert Settings', 'Save', $('<form/>', {
                 'role': 'form'
             })
@@ -79,7 +82,10 @@ $(function() {
                 'Reward given to users who follow the channel.'))
             // Add the the box for the reward
             .append(helpers.getInputGroup('follow-delay', 'number', 'Follow Delay (Seconds)', '', e.followDelay,
-                'Delay between the follow messages posted in the channel. Minimum is 5 seconds.')),
+                'Delay between the follow messages posted in the channel. Minimum is 5 seconds.'))
+            // Add the progress of the followed table rebuild.
+            .append(helpers.getInputGroup('follow-sync', 'text', 'Followed Table Rebuild', '', syncStatus,
+                'Progress of the fixfollowedtable console command, which rebuilds the list of followers.', true)),
             function() { // Callback once the user clicks save.
                 let followToggle = $('#follow-toggle').find(':selected').text() === 'Yes',
                     followMessage = $('#follow-message'),
@@ -213,6 +213,40 @@ $(function() {
         }
     });
 
+    // Handle export button.
+    $('#points-export-btn').on('click', function() {
+        let file = $('#points-transfer-file'),
+            fileName = (file.val().length > 0 ? file.val() : 'points_export.csv');
+
+        if (!/^[\w.-]+\.(csv|json|ndjson)$/i.test(fileName)) {
+            toastr.error('The file must be in the bot folder and end in .csv, .json or .ndjson.');
+            return;
+        }
+
+        socket.sendCommand('points_export', 'pointsexportpanel ' + fileName, function() {
+            toastr.success('Started exporting points to ' + fileName + '.');
+        });
+    });
+
+    // Handle import button.
+    $('#points-import-btn').on('click', function() {
+        let file = $('#points-transfer-file');
+
+        switch (false) {
+            case helpers.handleInputString(file):
+                break;
+            default:
+                if (!/^[\w.-]+\.(csv|json|ndjson)$/i.test(file.val())) {
+                    toastr.error('The file must be in the bot folder and end in .csv, .json or .ndjson.');
+                    return;
+                }
+
+                socket.sendCommand('points_import', 'pointsimportpanel ' + file.val(), function() {
+                    toastr.success('Started importing points from ' + file.val() + '.');
+                });
+        }
+    });
+
     // Button that reloads the points top 100.
     $('#currency-reload').on('click', function() {
         // Reload all.
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.Console;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the console output from a single background thread, so a slow stdout (a pipe to journald or docker logs)
+ * can not block the threads printing to it.
+ *
+ * Lines are queued in a bounded buffer and written in batches. When the buffer is full new lines are dropped and
+ * counted, and a line with the count is printed once there is room again. A category, such as chat echo, can be
+ * limited to a number of lines per second, the lines over the limit are counted the same way.
+ *
+ * @author gmt2001
+ */
+public final class ConsoleSink {
+
+    public static final String CHAT = "chat";
+    private static final long REPORT_INTERVAL = 10000L;
+    private static final ConsoleSink INSTANCE = new ConsoleSink(System.out, 8192, 512);
+    private final PrintStream stream;
+    private final BlockingQueue<String> queue;
+    private final int batchSize;
+    private final Map<String, RateLimit> limits = new ConcurrentHashMap<>();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long droppedReported = 0;
+    private long lastReport = 0;
+    private long written = 0;
+    private final Thread writerThread;
+
+    public static ConsoleSink instance() {
+        return INSTANCE;
+    }
+
+    private ConsoleSink(PrintStream stream, int capacity, int batchSize) {
+        this.stream = stream;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+
+        this.writerThread = new Thread(this::write, "com.gmt2001.Console.ConsoleSink::write");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000), "com.gmt2001.Console.ConsoleSink::flush"));
+    }
+
+    /**
+     * Queues text to be written as-is.
+     *
+     * @param text
+     */
+    public void print(String text) {
+        if (queue.offer(text)) {
+            queued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Queues a line.
+     *
+     * @param line
+     */
+    public void println(String line) {
+        print(line + System.lineSeparator());
+    }
+
+    /**
+     * Queues a line of a category, unless the category is over its limit for the current second.
+     *
+     * @param category
+     * @param line
+     */
+    public void println(String category, String line) {
+        RateLimit limit = limits.get(category);
+
+        if (limit == null || limit.tryAcquire()) {
+            print(line + System.lineSeparator());
+        }
+    }
+
+    /**
+     * Limits the number of lines of a category written per second.
+     *
+     * @param category
+     * @param linesPerSecond The limit, {@code 0} or less removes it
+     */
+    public void setRateLimit(String category, int linesPerSecond) {
+        if (linesPerSecond > 0) {
+            limits.put(category, new RateLimit(linesPerSecond));
+        } else {
+            limits.remove(category);
+        }
+    }
+
+    /**
+     * Returns the number of lines dropped because the buffer was full.
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of lines of a category that were not written because of its limit.
+     *
+     * @param category
+     * @return
+     */
+    public long getSuppressed(String category) {
+        RateLimit limit = limits.get(category);
+        return limit == null ? 0 : limit.suppressedTotal.get();
+    }
+
+    /**
+     * Waits until everything queued before this call has been written.
+     *
+     * @param timeoutMillis
+     * @return true if the output was written before the timeout
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = queued.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (this) {
+            while (written < target) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void write() {
+        List<String> batch = new ArrayList<>(batchSize);
+        StringBuilder sb = new StringBuilder();
+
+        while (true) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+
+                for (String text : batch) {
+                    sb.append(text);
+                }
+
+                report(sb);
+
+                if (sb.length() > 0) {
+                    stream.print(sb);
+                    stream.flush();
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                // There is nowhere left to report a failure to write to the console.
+            } finally {
+                synchronized (this) {
+                    written += batch.size();
+                    notifyAll();
+                }
+
+                batch.clear();
+                sb.setLength(0);
+            }
+        }
+    }
+
+    private void report(StringBuilder sb) {
+        long now = System.currentTimeMillis();
+
+        if (now - lastReport < REPORT_INTERVAL) {
+            return;
+        }
+
+        int length = sb.length();
+        long d = dropped.get();
+
+        if (d > droppedReported) {
+            sb.append("[").append(logTimestamp.log()).append("] [WARN] ").append(d - droppedReported)
+                    .append(" console lines were dropped because the output could not keep up").append(System.lineSeparator());
+            droppedReported = d;
+        }
+
+        limits.forEach((category, limit) -> {
+            long suppressed = limit.takeSuppressed();
+
+            if (suppressed > 0) {
+                sb.append("[").append(logTimestamp.log()).append("] ").append(suppressed).append(" ").append(category)
+                        .append(" lines were not shown (limit of ").append(limit.linesPerSecond).append(" per second)").append(System.lineSeparator());
+            }
+        });
+
+        if (sb.length() > length) {
+            lastReport = now;
+        }
+    }
+
+    /**
+     * A fixed one second window limit.
+     */
+    private static final class RateLimit {
+
+        private final int linesPerSecond;
+        private final AtomicLong suppressedTotal = new AtomicLong();
+        private long window = 0;
+        private int count = 0;
+        private long suppressed = 0;
+
+        private RateLimit(int linesPerSecond) {
+            this.linesPerSecond = linesPerSecond;
+        }
+
+        private synchronized boolean tryAcquire() {
+            long now = System.currentTimeMillis() / 1000;
+
+            if (now != window) {
+                window = now;
+                count = 0;
+            }
+
+            if (count < linesPerSecond) {
+                count++;
+                return true;
+            }
+
+            suppressed++;
+            suppressedTotal.incrementAndGet();
+            return false;
+        }
+
+        private synchronized long takeSuppressed() {
+            long s = suppressed;
+            suppressed = 0;
+            return s;
+        }
+    }
+}
@@ -31,7 +31,7 @@ public final class debug {
         if (PhantomBot.getEnableDebugging()) {
             Logger.instance().log(Logger.LogType.Debug, "");
             if (!PhantomBot.getEnableDebuggingLogOnly()) {
-                System.out.println();
+                ConsoleSink.instance().println("");
             }
         }
     }
@@ -41,7 +41,7 @@ public final class debug {
             Logger.instance().log(Logger.LogType.Debug, "[" + logTimestamp.log() + "] " + o.toString());
             Logger.instance().log(Logger.LogType.Debug, "");
             if (!PhantomBot.getEnableDebuggingLogOnly()) {
-                System.out.println("[" + logTimestamp.log() + "] [DEBUG] " + o);
+                ConsoleSink.instance().println("[" + logTimestamp.log() + "] [DEBUG] " + o);
             }
         }
     }
@@ -62,7 +62,7 @@ public final class debug {
             Logger.instance().log(Logger.LogType.Debug, "");
 
             if (!PhantomBot.getEnableDebuggingLogOnly()) {
-                System.out.println("[" + logTimestamp.log() + "] [DEBUG] " + stackInfo + o);
+                ConsoleSink.instance().println("[" + logTimestamp.log() + "] [DEBUG] " + stackInfo + o);
             }
         }
     }
@@ -48,7 +48,7 @@ public final class err {
 
     public static void printlnRhino(Object o) {
         // Do not write to a log file as the JS Rhino files already do this. //
-        System.out.println("[" + logTimestamp.log() + "] [ERROR] " + o);
+        ConsoleSink.instance().println("[" + logTimestamp.log() + "] [ERROR] " + o);
     }
 
     public static void println(Object o) {
@@ -16,19 +16,49 @@
  */
 package com.gmt2001.Console;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.util.TimeZone;
 import tv.phantombot.PhantomBot;
 
 public final class logTimestamp {
 
+    private static final String PATTERN = "MM-dd-yyyy @ HH:mm:ss.SSS z";
+    private static volatile Cache cache = null;
+
     private logTimestamp() {
     }
 
     public static String log() {
-        SimpleDateFormat datefmt = new SimpleDateFormat("MM-dd-yyyy @ HH:mm:ss.SSS z");
-        datefmt.setTimeZone(TimeZone.getTimeZone(PhantomBot.getTimeZone()));
-        return datefmt.format(new Date());
+        long now = System.currentTimeMillis();
+        String timeZone = PhantomBot.getTimeZone();
+        Cache c = cache;
+
+        // The formatter is rebuilt only when the time zone changes, and the text only when the millisecond changes.
+        if (c == null || !c.timeZone.equals(timeZone)) {
+            c = new Cache(timeZone, DateTimeFormatter.ofPattern(PATTERN).withZone(TimeZone.getTimeZone(timeZone).toZoneId()), 0L, null);
+        }
+
+        if (c.millis != now || c.text == null) {
+            c = new Cache(c.timeZone, c.formatter, now, c.formatter.format(Instant.ofEpochMilli(now)));
+            cache = c;
+        }
+
+        return c.text;
+    }
+
+    private static final class Cache {
+
+        private final String timeZone;
+        private final DateTimeFormatter formatter;
+        private final long millis;
+        private final String text;
+
+        private Cache(String timeZone, DateTimeFormatter formatter, long millis, String text) {
+            this.timeZone = timeZone;
+            this.formatter = formatter;
+            this.millis = millis;
+            this.text = text;
+        }
     }
 }
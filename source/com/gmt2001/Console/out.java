@@ -33,14 +33,30 @@ public final class out {
             Logger.instance().log(Logger.LogType.Output, "[" + logTimestamp.log() + "] " + o.toString());
         }
 
-        System.out.print(o);
+        ConsoleSink.instance().print(String.valueOf(o));
     }
 
     public static void println() {
-        System.out.println();
+        ConsoleSink.instance().println("");
     }
 
     public static void println(Object o) {
-        System.out.println("[" + logTimestamp.log() + "] " + o);
+        ConsoleSink.instance().println("[" + logTimestamp.log() + "] " + o);
+    }
+
+    /**
+     * Prints a chat line, which is subject to the {@code consolechatlimit} rate limit.
+     *
+     * @param o
+     */
+    public static void printlnChat(Object o) {
+        ConsoleSink.instance().println(ConsoleSink.CHAT, "[" + logTimestamp.log() + "] " + o);
+    }
+
+    /**
+     * Waits for the queued console output to be written.
+     */
+    public static void flush() {
+        ConsoleSink.instance().flush(2000);
     }
 }
@@ -67,6 +67,8 @@ public class ExponentialBackoff {
         this.totalIterations++;
         ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
         service.schedule(command, this.lastIntervalMS, TimeUnit.MILLISECONDS);
+        // Let the thread exit once the callback has run.
+        service.shutdown();
     }
 
     /**
@@ -24,6 +24,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
 import javax.net.ssl.HttpsURLConnection;
@@ -32,7 +33,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
+import tv.phantombot.cache.FollowedTableSync;
 import tv.phantombot.cache.UsernameCache;
+import tv.phantombot.twitch.api.TwitchRateLimiter;
 
 /**
  * Communicates with Twitch Kraken server using the version 5 API
@@ -116,6 +119,7 @@ public class TwitchAPIv5 {
                 c.setDoOutput(true);
             }
 
+            TwitchRateLimiter.instance().acquire();
             c.connect();
 
             if (!post.isEmpty()) {
@@ -125,6 +129,8 @@ public class TwitchAPIv5 {
                 }
             }
 
+            TwitchRateLimiter.instance().update(c.getHeaderField("Ratelimit-Limit"), c.getHeaderField("Ratelimit-Remaining"));
+
             if (c.getResponseCode() == 200) {
                 i = c.getInputStream();
             } else {
@@ -382,6 +388,45 @@ public class TwitchAPIv5 {
         return GetData(request_type.GET, base_url + "/channels/" + getIDFromChannel(channel) + "/follows?limit=" + limit + "&offset=" + offset + "&direction=" + dir, false);
     }
 
+    /**
+     * Gets a page of the users following a channel, newest first, as the raw response, to be read without building a JSONObject
+     *
+     * @param channel
+     * @param limit between 1 and 100
+     * @param offset
+     * @return
+     */
+    public HttpResponse GetChannelFollowsRaw(String channel, int limit, int offset) {
+        limit = Math.max(1, Math.min(limit, 100));
+        offset = Math.max(0, offset);
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept", header_accept);
+
+        if (!clientid.isEmpty()) {
+            headers.put("Client-ID", clientid);
+        }
+
+        if (!oauth.isEmpty()) {
+            headers.put("Authorization", "OAuth " + oauth);
+        }
+
+        TwitchRateLimiter.instance().acquire();
+        return HttpRequest.getData(HttpRequest.RequestType.GET, base_url + "/channels/" + getIDFromChannel(channel) + "/follows?limit=" + limit + "&offset=" + offset + "&direction=desc", "", headers);
+    }
+
+    /**
+     * Gets a page of the followers of a channel, newest first, continuing from the cursor of the previous page
+     *
+     * @param channel
+     * @param limit between 1 and 100
+     * @param cursor the _cursor of the previous page, or an empty string for the first page
+     * @return
+     */
+    public JSONObject GetChannelFollowsCursor(String channel, int limit, String cursor) throws JSONException {
+        limit = Math.max(1, Math.min(limit, 100));
+        return GetData(request_type.GET, base_url + "/channels/" + getIDFromChannel(channel) + "/follows?limit=" + limit + (cursor == null || cursor.isEmpty() ? "" : "&cursor=" + cursor), false);
+    }
+
     /**
      * Gets an object listing the users subscribing to a channel
      *
@@ -497,6 +542,16 @@ public class TwitchAPIv5 {
         return GetData(request_type.GET, "https://tmi.twitch.tv/group/user/" + channel + "/chatters", false);
     }
 
+    /**
+     * Gets a list of users in the channel as the raw response, to be read without building a JSONObject
+     *
+     * @param channel
+     * @return
+     */
+    public HttpResponse GetChatUsersRaw(String channel) {
+        return HttpRequest.getData(HttpRequest.RequestType.GET, "https://tmi.twitch.tv/group/user/" + channel + "/chatters", "", new HashMap<>());
+    }
+
     /**
      * Checks if a user is following a channel
      *
@@ -695,131 +750,15 @@ public class TwitchAPIv5 {
     }
 
     /**
-     * Populates the followed table from a JSONArray. The database auto commit is disabled
-     * as otherwise the large number of writes in a row can cause some delay.  We only
-     * update the followed table if the user has an entry in the time table. This way we
-     * do not potentially enter thousands, or tens of thousands, or even more, entries into
-     * the followed table for folks that do not visit the stream.
-     *
-     * @param   JSONArray   JSON array object containing the followers data
-     * @param   DataStore   Copy of database object for writing
-     * @return  int         How many objects were inserted into the database
-     */
-    private int PopulateFollowedTable(JSONArray followsArray, DataStore dataStore) throws JSONException {
-        int insertCtr = 0;
-        for (int idx = 0; idx < followsArray.length(); idx++) {
-            if (followsArray.getJSONObject(idx).has("user")) {
-                if (followsArray.getJSONObject(idx).getJSONObject("user").has("name")) {
-                    if (dataStore.exists("time", followsArray.getJSONObject(idx).getJSONObject("user").getString("name"))) {
-                        insertCtr++;
-                        dataStore.set("followed_fixtable", followsArray.getJSONObject(idx).getJSONObject("user").getString("name"), "true");
-                    }
-                }
-            }
-        }
-        return insertCtr;
-    }
-
-    /**
-     * Updates the followed table with a complete list of followers. This should only ever
-     * be executed once, when the database does not have complete list of followers.
-     *
-     * @param   String      Name of the channel to lookup data for
-     * @param   DataStore   Copy of database object for reading data from
-     * @param   int         Total number of followers reported from Twitch API
-     */
-    @SuppressWarnings("SleepWhileInLoop")
-    private void FixFollowedTableWorker(String channel, DataStore dataStore, int followerCount) throws JSONException {
-        int insertCtr = 0;
-        JSONObject jsonInput;
-        String baseLink = base_url + "/channels/" + getIDFromChannel(channel) + "/follows";
-        String nextLink = baseLink + "?limit=100";
-
-        com.gmt2001.Console.out.println("FixFollowedTable: Retrieving followers that exist in the time table, this may take some time.");
-
-        /* Perform the lookups. The initial lookup will return the next API endpoint
-         * as a _cursor object. Use this to build the next query. We do this to prepare
-         * for Twitch API v5 which will require this.
-         */
-        do {
-            jsonInput = GetData(request_type.GET, nextLink, false);
-            if (!jsonInput.has("follows")) {
-                return;
-            }
-            insertCtr += PopulateFollowedTable(jsonInput.getJSONArray("follows"), dataStore);
-
-            if (!jsonInput.has("_cursor")) {
-                break;
-            }
-            nextLink = baseLink + "?limit=100&cursor=" + jsonInput.getString("_cursor");
-
-            /* Be kind to Twitch during this process. */
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException ex) {
-                /* Since it might be possible that we have hundreds, even thousands of calls,
-                 * we do not dump even a debug statement here.
-                 */
-            }
-        } while (jsonInput.getJSONArray("follows").length() > 0) ;
-
-        dataStore.RenameFile("followed_fixtable", "followed");
-        com.gmt2001.Console.out.println("FixFollowedTable: Pulled followers into the followed table, loaded " + insertCtr + "/" + followerCount + " records.");
-    }
-
-    /**
-     * Wrapper to perform the followed table updated.  In order to ensure that PhantomBot
-     * does not get stuck trying to perform this work, a thread is spawned to perform the
-     * work.
+     * Rebuilds the followed table with a complete list of followers in the background. The rebuild saves its
+     * progress and resumes where it stopped, even after a restart.
      *
      * @param   channel      Name of the channel to lookup data for
      * @param   dataStore   Copy of database object
-     * @param   force     Force the run even if the number of followers is too high
+     * @param   restart     Discard the saved progress and start over
      */
-    public void FixFollowedTable(String channel, DataStore dataStore, Boolean force) throws JSONException {
-
-        /* Determine number of followers to determine if this should not execute unless forced. */
-        JSONObject jsonInput = GetData(request_type.GET, base_url + "/channels/" + getIDFromChannel(channel) + "/follows?limit=1", false);
-        if (!jsonInput.has("_total")) {
-            com.gmt2001.Console.err.println("Failed to pull follower count for FixFollowedTable");
-            return;
-        }
-        int followerCount = jsonInput.getInt("_total");
-        if (followerCount > 10000 && !force) {
-            com.gmt2001.Console.out.println("Follower count is above 10,000 (" + followerCount + "). Not executing. You may force this.");
-            return;
-        }
-
-        try {
-            FixFollowedTableRunnable fixFollowedTableRunnable = new FixFollowedTableRunnable(channel, dataStore, followerCount);
-            new Thread(fixFollowedTableRunnable, "com.gmt2001.TwitchAPIv5::fixFollowedTable").start();
-        } catch (Exception ex) {
-            com.gmt2001.Console.err.println("Failed to start thread for updating followed table.");
-        }
-    }
-
-    /**
-     * Class for Thread for running the FixFollowedTableWorker job in the background.
-     */
-    private class FixFollowedTableRunnable implements Runnable {
-        private final DataStore dataStore;
-        private final String channel;
-        private final int followerCount;
-
-        public FixFollowedTableRunnable(String channel, DataStore dataStore, int followerCount) {
-            this.channel = channel;
-            this.dataStore = dataStore;
-            this.followerCount = followerCount;
-        }
-
-        @Override
-        public void run() {
-            try {
-                FixFollowedTableWorker(channel, dataStore, followerCount);
-            } catch (JSONException ex) {
-                com.gmt2001.Console.err.logStackTrace(ex);
-            }
-        }
+    public void FixFollowedTable(String channel, DataStore dataStore, Boolean restart) {
+        FollowedTableSync.instance().start(channel, dataStore, restart);
     }
 
     /**
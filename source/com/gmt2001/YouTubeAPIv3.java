@@ -29,10 +29,10 @@ import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.net.ssl.HttpsURLConnection;
-import org.joda.time.Period;
 import org.joda.time.format.ISOPeriodFormat;
 import org.joda.time.format.PeriodFormatter;
 import org.json.JSONArray;
@@ -48,7 +48,10 @@ import tv.phantombot.PhantomBot;
 public class YouTubeAPIv3 {
 
     private static YouTubeAPIv3 instance;
+    public static final int MAX_VIDEOS = 50;
     private String apikey = "";
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong quotaSpent = new AtomicLong();
 
     private enum request_type {
 
@@ -252,97 +255,123 @@ public class YouTubeAPIv3 {
         return new String[] { "", "", "" };
     }
 
+    /**
+     * Returns the length of a video, from the metadata cache
+     *
+     * @param id the video id
+     * @return the hours, minutes and seconds each rounded down from the whole length, {123, 456, 7899} for a live
+     * stream, or {0, 0, 0} if the lookup failed
+     */
     public int[] GetVideoLength(String id) throws JSONException {
         com.gmt2001.Console.debug.println("Query = [" + id + "]");
 
-        JSONObject j = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/videos?id=" + id + "&key=" + apikey + "&part=contentDetails");
-        if (j.getBoolean("_success")) {
-            if (j.getInt("_http") == 200) {
-                updateQuota(3L);
-                JSONArray a = j.getJSONArray("items");
-                if (a.length() > 0) {
-                    JSONObject i = a.getJSONObject(0);
+        YouTubeMetadata.Video video = YouTubeMetadata.instance().get(id);
+
+        if (video == null || !video.isFound()) {
+            com.gmt2001.Console.debug.println("Videos API Fail: " + (video == null ? "Request Failed" : "Length == 0"));
+            return new int[] { 0, 0, 0 };
+        }
 
-                    JSONObject cd = i.getJSONObject("contentDetails");
+        if (video.isLive()) {
+            com.gmt2001.Console.debug.println("Videos API: Live Stream Detected");
+            return new int[] { 123, 456, 7899 };
+        }
 
-                    PeriodFormatter formatter = ISOPeriodFormat.standard();
+        int s = video.getSeconds();
 
-                    Period d = formatter.parsePeriod(cd.getString("duration"));
+        return new int[] { s / 3600, s / 60, s };
+    }
 
-                    if (cd.getString("duration").equalsIgnoreCase("PT0S")) {
-                        com.gmt2001.Console.debug.println("Videos API: Live Stream Detected");
-                        return new int[] { 123, 456, 7899 };
-                    }
+    /**
+     * Returns the license and if a video can be embedded, from the metadata cache
+     *
+     * @param id the video id
+     * @return {1 if the license is Creative Commons, 1 if it can be embedded}
+     */
+    public int[] GetVideoInfo(String id) throws JSONException {
+        YouTubeMetadata.Video video = YouTubeMetadata.instance().get(id);
 
-                    int h, m, s;
+        if (video == null || !video.isFound()) {
+            return new int[] { 0, 0 };
+        }
 
-                    String hours = d.toStandardHours().toString().substring(2);
-                    h = Integer.parseInt(hours.substring(0, hours.indexOf("H")));
+        return new int[] { video.isCreativeCommon() ? 1 : 0, video.isEmbeddable() ? 1 : 0 };
+    }
 
-                    String minutes = d.toStandardMinutes().toString().substring(2);
-                    m = Integer.parseInt(minutes.substring(0, minutes.indexOf("M")));
+    /**
+     * Looks up the title, length and status of up to {@link #MAX_VIDEOS} videos in one request
+     *
+     * @param ids the video ids
+     * @return the items returned by the API, videos which were not found are left out, or null if the request failed
+     */
+    public JSONArray GetVideos(String[] ids) throws JSONException {
+        if (ids.length > MAX_VIDEOS) {
+            throw new IllegalArgumentException("At most " + MAX_VIDEOS + " videos can be looked up at once");
+        }
 
-                    String seconds = d.toStandardSeconds().toString().substring(2);
-                    s = Integer.parseInt(seconds.substring(0, seconds.indexOf("S")));
+        com.gmt2001.Console.debug.println("Query = [" + String.join(",", ids) + "]");
 
-                    com.gmt2001.Console.debug.println("Videos API Success");
+        JSONObject j = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/videos?id=" + URLEncoder.encode(String.join(",", ids), Charset.forName("UTF-8"))
+                + "&key=" + apikey + "&part=snippet,contentDetails,status&maxResults=" + MAX_VIDEOS);
 
-                    return new int[] { h, m, s };
-                } else {
-                    com.gmt2001.Console.debug.println("Videos API Fail: Length == 0");
-                    return new int[] { 0, 0, 0 };
-                }
+        if (j.getBoolean("_success")) {
+            if (j.getInt("_http") == 200) {
+                updateQuota(3L);
+                com.gmt2001.Console.debug.println("Videos API Success");
+                return j.getJSONArray("items");
             } else {
                 com.gmt2001.Console.debug.println("Videos API Fail: HTTP Code " + j.getInt("_http"));
-                return new int[] { 0, 0, 0 };
+                return null;
             }
         }
         com.gmt2001.Console.debug.println("Videos API Fatal Error");
 
-        return new int[] { 0, 0, 0 };
+        return null;
     }
 
-    public int[] GetVideoInfo(String id) throws JSONException {
-        int licenseRetval = 0;
-        int embedRetval = 0;
-
-        JSONObject jsonObject = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/videos?id=" + id + "&key=" + apikey + "&part=status");
+    /**
+     * Converts an ISO 8601 duration, as returned for contentDetails.duration, to seconds
+     *
+     * @param duration
+     * @return
+     */
+    public static int parseDuration(String duration) {
+        PeriodFormatter formatter = ISOPeriodFormat.standard();
 
-        if (jsonObject.getBoolean("_success")) {
-            if (jsonObject.getInt("_http") == 200) {
-                updateQuota(3L);
-                JSONArray items = jsonObject.getJSONArray("items");
-                if (items.length() > 0) {
-                    JSONObject item = items.getJSONObject(0);
-                    JSONObject status = item.getJSONObject("status");
+        return formatter.parsePeriod(duration).toStandardSeconds().getSeconds();
+    }
 
-                    String license = status.getString("license");
-                    boolean embeddable = status.getBoolean("embeddable");
+    /**
+     * Returns the quota units spent today, which resets at midnight Pacific Time
+     *
+     * @return
+     */
+    public long GetQuotaUsed() {
+        return getDBString("quotaDate", "01-01-2000").equals(quotaDate()) ? getDBLong("quotaPoints", 0L) : 0L;
+    }
 
-                    licenseRetval = license.equals("creativeCommon") ? 1 : 0;
-                    embedRetval = embeddable == true ? 1 : 0;
+    /**
+     * Returns the requests which counted against the quota and the units they spent since the bot started
+     *
+     * @return {requests, units}
+     */
+    public long[] GetQuotaSpent() {
+        return new long[] { requests.get(), quotaSpent.get() };
+    }
 
-                    com.gmt2001.Console.debug.println("Videos API Success");
-                } else {
-                    com.gmt2001.Console.debug.println("Videos API Fail: Length == 0");
-                }
-            } else {
-                com.gmt2001.Console.debug.println("Videos API Fail: HTTP Code " + jsonObject.getInt("_http"));
-            }
-        } else {
-            com.gmt2001.Console.debug.println("Videos API Fatal Error");
-        }
-        
-        return new int[] { licenseRetval, embedRetval };
+    private static String quotaDate() {
+        SimpleDateFormat datefmt = new SimpleDateFormat("dd-MM-yyyy");
+        datefmt.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+        return datefmt.format(new Date());
     }
 
-    private void updateQuota(long quota) {
+    private synchronized void updateQuota(long quota) {
+        requests.incrementAndGet();
+        quotaSpent.addAndGet(quota);
+
         long storedQuota = getDBLong("quotaPoints", 0L);
         String storedDate = getDBString("quotaDate", "01-01-2000");
-
-        SimpleDateFormat datefmt = new SimpleDateFormat("dd-MM-yyyy");
-        datefmt.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
-        String currentDate = datefmt.format(new Date());
+        String currentDate = quotaDate();
 
         if (!currentDate.equals(storedDate)) {
             com.gmt2001.Console.debug.println("Date Change Detected: " + storedDate + " -> " + currentDate);
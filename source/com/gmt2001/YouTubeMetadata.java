@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001;
+
+import com.gmt2001.datastore.DataStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import tv.phantombot.PhantomBot;
+
+/**
+ * Caches the title, length and status of YouTube videos, so the youtube player only asks the API once per video.
+ *
+ * Videos are kept in memory and in the ytcache table for {@link #TTL}, live streams and videos YouTube does not know for
+ * {@link #MISSING_TTL}. Those which are missing or expired are looked
+ * up {@link YouTubeAPIv3#MAX_VIDEOS} at a time with one videos.list request, and a video which another thread is
+ * already looking up is waited for instead of being asked for again.
+ *
+ * The ytcache entries keep the id, title and time keys which were written by youtubePlayer.js, older entries without
+ * a fetched time are looked up again once.
+ *
+ * @author phantombot
+ */
+public class YouTubeMetadata {
+    private static final YouTubeMetadata INSTANCE = new YouTubeMetadata();
+    private static final String TABLE = "ytcache";
+    private static final long TTL = TimeUnit.DAYS.toMillis(7);
+    private static final long MISSING_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final int MEMORY_SIZE = 5000;
+    private static final Pattern VIDEO_ID = Pattern.compile("[A-Za-z0-9_-]{11}");
+    private static final Pattern VIDEO_URL = Pattern.compile(".*(?:youtu\\.be/|v/|embed/|[?&]v=)([A-Za-z0-9_-]{11})(?:[?&#].*)?");
+    private final Map<String, Video> memory = new LinkedHashMap<String, Video>(256, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Video> eldest) {
+            return size() > MEMORY_SIZE;
+        }
+    };
+    private final Map<String, CompletableFuture<Video>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong storeHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static YouTubeMetadata instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private YouTubeMetadata() {
+    }
+
+    /**
+     * Method that returns the video id of a video id or link.
+     *
+     * @param query
+     * @return The video id, or null if the query is a search
+     */
+    public static String parseVideoId(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        query = query.trim();
+
+        if (VIDEO_ID.matcher(query).matches()) {
+            return query;
+        }
+
+        Matcher matcher = VIDEO_URL.matcher(query);
+
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Method that returns a video.
+     *
+     * @param id
+     * @return The video, which is not found if YouTube does not know it, or null if the lookup failed
+     */
+    public Video get(String id) {
+        return id == null ? null : getMany(new String[]{id})[0];
+    }
+
+    /**
+     * Method that returns videos, looking up the ones which are not cached with as few requests as possible.
+     *
+     * @param ids
+     * @return The videos, in the order of the ids, with null for the lookups which failed
+     */
+    public Video[] getMany(String[] ids) {
+        long now = System.currentTimeMillis();
+        Map<String, Video> found = new HashMap<>();
+        Set<String> toLoad = new LinkedHashSet<>();
+
+        synchronized (memory) {
+            for (String id : ids) {
+                Video video = id == null ? null : memory.get(id);
+
+                if (video != null && video.isFresh(now)) {
+                    found.put(id, video);
+                    memoryHits.incrementAndGet();
+                } else if (id != null) {
+                    toLoad.add(id);
+                }
+            }
+        }
+
+        if (!toLoad.isEmpty()) {
+            load(toLoad.toArray(new String[0]), now, found);
+        }
+
+        Video[] out = new Video[ids.length];
+
+        for (int i = 0; i < ids.length; i++) {
+            out[i] = ids[i] == null ? null : found.get(ids[i]);
+        }
+
+        return out;
+    }
+
+    /**
+     * Method that forgets the videos kept in memory, after the ytcache table was cleared.
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+    }
+
+    /**
+     * Method that returns the cache and quota usage.
+     *
+     * @return
+     */
+    public String getReport() {
+        int size;
+
+        synchronized (memory) {
+            size = memory.size();
+        }
+
+        long[] spent = YouTubeAPIv3.instance().GetQuotaSpent();
+
+        return "YouTube metadata: " + size + " videos in memory, " + memoryHits.get() + " memory hits, " + storeHits.get()
+                + " ytcache hits, " + fetched.get() + " videos looked up with " + batches.get() + " requests, "
+                + coalesced.get() + " lookups waited for another thread" + System.lineSeparator()
+                + "YouTube quota: " + spent[1] + " units in " + spent[0] + " requests since startup, "
+                + YouTubeAPIv3.instance().GetQuotaUsed() + " units today";
+    }
+
+    private void load(String[] ids, long now, Map<String, Video> found) {
+        DataStore dataStore = PhantomBot.instance().getDataStore();
+        String[] stored = dataStore.GetStrings(TABLE, "", ids);
+        Map<String, CompletableFuture<Video>> waits = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Video>> owned = new LinkedHashMap<>();
+
+        for (int i = 0; i < ids.length; i++) {
+            Video video = Video.fromJSON(ids[i], stored[i]);
+
+            if (video != null && video.isFresh(now)) {
+                remember(video);
+                found.put(ids[i], video);
+                storeHits.incrementAndGet();
+                continue;
+            }
+
+            CompletableFuture<Video> future = new CompletableFuture<>();
+            CompletableFuture<Video> other = pending.putIfAbsent(ids[i], future);
+
+            if (other == null) {
+                owned.put(ids[i], future);
+                waits.put(ids[i], future);
+            } else {
+                coalesced.incrementAndGet();
+                waits.put(ids[i], other);
+            }
+        }
+
+        if (!owned.isEmpty()) {
+            fetch(new ArrayList<>(owned.keySet()), owned, dataStore);
+        }
+
+        waits.forEach((id, future) -> found.put(id, future.join()));
+    }
+
+    private void fetch(List<String> ids, Map<String, CompletableFuture<Video>> owned, DataStore dataStore) {
+        for (int from = 0; from < ids.size(); from += YouTubeAPIv3.MAX_VIDEOS) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + YouTubeAPIv3.MAX_VIDEOS));
+            Map<String, Video> videos = new HashMap<>();
+
+            try {
+                JSONArray items = YouTubeAPIv3.instance().GetVideos(chunk.toArray(new String[0]));
+                batches.incrementAndGet();
+
+                if (items != null) {
+                    long now = System.currentTimeMillis();
+
+                    for (int i = 0; i < items.length(); i++) {
+                        Video video = Video.fromItem(items.getJSONObject(i), now);
+                        videos.put(video.id, video);
+                    }
+
+                    for (String id : chunk) {
+                        videos.putIfAbsent(id, new Video(id, now));
+                    }
+
+                    List<String> keys = new ArrayList<>();
+                    List<String> values = new ArrayList<>();
+
+                    for (Video video : videos.values()) {
+                        remember(video);
+
+                        if (video.found) {
+                            keys.add(video.id);
+                            values.add(video.toJSON());
+                        }
+                    }
+
+                    fetched.addAndGet(chunk.size());
+
+                    if (!keys.isEmpty()) {
+                        dataStore.SetBatchString(TABLE, "", keys.toArray(new String[0]), values.toArray(new String[0]));
+                    }
+                }
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.println("Failed to look up YouTube videos " + Arrays.toString(chunk.toArray()) + ": " + ex.getMessage());
+            } finally {
+                // Failed lookups complete with null and are not cached, so they are tried again next time.
+                for (String id : chunk) {
+                    CompletableFuture<Video> future = owned.get(id);
+                    pending.remove(id, future);
+                    future.complete(videos.get(id));
+                }
+            }
+        }
+    }
+
+    private void remember(Video video) {
+        synchronized (memory) {
+            memory.put(video.id, video);
+        }
+    }
+
+    /**
+     * A YouTube video.
+     */
+    public static final class Video {
+        private final String id;
+        private final String title;
+        private final String channel;
+        private final int seconds;
+        private final boolean live;
+        private final boolean creativeCommon;
+        private final boolean embeddable;
+        private final boolean found;
+        private final long fetched;
+
+        private Video(String id, String title, String channel, int seconds, boolean live, boolean creativeCommon, boolean embeddable, long fetched) {
+            this.id = id;
+            this.title = title;
+            this.channel = channel;
+            this.seconds = seconds;
+            this.live = live;
+            this.creativeCommon = creativeCommon;
+            this.embeddable = embeddable;
+            this.found = true;
+            this.fetched = fetched;
+        }
+
+        /**
+         * A video which YouTube does not know, or which is private.
+         */
+        private Video(String id, long fetched) {
+            this.id = id;
+            this.title = "";
+            this.channel = "";
+            this.seconds = 0;
+            this.live = false;
+            this.creativeCommon = false;
+            this.embeddable = false;
+            this.found = false;
+            this.fetched = fetched;
+        }
+
+        private static Video fromItem(JSONObject item, long now) throws JSONException {
+            JSONObject snippet = item.getJSONObject("snippet");
+            JSONObject contentDetails = item.getJSONObject("contentDetails");
+            JSONObject status = item.getJSONObject("status");
+            String duration = contentDetails.getString("duration");
+            boolean live = duration.equalsIgnoreCase("PT0S") || snippet.optString("liveBroadcastContent", "none").equals("live");
+
+            return new Video(item.getString("id"), snippet.getString("title"), snippet.optString("channelTitle", ""),
+                    live ? 0 : YouTubeAPIv3.parseDuration(duration), live, status.optString("license", "").equals("creativeCommon"),
+                    status.optBoolean("embeddable", false), now);
+        }
+
+        private static Video fromJSON(String id, String json) {
+            if (json == null) {
+                return null;
+            }
+
+            try {
+                JSONObject jso = new JSONObject(json);
+
+                if (!jso.has("fetched")) {
+                    return null;
+                }
+
+                return new Video(id, jso.getString("title"), jso.optString("channel", ""), jso.optInt("time", 0), jso.optBoolean("live", false),
+                        jso.optBoolean("license", false), jso.optBoolean("embeddable", false), jso.getLong("fetched"));
+            } catch (JSONException ex) {
+                com.gmt2001.Console.debug.println("Invalid ytcache entry for " + id + ": " + ex.getMessage());
+                return null;
+            }
+        }
+
+        private String toJSON() throws JSONException {
+            return new JSONObject().put("id", id).put("title", title).put("time", seconds).put("channel", channel).put("live", live)
+                    .put("license", creativeCommon).put("embeddable", embeddable).put("fetched", fetched).toString();
+        }
+
+        private boolean isFresh(long now) {
+            // A live stream becomes a video once it ends, so it is checked again as soon as a missing one.
+            return fetched + (found && !live ? TTL : MISSING_TTL) > now;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public int getSeconds() {
+            return seconds;
+        }
+
+        public boolean isLive() {
+            return live;
+        }
+
+        public boolean isCreativeCommon() {
+            return creativeCommon;
+        }
+
+        public boolean isEmbeddable() {
+            return embeddable;
+        }
+
+        public boolean isFound() {
+            return found;
+        }
+    }
+}
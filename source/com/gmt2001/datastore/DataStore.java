@@ -16,12 +16,23 @@
  */
 package com.gmt2001.datastore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
 /**
  *
  * @author gmt2001
  */
 public abstract class DataStore {
 
+    private final Map<String, List<Runnable>> changeListeners = new ConcurrentHashMap<>();
+
     public static DataStore instance() {
         return null;
     }
@@ -32,6 +43,37 @@ public abstract class DataStore {
     public void SaveAll(boolean force) {
     }
 
+    /**
+     * Registers a listener which is called after a table is written to, removed, or renamed
+     *
+     * Listeners run on the thread that wrote to the table, so they should only mark their cached data as stale
+     *
+     * @param fName the table
+     * @param listener
+     */
+    public void addChangeListener(String fName, Runnable listener) {
+        changeListeners.computeIfAbsent(fName, (k) -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Calls the change listeners of a table
+     *
+     * @param fName the table
+     */
+    protected void changed(String fName) {
+        List<Runnable> listeners = changeListeners.get(fName);
+
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                try {
+                    listener.run();
+                } catch (Exception ex) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                }
+            }
+        }
+    }
+
     public abstract String[] GetFileList();
 
     public abstract String[] GetCategoryList(String fName);
@@ -132,6 +174,78 @@ public abstract class DataStore {
         return new String[]{};
     }
 
+    /**
+     * Streams the rows of a table to the consumer in batches, ordered by section then key
+     *
+     * @param fName the table
+     * @param offset the number of rows to skip
+     * @param batchSize the maximum number of rows in each batch
+     * @param consumer receives each batch, every row is {section, key, value}
+     * @return the number of rows streamed
+     * @throws DataStoreException if the table could not be read to the end, the batches already passed on are only part of it
+     */
+    public long StreamTable(String fName, long offset, int batchSize, Consumer<List<String[]>> consumer) {
+        String[] sections = GetCategoryList(fName);
+        List<String[]> batch = new ArrayList<>(batchSize);
+        long skipped = 0;
+        long count = 0;
+
+        Arrays.sort(sections, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        for (String section : sections) {
+            KeyValue[] rows = GetKeyValueList(fName, section);
+            Arrays.sort(rows, Comparator.comparing(KeyValue::getKey, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+            for (KeyValue row : rows) {
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+
+                batch.add(new String[]{section, row.getKey(), row.getValue()});
+                count++;
+
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+
+        return count;
+    }
+
+    /**
+     * Streams the keys of the default section of a table with their value in a second table, in batches
+     *
+     * @param fName the table
+     * @param fNameJoined the second table
+     * @param batchSize the maximum number of rows in each batch
+     * @param consumer receives each batch, every row is {key, value, joined value}, the joined value is null if the
+     * key is not in the second table
+     * @return the number of rows streamed
+     * @throws DataStoreException if the tables could not be read to the end
+     */
+    public long StreamJoinedTables(String fName, String fNameJoined, int batchSize, Consumer<List<String[]>> consumer) {
+        return StreamTable(fName, 0, batchSize, (batch) -> {
+            List<String[]> rows = new ArrayList<>(batch.size());
+
+            for (String[] row : batch) {
+                if ("".equals(row[0])) {
+                    rows.add(new String[]{row[1], row[2], GetString(fNameJoined, "", row[1])});
+                }
+            }
+
+            if (!rows.isEmpty()) {
+                consumer.accept(rows);
+            }
+        });
+    }
+
     public abstract String GetString(String fName, String section, String key);
 
     public abstract void SetString(String fName, String section, String key, String value);
@@ -156,10 +270,21 @@ public abstract class DataStore {
         }
     }
 
-    public void SetBatchString(String fName, String section, String[] key, String[] value) {
+    /**
+     * Sets many keys of a section at once, in one transaction where the datastore supports it
+     *
+     * @param fName the table
+     * @param section the section
+     * @param key the keys
+     * @param value the values, in the order of the keys
+     * @return false if the rows could not be written, then none of them were
+     */
+    public boolean SetBatchString(String fName, String section, String[] key, String[] value) {
         for (int i = 0; i < key.length; i++) {
             SetString(fName, section, key[i], value[i]);
         }
+
+        return true;
     }
 
     public Object GetObject(String fName, String section, String key) {
@@ -252,6 +377,22 @@ public abstract class DataStore {
 
     public abstract void RemoveKey(String fName, String section, String key);
 
+    /**
+     * Removes many keys of a section, in one transaction where the store supports it
+     *
+     * @param fName the table
+     * @param section the section
+     * @param keys the keys to remove
+     * @return false if the keys could not be removed
+     */
+    public boolean RemoveBatchKey(String fName, String section, String[] keys) {
+        for (String key : keys) {
+            RemoveKey(fName, section, key);
+        }
+
+        return true;
+    }
+
     public abstract void RemoveSection(String fName, String section);
 
     public abstract void AddFile(String fName);
@@ -266,6 +407,45 @@ public abstract class DataStore {
         return GetString(fName, section, key) != null;
     }
 
+    /**
+     * Returns which of the keys exist in a section, in one query where the store supports it
+     *
+     * @param fName the table
+     * @param section the section, or null for any section
+     * @param keys the keys to look for
+     * @return the keys that exist
+     * @throws DataStoreException if the table could not be read, so the caller does not take every key as missing
+     */
+    public String[] GetExistingKeys(String fName, String section, String[] keys) {
+        List<String> out = new ArrayList<>();
+
+        for (String key : keys) {
+            if (HasKey(fName, section, key)) {
+                out.add(key);
+            }
+        }
+
+        return out.toArray(new String[out.size()]);
+    }
+
+    /**
+     * Returns the values of many keys of a section, in one query where the store supports it
+     *
+     * @param fName the table
+     * @param section the section, or null for any section
+     * @param keys the keys to get
+     * @return the values, in the order of the keys, null for the keys that do not exist
+     */
+    public String[] GetStrings(String fName, String section, String[] keys) {
+        String[] out = new String[keys.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = GetString(fName, section, keys[i]);
+        }
+
+        return out;
+    }
+
     public boolean exists(String fName, String key) {
         return HasKey(fName, null, key);
     }
@@ -282,6 +462,31 @@ public abstract class DataStore {
         SetBatchString(fName, "", keys, values);
     }
 
+    public String[] getMany(String fName, String[] keys) {
+        return GetStrings(fName, "", keys);
+    }
+
+    public KeyValue[] getAll(String fName) {
+        return GetKeyValueList(fName, "");
+    }
+
+    public String findKeyByValue(String fName, String value) {
+        String key = GetKeyByValue(fName, "", value);
+        return key == null || key.isEmpty() ? null : key;
+    }
+
+    public void setMany(String fName, String[] keys, String[] values) {
+        SetBatchString(fName, "", keys, values);
+    }
+
+    public void incrMany(String fName, String[] keys, long amount) {
+        // The amount is signed, so a decrease goes through the same batched UPDATE.
+        // Three bound parameters per key when the missing keys are inserted.
+        for (int start = 0; start < keys.length; start += 300) {
+            IncreaseBatchString(fName, "", Arrays.copyOfRange(keys, start, Math.min(keys.length, start + 300)), Long.toString(amount));
+        }
+    }
+
     public void del(String fName, String key) {
         RemoveKey(fName, "", key);
     }
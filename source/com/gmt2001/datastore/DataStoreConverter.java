@@ -17,12 +17,37 @@
 
 package com.gmt2001.datastore;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /*
  * Final class that is used to convert datastores.
  *
  * @author ScaniaTV
  */
 public final class DataStoreConverter {
+	private static final int BATCH_SIZE = 5000;
+	private static final int MAX_PARALLEL_TABLES = 4;
+	private static final long REPORT_INTERVAL = 10;
+	private static final Path PROGRESS_FILE = Paths.get("./config/datastoreconverter.progress");
+	private static final String DONE = "done";
+	private static final Properties progress = new Properties();
 
 	/*
 	 * Class constructor.
@@ -31,34 +56,179 @@ public final class DataStoreConverter {
 
 	}
 
+	/*
+	 * Method that checks if a previous conversion was interrupted and should be resumed.
+	 *
+	 * @return {Boolean}
+	 */
+	public static boolean hasPendingConversion() {
+		return Files.exists(PROGRESS_FILE);
+	}
+
 	/*
 	 * Method that converts a datastore to another one.
 	 *
+	 * Tables are streamed from the source with a single cursor and written to the destination in batched transactions,
+	 * several tables at a time. Progress is saved after every batch so an interrupted conversion resumes where it stopped.
+	 *
 	 * @param  {DataStore} primaryDbInstance - The destination datastore
 	 * @param  {DataStore} secondaryDbInstance - The source datastore
 	 */
 	public static void convertDataStore(DataStore primaryDbInstance, DataStore secondaryDbInstance) {
 		com.gmt2001.Console.out.println("Starting datatore convertion. This could take time...");
 
+		loadProgress();
+
+		if (!progress.isEmpty()) {
+			com.gmt2001.Console.out.println("Resuming previous datastore convertion...");
+		}
+
 		// Convert our old database to our new one.
 		com.gmt2001.Console.out.println("Converting old datastore to the new one...");
 		String[] tables = secondaryDbInstance.GetFileList();
+		AtomicLong rows = new AtomicLong(0);
+		long start = System.currentTimeMillis();
+		boolean success = true;
+
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_PARALLEL_TABLES, tables.length)));
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		reporter.scheduleAtFixedRate(() -> {
+			com.gmt2001.Console.out.println("Converted " + rows.get() + " rows (" + rowsPerSecond(rows.get(), start) + " rows/s)");
+		}, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+
+		List<Future<?>> futures = new ArrayList<>();
 		for (String table : tables) {
-			com.gmt2001.Console.out.println("Converting table: " + table);
-			// Get the list of sections for this table.
-			String[] sections = secondaryDbInstance.GetCategoryList(table);
-			for (String section : sections) {
-				// Get all keys for this table.
-				String[] keys = secondaryDbInstance.GetKeyList(table, section);
-				for (String key : keys) {
-					// Get the value from the old database and set it in the new one.
-					primaryDbInstance.SetString(table, section, key, secondaryDbInstance.GetString(table, section, key));
-				}
+			futures.add(workers.submit(() -> convertTable(primaryDbInstance, secondaryDbInstance, table, rows)));
+		}
+
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (Exception ex) {
+				success = false;
+				com.gmt2001.Console.err.printStackTrace(ex);
 			}
 		}
 
+		workers.shutdown();
+		reporter.shutdownNow();
+
+		if (!success) {
+			com.gmt2001.Console.err.println("Datastore convertion did not complete, it will resume on the next start.");
+			return;
+		}
+
+		try {
+			Files.deleteIfExists(PROGRESS_FILE);
+		} catch (IOException ex) {
+			com.gmt2001.Console.err.printStackTrace(ex);
+		}
+
 		// Close the old database.
 		secondaryDbInstance.dispose();
-		com.gmt2001.Console.out.println("Finished converting datastore.");
+		com.gmt2001.Console.out.println("Finished converting datastore. Converted " + rows.get() + " rows in " + ((System.currentTimeMillis() - start) / 1000)
+				+ " seconds (" + rowsPerSecond(rows.get(), start) + " rows/s).");
+	}
+
+	/*
+	 * Method that converts a single table, starting from the saved offset.
+	 *
+	 * @param  {DataStore} primaryDbInstance - The destination datastore
+	 * @param  {DataStore} secondaryDbInstance - The source datastore
+	 * @param  {String} table
+	 * @param  {AtomicLong} rows - Shared row counter
+	 */
+	private static void convertTable(DataStore primaryDbInstance, DataStore secondaryDbInstance, String table, AtomicLong rows) {
+		String saved = getProgress(table);
+
+		if (DONE.equals(saved)) {
+			return;
+		}
+
+		long offset = saved == null ? 0 : Long.parseLong(saved);
+		AtomicLong done = new AtomicLong(offset);
+
+		com.gmt2001.Console.out.println("Converting table: " + table + (offset > 0 ? " (resuming at row " + offset + ")" : ""));
+		primaryDbInstance.AddFile(table);
+
+		secondaryDbInstance.StreamTable(table, offset, BATCH_SIZE, (batch) -> {
+			// Group the batch by section, in practice nearly every row is in the same section.
+			Map<String, List<String[]>> sections = new LinkedHashMap<>();
+			for (String[] row : batch) {
+				sections.computeIfAbsent(row[0], k -> new ArrayList<>()).add(row);
+			}
+
+			sections.forEach((section, sectionRows) -> {
+				String[] keys = new String[sectionRows.size()];
+				String[] values = new String[sectionRows.size()];
+
+				for (int i = 0; i < keys.length; i++) {
+					keys[i] = sectionRows.get(i)[1];
+					values[i] = sectionRows.get(i)[2];
+				}
+
+				// Stops the table here, the saved offset is still the last batch which was written.
+				if (!primaryDbInstance.SetBatchString(table, section, keys, values)) {
+					throw new DataStoreException("Failed to write " + keys.length + " rows to " + table);
+				}
+			});
+
+			rows.addAndGet(batch.size());
+			setProgress(table, Long.toString(done.addAndGet(batch.size())));
+		});
+
+		// Only reached once every row was read and written, a failure is thrown to convertDataStore before this.
+		setProgress(table, DONE);
+	}
+
+	/*
+	 * Method that calculates the conversion rate.
+	 *
+	 * @param  {long} rows
+	 * @param  {long} start
+	 * @return {long}
+	 */
+	private static long rowsPerSecond(long rows, long start) {
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		return (rows * 1000) / elapsed;
+	}
+
+	/*
+	 * Method that loads the saved progress of an interrupted conversion.
+	 */
+	private static synchronized void loadProgress() {
+		progress.clear();
+
+		if (Files.exists(PROGRESS_FILE)) {
+			try (InputStream in = Files.newInputStream(PROGRESS_FILE)) {
+				progress.load(in);
+			} catch (IOException ex) {
+				com.gmt2001.Console.err.printStackTrace(ex);
+			}
+		}
+	}
+
+	private static synchronized String getProgress(String table) {
+		return progress.getProperty(table);
+	}
+
+	/*
+	 * Method that records the progress of a table and saves it to disk.
+	 *
+	 * @param  {String} table
+	 * @param  {String} value - Number of rows converted, or "done"
+	 */
+	private static synchronized void setProgress(String table, String value) {
+		progress.setProperty(table, value);
+
+		try {
+			Path tmp = PROGRESS_FILE.resolveSibling(PROGRESS_FILE.getFileName() + ".tmp");
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				progress.store(out, "PhantomBot datastore convertion progress");
+			}
+			Files.move(tmp, PROGRESS_FILE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException ex) {
+			com.gmt2001.Console.err.printStackTrace(ex);
+		}
 	}
 }
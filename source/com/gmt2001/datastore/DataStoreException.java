@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+/**
+ * Thrown when a table could not be read to the end, or a batch could not be written, so the work done so far is only part of it
+ *
+ * @author phantombot
+ */
+public class DataStoreException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DataStoreException(String message) {
+        super(message);
+    }
+
+    public DataStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streams tables to and from CSV or NDJSON files without holding them in memory.
+ *
+ * Exports read the database through a cursor and write through a buffered file channel, imports read the file one
+ * record at a time and save it in chunks of {@link #BATCH_SIZE} rows with {@link DataStore#SetBatchString}. The
+ * progress is printed every {@link #PROGRESS_ROWS} rows. Files ending in .json or .ndjson are NDJSON, anything else is
+ * CSV with a header line.
+ *
+ * @author phantombot
+ */
+public final class DataStoreTransfer {
+    public static final int BATCH_SIZE = 1000;
+    public static final int PROGRESS_ROWS = 50000;
+    private static final String[] POINTS_COLUMNS = new String[]{"Username", "Seconds", "Points"};
+    private static final String[] TABLE_COLUMNS = new String[]{"Section", "Key", "Value"};
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor((r) -> {
+        Thread t = new Thread(r, "com.gmt2001.datastore.DataStoreTransfer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The formats of the files.
+     */
+    public enum Format {
+        CSV, NDJSON;
+
+        /**
+         * Method that returns the format of a file from its name.
+         *
+         * @param fileName
+         * @return
+         */
+        public static Format of(String fileName) {
+            String lower = fileName.toLowerCase();
+            return lower.endsWith(".json") || lower.endsWith(".ndjson") ? NDJSON : CSV;
+        }
+    }
+
+    /**
+     * Class constructor.
+     */
+    private DataStoreTransfer() {
+    }
+
+    /**
+     * Method that exports the points and time of every user.
+     *
+     * @param db
+     * @param fileName
+     * @return The number of users exported, or -1 if it failed
+     */
+    public static long exportPointsAndTime(DataStore db, String fileName) {
+        Progress progress = new Progress("Exporting points and time to " + fileName);
+
+        try (RowWriter writer = new RowWriter(fileName, POINTS_COLUMNS)) {
+            db.StreamJoinedTables("points", "time", BATCH_SIZE, (batch) -> {
+                for (String[] row : batch) {
+                    writer.writeUnchecked(row[0], row[2] == null ? "0" : row[2], row[1]);
+                }
+
+                progress.add(batch.size());
+            });
+        } catch (IOException | UncheckedIOException | DataStoreException ex) {
+            return progress.failed(ex);
+        }
+
+        return progress.done();
+    }
+
+    /**
+     * Method that exports every row of a table.
+     *
+     * @param db
+     * @param table
+     * @param fileName
+     * @return The number of rows exported, or -1 if it failed
+     */
+    public static long exportTable(DataStore db, String table, String fileName) {
+        Progress progress = new Progress("Exporting " + table + " to " + fileName);
+
+        try (RowWriter writer = new RowWriter(fileName, TABLE_COLUMNS)) {
+            db.StreamTable(table, 0, BATCH_SIZE, (batch) -> {
+                for (String[] row : batch) {
+                    writer.writeUnchecked(row);
+                }
+
+                progress.add(batch.size());
+            });
+        } catch (IOException | UncheckedIOException | DataStoreException ex) {
+            return progress.failed(ex);
+        }
+
+        return progress.done();
+    }
+
+    /**
+     * Method that imports points and time from a file made by {@link #exportPointsAndTime(DataStore, String)}.
+     *
+     * @param db
+     * @param fileName
+     * @return The number of users imported, or -1 if it failed
+     */
+    public static long importPointsAndTime(DataStore db, String fileName) {
+        Progress progress = new Progress("Importing points and time from " + fileName);
+
+        try (BatchWriter points = new BatchWriter(db, "points", ""); BatchWriter time = new BatchWriter(db, "time", "")) {
+            readRows(fileName, POINTS_COLUMNS, (row) -> {
+                if (row.length < 3 || row[0] == null || row[0].isEmpty()) {
+                    progress.skip();
+                    return;
+                }
+
+                String username = row[0].toLowerCase();
+
+                if (row[1] != null && !row[1].isEmpty()) {
+                    time.add(username, row[1]);
+                }
+
+                points.add(username, row[2] == null ? "0" : row[2]);
+                progress.add(1);
+            });
+        } catch (IOException | UncheckedIOException | DataStoreException ex) {
+            return progress.failed(ex);
+        }
+
+        return progress.done();
+    }
+
+    /**
+     * Method that imports the rows of a table from a file made by {@link #exportTable(DataStore, String, String)}.
+     *
+     * @param db
+     * @param table
+     * @param fileName
+     * @return The number of rows imported, or -1 if it failed
+     */
+    public static long importTable(DataStore db, String table, String fileName) {
+        Progress progress = new Progress("Importing " + table + " from " + fileName);
+        Map<String, BatchWriter> sections = new HashMap<>();
+
+        try {
+            readRows(fileName, TABLE_COLUMNS, (row) -> {
+                if (row.length < 3 || row[1] == null) {
+                    progress.skip();
+                    return;
+                }
+
+                String section = row[0] == null ? "" : row[0];
+                sections.computeIfAbsent(section, (s) -> new BatchWriter(db, table, s)).add(row[1], row[2]);
+                progress.add(1);
+            });
+        } catch (IOException | UncheckedIOException | DataStoreException ex) {
+            return progress.failed(ex);
+        } finally {
+            sections.values().forEach(BatchWriter::close);
+        }
+
+        return progress.done();
+    }
+
+    /**
+     * Method that exports the points and time of every user on the transfer thread, so the caller does not wait for it.
+     * Transfers started this way run one at a time.
+     *
+     * @param db
+     * @param fileName
+     * @return
+     */
+    public static Future<Long> exportPointsAndTimeAsync(DataStore db, String fileName) {
+        return executor.submit(() -> exportPointsAndTime(db, fileName));
+    }
+
+    /**
+     * Method that imports points and time on the transfer thread, so the caller does not wait for it.
+     *
+     * @param db
+     * @param fileName
+     * @return
+     */
+    public static Future<Long> importPointsAndTimeAsync(DataStore db, String fileName) {
+        return executor.submit(() -> importPointsAndTime(db, fileName));
+    }
+
+    /**
+     * Method that reads a file one record at a time. The header line of a CSV file is skipped and the records are
+     * given as they are, NDJSON records are given in the order of the columns.
+     *
+     * @param fileName
+     * @param columns The names of the columns, used to read NDJSON
+     * @param consumer
+     * @throws IOException
+     */
+    public static void readRows(String fileName, String[] columns, Consumer<String[]> consumer) throws IOException {
+        Format format = Format.of(fileName);
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            if (format == Format.NDJSON) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+
+                    try {
+                        JSONObject json = new JSONObject(line);
+                        String[] row = new String[columns.length];
+
+                        for (int i = 0; i < columns.length; i++) {
+                            row[i] = json.isNull(columns[i]) ? null : json.get(columns[i]).toString();
+                        }
+
+                        consumer.accept(row);
+                    } catch (JSONException ex) {
+                        consumer.accept(new String[0]);
+                    }
+                }
+            } else {
+                List<String> fields = new ArrayList<>();
+
+                // Skip the header.
+                readCsvRecord(reader, fields);
+
+                while (readCsvRecord(reader, fields)) {
+                    if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                        continue;
+                    }
+
+                    consumer.accept(fields.toArray(new String[fields.size()]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a CSV record, quoted fields may hold commas, quotes written twice and line breaks.
+     *
+     * @return false at the end of the file
+     */
+    private static boolean readCsvRecord(BufferedReader reader, List<String> fields) throws IOException {
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean read = false;
+        int c;
+
+        fields.clear();
+
+        while ((c = reader.read()) != -1) {
+            read = true;
+
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+
+        if (read) {
+            fields.add(field.toString());
+        }
+
+        return read;
+    }
+
+    /**
+     * Writes rows to a CSV or NDJSON file through a buffered channel.
+     */
+    public static final class RowWriter implements AutoCloseable {
+        private final Writer writer;
+        private final String[] columns;
+        private final Format format;
+
+        /**
+         * Class constructor, the file is replaced and the CSV header is written.
+         *
+         * @param fileName
+         * @param columns
+         * @throws IOException
+         */
+        public RowWriter(String fileName, String[] columns) throws IOException {
+            FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+            this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), 65536);
+            this.columns = columns.clone();
+            this.format = Format.of(fileName);
+
+            if (format == Format.CSV) {
+                write(columns);
+            }
+        }
+
+        /**
+         * Method that writes a row.
+         *
+         * @param values
+         * @throws IOException
+         */
+        public void write(String... values) throws IOException {
+            if (format == Format.NDJSON) {
+                writer.write('{');
+
+                for (int i = 0; i < columns.length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+
+                    writer.write(JSONObject.quote(columns[i]));
+                    writer.write(':');
+                    writer.write(i < values.length && values[i] != null ? JSONObject.quote(values[i]) : "null");
+                }
+
+                writer.write('}');
+            } else {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+
+                    writeCsvField(values[i]);
+                }
+            }
+
+            writer.write('\n');
+        }
+
+        private void writeUnchecked(String... values) {
+            try {
+                write(values);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void writeCsvField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+
+            if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+                writer.write(value);
+            } else {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Collects the rows of one section of a table and saves them {@link #BATCH_SIZE} at a time.
+     */
+    public static final class BatchWriter implements AutoCloseable {
+        private final DataStore db;
+        private final String table;
+        private final String section;
+        private final List<String> keys = new ArrayList<>(BATCH_SIZE);
+        private final List<String> values = new ArrayList<>(BATCH_SIZE);
+
+        /**
+         * Class constructor.
+         *
+         * @param db
+         * @param table
+         * @param section
+         */
+        public BatchWriter(DataStore db, String table, String section) {
+            this.db = db;
+            this.table = table;
+            this.section = section;
+        }
+
+        /**
+         * Method that adds a row, the rows are saved once there are enough of them.
+         *
+         * @param key
+         * @param value
+         */
+        public void add(String key, String value) {
+            keys.add(key);
+            values.add(value);
+
+            if (keys.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Method that saves the rows that were added.
+         */
+        public void flush() {
+            if (!keys.isEmpty()) {
+                if (!db.SetBatchString(table, section, keys.toArray(new String[keys.size()]), values.toArray(new String[values.size()]))) {
+                    throw new DataStoreException("Failed to write " + keys.size() + " rows to " + table);
+                }
+
+                keys.clear();
+                values.clear();
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+
+    /**
+     * Prints the progress of a transfer.
+     */
+    public static final class Progress {
+        private final String name;
+        private final long start = System.currentTimeMillis();
+        private long rows = 0;
+        private long skipped = 0;
+        private long next = PROGRESS_ROWS;
+
+        /**
+         * Class constructor, prints that the transfer started.
+         *
+         * @param name
+         */
+        public Progress(String name) {
+            this.name = name;
+            com.gmt2001.Console.out.println(name + "...");
+        }
+
+        /**
+         * Method that counts rows, the count is printed every {@link #PROGRESS_ROWS} rows.
+         *
+         * @param count
+         */
+        public void add(int count) {
+            rows += count;
+
+            if (rows >= next) {
+                com.gmt2001.Console.out.println(name + ": " + rows + " rows");
+                next = (rows / PROGRESS_ROWS + 1) * PROGRESS_ROWS;
+            }
+        }
+
+        /**
+         * Method that counts an invalid row.
+         */
+        public void skip() {
+            skipped++;
+        }
+
+        /**
+         * Method that prints that the transfer is done.
+         *
+         * @return The number of rows
+         */
+        public long done() {
+            com.gmt2001.Console.out.println(name + " done: " + rows + " rows" + (skipped > 0 ? ", " + skipped + " invalid rows skipped" : "")
+                    + " in " + (System.currentTimeMillis() - start) + "ms");
+            return rows;
+        }
+
+        /**
+         * Method that prints that the transfer failed.
+         *
+         * @param ex
+         * @return -1
+         */
+        public long failed(Exception ex) {
+            com.gmt2001.Console.err.println(name + " failed after " + rows + " rows: " + ex.getMessage());
+            return -1;
+        }
+    }
+}
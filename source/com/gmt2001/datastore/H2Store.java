@@ -23,6 +23,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import org.h2.jdbcx.JdbcConnectionPool;
 
 /**
@@ -145,6 +150,54 @@ public class H2Store extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
+    }
+
+    @Override
+    public boolean RemoveBatchKey(String fName, String section, String[] keys) {
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return true;
+            }
+
+            connection.setAutoCommit(false);
+
+            try {
+                // Keep each statement well under the bound parameter limit.
+                for (int start = 0; start < keys.length; start += 500) {
+                    int end = Math.min(keys.length, start + 500);
+                    String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+
+                    try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + fName + " WHERE section=? AND variable IN (" + placeholders + ");")) {
+                        int i = 1;
+                        statement.setString(i++, section);
+
+                        for (int idx = start; idx < end; idx++) {
+                            statement.setString(i++, keys[idx]);
+                        }
+
+                        statement.execute();
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
+        }
+
+        changed(fName);
+
+        return true;
     }
 
     @Override
@@ -161,6 +214,8 @@ public class H2Store extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -176,6 +231,8 @@ public class H2Store extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -199,6 +256,9 @@ public class H2Store extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fNameSource);
+        changed(fNameDest);
     }
 
     @Override
@@ -682,6 +742,102 @@ public class H2Store extends DataStore {
         return out;
     }
 
+    @Override
+    public String[] GetExistingKeys(String fName, String section, String[] keys) {
+        ArrayList<String> out = new ArrayList<>();
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return new String[0];
+            }
+
+            // Keep each statement well under the bound parameter limit.
+            for (int start = 0; start < keys.length; start += 500) {
+                int end = Math.min(keys.length, start + 500);
+                String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+                int i = 1;
+
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE "
+                        + (section != null ? "section=? AND " : "") + "variable IN (" + placeholders + ");")) {
+                    if (section != null) {
+                        statement.setString(i++, section);
+                    }
+
+                    for (int k = start; k < end; k++) {
+                        statement.setString(i++, keys[k]);
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            out.add(rs.getString("variable"));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataStoreException("Failed to read " + fName, ex);
+        }
+
+        return out.toArray(new String[out.size()]);
+    }
+
+    @Override
+    public String[] GetStrings(String fName, String section, String[] keys) {
+        String[] out = new String[keys.length];
+        Map<String, Integer> positions = new HashMap<>();
+
+        for (int k = 0; k < keys.length; k++) {
+            positions.putIfAbsent(keys[k], k);
+        }
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return out;
+            }
+
+            // Keep each statement well under the bound parameter limit.
+            for (int start = 0; start < keys.length; start += 500) {
+                int end = Math.min(keys.length, start + 500);
+                String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+                int i = 1;
+
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable, value FROM phantombot_" + fName + " WHERE "
+                        + (section != null ? "section=? AND " : "") + "variable IN (" + placeholders + ");")) {
+                    if (section != null) {
+                        statement.setString(i++, section);
+                    }
+
+                    for (int k = start; k < end; k++) {
+                        statement.setString(i++, keys[k]);
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            Integer position = positions.get(rs.getString("variable"));
+
+                            if (position != null && out[position] == null) {
+                                out[position] = rs.getString("value");
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        // Repeated keys get the same value.
+        for (int k = 0; k < keys.length; k++) {
+            out[k] = out[positions.get(keys[k])];
+        }
+
+        return out;
+    }
+
     @Override
     public String GetKeyByValue(String fName, String section, String value) {
         String result = null;
@@ -725,6 +881,51 @@ public class H2Store extends DataStore {
 
     }
 
+    @Override
+    public long StreamJoinedTables(String fName, String fNameJoined, int batchSize, Consumer<List<String[]>> consumer) {
+        long count = 0;
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+            fNameJoined = validateFname(fNameJoined);
+
+            if (!FileExists(connection, fName)) {
+                return count;
+            }
+
+            String sql = FileExists(connection, fNameJoined)
+                    ? "SELECT a.variable, a.value, b.value FROM phantombot_" + fName + " a LEFT JOIN phantombot_" + fNameJoined
+                    + " b ON b.section=a.section AND b.variable=a.variable WHERE a.section='';"
+                    : "SELECT variable, value, NULL FROM phantombot_" + fName + " WHERE section='';";
+
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setFetchSize(batchSize);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    List<String[]> batch = new ArrayList<>(batchSize);
+
+                    while (rs.next()) {
+                        batch.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
+                        count++;
+
+                        if (batch.size() >= batchSize) {
+                            consumer.accept(batch);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+
+                    if (!batch.isEmpty()) {
+                        consumer.accept(batch);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataStoreException("Failed to read " + fName + " after " + count + " rows", ex);
+        }
+
+        return count;
+    }
+
     @Override
     public String GetString(String fName, String section, String key) {
         String result = null;
@@ -768,7 +969,7 @@ public class H2Store extends DataStore {
     }
 
     @Override
-    public void SetBatchString(String fName, String section, String[] keys, String[] values) {
+    public boolean SetBatchString(String fName, String section, String[] keys, String[] values) {
         try (Connection connection = GetConnection()) {
 
             fName = validateFname(fName);
@@ -776,22 +977,33 @@ public class H2Store extends DataStore {
 
             connection.setAutoCommit(false);
 
-            try (PreparedStatement statement = connection.prepareStatement("MERGE INTO phantombot_" + fName + " (value, section, variable) KEY(SECTION, VARIABLE) values(?, ?, ?);")) {
-                for (int idx = 0; idx < keys.length; idx++) {
-                    statement.setString(1, values[idx]);
-                    statement.setString(2, section);
-                    statement.setString(3, keys[idx]);
-                    statement.addBatch();
+            try {
+                try (PreparedStatement statement = connection.prepareStatement("MERGE INTO phantombot_" + fName + " (value, section, variable) KEY(SECTION, VARIABLE) values(?, ?, ?);")) {
+                    for (int idx = 0; idx < keys.length; idx++) {
+                        statement.setString(1, values[idx]);
+                        statement.setString(2, section);
+                        statement.setString(3, keys[idx]);
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
                 }
 
-                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
             }
-
-            connection.commit();
-            connection.setAutoCommit(true);
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
         }
+
+        changed(fName);
+
+        return true;
     }
 
     @Override
@@ -812,6 +1024,8 @@ public class H2Store extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -823,40 +1037,48 @@ public class H2Store extends DataStore {
 
             connection.setAutoCommit(false);
 
-            StringBuilder sb = new StringBuilder(keys.length * 2);
+            try {
+                StringBuilder sb = new StringBuilder(keys.length * 2);
 
-            for (String key : keys) {
-                sb.append("?,");
-            }
+                for (String key : keys) {
+                    sb.append("?,");
+                }
 
-            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS INTEGER) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
-                statement.setInt(1, Integer.parseUnsignedInt(value));
-                statement.setString(2, section);
-                int i = 3;
-                for (String k : keys) {
-                    statement.setString(i++, k);
+                try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS BIGINT) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
+                    statement.setLong(1, Long.parseLong(value));
+                    statement.setString(2, section);
+                    int i = 3;
+                    for (String k : keys) {
+                        statement.setString(i++, k);
+                    }
+                    statement.execute();
                 }
-                statement.execute();
-            }
 
-            try (PreparedStatement statement = connection.prepareStatement("MERGE INTO phantombot_" + fName + " USING DUAL ON section=? AND variable=? WHEN NOT MATCHED THEN INSERT VALUES (?, ?, ?);")) {
-                for (String k : keys) {
-                    statement.setString(1, section);
-                    statement.setString(2, k);
-                    statement.setString(3, section);
-                    statement.setString(4, k);
-                    statement.setString(5, value);
-                    statement.addBatch();
+                try (PreparedStatement statement = connection.prepareStatement("MERGE INTO phantombot_" + fName + " USING DUAL ON section=? AND variable=? WHEN NOT MATCHED THEN INSERT VALUES (?, ?, ?);")) {
+                    for (String k : keys) {
+                        statement.setString(1, section);
+                        statement.setString(2, k);
+                        statement.setString(3, section);
+                        statement.setString(4, k);
+                        statement.setString(5, value);
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
                 }
 
-                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
             }
-
-            connection.commit();
-            connection.setAutoCommit(true);
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
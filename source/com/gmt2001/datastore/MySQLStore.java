@@ -26,6 +26,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  *
@@ -158,6 +163,54 @@ public class MySQLStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
+    }
+
+    @Override
+    public boolean RemoveBatchKey(String fName, String section, String[] keys) {
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return true;
+            }
+
+            connection.setAutoCommit(false);
+
+            try {
+                // Keep each statement well under the bound parameter limit.
+                for (int start = 0; start < keys.length; start += 500) {
+                    int end = Math.min(keys.length, start + 500);
+                    String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+
+                    try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + fName + " WHERE section=? AND variable IN (" + placeholders + ");")) {
+                        int i = 1;
+                        statement.setString(i++, section);
+
+                        for (int idx = start; idx < end; idx++) {
+                            statement.setString(i++, keys[idx]);
+                        }
+
+                        statement.execute();
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
+        }
+
+        changed(fName);
+
+        return true;
     }
 
     @Override
@@ -174,6 +227,8 @@ public class MySQLStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -189,6 +244,8 @@ public class MySQLStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -204,14 +261,20 @@ public class MySQLStore extends DataStore {
             try (Statement statement = connection.createStatement()) {
 
                 if (FileExists(connection, fNameDest)) {
-                    statement.execute("DROP TABLE phantombot_" + fNameDest + ";");
+                    // RENAME TABLE swaps both tables at once, so readers never see the destination missing.
+                    statement.execute("DROP TABLE IF EXISTS phantombot_" + fNameDest + "_swap;");
+                    statement.execute("RENAME TABLE phantombot_" + fNameDest + " TO phantombot_" + fNameDest + "_swap, phantombot_" + fNameSource + " TO phantombot_" + fNameDest + ";");
+                    statement.execute("DROP TABLE phantombot_" + fNameDest + "_swap;");
+                } else {
+                    statement.execute("ALTER TABLE phantombot_" + fNameSource + " RENAME TO phantombot_" + fNameDest + ";");
                 }
-
-                statement.execute("ALTER TABLE phantombot_" + fNameSource + " RENAME TO phantombot_" + fNameDest + ";");
             }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fNameSource);
+        changed(fNameDest);
     }
 
     @Override
@@ -695,6 +758,102 @@ public class MySQLStore extends DataStore {
         return out;
     }
 
+    @Override
+    public String[] GetExistingKeys(String fName, String section, String[] keys) {
+        ArrayList<String> out = new ArrayList<>();
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return new String[0];
+            }
+
+            // Keep each statement well under the bound parameter limit.
+            for (int start = 0; start < keys.length; start += 500) {
+                int end = Math.min(keys.length, start + 500);
+                String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+                int i = 1;
+
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE "
+                        + (section != null ? "section=? AND " : "") + "variable IN (" + placeholders + ");")) {
+                    if (section != null) {
+                        statement.setString(i++, section);
+                    }
+
+                    for (int k = start; k < end; k++) {
+                        statement.setString(i++, keys[k]);
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            out.add(rs.getString("variable"));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataStoreException("Failed to read " + fName, ex);
+        }
+
+        return out.toArray(new String[out.size()]);
+    }
+
+    @Override
+    public String[] GetStrings(String fName, String section, String[] keys) {
+        String[] out = new String[keys.length];
+        Map<String, Integer> positions = new HashMap<>();
+
+        for (int k = 0; k < keys.length; k++) {
+            positions.putIfAbsent(keys[k], k);
+        }
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return out;
+            }
+
+            // Keep each statement well under the bound parameter limit.
+            for (int start = 0; start < keys.length; start += 500) {
+                int end = Math.min(keys.length, start + 500);
+                String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+                int i = 1;
+
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable, value FROM phantombot_" + fName + " WHERE "
+                        + (section != null ? "section=? AND " : "") + "variable IN (" + placeholders + ");")) {
+                    if (section != null) {
+                        statement.setString(i++, section);
+                    }
+
+                    for (int k = start; k < end; k++) {
+                        statement.setString(i++, keys[k]);
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            Integer position = positions.get(rs.getString("variable"));
+
+                            if (position != null && out[position] == null) {
+                                out[position] = rs.getString("value");
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        // Repeated keys get the same value.
+        for (int k = 0; k < keys.length; k++) {
+            out[k] = out[positions.get(keys[k])];
+        }
+
+        return out;
+    }
+
     @Override
     public String GetKeyByValue(String fName, String section, String value) {
         String result = null;
@@ -738,6 +897,52 @@ public class MySQLStore extends DataStore {
 
     }
 
+    @Override
+    public long StreamJoinedTables(String fName, String fNameJoined, int batchSize, Consumer<List<String[]>> consumer) {
+        long count = 0;
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+            fNameJoined = validateFname(fNameJoined);
+
+            if (!FileExists(connection, fName)) {
+                return count;
+            }
+
+            String sql = FileExists(connection, fNameJoined)
+                    ? "SELECT a.variable, a.value, b.value FROM phantombot_" + fName + " a LEFT JOIN phantombot_" + fNameJoined
+                    + " b ON b.section=a.section AND b.variable=a.variable WHERE a.section='';"
+                    : "SELECT variable, value, NULL FROM phantombot_" + fName + " WHERE section='';";
+
+            try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Streams the rows instead of reading the whole result into memory.
+                statement.setFetchSize(Integer.MIN_VALUE);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    List<String[]> batch = new ArrayList<>(batchSize);
+
+                    while (rs.next()) {
+                        batch.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
+                        count++;
+
+                        if (batch.size() >= batchSize) {
+                            consumer.accept(batch);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+
+                    if (!batch.isEmpty()) {
+                        consumer.accept(batch);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataStoreException("Failed to read " + fName + " after " + count + " rows", ex);
+        }
+
+        return count;
+    }
+
     @Override
     public String GetString(String fName, String section, String key) {
         String result = null;
@@ -781,7 +986,7 @@ public class MySQLStore extends DataStore {
     }
 
     @Override
-    public void SetBatchString(String fName, String section, String[] keys, String[] values) {
+    public boolean SetBatchString(String fName, String section, String[] keys, String[] values) {
         try (Connection connection = GetConnection()) {
 
             fName = validateFname(fName);
@@ -789,22 +994,33 @@ public class MySQLStore extends DataStore {
 
             connection.setAutoCommit(false);
 
-            try (PreparedStatement statement = connection.prepareStatement("REPLACE INTO phantombot_" + fName + " (value, section, variable) values(?, ?, ?);")) {
-                for (int idx = 0; idx < keys.length; idx++) {
-                    statement.setString(1, values[idx]);
-                    statement.setString(2, section);
-                    statement.setString(3, keys[idx]);
-                    statement.addBatch();
+            try {
+                try (PreparedStatement statement = connection.prepareStatement("REPLACE INTO phantombot_" + fName + " (value, section, variable) values(?, ?, ?);")) {
+                    for (int idx = 0; idx < keys.length; idx++) {
+                        statement.setString(1, values[idx]);
+                        statement.setString(2, section);
+                        statement.setString(3, keys[idx]);
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
                 }
 
-                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
             }
-
-            connection.commit();
-            connection.setAutoCommit(true);
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
         }
+
+        changed(fName);
+
+        return true;
     }
 
     @Override
@@ -825,6 +1041,8 @@ public class MySQLStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -836,42 +1054,50 @@ public class MySQLStore extends DataStore {
 
             connection.setAutoCommit(false);
 
-            StringBuilder sb = new StringBuilder(keys.length * 2);
+            try {
+                StringBuilder sb = new StringBuilder(keys.length * 2);
 
-            for (String key : keys) {
-                sb.append("?,");
-            }
+                for (String key : keys) {
+                    sb.append("?,");
+                }
 
-            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS UNSIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
-                statement.setInt(1, Integer.parseUnsignedInt(value));
-                statement.setString(2, section);
-                int i = 3;
-                for (String k : keys) {
-                    statement.setString(i++, k);
+                try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS SIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
+                    statement.setLong(1, Long.parseLong(value));
+                    statement.setString(2, section);
+                    int i = 3;
+                    for (String k : keys) {
+                        statement.setString(i++, k);
+                    }
+                    statement.execute();
                 }
-                statement.execute();
-            }
 
-            sb = new StringBuilder(keys.length * 10);
+                sb = new StringBuilder(keys.length * 10);
 
-            for (String key : keys) {
-                sb.append("(?, ?, ?),");
-            }
+                for (String key : keys) {
+                    sb.append("(?, ?, ?),");
+                }
 
-            try (PreparedStatement statement = connection.prepareStatement("INSERT IGNORE INTO phantombot_" + fName + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
-                int i = 1;
-                for (String k : keys) {
-                    statement.setString(i++, section);
-                    statement.setString(i++, k);
-                    statement.setString(i++, value);
+                try (PreparedStatement statement = connection.prepareStatement("INSERT IGNORE INTO phantombot_" + fName + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
+                    int i = 1;
+                    for (String k : keys) {
+                        statement.setString(i++, section);
+                        statement.setString(i++, k);
+                        statement.setString(i++, value);
+                    }
+                    statement.execute();
                 }
-                statement.execute();
-            }
 
-            connection.commit();
-            connection.setAutoCommit(true);
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 }
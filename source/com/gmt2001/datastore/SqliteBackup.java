@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Creates an online backup of a SQLite database without using the connection pool.
+ *
+ * The snapshot is taken with VACUUM INTO on a dedicated connection, which only holds a read transaction so
+ * writers on the pool keep going while WAL journaling is enabled. The copy is verified with PRAGMA quick_check,
+ * then gzipped in a streaming fashion in small chunks with a yield between each chunk.
+ *
+ * @author gmt2001
+ */
+public class SqliteBackup {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_PER_YIELD = 16;
+    private static final long YIELD_MILLIS = 5;
+    private static final int PROGRESS_STEP = 25;
+    private final String dbName;
+    private final Path destination;
+
+    /**
+     * @param dbName Path to the source database file
+     * @param destination Path of the compressed backup, ".gz" is appended if missing
+     */
+    public SqliteBackup(String dbName, Path destination) {
+        this.dbName = dbName.replaceAll("\\\\", "/");
+        this.destination = destination.getFileName().toString().endsWith(".gz") ? destination
+                : destination.resolveSibling(destination.getFileName().toString() + ".gz");
+    }
+
+    /**
+     * Runs the backup on the calling thread.
+     *
+     * @return true on success
+     */
+    public boolean run() {
+        long start = System.currentTimeMillis();
+        Path snapshot = destination.resolveSibling(destination.getFileName().toString() + ".tmp");
+        Path partial = destination.resolveSibling(destination.getFileName().toString() + ".part");
+
+        try {
+            Files.createDirectories(destination.toAbsolutePath().getParent());
+            Files.deleteIfExists(snapshot);
+
+            com.gmt2001.Console.debug.println("Backing up SQLite3 DB to " + destination + " [snapshot]");
+            snapshot(snapshot);
+            com.gmt2001.Console.debug.println("Backing up SQLite3 DB to " + destination + " [snapshot done in " + (System.currentTimeMillis() - start) + "ms]");
+
+            if (!verify(snapshot)) {
+                com.gmt2001.Console.err.println("SQLite3 DB backup failed the integrity check, discarding " + destination);
+                return false;
+            }
+
+            compress(snapshot, partial);
+            Files.move(partial, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            com.gmt2001.Console.debug.println("Backed up SQLite3 DB to " + destination + " in " + (System.currentTimeMillis() - start) + "ms ("
+                    + Files.size(destination) + " bytes)");
+            return true;
+        } catch (IOException | SQLException ex) {
+            com.gmt2001.Console.err.println("Failed to back up SQLite3 DB to " + destination + ": " + ex.getMessage());
+            com.gmt2001.Console.err.logStackTrace(ex);
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(snapshot);
+                Files.deleteIfExists(partial);
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.logStackTrace(ex);
+            }
+        }
+    }
+
+    private Connection connect(String file) throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + file);
+    }
+
+    private void snapshot(Path snapshot) throws SQLException {
+        try (Connection connection = connect(dbName)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout = 10000;");
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement("VACUUM INTO ?;")) {
+                statement.setString(1, snapshot.toAbsolutePath().toString());
+                statement.execute();
+            }
+        }
+    }
+
+    private boolean verify(Path snapshot) throws SQLException {
+        try (Connection connection = connect(snapshot.toAbsolutePath().toString().replaceAll("\\\\", "/"))) {
+            try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("PRAGMA quick_check;")) {
+                if (rs.next() && rs.getString(1).equalsIgnoreCase("ok")) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void compress(Path snapshot, Path partial) throws IOException, InterruptedException {
+        long total = Files.size(snapshot);
+        long done = 0;
+        int nextProgress = PROGRESS_STEP;
+        int chunks = 0;
+        byte[] buffer = new byte[CHUNK_SIZE];
+
+        try (InputStream in = Files.newInputStream(snapshot); OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), CHUNK_SIZE)) {
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                done += read;
+
+                if (total > 0 && (done * 100 / total) >= nextProgress) {
+                    com.gmt2001.Console.debug.println("Backing up SQLite3 DB to " + destination + " [compressing " + (done * 100 / total) + "%]");
+                    nextProgress += PROGRESS_STEP;
+                }
+
+                if (++chunks % CHUNKS_PER_YIELD == 0) {
+                    Thread.sleep(YIELD_MILLIS);
+                }
+            }
+        }
+    }
+}
@@ -29,8 +29,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import org.apache.commons.io.FileUtils;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteErrorCode;
@@ -44,8 +47,11 @@ import org.sqlite.javax.SQLiteConnectionPoolDataSource;
 public class SqliteStore extends DataStore {
 
     private static final int MAX_CONNECTIONS = 30;
+    /* Rows per statement, 3 parameters each stays under SQLite's default limit of 999 */
+    private static final int BATCH_ROWS = 300;
     private static SqliteStore instance;
     private final MiniConnectionPoolManager poolMgr;
+    private final String dbName;
 
     public static SqliteStore instance() {
         return instance("");
@@ -69,6 +75,7 @@ public class SqliteStore extends DataStore {
         }
 
         Object o[] = LoadConfigReal(configStr);
+        dbName = (String) o[0];
 
         SQLiteConfig config = new SQLiteConfig();
         config.setCacheSize((int) o[1]);
@@ -208,6 +215,54 @@ public class SqliteStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
+    }
+
+    @Override
+    public boolean RemoveBatchKey(String fName, String section, String[] keys) {
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return true;
+            }
+
+            connection.setAutoCommit(false);
+
+            try {
+                // Keep each statement well under the bound parameter limit.
+                for (int start = 0; start < keys.length; start += 500) {
+                    int end = Math.min(keys.length, start + 500);
+                    String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+
+                    try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + fName + " WHERE section=? AND variable IN (" + placeholders + ");")) {
+                        int i = 1;
+                        statement.setString(i++, section);
+
+                        for (int idx = start; idx < end; idx++) {
+                            statement.setString(i++, keys[idx]);
+                        }
+
+                        statement.execute();
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
+        }
+
+        changed(fName);
+
+        return true;
     }
 
     @Override
@@ -224,6 +279,8 @@ public class SqliteStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -239,6 +296,8 @@ public class SqliteStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -251,17 +310,32 @@ public class SqliteStore extends DataStore {
                 return;
             }
 
-            try (Statement statement = connection.createStatement()) {
+            // Swap the tables in one transaction so readers never see the destination missing.
+            connection.setAutoCommit(false);
+
+            try {
+                try (Statement statement = connection.createStatement()) {
+
+                    if (FileExists(connection, fNameDest)) {
+                        statement.execute("DROP TABLE phantombot_" + fNameDest + ";");
+                    }
 
-                if (FileExists(connection, fNameDest)) {
-                    statement.execute("DROP TABLE phantombot_" + fNameDest + ";");
+                    statement.execute("ALTER TABLE phantombot_" + fNameSource + " RENAME TO phantombot_" + fNameDest + ";");
                 }
 
-                statement.execute("ALTER TABLE phantombot_" + fNameSource + " RENAME TO phantombot_" + fNameDest + ";");
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fNameSource);
+        changed(fNameDest);
     }
 
     @Override
@@ -434,6 +508,89 @@ public class SqliteStore extends DataStore {
         return out;
     }
 
+    @Override
+    public long StreamTable(String fName, long offset, int batchSize, Consumer<List<String[]>> consumer) {
+        long count = 0;
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (FileExists(connection, fName)) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT section, variable, value FROM phantombot_" + fName + " ORDER BY section, variable LIMIT -1 OFFSET ?;")) {
+                    statement.setLong(1, offset);
+                    statement.setFetchSize(batchSize);
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        List<String[]> batch = new ArrayList<>(batchSize);
+
+                        while (rs.next()) {
+                            batch.add(new String[]{rs.getString("section"), rs.getString("variable"), rs.getString("value")});
+                            count++;
+
+                            if (batch.size() >= batchSize) {
+                                consumer.accept(batch);
+                                batch = new ArrayList<>(batchSize);
+                            }
+                        }
+
+                        if (!batch.isEmpty()) {
+                            consumer.accept(batch);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataStoreException("Failed to read " + fName + " after " + count + " rows", ex);
+        }
+
+        return count;
+    }
+
+    @Override
+    public long StreamJoinedTables(String fName, String fNameJoined, int batchSize, Consumer<List<String[]>> consumer) {
+        long count = 0;
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+            fNameJoined = validateFname(fNameJoined);
+
+            if (!FileExists(connection, fName)) {
+                return count;
+            }
+
+            String sql = FileExists(connection, fNameJoined)
+                    ? "SELECT a.variable, a.value, b.value FROM phantombot_" + fName + " a LEFT JOIN phantombot_" + fNameJoined
+                    + " b ON b.section=a.section AND b.variable=a.variable WHERE a.section='';"
+                    : "SELECT variable, value, NULL FROM phantombot_" + fName + " WHERE section='';";
+
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setFetchSize(batchSize);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    List<String[]> batch = new ArrayList<>(batchSize);
+
+                    while (rs.next()) {
+                        batch.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
+                        count++;
+
+                        if (batch.size() >= batchSize) {
+                            consumer.accept(batch);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+
+                    if (!batch.isEmpty()) {
+                        consumer.accept(batch);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataStoreException("Failed to read " + fName + " after " + count + " rows", ex);
+        }
+
+        return count;
+    }
+
     @Override
     public String[] GetKeysByOrder(String fName, String section, String order, String limit, String offset) {
         return GetKeysByOrderInternal(fName, section, order, limit, offset, false);
@@ -750,6 +907,102 @@ public class SqliteStore extends DataStore {
         return out;
     }
 
+    @Override
+    public String[] GetExistingKeys(String fName, String section, String[] keys) {
+        ArrayList<String> out = new ArrayList<>();
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return new String[0];
+            }
+
+            // Keep each statement well under the bound parameter limit.
+            for (int start = 0; start < keys.length; start += 500) {
+                int end = Math.min(keys.length, start + 500);
+                String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+                int i = 1;
+
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE "
+                        + (section != null ? "section=? AND " : "") + "variable IN (" + placeholders + ");")) {
+                    if (section != null) {
+                        statement.setString(i++, section);
+                    }
+
+                    for (int k = start; k < end; k++) {
+                        statement.setString(i++, keys[k]);
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            out.add(rs.getString("variable"));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataStoreException("Failed to read " + fName, ex);
+        }
+
+        return out.toArray(new String[out.size()]);
+    }
+
+    @Override
+    public String[] GetStrings(String fName, String section, String[] keys) {
+        String[] out = new String[keys.length];
+        Map<String, Integer> positions = new HashMap<>();
+
+        for (int k = 0; k < keys.length; k++) {
+            positions.putIfAbsent(keys[k], k);
+        }
+
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (!FileExists(connection, fName)) {
+                return out;
+            }
+
+            // Keep each statement well under the bound parameter limit.
+            for (int start = 0; start < keys.length; start += 500) {
+                int end = Math.min(keys.length, start + 500);
+                String placeholders = String.join(",", Collections.nCopies(end - start, "?"));
+                int i = 1;
+
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable, value FROM phantombot_" + fName + " WHERE "
+                        + (section != null ? "section=? AND " : "") + "variable IN (" + placeholders + ");")) {
+                    if (section != null) {
+                        statement.setString(i++, section);
+                    }
+
+                    for (int k = start; k < end; k++) {
+                        statement.setString(i++, keys[k]);
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            Integer position = positions.get(rs.getString("variable"));
+
+                            if (position != null && out[position] == null) {
+                                out[position] = rs.getString("value");
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        // Repeated keys get the same value.
+        for (int k = 0; k < keys.length; k++) {
+            out[k] = out[positions.get(keys[k])];
+        }
+
+        return out;
+    }
+
     @Override
     public String GetKeyByValue(String fName, String section, String value) {
         String result = null;
@@ -836,57 +1089,48 @@ public class SqliteStore extends DataStore {
     }
 
     @Override
-    public void SetBatchString(String fName, String section, String[] keys, String[] values) {
+    public boolean SetBatchString(String fName, String section, String[] keys, String[] values) {
         try (Connection connection = GetConnection()) {
 
             fName = validateFname(fName);
             AddFile(connection, fName);
 
-            /* Walk the list of keys to figure out which ones can pass INSERT and which ones need UPDATE */
-            Map<String, String> insertMap = new HashMap<>();
-            Map<String, String> updateMap = new HashMap<>();
-
-            for (int idx = 0; idx < keys.length; idx++) {
-                if (HasKey(fName, section, keys[idx])) {
-                    updateMap.put(keys[idx], values[idx]);
-                } else {
-                    insertMap.put(keys[idx], values[idx]);
-                }
-            }
-
             connection.setAutoCommit(false);
 
-            if (insertMap.size() > 0) {
-                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO phantombot_" + fName + " (value, section, variable) values(?, ?, ?);")) {
-                    for (String key : insertMap.keySet()) {
-                        statement.setString(1, insertMap.get(key));
-                        statement.setString(2, section);
-                        statement.setString(3, key);
-                        statement.addBatch();
-                    }
+            try {
+                /* The unique index on (section, variable) lets each row be inserted or replaced without looking it up first */
+                for (int start = 0; start < keys.length; start += BATCH_ROWS) {
+                    int end = Math.min(keys.length, start + BATCH_ROWS);
+                    String placeholders = String.join(",", Collections.nCopies(end - start, "(?, ?, ?)"));
 
-                    statement.executeBatch();
-                }
-            }
+                    try (PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO phantombot_" + fName + " (section, variable, value) VALUES " + placeholders + ";")) {
+                        int i = 1;
 
-            if (updateMap.size() > 0) {
-                try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value=? WHERE section=? and variable=?;")) {
-                    for (String key : updateMap.keySet()) {
-                        statement.setString(1, updateMap.get(key));
-                        statement.setString(2, section);
-                        statement.setString(3, key);
-                        statement.addBatch();
-                    }
+                        for (int idx = start; idx < end; idx++) {
+                            statement.setString(i++, section);
+                            statement.setString(i++, keys[idx]);
+                            statement.setString(i++, values[idx]);
+                        }
 
-                    statement.executeBatch();
+                        statement.execute();
+                    }
                 }
-            }
 
-            connection.commit();
-            connection.setAutoCommit(true);
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
         }
+
+        changed(fName);
+
+        return true;
     }
 
     @Override
@@ -916,6 +1160,8 @@ public class SqliteStore extends DataStore {
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -927,43 +1173,51 @@ public class SqliteStore extends DataStore {
 
             connection.setAutoCommit(false);
 
-            StringBuilder sb = new StringBuilder(keys.length * 2);
+            try {
+                StringBuilder sb = new StringBuilder(keys.length * 2);
 
-            for (String key : keys) {
-                sb.append("?,");
-            }
+                for (String key : keys) {
+                    sb.append("?,");
+                }
 
-            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS UNSIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
-                statement.setInt(1, Integer.parseUnsignedInt(value));
-                statement.setString(2, section);
-                int i = 3;
-                for (String k : keys) {
-                    statement.setString(i++, k);
+                try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS UNSIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
+                    statement.setLong(1, Long.parseLong(value));
+                    statement.setString(2, section);
+                    int i = 3;
+                    for (String k : keys) {
+                        statement.setString(i++, k);
+                    }
+                    statement.execute();
                 }
-                statement.execute();
-            }
 
-            sb = new StringBuilder(keys.length * 10);
+                sb = new StringBuilder(keys.length * 10);
 
-            for (String key : keys) {
-                sb.append("(?, ?, ?),");
-            }
+                for (String key : keys) {
+                    sb.append("(?, ?, ?),");
+                }
 
-            try (PreparedStatement statement = connection.prepareStatement("INSERT OR IGNORE INTO phantombot_" + fName + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
-                int i = 1;
-                for (String k : keys) {
-                    statement.setString(i++, section);
-                    statement.setString(i++, k);
-                    statement.setString(i++, value);
+                try (PreparedStatement statement = connection.prepareStatement("INSERT OR IGNORE INTO phantombot_" + fName + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
+                    int i = 1;
+                    for (String k : keys) {
+                        statement.setString(i++, section);
+                        statement.setString(i++, k);
+                        statement.setString(i++, value);
+                    }
+                    statement.execute();
                 }
-                statement.execute();
-            }
 
-            connection.commit();
-            connection.setAutoCommit(true);
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        changed(fName);
     }
 
     @Override
@@ -1012,18 +1266,7 @@ public class SqliteStore extends DataStore {
 
     @Override
     public void backupDB(String filename) {
-        try (Connection connection = GetConnection()) {
-            if (!new File("./dbbackup").exists()) {
-                new File("./dbbackup").mkdirs();
-            }
-
-            try (Statement statement = connection.createStatement()) {
-                statement.execute("backup to ./dbbackup/" + filename);
-                com.gmt2001.Console.debug.println("Backed up SQLite3 DB to ./dbbackup/" + filename);
-            }
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+        new SqliteBackup(dbName, Paths.get("./dbbackup", filename)).run();
     }
 
     @Override
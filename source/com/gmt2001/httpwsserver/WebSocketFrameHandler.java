@@ -20,9 +20,13 @@ import com.gmt2001.httpwsserver.auth.WsAuthenticationHandler;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelGroupFuture;
+import io.netty.channel.group.ChannelGroupFutureListener;
+import io.netty.channel.group.ChannelMatcher;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
@@ -30,10 +34,16 @@ import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler.HandshakeComplete;
 import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import java.util.Map;
 import java.util.Queue;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
@@ -53,9 +63,25 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
      */
     public static final AttributeKey<String> ATTR_URI = AttributeKey.valueOf("uri");
     /**
-     * Represents a {@link Queue} containing all current WS Sessions
+     * Represents a {@link ChannelGroup} containing all current WS Sessions
      */
-    private static final Queue<Channel> WS_SESSIONS = new ConcurrentLinkedQueue<>();
+    private static final ChannelGroup WS_SESSIONS = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    /**
+     * Represents a {@link ChannelGroup} for each URI, containing the current WS Sessions connected to it
+     */
+    private static final Map<String, ChannelGroup> WS_SESSIONS_BY_URI = new ConcurrentHashMap<>();
+    /**
+     * Matches the sessions which are authenticated
+     */
+    private static final ChannelMatcher AUTHENTICATED = (c) -> Boolean.TRUE.equals(c.attr(WsAuthenticationHandler.ATTR_AUTHENTICATED).get());
+    /**
+     * The frames waiting to be sent by {@link #broadcastLatestWsFrame(String, String, WebSocketFrame, long)}, by URI and topic
+     */
+    private static final Map<String, WebSocketFrame> LATEST_FRAMES = new ConcurrentHashMap<>();
+    /**
+     * The broadcast metrics of each URI
+     */
+    private static final Map<String, BroadcastStats> BROADCAST_STATS = new ConcurrentHashMap<>();
 
     /**
      * Default Constructor
@@ -111,10 +137,9 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
                 com.gmt2001.Console.debug.println("200 WS: " + hc.requestUri() + "   Remote: [" + ctx.channel().remoteAddress().toString() + "]");
                 ctx.channel().attr(ATTR_URI).set(ruri);
                 ctx.channel().attr(WsAuthenticationHandler.ATTR_AUTHENTICATED).setIfAbsent(Boolean.FALSE);
-                ctx.channel().closeFuture().addListener((ChannelFutureListener) (ChannelFuture f) -> {
-                    WS_SESSIONS.remove(f.channel());
-                });
+                // Channel groups drop their channels once they are closed
                 WS_SESSIONS.add(ctx.channel());
+                WS_SESSIONS_BY_URI.computeIfAbsent(ruri, (k) -> new DefaultChannelGroup(k, GlobalEventExecutor.INSTANCE)).add(ctx.channel());
             }
         }
     }
@@ -219,52 +244,158 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
     /**
      * Transmits a {@link WebSocketFrame} to all authenticated clients
      *
+     * The frame is encoded once and shared by the clients, it is released once it was written to all of them
+     *
      * @param resframe The {@link WebSocketFrame} to transmit
      */
     public static void broadcastWsFrame(WebSocketFrame resframe) {
-        WS_SESSIONS.forEach((c) -> {
-            if (c.attr(WsAuthenticationHandler.ATTR_AUTHENTICATED).get()) {
-                c.writeAndFlush(resframe.copy());
-            }
-        });
+        WS_SESSIONS.writeAndFlush(resframe, AUTHENTICATED);
     }
 
     /**
      * Transmits a {@link WebSocketFrame} to all authenticated clients that are connected to a specific URI
      *
+     * The frame is encoded once and shared by the clients, it is released once it was written to all of them
+     *
      * @param uri The URI to filter clients by for the broadcast
      * @param resframe The {@link WebSocketFrame} to transmit
      */
     public static void broadcastWsFrame(String uri, WebSocketFrame resframe) {
-        com.gmt2001.Console.debug.println("Broadcasting frame to Uri [" + uri + "]");
-        WS_SESSIONS.forEach((c) -> {
-            if (c.attr(WsAuthenticationHandler.ATTR_AUTHENTICATED).get() && c.attr(ATTR_URI).get().equals(uri)) {
-                com.gmt2001.Console.debug.println("Broadcast to client [" + c.remoteAddress().toString() + "]");
-                c.writeAndFlush(resframe.copy());
-            } else {
-                com.gmt2001.Console.debug.println("Did not broadcast to client [" + c.remoteAddress().toString() + "] Authenticated: " + (c.attr(WsAuthenticationHandler.ATTR_AUTHENTICATED).get() ? "t" : "f") + "   Uri: " + c.attr(ATTR_URI).get() + "   Uri match: " + (c.attr(ATTR_URI).get().equals(uri) ? "t" : "f"));
+        ChannelGroup group = WS_SESSIONS_BY_URI.get(uri);
+
+        com.gmt2001.Console.debug.println("Broadcasting frame to Uri [" + uri + "] Clients: " + (group == null ? 0 : group.size()));
+
+        if (group == null) {
+            ReferenceCountUtil.release(resframe);
+            return;
+        }
+
+        long start = System.nanoTime();
+        BroadcastStats stats = BROADCAST_STATS.computeIfAbsent(uri, (k) -> new BroadcastStats());
+
+        group.writeAndFlush(resframe, AUTHENTICATED).addListener((ChannelGroupFutureListener) (ChannelGroupFuture f) -> {
+            int sent = 0;
+            int failed = 0;
+
+            for (ChannelFuture cf : f) {
+                if (cf.isSuccess()) {
+                    sent++;
+                } else {
+                    failed++;
+                }
             }
+
+            stats.record(sent, failed, System.nanoTime() - start);
         });
     }
 
+    /**
+     * Transmits a {@link WebSocketFrame} to all authenticated clients that are connected to a specific URI after a delay
+     *
+     * Frames of the same topic which are still waiting are replaced, so a burst of updates which each replace the previous one, such as a
+     * full playlist, only sends the last one
+     *
+     * @param uri The URI to filter clients by for the broadcast
+     * @param topic The kind of update
+     * @param resframe The {@link WebSocketFrame} to transmit
+     * @param delayMillis How long to wait for newer frames of the topic
+     */
+    public static void broadcastLatestWsFrame(String uri, String topic, WebSocketFrame resframe, long delayMillis) {
+        String key = uri + " " + topic;
+        WebSocketFrame replaced = LATEST_FRAMES.put(key, resframe);
+
+        if (replaced != null) {
+            ReferenceCountUtil.release(replaced);
+            BROADCAST_STATS.computeIfAbsent(uri, (k) -> new BroadcastStats()).coalesced.incrementAndGet();
+            return;
+        }
+
+        GlobalEventExecutor.INSTANCE.schedule(() -> {
+            WebSocketFrame latest = LATEST_FRAMES.remove(key);
+
+            if (latest != null) {
+                broadcastWsFrame(uri, latest);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
     static void closeAllWsSessions() {
-        WebSocketFrame resframe = WebSocketFrameHandler.prepareCloseWebSocketFrame(WebSocketCloseStatus.ENDPOINT_UNAVAILABLE);
-        WS_SESSIONS.forEach((c) -> {
-            c.writeAndFlush(resframe.copy());
-            c.close();
-        });
+        WS_SESSIONS.writeAndFlush(WebSocketFrameHandler.prepareCloseWebSocketFrame(WebSocketCloseStatus.ENDPOINT_UNAVAILABLE));
+        WS_SESSIONS.close();
+    }
+
+    /**
+     * Runs an action for all authenticated clients that are connected to a specific URI, without copying the sessions
+     *
+     * @param uri The URI to filter clients by
+     * @param action The action
+     */
+    public static void forEachWsSession(String uri, Consumer<Channel> action) {
+        ChannelGroup group = WS_SESSIONS_BY_URI.get(uri);
+
+        if (group != null) {
+            group.forEach((c) -> {
+                if (AUTHENTICATED.matches(c)) {
+                    action.accept(c);
+                }
+            });
+        }
     }
 
     public static Queue<Channel> getWsSessions(String uri) {
         Queue<Channel> sessions = new ConcurrentLinkedQueue<>();
 
-        WS_SESSIONS.forEach((c) -> {
-            if (c.attr(WsAuthenticationHandler.ATTR_AUTHENTICATED).get() && c.attr(ATTR_URI).get().equals(uri)) {
-                sessions.add(c);
+        forEachWsSession(uri, sessions::add);
+
+        return sessions;
+    }
+
+    /**
+     * Returns the sessions and broadcast fan-out latency of each URI
+     *
+     * @return The report
+     */
+    public static String getBroadcastReport() {
+        StringBuilder sb = new StringBuilder("WS broadcasts:");
+
+        new TreeMap<>(WS_SESSIONS_BY_URI).forEach((uri, group) -> {
+            BroadcastStats stats = BROADCAST_STATS.get(uri);
+
+            sb.append(System.lineSeparator()).append("  ").append(uri).append(": ").append(group.size()).append(" sessions");
+
+            if (stats != null) {
+                sb.append(", ").append(stats.toString());
             }
         });
 
-        return sessions;
+        return sb.toString();
+    }
+
+    /**
+     * The broadcasts made to one URI
+     */
+    private static final class BroadcastStats {
+
+        private final AtomicLong coalesced = new AtomicLong();
+        private long broadcasts;
+        private long sent;
+        private long failed;
+        private long totalNanos;
+        private long maxNanos;
+
+        private synchronized void record(int sent, int failed, long nanos) {
+            this.broadcasts++;
+            this.sent += sent;
+            this.failed += failed;
+            this.totalNanos += nanos;
+            this.maxNanos = Math.max(this.maxNanos, nanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return broadcasts + " broadcasts, " + sent + " frames sent, " + failed + " failed, " + coalesced.get() + " replaced before sending, fan-out avg "
+                    + String.format("%.2f", broadcasts == 0 ? 0.0 : totalNanos / 1000000.0 / broadcasts) + " ms, max " + String.format("%.2f", maxNanos / 1000000.0) + " ms";
+        }
     }
 
     /**
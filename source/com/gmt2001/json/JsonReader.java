@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.json;
+
+import java.util.Arrays;
+
+/**
+ * A pull parser that reads a JSON document one token at a time, without building a tree.
+ *
+ * Used to bind the fields we need from frequent payloads straight into small classes; anything else is skipped with
+ * {@link #skipValue()}. Strings without escapes are returned as a substring of the input.
+ *
+ * <pre>
+ * JsonReader reader = new JsonReader(json);
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     switch (reader.nextName()) {
+ *         case "type":
+ *             type = reader.nextString();
+ *             break;
+ *         default:
+ *             reader.skipValue();
+ *     }
+ * }
+ * reader.endObject();
+ * </pre>
+ *
+ * Malformed input throws {@link IllegalStateException}.
+ *
+ * @author gmt2001
+ */
+public final class JsonReader {
+
+    /**
+     * The kinds of tokens returned by {@link #peek()}.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+    private final String in;
+    private int pos = 0;
+    private int[] stack = new int[16];
+    private int depth = 1;
+    private Token peeked = null;
+
+    /**
+     * Class constructor.
+     *
+     * @param in The JSON document
+     */
+    public JsonReader(String in) {
+        this.in = in;
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     *
+     * @return
+     */
+    public Token peek() {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int c;
+
+        switch (stack[depth - 1]) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    pos++;
+                    return peeked = Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    pos++;
+                    return peeked = Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected , or ]");
+                }
+                pos++;
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    pos++;
+                    return peeked = Token.END_OBJECT;
+                } else if (stack[depth - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected , or }");
+                    }
+                    pos++;
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected :");
+                }
+                pos++;
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[0] = NONEMPTY_DOCUMENT;
+                break;
+            default:
+                if (nextNonWhitespace() == -1) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                throw syntaxError("Unexpected data after the document");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                return peeked = Token.STRING;
+            case 't':
+            case 'f':
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                return peeked = Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character");
+        }
+    }
+
+    /**
+     * Returns true if the current object or array has more elements.
+     *
+     * @return
+     */
+    public boolean hasNext() {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() {
+        expect(Token.BEGIN_OBJECT);
+        pos++;
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() {
+        expect(Token.BEGIN_ARRAY);
+        pos++;
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * Consumes the name of the next property of the current object.
+     *
+     * @return
+     */
+    public String nextName() {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Consumes a string, or a number as its text.
+     *
+     * @return
+     */
+    public String nextString() {
+        Token t = peek();
+        peeked = null;
+
+        if (t == Token.STRING) {
+            return readString();
+        } else if (t == Token.NUMBER) {
+            return readNumber();
+        }
+
+        throw syntaxError("Expected a string but was " + t);
+    }
+
+    /**
+     * Consumes a string, number, boolean, or null, like {@code JSONObject.optString}.
+     *
+     * @param defaultValue Returned for a null
+     * @return
+     */
+    public String nextOptString(String defaultValue) {
+        Token t = peek();
+
+        if (t == Token.NULL) {
+            nextNull();
+            return defaultValue;
+        } else if (t == Token.BOOLEAN) {
+            return Boolean.toString(nextBoolean());
+        }
+
+        return nextString();
+    }
+
+    /**
+     * Consumes a number, or a string containing a number.
+     *
+     * @return
+     */
+    public long nextLong() {
+        String s = nextString();
+
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException ex) {
+            return (long) Double.parseDouble(s);
+        }
+    }
+
+    public int nextInt() {
+        return (int) nextLong();
+    }
+
+    public double nextDouble() {
+        return Double.parseDouble(nextString());
+    }
+
+    public boolean nextBoolean() {
+        expect(Token.BOOLEAN);
+
+        if (in.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        } else if (in.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+
+        throw syntaxError("Expected a boolean");
+    }
+
+    public void nextNull() {
+        expect(Token.NULL);
+
+        if (!in.startsWith("null", pos)) {
+            throw syntaxError("Expected null");
+        }
+
+        pos += 4;
+    }
+
+    /**
+     * Skips the next value, including everything nested in it.
+     */
+    public void skipValue() {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case STRING:
+                peeked = null;
+                skipString();
+                break;
+            case NUMBER:
+                peeked = null;
+                readNumber();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+
+    private void expect(Token token) {
+        Token t = peek();
+
+        if (t != token) {
+            throw syntaxError("Expected " + token + " but was " + t);
+        }
+
+        peeked = null;
+    }
+
+    private void push(int state) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+
+        stack[depth++] = state;
+    }
+
+    private int nextNonWhitespace() {
+        while (pos < in.length()) {
+            char c = in.charAt(pos);
+
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+
+            pos++;
+        }
+
+        return -1;
+    }
+
+    private String readNumber() {
+        int start = pos;
+
+        while (pos < in.length()) {
+            char c = in.charAt(pos);
+
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        return in.substring(start, pos);
+    }
+
+    private void skipString() {
+        pos++;
+
+        while (pos < in.length()) {
+            char c = in.charAt(pos++);
+
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                pos++;
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private String readString() {
+        int start = ++pos;
+
+        // Fast path, no escapes.
+        while (pos < in.length()) {
+            char c = in.charAt(pos);
+
+            if (c == '"') {
+                return in.substring(start, pos++);
+            } else if (c == '\\') {
+                break;
+            }
+
+            pos++;
+        }
+
+        StringBuilder sb = new StringBuilder(pos - start + 16);
+        sb.append(in, start, pos);
+
+        while (pos < in.length()) {
+            // Copy the run of characters up to the next quote or escape in one go.
+            int run = pos;
+            char c = in.charAt(pos);
+
+            while (c != '"' && c != '\\' && ++pos < in.length()) {
+                c = in.charAt(pos);
+            }
+
+            sb.append(in, run, pos);
+
+            if (pos >= in.length()) {
+                break;
+            } else if (c == '"') {
+                pos++;
+                return sb.toString();
+            }
+
+            if (++pos >= in.length()) {
+                break;
+            }
+
+            c = in.charAt(pos++);
+            switch (c) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (pos + 4 > in.length()) {
+                        throw syntaxError("Unterminated escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(in.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw syntaxError("Invalid escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private IllegalStateException syntaxError(String message) {
+        return new IllegalStateException(message + " at position " + pos);
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.wsclient;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.net.URI;
+import java.nio.channels.NotYetConnectedException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.net.ssl.SSLException;
+
+/**
+ * Provides a WebSocket client
+ *
+ * Every {@link WSClient} runs on the same {@link EventLoopGroup}, so connections don't each need their own reader and writer threads. Keepalive
+ * is driven by an {@link IdleStateHandler}, which calls {@link WsClientFrameHandler#onIdle(WSClient, IdleStateEvent)}
+ *
+ * @author gmt2001
+ */
+public class WSClient {
+
+    /**
+     * The {@link EventLoopGroup} shared by all clients
+     */
+    private static final EventLoopGroup GROUP = new NioEventLoopGroup(2, new DefaultThreadFactory("WSClient", true));
+    private static final int MAX_FRAME_SIZE = 1024 * 1024;
+    private static final long HANDSHAKE_TIMEOUT = 30;
+    private final URI uri;
+    private final WsClientFrameHandler handler;
+    private final int readerIdleSeconds;
+    private final int writerIdleSeconds;
+    private final SslContext sslCtx;
+    private boolean tcpNoDelay = true;
+    private volatile Connection connection;
+
+    /**
+     * Constructor
+     *
+     * @param uri The URI to connect to, {@code ws} or {@code wss}
+     * @param readerIdleSeconds Seconds without a message received before {@link WsClientFrameHandler#onIdle(WSClient, IdleStateEvent)} is
+     * called, or {@code 0} to disable
+     * @param writerIdleSeconds Seconds without a message sent before {@link WsClientFrameHandler#onIdle(WSClient, IdleStateEvent)} is called,
+     * or {@code 0} to disable
+     * @param handler The {@link WsClientFrameHandler} receiving the events of this client
+     * @throws SSLException if the {@link SslContext} could not be created
+     */
+    public WSClient(URI uri, int readerIdleSeconds, int writerIdleSeconds, WsClientFrameHandler handler) throws SSLException {
+        this.uri = uri;
+        this.handler = handler;
+        this.readerIdleSeconds = readerIdleSeconds;
+        this.writerIdleSeconds = writerIdleSeconds;
+        this.sslCtx = uri.getScheme().equalsIgnoreCase("wss") ? SslContextBuilder.forClient().build() : null;
+    }
+
+    /**
+     * Returns the {@link EventLoopGroup} shared by all clients, which can also be used to schedule non-blocking tasks
+     *
+     * @return The {@link EventLoopGroup}
+     */
+    public static EventLoopGroup group() {
+        return GROUP;
+    }
+
+    /**
+     * Shuts down the shared {@link EventLoopGroup}
+     */
+    public static void shutdown() {
+        GROUP.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets the URI of this client
+     *
+     * @return The URI
+     */
+    public URI getURI() {
+        return uri;
+    }
+
+    /**
+     * Sets whether Nagle's algorithm is disabled on the next connection
+     *
+     * @param tcpNoDelay {@code true} to disable Nagle's algorithm
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Starts connecting, without waiting for the connection to complete
+     *
+     * @return {@code false} if the connection attempt could not be started
+     */
+    public boolean connect() {
+        try {
+            // The connection makes itself current before it can report a failed attempt.
+            new Connection();
+            return true;
+        } catch (Exception ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
+        }
+    }
+
+    /**
+     * Connects, waiting until the WebSocket handshake has completed
+     *
+     * @return {@code true} if connected
+     * @throws InterruptedException
+     */
+    public boolean connectBlocking() throws InterruptedException {
+        if (!connect()) {
+            return false;
+        }
+
+        Connection c = connection;
+
+        try {
+            return c.handshakeFuture.get(HANDSHAKE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException ex) {
+            com.gmt2001.Console.debug.println("WSClient [" + uri.getHost() + "] handshake failed: " + ex.getMessage());
+            c.notifyClose = false;
+            c.channel.close();
+            return false;
+        }
+    }
+
+    /**
+     * Closes the current connection without calling {@link WsClientFrameHandler#onClose(WSClient, int, String, boolean)}, then connects again,
+     * waiting until the WebSocket handshake has completed
+     *
+     * @return {@code true} if connected
+     * @throws InterruptedException
+     */
+    public boolean reconnectBlocking() throws InterruptedException {
+        Connection old = connection;
+
+        if (old != null) {
+            old.notifyClose = false;
+            old.channel.close().awaitUninterruptibly(5, TimeUnit.SECONDS);
+        }
+
+        return connectBlocking();
+    }
+
+    /**
+     * Indicates if the WebSocket handshake has completed and the connection is still open
+     *
+     * @return {@code true} if connected
+     */
+    public boolean isConnected() {
+        Connection c = connection;
+        return c != null && c.channel.isActive() && c.handshaken;
+    }
+
+    /**
+     * Sends a text message
+     *
+     * The message is encoded directly into a pooled buffer
+     *
+     * @param message The message to send
+     * @throws NotYetConnectedException if the connection is not open
+     */
+    public void send(String message) {
+        Connection c = connection;
+
+        if (c == null || !c.channel.isActive()) {
+            throw new NotYetConnectedException();
+        }
+
+        c.channel.writeAndFlush(new TextWebSocketFrame(ByteBufUtil.writeUtf8(c.channel.alloc(), message)));
+    }
+
+    /**
+     * Pauses or resumes reading from the connection, used to apply backpressure when incoming messages can't be handled fast enough
+     *
+     * When called from outside the event loop, the change is queued on the event loop, so calls take effect in the order they were made
+     *
+     * @param autoRead {@code false} to stop reading, {@code true} to read again
+     */
+    public void setAutoRead(boolean autoRead) {
+        Connection c = connection;
+
+        if (c == null) {
+            return;
+        }
+
+        if (c.channel.eventLoop().inEventLoop()) {
+            c.channel.config().setAutoRead(autoRead);
+        } else {
+            c.channel.eventLoop().execute(() -> c.channel.config().setAutoRead(autoRead));
+        }
+    }
+
+    /**
+     * Closes the connection if nothing is received within the specified time, used after sending a keepalive
+     *
+     * @param timeout The amount of time to wait
+     * @param unit The unit of {@code timeout}
+     */
+    public void expectRead(long timeout, TimeUnit unit) {
+        Connection c = connection;
+
+        if (c == null) {
+            return;
+        }
+
+        long since = System.nanoTime();
+        c.channel.eventLoop().schedule(() -> {
+            if (c.lastRead < since && c.channel.isActive()) {
+                com.gmt2001.Console.debug.println("WSClient [" + uri.getHost() + "] nothing received for " + timeout + " " + unit + ", closing");
+                c.code = 1006;
+                c.reason = "keepalive timeout";
+                c.channel.close();
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * Closes the connection with code 1000
+     */
+    public void close() {
+        close(1000, "");
+    }
+
+    /**
+     * Closes the connection
+     *
+     * @param code The close code
+     * @param reason The close reason
+     */
+    public void close(int code, String reason) {
+        Connection c = connection;
+
+        if (c == null) {
+            return;
+        }
+
+        c.remote = false;
+        c.code = code;
+        c.reason = reason;
+
+        if (c.channel.isActive()) {
+            c.channel.writeAndFlush(new CloseWebSocketFrame(code, reason)).addListener(ChannelFutureListener.CLOSE);
+        } else {
+            c.channel.close();
+        }
+    }
+
+    /**
+     * A single connection attempt and its state
+     */
+    private class Connection extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+        private final CompletableFuture<Boolean> handshakeFuture = new CompletableFuture<>();
+        private final Channel channel;
+        private volatile boolean handshaken = false;
+        private volatile boolean notifyClose = true;
+        private volatile boolean remote = true;
+        private volatile int code = 1006;
+        private volatile String reason = "";
+        private volatile long lastRead = System.nanoTime();
+
+        private Connection() {
+            int port = uri.getPort() != -1 ? uri.getPort() : (sslCtx != null ? 443 : 80);
+            Connection self = this;
+
+            Bootstrap b = new Bootstrap();
+            b.group(GROUP)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .option(ChannelOption.TCP_NODELAY, tcpNoDelay)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) throws Exception {
+                            ChannelPipeline pipeline = ch.pipeline();
+
+                            if (sslCtx != null) {
+                                pipeline.addLast(sslCtx.newHandler(ch.alloc(), uri.getHost(), port));
+                            }
+
+                            pipeline.addLast(new HttpClientCodec());
+                            pipeline.addLast(new HttpObjectAggregator(8192));
+                            pipeline.addLast(new IdleStateHandler(readerIdleSeconds, writerIdleSeconds, 0));
+                            pipeline.addLast(new WebSocketClientProtocolHandler(WebSocketClientHandshakerFactory.newHandshaker(uri, WebSocketVersion.V13, null,
+                                    false, new DefaultHttpHeaders(), MAX_FRAME_SIZE), false));
+                            pipeline.addLast(new WebSocketFrameAggregator(MAX_FRAME_SIZE));
+                            pipeline.addLast(self);
+                        }
+                    });
+
+            ChannelFuture connectFuture = b.connect(uri.getHost(), port);
+            this.channel = connectFuture.channel();
+
+            // Become the current connection before the listener is added, it runs right away if the attempt already failed,
+            // and a reconnect from onClose must not be replaced by this attempt afterwards.
+            WSClient.this.connection = this;
+
+            connectFuture.addListener(f -> {
+                if (!f.isSuccess()) {
+                    handshakeFuture.completeExceptionally(f.cause());
+                    handler.onError(WSClient.this, f.cause());
+
+                    // The channel never became active, so channelInactive won't report the failed attempt.
+                    // The remote never hung up on us, so this is not reported as a remote close.
+                    if (notifyClose) {
+                        handler.onClose(WSClient.this, 1006, f.cause() == null ? "" : String.valueOf(f.cause().getMessage()), false);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                handshaken = true;
+                handshakeFuture.complete(true);
+                handler.handshakeComplete(WSClient.this);
+            } else if (evt instanceof IdleStateEvent) {
+                handler.onIdle(WSClient.this, (IdleStateEvent) evt);
+            } else {
+                super.userEventTriggered(ctx, evt);
+            }
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
+            lastRead = System.nanoTime();
+
+            if (frame instanceof TextWebSocketFrame) {
+                handler.onMessage(WSClient.this, ((TextWebSocketFrame) frame).text());
+            } else if (frame instanceof CloseWebSocketFrame) {
+                CloseWebSocketFrame close = (CloseWebSocketFrame) frame;
+                code = close.statusCode();
+                reason = close.reasonText();
+                ctx.writeAndFlush(new CloseWebSocketFrame(close.statusCode(), close.reasonText())).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            handshakeFuture.complete(false);
+
+            if (notifyClose) {
+                handler.onClose(WSClient.this, code, reason, remote);
+            }
+
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            handshakeFuture.completeExceptionally(cause);
+            handler.onError(WSClient.this, cause);
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.wsclient;
+
+import io.netty.handler.timeout.IdleStateEvent;
+
+/**
+ * Represents a handler for the events of a {@link WSClient}
+ *
+ * All methods are called on the event loop of the connection and must not block
+ *
+ * @author gmt2001
+ */
+public interface WsClientFrameHandler {
+
+    /**
+     * Called when the WebSocket handshake has completed and the connection is ready to send
+     *
+     * @param client The {@link WSClient} that connected
+     */
+    public void handshakeComplete(WSClient client);
+
+    /**
+     * Called for every text message received, decoded as UTF-8
+     *
+     * @param client The {@link WSClient} that received the message
+     * @param message The message
+     */
+    public void onMessage(WSClient client, String message);
+
+    /**
+     * Called when the connection has been closed
+     *
+     * @param client The {@link WSClient} that was closed
+     * @param code The close code sent by the remote, or {@code 1006} if the connection was dropped
+     * @param reason The close reason
+     * @param remote {@code true} if the connection was closed by the remote or dropped, {@code false} if it was closed by calling
+     * {@link WSClient#close(int, String)} or could not be established
+     */
+    public void onClose(WSClient client, int code, String reason, boolean remote);
+
+    /**
+     * Called when the connection has been idle for the intervals passed to the {@link WSClient} constructor
+     *
+     * @param client The {@link WSClient} that is idle
+     * @param event The {@link IdleStateEvent}
+     */
+    public default void onIdle(WSClient client, IdleStateEvent event) {
+    }
+
+    /**
+     * Called when an exception was thrown by the connection, which is then closed
+     *
+     * @param client The {@link WSClient} that failed
+     * @param cause The exception
+     */
+    public default void onError(WSClient client, Throwable cause) {
+        com.gmt2001.Console.debug.println("WSClient [" + client.getURI().getHost() + "] Exception [" + cause.getClass().getSimpleName() + "]: " + cause.getMessage());
+    }
+}
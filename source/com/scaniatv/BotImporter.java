@@ -22,14 +22,15 @@
 package com.scaniatv;
 
 import com.gmt2001.datastore.DataStore;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import com.gmt2001.datastore.DataStoreTransfer;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.UncheckedIOException;
 import tv.phantombot.PhantomBot;
 
 public class BotImporter {
+    private static final String[] REVLO_COLUMNS = new String[]{"Username", "Twitch User ID", "Points"};
+    private static final String[] ANKH_COLUMNS = new String[]{"Name", "Points", "Hours"};
+
     /*
      * Method that will import time and points from RevloBot.
      *
@@ -37,44 +38,22 @@ public class BotImporter {
      */
     public static void ImportRevlo(String fileName) {
         DataStore db = PhantomBot.instance().getDataStore();
-        BufferedReader bufferedReader = null;
-        List<String> users = new ArrayList<>();
-        List<String> points = new ArrayList<>();
-        String brLine;
-
-        com.gmt2001.Console.out.println("Importing RevloBot points...");
-
-        try {
-            // Create a new reader.
-            bufferedReader = new BufferedReader(new FileReader(fileName));
-
-            // Skip the first line.
-            bufferedReader.readLine();
+        DataStoreTransfer.Progress progress = new DataStoreTransfer.Progress("Importing RevloBot points");
 
-            while ((brLine = bufferedReader.readLine()) != null) {
-                String[] spl = brLine.split(",");
-
-                users.add(spl[0].toLowerCase());
-                points.add(spl[2]);
-                com.gmt2001.Console.out.println("Imported: " + spl[0] + " - Points: " + spl[2]);
-            }
-            com.gmt2001.Console.out.println("Saving data...");
+        try (DataStoreTransfer.BatchWriter points = new DataStoreTransfer.BatchWriter(db, "points", "")) {
+            DataStoreTransfer.readRows(fileName, REVLO_COLUMNS, (row) -> {
+                if (row.length < 3 || row[0] == null || row[0].isEmpty() || !isNumber(row[2])) {
+                    progress.skip();
+                    return;
+                }
 
-            db.SetBatchString("points", "", users.toArray(new String[users.size()]), points.toArray(new String[points.size()]));
+                points.add(row[0].toLowerCase(), row[2].trim());
+                progress.add(1);
+            });
 
-            com.gmt2001.Console.out.println("Importing done!");
-        } catch (IOException ex) {
-            com.gmt2001.Console.err.println("Failed to convert points from RevloBot [IOException] " + ex.getMessage());
-        } catch (Exception ex) {
-            com.gmt2001.Console.err.println("Failed to convert points from RevloBot [Exception] " + ex.getMessage());
-        } finally {
-            if (bufferedReader != null) {
-                try {
-                    bufferedReader.close();
-                } catch (IOException ex) {
-                    com.gmt2001.Console.err.printStackTrace(ex);
-                }
-            }
+            progress.done();
+        } catch (IOException | UncheckedIOException ex) {
+            progress.failed(ex);
         }
     }
 
@@ -85,48 +64,45 @@ public class BotImporter {
      */
     public static void ImportAnkh(String fileName) {
         DataStore db = PhantomBot.instance().getDataStore();
-        BufferedReader bufferedReader = null;
-        List<String> users = new ArrayList<>();
-        List<String> points = new ArrayList<>();
-        List<String> time = new ArrayList<>();
-        String brLine;
-
-        com.gmt2001.Console.out.println("Importing AnkhBot points and time...");
-
-        try {
-            // Create a new reader.
-            bufferedReader = new BufferedReader(new FileReader(fileName));
+        DataStoreTransfer.Progress progress = new DataStoreTransfer.Progress("Importing AnkhBot points and time");
+
+        try (DataStoreTransfer.BatchWriter points = new DataStoreTransfer.BatchWriter(db, "points", "");
+                DataStoreTransfer.BatchWriter time = new DataStoreTransfer.BatchWriter(db, "time", "")) {
+            DataStoreTransfer.readRows(fileName, ANKH_COLUMNS, (row) -> {
+                if (row.length < 3 || row[0] == null || row[0].isEmpty() || !isNumber(row[1]) || !isNumber(row[2])) {
+                    progress.skip();
+                    return;
+                }
 
-            // Skip the first line.
-            bufferedReader.readLine();
+                String username = row[0].toLowerCase();
 
-            long d = System.currentTimeMillis();
-            while ((brLine = bufferedReader.readLine()) != null) {
-                String[] spl = brLine.split(",");
+                points.add(username, row[1].trim());
+                time.add(username, String.valueOf(Long.parseLong(row[2].trim()) * 3600));
+                progress.add(1);
+            });
 
-                users.add(spl[0].toLowerCase());
-                points.add(spl[1]);
-                time.add(String.valueOf((Integer.parseInt(spl[2]) * 3600)));
-                com.gmt2001.Console.out.println("Imported: " + spl[0] + " - Points: " + spl[1] + " - Time " + spl[2]);
-            }
-            com.gmt2001.Console.out.println("Saving data...");
+            progress.done();
+        } catch (IOException | UncheckedIOException ex) {
+            progress.failed(ex);
+        }
+    }
 
-            db.SetBatchString("points", "", users.toArray(new String[users.size()]), points.toArray(new String[points.size()]));
-            db.SetBatchString("time", "", users.toArray(new String[users.size()]), time.toArray(new String[time.size()]));
+    /*
+     * Method that checks if a column holds a whole number.
+     *
+     * @param  {String} value
+     * @return {Boolean}
+     */
+    private static boolean isNumber(String value) {
+        if (value == null) {
+            return false;
+        }
 
-            com.gmt2001.Console.out.println("Importing done! " + (System.currentTimeMillis() - d) + "ms");
-        } catch (IOException ex) {
-            com.gmt2001.Console.err.println("Failed to convert points and time from AnkhBot [IOException] " + ex.getMessage());
+        try {
+            Long.parseLong(value.trim());
+            return true;
         } catch (NumberFormatException ex) {
-            com.gmt2001.Console.err.println("Failed to convert points and time from AnkhBot [Exception] " + ex.getMessage());
-        } finally {
-            if (bufferedReader != null) {
-                try {
-                    bufferedReader.close();
-                } catch (IOException ex) {
-                    com.gmt2001.Console.err.printStackTrace(ex);
-                }
-            }
+            return false;
         }
     }
 }
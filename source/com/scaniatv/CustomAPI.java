@@ -21,11 +21,19 @@ package com.scaniatv;
 import com.gmt2001.HttpRequest;
 import com.gmt2001.HttpResponse;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class CustomAPI {
     private static CustomAPI instance;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4, (r) -> {
+        Thread t = new Thread(r, "com.scaniatv.CustomAPI::getAsync");
+        t.setDaemon(true);
+        return t;
+    });
 
     /*
      * Method to the this instance.
@@ -77,6 +85,19 @@ public class CustomAPI {
         return HttpRequest.getData(HttpRequest.RequestType.GET, url, "", new HashMap<String, String>());
     }
 
+    /*
+     * Method to get data from an API without waiting for it, the content is empty if the request failed.
+     *
+     * @param  {String} url
+     * @return {CompletableFuture}
+     */
+    public CompletableFuture<String> getAsync(String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            HttpResponse data = get(url);
+            return data.content == null ? "" : data.content;
+        }, executor);
+    }
+
     /*
      * Method to post to an API.
      *
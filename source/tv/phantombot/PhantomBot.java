@@ -16,16 +16,19 @@
  */
 package tv.phantombot;
 
+import com.gmt2001.Console.ConsoleSink;
 import com.gmt2001.GamesListUpdater;
 import com.gmt2001.TwitchAPIv5;
 import com.gmt2001.TwitchAuthorizationCodeFlow;
 import com.gmt2001.YouTubeAPIv3;
 import com.gmt2001.datastore.DataStore;
 import com.gmt2001.datastore.DataStoreConverter;
+import com.gmt2001.datastore.DataStoreTransfer;
 import com.gmt2001.datastore.H2Store;
 import com.gmt2001.datastore.MySQLStore;
 import com.gmt2001.datastore.SqliteStore;
 import com.gmt2001.httpwsserver.HTTPWSServer;
+import com.gmt2001.wsclient.WSClient;
 import com.illusionaryone.GitHubAPIv3;
 import com.illusionaryone.TwitchAlertsAPIv1;
 import com.illusionaryone.TwitterAPI;
@@ -38,16 +41,16 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.net.ServerSocket;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
@@ -55,12 +58,12 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import net.engio.mbassy.listener.Handler;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.commons.lang3.SystemUtils;
 import org.json.JSONException;
 import reactor.util.Loggers;
 import tv.phantombot.cache.DonationsCache;
 import tv.phantombot.cache.EmotesCache;
+import tv.phantombot.cache.FollowedTableSync;
 import tv.phantombot.cache.FollowersCache;
 import tv.phantombot.cache.StreamElementsCache;
 import tv.phantombot.cache.TipeeeStreamCache;
@@ -86,10 +89,14 @@ import tv.phantombot.panel.WsAlertsPollsHandler;
 import tv.phantombot.panel.WsPanelHandler;
 import tv.phantombot.panel.WsPanelRemoteLoginHandler;
 import tv.phantombot.script.Script;
+import tv.phantombot.script.ScriptCompiler;
 import tv.phantombot.script.ScriptEventManager;
+import tv.phantombot.script.ScriptExecutors;
 import tv.phantombot.script.ScriptFileWatcher;
 import tv.phantombot.script.ScriptManager;
+import tv.phantombot.scripts.core.KeywordIndex;
 import tv.phantombot.scripts.core.Moderation;
+import tv.phantombot.scripts.core.WordCounter;
 import tv.phantombot.twitch.api.TwitchValidate;
 import tv.phantombot.twitch.irc.TwitchSession;
 import tv.phantombot.twitch.irc.host.TwitchWSHostIRC;
@@ -183,6 +190,7 @@ public final class PhantomBot implements Listener {
     private static PhantomBot instance;
     private static Boolean reloadScripts = false;
     private static Boolean silentScriptsLoad = false;
+    private static Boolean lazyLoadModules = false;
     private static Boolean enableDebugging = false;
     private static Boolean enableDebuggingLogOnly = false;
     private static Boolean enableRhinoDebugger = false;
@@ -425,6 +433,20 @@ public final class PhantomBot implements Listener {
         /* Set the timeZone */
         PhantomBot.timeZone = this.pbProperties.getProperty("logtimezone", "GMT");
 
+        /* Set the number of chat lines printed to the console per second, 0 prints all of them */
+        try {
+            ConsoleSink.instance().setRateLimit(ConsoleSink.CHAT, Integer.parseInt(this.pbProperties.getProperty("consolechatlimit", "0")));
+        } catch (NumberFormatException ex) {
+            com.gmt2001.Console.err.println("Invalid consolechatlimit, printing every chat line to the console");
+        }
+
+        /* Set the number of single threaded executors the script hooks and timers run on, 0 runs them on the thread of the event */
+        try {
+            ScriptExecutors.instance().start(Integer.parseInt(this.pbProperties.getProperty("scriptexecutors", "0")));
+        } catch (NumberFormatException ex) {
+            com.gmt2001.Console.err.println("Invalid scriptexecutors, running the script hooks on the thread of each event");
+        }
+
         /* Set the panel username login for the panel to use */
         this.panelUsername = this.pbProperties.getProperty("paneluser", "panel");
 
@@ -485,7 +507,7 @@ public final class PhantomBot implements Listener {
                 PhantomBot.exitError();
             }
             /* Convert to MySql */
-            if (SqliteStore.hasDatabase(dataStoreConfig) && SqliteStore.instance().GetFileList().length > 0 && MySQLStore.instance().GetFileList().length == 0) {
+            if (SqliteStore.hasDatabase(dataStoreConfig) && SqliteStore.instance().GetFileList().length > 0 && (MySQLStore.instance().GetFileList().length == 0 || DataStoreConverter.hasPendingConversion())) {
                 DataStoreConverter.convertDataStore(MySQLStore.instance(), SqliteStore.instance());
             }
         } else if (dataStoreType.equalsIgnoreCase("h2store")) {
@@ -496,7 +518,7 @@ public final class PhantomBot implements Listener {
                 PhantomBot.exitError();
             }
 
-            if (SqliteStore.hasDatabase(dataStoreConfig) && SqliteStore.instance().GetFileList().length > 0 && H2Store.instance().GetFileList().length == 0) {
+            if (SqliteStore.hasDatabase(dataStoreConfig) && SqliteStore.instance().GetFileList().length > 0 && (H2Store.instance().GetFileList().length == 0 || DataStoreConverter.hasPendingConversion())) {
                 DataStoreConverter.convertDataStore(H2Store.instance(), SqliteStore.instance());
             }
         } else {
@@ -989,6 +1011,8 @@ public final class PhantomBot implements Listener {
         Script.global.defineProperty("customAPI", CustomAPI.instance(), 0);
         Script.global.defineProperty("streamLabsAPI", TwitchAlertsAPIv1.instance(), 0);
         Script.global.defineProperty("moderation", Moderation.instance(), 0);
+        Script.global.defineProperty("wordCounter", WordCounter.instance(), 0);
+        Script.global.defineProperty("keywordIndex", KeywordIndex.instance(), 0);
 
         /* open a new thread for when the bot is exiting */
         Thread thread = new Thread(() -> {
@@ -998,6 +1022,11 @@ public final class PhantomBot implements Listener {
         /* Get the un time for that new thread we just created */
         Runtime.getRuntime().addShutdownHook(thread);
 
+        /* Compile the scripts in the background while init loads them in order */
+        ScriptCompiler.instance().precompile(new File("./scripts/"), (scriptName) -> scriptName.startsWith("./lang/")
+                || (PhantomBot.lazyLoadModules && !scriptName.startsWith("./core/") && !scriptName.startsWith("./discord/core/")
+                && "false".equals(dataStore.GetString("modules", "", scriptName))));
+
         /* And finally try to load init, that will then load the scripts */
         try {
             ScriptManager.loadScript(new File("./scripts/init.js"));
@@ -1005,6 +1034,9 @@ public final class PhantomBot implements Listener {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
 
+        print("Modules loaded in " + ScriptCompiler.instance().getStartupMillis() + " ms, use the scriptloadreport console command for the time of each module.");
+        com.gmt2001.Console.debug.println(ScriptCompiler.instance().getReport());
+
         // Moved this to debug only. People are already asking questions.
         if (PhantomBot.enableDebugging) {
             try {
@@ -1037,6 +1069,7 @@ public final class PhantomBot implements Listener {
         print("Stopping all events and message dispatching...");
         ScriptFileWatcher.instance().kill();
         ScriptEventManager.instance().kill();
+        ScriptExecutors.instance().kill();
 
         /* Gonna need a way to pass this to all channels */
         if (PhantomBot.instance().getSession() != null) {
@@ -1071,6 +1104,7 @@ public final class PhantomBot implements Listener {
         });
 
         print("Saving all data...");
+        WordCounter.instance().kill();
         dataStore.SaveAll(true);
 
         /* Check to see if web is enabled */
@@ -1079,6 +1113,8 @@ public final class PhantomBot implements Listener {
             HTTPWSServer.instance().close();
         }
 
+        WSClient.shutdown();
+
         print("Closing the logs...");
         com.gmt2001.Logger.instance().close();
 
@@ -1097,6 +1133,7 @@ public final class PhantomBot implements Listener {
         dataStore.dispose();
 
         print(this.botName + " is exiting.");
+        com.gmt2001.Console.out.flush();
     }
 
     /**
@@ -1127,6 +1164,7 @@ public final class PhantomBot implements Listener {
         this.twitchTeamCache = TwitchTeamsCache.instance(this.channelName);
         this.emotesCache = EmotesCache.instance(this.channelName);
         this.followersCache = FollowersCache.instance(this.channelName);
+        FollowedTableSync.instance().resume(this.channelName, this.dataStore);
         this.viewerListCache = ViewerListCache.instance(this.channelName);
 
         /* Start the donations cache if the keys are not null and the module is enabled */
@@ -1284,6 +1322,8 @@ public final class PhantomBot implements Listener {
         PhantomBot.setReloadScripts(ConfigurationManager.getBoolean(startProperties, ConfigurationManager.PROP_RELOADSCRIPTS, false));
         /* Check to silence the loading of scripts at startup. */
         PhantomBot.setSilentScriptsLoad(ConfigurationManager.getBoolean(startProperties, ConfigurationManager.PROP_SILENTSCRIPTSLOAD, false));
+        /* Check to load disabled modules only once they are enabled. */
+        PhantomBot.setLazyLoadModules(ConfigurationManager.getBoolean(startProperties, ConfigurationManager.PROP_LAZYLOADMODULES, false));
         /* Check to enable Rhino Debugger */
         PhantomBot.setEnableRhinoDebugger(ConfigurationManager.getBoolean(startProperties, ConfigurationManager.PROP_RHINODEBUGGER, false));
     }
@@ -1311,6 +1351,13 @@ public final class PhantomBot implements Listener {
 
     }
 
+    private static void setLazyLoadModules(Boolean lazyLoadModules) {
+        if (lazyLoadModules) {
+            com.gmt2001.Console.out.println("Enabling Lazy Loading of Disabled Modules");
+        }
+        PhantomBot.lazyLoadModules = lazyLoadModules;
+    }
+
     /**
      * gen a random string
      */
@@ -1390,6 +1437,7 @@ public final class PhantomBot implements Listener {
         ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
         service.scheduleAtFixedRate(() -> {
             Thread.currentThread().setName("tv.phantombot.PhantomBot::doBackupDB");
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
 
             SimpleDateFormat datefmt = new SimpleDateFormat("ddMMyyyy.hhmmss");
             datefmt.setTimeZone(TimeZone.getTimeZone(timeZone));
@@ -1397,12 +1445,11 @@ public final class PhantomBot implements Listener {
 
             dataStore.backupDB("phantombot.auto.backup." + timestamp + ".db");
 
-            try {
-                Iterator<File> dirIterator = FileUtils.iterateFiles(new File("./dbbackup"), new WildcardFileFilter("phantombot.auto.*"), null);
-                while (dirIterator.hasNext()) {
-                    File backupFile = dirIterator.next();
-                    if (FileUtils.isFileOlder(backupFile, (System.currentTimeMillis() - (long) (backupDBKeepDays * 864e5)))) {
-                        FileUtils.deleteQuietly(backupFile);
+            try (DirectoryStream<Path> backupFiles = Files.newDirectoryStream(Paths.get("./dbbackup"), "phantombot.auto.*")) {
+                long cutoff = System.currentTimeMillis() - (long) (backupDBKeepDays * 864e5);
+                for (Path backupFile : backupFiles) {
+                    if (Files.getLastModifiedTime(backupFile).toMillis() < cutoff) {
+                        Files.deleteIfExists(backupFile);
                     }
                 }
             } catch (Exception ex) {
@@ -1471,37 +1518,15 @@ public final class PhantomBot implements Listener {
      * @param {String} fileName
      */
     public void toCSV(String[] headers, List<String[]> values, String fileName) {
-        StringBuilder builder = new StringBuilder();
-        FileOutputStream stream = null;
-
-        // Append the headers.
-        builder.append(String.join(",", headers)).append("\n");
-
-        // Append all values.
-        values.forEach((value) -> {
-            builder.append(String.join(",", value)).append("\n");
-        });
-
-        // Write the data to a file.
-        try {
-            // Create a new stream.
-            stream = new FileOutputStream(new File(fileName));
-
-            // Write the content.
-            stream.write(builder.toString().getBytes(Charset.forName("UTF-8")));
-            stream.flush();
+        // Write the rows as they are read instead of building the whole file first.
+        try (DataStoreTransfer.RowWriter writer = new DataStoreTransfer.RowWriter(fileName, headers)) {
+            for (String[] value : values) {
+                writer.write(value);
+            }
         } catch (IOException ex) {
             com.gmt2001.Console.err.println("Failed writing data to file [IOException]: " + ex.getMessage());
         } catch (SecurityException ex) {
             com.gmt2001.Console.err.println("Failed writing data to file [SecurityException]: " + ex.getMessage());
-        } finally {
-            if (stream != null) {
-                try {
-                    stream.close();
-                } catch (IOException ex) {
-                    com.gmt2001.Console.err.printStackTrace(ex);
-                }
-            }
         }
     }
 
@@ -1527,6 +1552,10 @@ public final class PhantomBot implements Listener {
         return silentScriptsLoad;
     }
 
+    public static Boolean getLazyLoadModules() {
+        return lazyLoadModules;
+    }
+
     public static Boolean getEnableDebugging() {
         return enableDebugging;
     }
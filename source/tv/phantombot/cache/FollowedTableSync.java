@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.cache;
+
+import com.gmt2001.ExponentialBackoff;
+import com.gmt2001.TwitchAPIv5;
+import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.DataStoreException;
+import java.util.Arrays;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Rebuilds the followed table from the full list of followers of the channel.
+ *
+ * The followers are read a page at a time with the cursor of the previous page, as fast as the shared
+ * {@link tv.phantombot.twitch.api.TwitchRateLimiter} allows. Like before, only the followers who are in the time table
+ * are kept. Each page is saved in one batch to a staging table, which replaces the followed table once the last page
+ * is read. The cursor and the counts are saved in the followedSync table after each page, so the panel can show the
+ * progress and a rebuild stopped by a restart continues from where it was.
+ *
+ * @author phantombot
+ */
+public class FollowedTableSync implements Runnable {
+    private static final FollowedTableSync INSTANCE = new FollowedTableSync();
+    private static final String STAGING_TABLE = "followed_fixtable";
+    private static final String STATE_TABLE = "followedSync";
+    private static final int PAGE_SIZE = 100;
+    private static final int PROGRESS_PAGES = 50;
+    private static final int MAX_FAILURES = 10;
+    private final ExponentialBackoff backoff = new ExponentialBackoff(1000, 5 * 60 * 1000);
+    private Thread thread = null;
+    private String channel;
+    private DataStore dataStore;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static FollowedTableSync instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private FollowedTableSync() {
+    }
+
+    /**
+     * Method that starts the rebuild, or continues the one that was saved.
+     *
+     * @param channel
+     * @param dataStore
+     * @param restart Discard the saved progress and start over
+     */
+    public synchronized void start(String channel, DataStore dataStore, boolean restart) {
+        if (thread != null && thread.isAlive()) {
+            com.gmt2001.Console.out.println("FixFollowedTable: Already running, " + dataStore.GetString(STATE_TABLE, "", "fetched") + "/"
+                    + dataStore.GetString(STATE_TABLE, "", "total") + " followers read.");
+            return;
+        }
+
+        if (restart || "done".equals(dataStore.GetString(STATE_TABLE, "", "status"))
+                || !channel.equalsIgnoreCase(dataStore.GetString(STATE_TABLE, "", "channel"))) {
+            dataStore.RemoveFile(STAGING_TABLE);
+            dataStore.RemoveFile(STATE_TABLE);
+        }
+
+        this.channel = channel;
+        this.dataStore = dataStore;
+        this.thread = new Thread(this, "tv.phantombot.cache.FollowedTableSync");
+        this.thread.setDaemon(true);
+        this.thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+        this.thread.start();
+    }
+
+    /**
+     * Method that continues a rebuild which was stopped by a restart.
+     *
+     * @param channel
+     * @param dataStore
+     */
+    public void resume(String channel, DataStore dataStore) {
+        if ("running".equals(dataStore.GetString(STATE_TABLE, "", "status"))) {
+            com.gmt2001.Console.out.println("FixFollowedTable: Continuing the rebuild of the followed table.");
+            start(channel, dataStore, false);
+        }
+    }
+
+    @Override
+    public void run() {
+        String cursor = getState("cursor", "");
+        long fetched = Long.parseLong(getState("fetched", "0"));
+        long inserted = Long.parseLong(getState("inserted", "0"));
+        long total = Long.parseLong(getState("total", "0"));
+        long start = System.currentTimeMillis();
+        int pages = 0;
+
+        com.gmt2001.Console.out.println("FixFollowedTable: Retrieving followers that exist in the time table" + (fetched > 0 ? ", starting after " + fetched + " followers." : "."));
+        saveState(cursor, fetched, inserted, total, "running");
+
+        while (true) {
+            JSONObject page = getPage(cursor);
+
+            if (page == null) {
+                saveState(cursor, fetched, inserted, total, "failed");
+                com.gmt2001.Console.err.println("FixFollowedTable: Stopped after " + fetched + " followers, the Twitch API keeps failing. Run fixfollowedtable again to continue.");
+                return;
+            }
+
+            JSONArray follows = page.getJSONArray("follows");
+            int saved = savePage(follows);
+
+            // Keep the cursor on this page, so running it again reads the page again.
+            if (saved < 0) {
+                saveState(cursor, fetched, inserted, total, "failed");
+                com.gmt2001.Console.err.println("FixFollowedTable: Stopped after " + fetched + " followers, the database keeps failing. Run fixfollowedtable again to continue.");
+                return;
+            }
+
+            total = page.optLong("_total", total);
+            fetched += follows.length();
+            inserted += saved;
+            cursor = page.isNull("_cursor") ? "" : page.optString("_cursor", "");
+            pages++;
+
+            saveState(cursor, fetched, inserted, total, "running");
+
+            if (cursor.isEmpty() || follows.length() == 0) {
+                break;
+            }
+
+            if (pages % PROGRESS_PAGES == 0) {
+                com.gmt2001.Console.out.println("FixFollowedTable: " + fetched + "/" + total + " followers read, " + inserted + " are in the time table.");
+            }
+        }
+
+        // Catch up on the follows made while the rebuild was running, they are on the first page.
+        JSONObject newest = getPage("");
+
+        if (newest != null && savePage(newest.getJSONArray("follows")) < 0) {
+            saveState(cursor, fetched, inserted, total, "failed");
+            com.gmt2001.Console.err.println("FixFollowedTable: Stopped before replacing the followed table, the database keeps failing. Run fixfollowedtable again to continue.");
+            return;
+        }
+
+        dataStore.AddFile(STAGING_TABLE);
+        dataStore.RenameFile(STAGING_TABLE, "followed");
+        saveState("", fetched, inserted, total, "done");
+        FollowersCache.instance(channel).reloadKnown();
+
+        com.gmt2001.Console.out.println("FixFollowedTable: Pulled followers into the followed table, loaded " + inserted + "/" + fetched + " records in "
+                + ((System.currentTimeMillis() - start) / 1000) + " seconds.");
+    }
+
+    /**
+     * Reads a page of followers, trying again with a growing wait when it fails.
+     *
+     * @return The page, or null if it failed too many times
+     */
+    private JSONObject getPage(String cursor) {
+        for (int failures = 0; failures < MAX_FAILURES; failures++) {
+            try {
+                JSONObject page = TwitchAPIv5.instance().GetChannelFollowsCursor(channel, PAGE_SIZE, cursor);
+
+                if (page.getBoolean("_success") && page.getInt("_http") == 200 && page.has("follows")) {
+                    backoff.Reset();
+                    return page;
+                }
+
+                com.gmt2001.Console.debug.println("FixFollowedTable: Failed to read a page of followers: HTTP " + page.optInt("_http") + " " + page.optString("_exceptionMessage"));
+            } catch (JSONException ex) {
+                com.gmt2001.Console.debug.println("FixFollowedTable: Failed to read a page of followers: " + ex.getMessage());
+            }
+
+            backoff.Backoff();
+        }
+
+        return null;
+    }
+
+    /**
+     * Saves the followers of a page who are in the time table to the staging table, in one batch, trying again with a
+     * growing wait when it fails.
+     *
+     * @return The number of followers saved, or -1 if it failed too many times
+     */
+    private int savePage(JSONArray follows) {
+        String[] logins = new String[follows.length()];
+        int count = 0;
+
+        for (int i = 0; i < follows.length(); i++) {
+            JSONObject user = follows.getJSONObject(i).optJSONObject("user");
+
+            if (user != null && user.has("name")) {
+                logins[count++] = user.getString("name").toLowerCase();
+            }
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        for (int failures = 0; failures < MAX_FAILURES; failures++) {
+            try {
+                String[] known = dataStore.GetExistingKeys("time", "", Arrays.copyOf(logins, count));
+
+                if (known.length == 0) {
+                    backoff.Reset();
+                    return 0;
+                }
+
+                String[] values = new String[known.length];
+                Arrays.fill(values, "true");
+
+                if (dataStore.SetBatchString(STAGING_TABLE, "", known, values)) {
+                    backoff.Reset();
+                    return known.length;
+                }
+
+                com.gmt2001.Console.debug.println("FixFollowedTable: Failed to save a page of followers to " + STAGING_TABLE);
+            } catch (DataStoreException ex) {
+                com.gmt2001.Console.debug.println("FixFollowedTable: Failed to read the time table: " + ex.getMessage());
+            }
+
+            backoff.Backoff();
+        }
+
+        return -1;
+    }
+
+    private String getState(String key, String def) {
+        String value = dataStore.GetString(STATE_TABLE, "", key);
+        return value == null || value.isEmpty() ? def : value;
+    }
+
+    private void saveState(String cursor, long fetched, long inserted, long total, String status) {
+        dataStore.SetBatchString(STATE_TABLE, "", new String[]{"channel", "cursor", "fetched", "inserted", "total", "status", "updated"},
+                new String[]{channel, cursor, Long.toString(fetched), Long.toString(inserted), Long.toString(total), status, Long.toString(System.currentTimeMillis())});
+    }
+}
@@ -16,14 +16,16 @@
  */
 package tv.phantombot.cache;
 
+import com.gmt2001.HttpResponse;
 import com.gmt2001.TwitchAPIv5;
-import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.DataStoreException;
+import com.gmt2001.json.JsonReader;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import tv.phantombot.PhantomBot;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.twitch.follower.TwitchFollowEvent;
@@ -32,6 +34,12 @@ import tv.phantombot.event.twitch.follower.TwitchFollowsInitializedEvent;
 public class FollowersCache implements Runnable {
 
     private static final Map<String, FollowersCache> instances = new HashMap<String, FollowersCache>();
+    private static final long MIN_INTERVAL = 10 * 1000;
+    private static final long DEFAULT_INTERVAL = 30 * 1000;
+    private static final long MAX_INTERVAL = 90 * 1000;
+    private static final long RELOAD_INTERVAL = 6 * 60 * 60 * 1000;
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 10;
     private final Thread updateThread;
     private final String channelName;
     private Date timeoutExpire = new Date();
@@ -40,6 +48,9 @@ public class FollowersCache implements Runnable {
     private Boolean hasFail = false;
     private Boolean killed = false;
     private int numfail = 0;
+    private long interval = DEFAULT_INTERVAL;
+    private volatile long nextReload = 0;
+    private KnownFollowers knownFollowers = null;
 
     /*
      * @function instance
@@ -96,7 +107,7 @@ public class FollowersCache implements Runnable {
             }
 
             try {
-                Thread.sleep(30 * 1000);
+                Thread.sleep(interval);
             } catch (InterruptedException ex) {
                 com.gmt2001.Console.err.println("FollowersCache.run: Failed to sleep [InterruptedException]: " + ex.getMessage());
             }
@@ -109,37 +120,137 @@ public class FollowersCache implements Runnable {
     private void updateCache() throws Exception {
         com.gmt2001.Console.debug.println("FollowersCache::updateCache");
 
-        JSONObject jsonObject = TwitchAPIv5.instance().GetChannelFollows(this.channelName, 100, 0, false);
-        Map<String, String> newCache = new HashMap<String, String>();
-        DataStore datastore = PhantomBot.instance().getDataStore();
+        if (knownFollowers == null) {
+            knownFollowers = new KnownFollowers(PhantomBot.instance().getDataStore());
+        }
 
-        if (jsonObject.getBoolean("_success")) {
-            if (jsonObject.getInt("_http") == 200) {
-                JSONArray jsonArray = jsonObject.getJSONArray("follows");
+        // Reload the known followers now and then, other scripts also write to the followed table.
+        if (System.currentTimeMillis() >= nextReload) {
+            com.gmt2001.Console.debug.println("FollowersCache::updateCache: loaded " + knownFollowers.load() + " known followers");
+            nextReload = System.currentTimeMillis() + RELOAD_INTERVAL;
+        }
 
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    String follower = jsonArray.getJSONObject(i).getJSONObject("user").getString("name").toLowerCase();
+        List<String> newFollowers = new ArrayList<>();
 
-                    if (!datastore.exists("followed", follower)) {
-                        EventBus.instance().post(new TwitchFollowEvent(follower));
-                        datastore.set("followed", follower, "true");
-                    }
-                }
-            } else {
-                throw new Exception("[HTTPErrorException] HTTP " + jsonObject.getInt("_http") + " " + jsonObject.getString("error") + ". req="
-                                    + jsonObject.getString("_type") + " " + jsonObject.getString("_url") + " " + jsonObject.getString("_post") + "  "
-                                    + (jsonObject.has("message") && !jsonObject.isNull("message") ? "message=" + jsonObject.getString("message") : "content=" + jsonObject.getString("_content")));
+        /*
+         * Walk back through the follows while a whole page is new, so a follow train of more than one page between polls
+         * is not missed. Stops at the first page with a known follower.
+         */
+        for (int page = 0; page < MAX_PAGES; page++) {
+            List<String> follows = getFollows(page * PAGE_SIZE);
+            List<String> unknown;
+
+            try {
+                unknown = knownFollowers.unknown(follows);
+            } catch (DataStoreException ex) {
+                // Without the table every follower would look new, try again on the next poll instead.
+                com.gmt2001.Console.err.println("FollowersCache::updateCache: Failed to read the followed table, skipping this poll: " + ex.getMessage());
+                return;
+            }
+
+            newFollowers.addAll(unknown);
+
+            // Nothing is announced before the first update is done, there is no need to go further back on it.
+            if (firstUpdate || unknown.size() < follows.size() || follows.size() < PAGE_SIZE) {
+                break;
+            }
+
+            com.gmt2001.Console.debug.println("FollowersCache::updateCache: page " + page + " is all new followers, reading the next page");
+        }
+
+        if (!newFollowers.isEmpty()) {
+            knownFollowers.add(newFollowers);
+
+            // Announce them in the order they followed.
+            for (int i = newFollowers.size() - 1; i >= 0; i--) {
+                EventBus.instance().post(new TwitchFollowEvent(newFollowers.get(i)));
             }
-        } else {
-            throw new Exception("[" + jsonObject.getString("_exception") + "] " + jsonObject.getString("_exceptionMessage"));
         }
 
+        // Poll faster while people are following, and slow down when nothing happens.
+        interval = newFollowers.isEmpty() ? Math.min(MAX_INTERVAL, interval + 10 * 1000) : Math.max(MIN_INTERVAL, interval / 2);
+
         if (!killed && firstUpdate) {
             firstUpdate = false;
             EventBus.instance().post(new TwitchFollowsInitializedEvent());
         }
     }
 
+    /*
+     * @function getFollows
+     *
+     * @param  {int} offset
+     * @return {List} The login of the followers, newest first
+     */
+    private List<String> getFollows(int offset) throws Exception {
+        HttpResponse response = TwitchAPIv5.instance().GetChannelFollowsRaw(this.channelName, PAGE_SIZE, offset);
+
+        if (!response.success && response.httpCode == 0) {
+            throw new Exception("[" + response.exception + "] " + response.url);
+        }
+
+        if (response.httpCode != 200) {
+            throw new Exception("[HTTPErrorException] HTTP " + response.httpCode + ". req=" + response.type + " " + response.url + "  content=" + response.content);
+        }
+
+        List<String> follows = new ArrayList<>(PAGE_SIZE);
+        readFollows(response.content, follows);
+        return follows;
+    }
+
+    /**
+     * Method that reads the logins of a follows page, {"_total":1,"follows":[{"created_at":"...","user":{"name":"user",...}}]}.
+     *
+     * @param {String} json
+     * @param {List}   follows
+     */
+    static void readFollows(String json, List<String> follows) {
+        JsonReader reader = new JsonReader(json);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("follows") || reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("user") || reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (!reader.nextName().equals("name")) {
+                            reader.skipValue();
+                            continue;
+                        }
+
+                        String name = reader.nextOptString(null);
+                        if (name != null) {
+                            follows.add(name.toLowerCase());
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    /*
+     * @function reloadKnown
+     */
+    public void reloadKnown() {
+        this.nextReload = 0;
+    }
+
     /*
      * @function checkLastFail
      */
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.cache;
+
+import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.DataStoreException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The followers already in the followed table, kept in memory so a page of follows can be checked without a query per
+ * user.
+ *
+ * An LRU holds the followers seen recently, which covers the newest page coming back on every poll. Behind it, a
+ * Bloom filter loaded from the table answers "definitely not a follower" without touching the database; the users it
+ * might contain are confirmed with one batched query.
+ */
+final class KnownFollowers {
+
+    private static final String TABLE = "followed";
+    private static final int LRU_SIZE = 10000;
+    private static final int MIN_EXPECTED = 100000;
+    private final DataStore datastore;
+    private final Map<String, Boolean> recent = new LinkedHashMap<String, Boolean>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > LRU_SIZE;
+        }
+    };
+    private BloomFilter bloom = new BloomFilter(MIN_EXPECTED);
+    private long loaded = 0;
+    private volatile boolean stale = false;
+    private volatile Thread writer = null;
+
+    /**
+     * Class constructor.
+     *
+     * @param datastore
+     */
+    KnownFollowers(DataStore datastore) {
+        this.datastore = datastore;
+
+        // Rows can be removed from the table by scripts (cleanup, etc.), the recent followers are checked again after that.
+        this.datastore.addChangeListener(TABLE, () -> {
+            if (Thread.currentThread() != writer) {
+                stale = true;
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the Bloom filter from the followed table.
+     *
+     * @return The number of followers loaded
+     * @throws DataStoreException if the table could not be read, then the previous filter is kept
+     */
+    synchronized long load() {
+        BloomFilter filter = new BloomFilter(Math.max(MIN_EXPECTED, loaded * 2));
+        long count = datastore.StreamTable(TABLE, 0, 5000, (batch) -> batch.forEach((row) -> filter.add(row[1])));
+
+        // The table outgrew the filter, size it for the new count so the false positive rate stays low.
+        if (count > filter.expected) {
+            loaded = count;
+            return load();
+        }
+
+        bloom = filter;
+        loaded = count;
+        return count;
+    }
+
+    /**
+     * Returns the followers of a page that are not in the followed table, in the order of the page.
+     *
+     * @param page
+     * @return
+     * @throws DataStoreException if the table could not be read, then nothing is known about the page
+     */
+    synchronized List<String> unknown(List<String> page) {
+        List<String> maybe = new ArrayList<>();
+
+        if (stale) {
+            stale = false;
+            recent.clear();
+        }
+
+        for (String follower : page) {
+            if (recent.get(follower) == null && bloom.mightContain(follower)) {
+                maybe.add(follower);
+            }
+        }
+
+        Set<String> existing = maybe.isEmpty() ? Collections.emptySet()
+                : new HashSet<>(Arrays.asList(datastore.GetExistingKeys(TABLE, null, maybe.toArray(new String[maybe.size()]))));
+        List<String> unknown = new ArrayList<>();
+
+        for (String follower : page) {
+            if (recent.get(follower) != null || existing.contains(follower)) {
+                recent.put(follower, Boolean.TRUE);
+            } else {
+                unknown.add(follower);
+            }
+        }
+
+        return unknown;
+    }
+
+    /**
+     * Writes new followers to the followed table, in one batch.
+     *
+     * @param followers
+     */
+    synchronized void add(List<String> followers) {
+        if (followers.isEmpty()) {
+            return;
+        }
+
+        String[] values = new String[followers.size()];
+        Arrays.fill(values, "true");
+
+        boolean saved;
+
+        // Our own writes do not make the recent followers stale.
+        writer = Thread.currentThread();
+        try {
+            saved = datastore.SetBatchString(TABLE, "", followers.toArray(new String[followers.size()]), values);
+        } finally {
+            writer = null;
+        }
+
+        // Followers which were not written stay unknown, so they are written again with the next page.
+        if (!saved) {
+            return;
+        }
+
+        for (String follower : followers) {
+            bloom.add(follower);
+            recent.put(follower, Boolean.TRUE);
+        }
+
+        loaded += followers.size();
+    }
+
+    /**
+     * A fixed size Bloom filter with a 1% false positive rate at its expected number of entries.
+     */
+    private static final class BloomFilter {
+
+        private final long expected;
+        private final long[] bits;
+        private final int size;
+        private final int hashes;
+
+        private BloomFilter(long expected) {
+            this.expected = expected;
+            // m = -n ln(p) / ln(2)^2 and k = m / n ln(2), with p = 0.01
+            long m = (long) Math.ceil(-expected * Math.log(0.01) / (Math.log(2) * Math.log(2)));
+            this.size = (int) Math.min(Integer.MAX_VALUE - 64, Math.max(64, m));
+            this.bits = new long[(size + 63) / 64];
+            this.hashes = Math.max(1, (int) Math.round((double) size / expected * Math.log(2)));
+        }
+
+        private void add(String key) {
+            long h = hash(key);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+
+            for (int i = 0; i < hashes; i++) {
+                int bit = Math.floorMod(h1 + i * h2, size);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        private boolean mightContain(String key) {
+            long h = hash(key);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+
+            for (int i = 0; i < hashes; i++) {
+                int bit = Math.floorMod(h1 + i * h2, size);
+
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * 64 bit FNV-1a followed by a murmur finalizer, split into two 32 bit hashes for double hashing.
+         */
+        private static long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -17,20 +17,22 @@
 
 package tv.phantombot.cache;
 
+import com.gmt2001.HttpResponse;
 import com.gmt2001.TwitchAPIv5;
+import com.gmt2001.json.JsonReader;
 import java.util.ArrayList;
 import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.irc.channel.IrcChannelUsersUpdateEvent;
 
 public class ViewerListCache implements Runnable {
+    private static final Set<String> TYPES = Set.of("moderators", "staff", "admins", "vips", "viewers");
     private static ViewerListCache instance = null;
     private final String channelName;
     private final Thread thread;
-    private List<String> cache = new ArrayList<>();
+    private Set<String> cache = ConcurrentHashMap.newKeySet();
     private boolean isKilled = false;
 
     /**
@@ -91,62 +93,82 @@ public class ViewerListCache implements Runnable {
      * Method that updates the cache.
      */
     private void updateCache() throws Exception {
-        String[] types = new String[] { "moderators", "staff", "admins", "vips", "viewers" };
-        List<String> cache = new ArrayList<>();
+        Set<String> cache = ConcurrentHashMap.newKeySet();
         List<String> joins = new ArrayList<>();
         List<String> parts = new ArrayList<>();
 
         com.gmt2001.Console.debug.println("ViewerListCache::updateCache");
         try {
-            JSONObject object = TwitchAPIv5.instance().GetChatUsers(channelName);
-            JSONObject chatters;
+            HttpResponse response = TwitchAPIv5.instance().GetChatUsersRaw(channelName);
 
-            if (object.getBoolean("_success") && object.getInt("_http") == 200) {
-                if (object.getInt("chatter_count") == 0) {
+            if (response.success && response.httpCode == 200) {
+                // Read the chatters straight into the new cache, the list can have a lot of users.
+                readChatters(response.content, cache);
+
+                if (cache.isEmpty()) {
                     this.cache = cache;
                     return;
                 }
 
-                // Add the new chatters to a new cache.
-                chatters = object.getJSONObject("chatters");
-                for (String type : types) {
-                    JSONArray array = chatters.getJSONArray(type);
-                    for (int i = 0; i < array.length(); i++) {
-                        cache.add(array.getString(i));
-                    }
-                }
-
                 // Check for new users that joined.
-                for (int i = 0; i < cache.size(); i++) {
-                    if (!this.cache.contains(cache.get(i))) {
-                        joins.add(cache.get(i));
+                for (String username : cache) {
+                    if (!this.cache.contains(username)) {
+                        joins.add(username);
                     }
                 }
 
                 // Check for old users that left.
-                for (int i = 0; i < this.cache.size(); i++) {
-                    if (!cache.contains(this.cache.get(i))) {
-                        parts.add(this.cache.get(i));
+                for (String username : this.cache) {
+                    if (!cache.contains(username)) {
+                        parts.add(username);
                     }
                 }
 
                 EventBus.instance().post(new IrcChannelUsersUpdateEvent(joins.toArray(new String[joins.size()]), parts.toArray(new String[parts.size()])));
                 // Set the new cache.
                 this.cache = cache;
-                // Delete the temp caches.
-                cache = null;
-                parts = null;
-                joins = null;
-                // Run the GC to clear memory,
-                System.gc();
             } else {
-                com.gmt2001.Console.debug.println("Failed to update viewers cache: " + object);
+                com.gmt2001.Console.debug.println("Failed to update viewers cache: " + response);
             }
-        } catch (JSONException ex) {
+        } catch (IllegalStateException ex) {
             com.gmt2001.Console.debug.println("ViewerListCache::updateCache: Failed to update: " + ex.getMessage());
         }
     }
 
+    /**
+     * Method that reads the users of the chatters response, {"chatter_count":1,"chatters":{"viewers":["user"],...}}.
+     *
+     * @param {String} json
+     * @param {Set}    users
+     */
+    static void readChatters(String json, Set<String> users) {
+        JsonReader reader = new JsonReader(json);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("chatters") || reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!TYPES.contains(reader.nextName()) || reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    users.add(reader.nextString());
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
     /**
      * Method to check if a user is in the cache.
      *
@@ -19,7 +19,10 @@ package tv.phantombot.console;
 import com.gmt2001.HttpRequest;
 import com.gmt2001.HttpResponse;
 import com.gmt2001.TwitchAPIv5;
+import com.gmt2001.YouTubeMetadata;
 import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.DataStoreTransfer;
+import com.gmt2001.httpwsserver.WebSocketFrameHandler;
 import com.scaniatv.BotImporter;
 import com.scaniatv.GenerateLogs;
 import java.io.FileOutputStream;
@@ -59,6 +62,10 @@ import tv.phantombot.event.twitch.subscriber.TwitchSubscriberEvent;
 import tv.phantombot.event.twitch.subscriber.TwitchSubscriptionGiftEvent;
 import tv.phantombot.event.twitter.TwitterRetweetEvent;
 import tv.phantombot.script.Script;
+import tv.phantombot.script.ScriptCompiler;
+import tv.phantombot.script.ScriptExecutors;
+import tv.phantombot.script.ScriptFileWatcher;
+import tv.phantombot.twitch.irc.TwitchWSIRCParser;
 
 public class ConsoleEventHandler implements Listener {
 
@@ -139,30 +146,67 @@ public class ConsoleEventHandler implements Listener {
         }
 
         /**
-         * @consolecommand exportpoints - This command exports points and time to a CSV file.
+         * @consolecommand exportpoints [file] - This command exports points and time to a CSV file, or NDJSON if the file ends in .json or .ndjson.
          */
         if (message.equalsIgnoreCase("exportpoints")) {
             com.gmt2001.Console.out.println("[CONSOLE] Executing exportpoints.");
 
-            // Top headers of the CSV file.
-            String[] headers = new String[]{"Username", "Seconds", "Points"};
-            // All points keys.
-            String[] keys = dataStore.GetKeyList("points", "");
-            // Array to store our values.
-            List<String[]> values = new ArrayList<>();
+            String fileName = (argument == null ? "points_export.csv" : arguments);
 
-            // Loop that gets all points and time.
-            for (String key : keys) {
-                String[] str = new String[3];
-                str[0] = key;
-                str[1] = (dataStore.exists("time", key) ? dataStore.get("time", key) : "0");
-                str[2] = dataStore.get("points", key);
-                values.add(str);
+            if (DataStoreTransfer.exportPointsAndTime(dataStore, fileName) >= 0) {
+                com.gmt2001.Console.out.println("[CONSOLE] Points have been exported to " + fileName);
             }
+            return;
+        }
 
-            // Export to CSV.
-            PhantomBot.instance().toCSV(headers, values, "points_export.csv");
-            com.gmt2001.Console.out.println("[CONSOLE] Points have been exported to points_export.csv");
+        /**
+         * @consolecommand importpoints [file] - This command imports points and time from a file made by exportpoints.
+         */
+        if (message.equalsIgnoreCase("importpoints")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing importpoints.");
+            if (argument == null) {
+                com.gmt2001.Console.out.println("You must specify the file name you want to import.");
+                return;
+            }
+
+            DataStoreTransfer.importPointsAndTime(dataStore, arguments);
+            return;
+        }
+
+        /**
+         * @consolecommand exporttable [table] [file] - This command exports every row of a table to a CSV file, or NDJSON if the file ends in .json or .ndjson.
+         */
+        if (message.equalsIgnoreCase("exporttable")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing exporttable.");
+            if (argument == null) {
+                com.gmt2001.Console.out.println("You must specify the table you want to export.");
+                return;
+            }
+
+            String fileName = (argument.length > 1 ? arguments.substring(arguments.indexOf(" ") + 1) : argument[0] + "_export.csv");
+
+            if (!dataStore.FileExists(argument[0])) {
+                com.gmt2001.Console.out.println("The table " + argument[0] + " does not exist.");
+                return;
+            }
+
+            if (DataStoreTransfer.exportTable(dataStore, argument[0], fileName) >= 0) {
+                com.gmt2001.Console.out.println("[CONSOLE] The table " + argument[0] + " has been exported to " + fileName);
+            }
+            return;
+        }
+
+        /**
+         * @consolecommand importtable [table] [file] - This command imports the rows of a table from a file made by exporttable.
+         */
+        if (message.equalsIgnoreCase("importtable")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing importtable.");
+            if (argument == null || argument.length < 2) {
+                com.gmt2001.Console.out.println("You must specify the table and the file name you want to import.");
+                return;
+            }
+
+            DataStoreTransfer.importTable(dataStore, argument[0], arguments.substring(arguments.indexOf(" ") + 1));
             return;
         }
 
@@ -260,7 +304,7 @@ public class ConsoleEventHandler implements Listener {
         }
 
         /**
-         * @consolecommand fixfollowedtable - Grabs the last 10,000 followers from the Twitch API.
+         * @consolecommand fixfollowedtable - Rebuilds the followed table from all followers on the Twitch API, continuing a rebuild that was stopped.
          */
         if (message.equalsIgnoreCase("fixfollowedtable")) {
             com.gmt2001.Console.out.println("[CONSOLE] Executing fixfollowedtable");
@@ -269,7 +313,7 @@ public class ConsoleEventHandler implements Listener {
         }
 
         /**
-         * @consolecommand fixfollowedtable-force - Grabs all followers from the Twitch API.
+         * @consolecommand fixfollowedtable-force - Rebuilds the followed table from all followers on the Twitch API, starting over.
          */
         if (message.equalsIgnoreCase("fixfollowedtable-force")) {
             com.gmt2001.Console.out.println("[CONSOLE] Executing fixfollowedtable-force");
@@ -277,6 +321,85 @@ public class ConsoleEventHandler implements Listener {
             return;
         }
 
+        /**
+         * @consolecommand scriptloadreport - Prints the time spent compiling and evaluating each module, and reloading them when reloadscripts is on.
+         */
+        if (message.equalsIgnoreCase("scriptloadreport")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing scriptloadreport");
+            com.gmt2001.Console.out.println(ScriptCompiler.instance().getReport());
+
+            if (PhantomBot.getReloadScripts()) {
+                com.gmt2001.Console.out.println(ScriptFileWatcher.instance().getReport());
+            }
+            return;
+        }
+
+        /**
+         * @consolecommand scriptexecutors - Prints the queue and latency of each script executor.
+         */
+        if (message.equalsIgnoreCase("scriptexecutors")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing scriptexecutors");
+            com.gmt2001.Console.out.println(ScriptExecutors.instance().getReport());
+            return;
+        }
+
+        /**
+         * @consolecommand youtubecache - Prints the hits of the YouTube metadata cache and the quota spent.
+         */
+        if (message.equalsIgnoreCase("youtubecache")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing youtubecache");
+            com.gmt2001.Console.out.println(YouTubeMetadata.instance().getReport());
+            return;
+        }
+
+        /**
+         * @consolecommand wsbroadcasts - Prints the sessions and broadcast fan-out latency of each WebSocket URI.
+         */
+        if (message.equalsIgnoreCase("wsbroadcasts")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing wsbroadcasts");
+            com.gmt2001.Console.out.println(WebSocketFrameHandler.getBroadcastReport());
+            return;
+        }
+
+        /**
+         * @consolecommand ircjoin [channel] - Joins another channel on the chat connection.
+         */
+        if (message.equalsIgnoreCase("ircjoin")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing ircjoin");
+
+            if (argument == null) {
+                com.gmt2001.Console.out.println("Usage: ircjoin [channel]");
+                return;
+            }
+
+            PhantomBot.instance().getSession().join(argument[0]);
+            return;
+        }
+
+        /**
+         * @consolecommand ircpart [channel] - Leaves a channel joined with ircjoin.
+         */
+        if (message.equalsIgnoreCase("ircpart")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing ircpart");
+
+            if (argument == null) {
+                com.gmt2001.Console.out.println("Usage: ircpart [channel]");
+                return;
+            }
+
+            PhantomBot.instance().getSession().part(argument[0]);
+            return;
+        }
+
+        /**
+         * @consolecommand ircchannels - Prints the number of lines parsed for each channel on the chat connection.
+         */
+        if (message.equalsIgnoreCase("ircchannels")) {
+            com.gmt2001.Console.out.println("[CONSOLE] Executing ircchannels");
+            TwitchWSIRCParser.getLineCounts().forEach((channel, lines) -> com.gmt2001.Console.out.println("#" + channel + ": " + lines + " lines"));
+            return;
+        }
+
         /**
          * @consolecommand jointest - Sends 30 fake join events or one specific user for testing.
          */
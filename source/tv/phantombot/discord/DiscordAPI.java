@@ -21,9 +21,16 @@ import discord4j.core.DiscordClient;
 import discord4j.core.DiscordClientBuilder;
 import discord4j.core.GatewayDiscordClient;
 import discord4j.core.event.domain.VoiceStateUpdateEvent;
+import discord4j.core.event.domain.channel.NewsChannelCreateEvent;
+import discord4j.core.event.domain.channel.NewsChannelDeleteEvent;
+import discord4j.core.event.domain.channel.NewsChannelUpdateEvent;
+import discord4j.core.event.domain.channel.TextChannelCreateEvent;
+import discord4j.core.event.domain.channel.TextChannelDeleteEvent;
+import discord4j.core.event.domain.channel.TextChannelUpdateEvent;
 import discord4j.core.event.domain.guild.GuildCreateEvent;
 import discord4j.core.event.domain.guild.MemberJoinEvent;
 import discord4j.core.event.domain.guild.MemberLeaveEvent;
+import discord4j.core.event.domain.guild.MemberUpdateEvent;
 import discord4j.core.event.domain.lifecycle.ReadyEvent;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.event.domain.message.ReactionAddEvent;
@@ -43,16 +50,16 @@ import discord4j.gateway.intent.IntentSet;
 import discord4j.rest.request.RouterOptions;
 import discord4j.rest.util.Snowflake;
 import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import reactor.core.publisher.Mono;
 import tv.phantombot.PhantomBot;
+import tv.phantombot.discord.util.DiscordGuildCache;
 import tv.phantombot.discord.util.DiscordUtil;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.discord.channel.DiscordChannelCommandEvent;
@@ -190,6 +197,22 @@ public class DiscordAPI extends DiscordUtil {
         DiscordAPI.gateway.getEventDispatcher().on(ReactionAddEvent.class).subscribe(event -> DiscordEventListener.onDiscordMessageReactionAddEvent(event));
         DiscordAPI.gateway.getEventDispatcher().on(ReactionRemoveEvent.class).subscribe(event -> DiscordEventListener.onDiscordMessageReactionRemoveEvent(event));
         DiscordAPI.gateway.getEventDispatcher().on(VoiceStateUpdateEvent.class).subscribe(event -> DiscordEventListener.onDiscordVoiceStateUpdateEvent(event));
+
+        /* Keep the local guild cache in sync. */
+        // A failed member fetch is dropped here, an error would end the subscription and stop the cache from updating.
+        DiscordAPI.gateway.getEventDispatcher().on(MemberUpdateEvent.class).flatMap(event -> event.getMember().onErrorResume(e -> {
+            com.gmt2001.Console.debug.println("Failed to get an updated member: " + e.getMessage());
+            return Mono.empty();
+        })).subscribe(member -> {
+            DiscordGuildCache.instance().putMember(member);
+            DiscordAPI.instance().clearAdministratorCache(member.getId().asLong());
+        });
+        DiscordAPI.gateway.getEventDispatcher().on(TextChannelCreateEvent.class).subscribe(event -> DiscordGuildCache.instance().putChannel(event.getChannel()));
+        DiscordAPI.gateway.getEventDispatcher().on(TextChannelUpdateEvent.class).subscribe(event -> DiscordGuildCache.instance().putChannel(event.getCurrent()));
+        DiscordAPI.gateway.getEventDispatcher().on(TextChannelDeleteEvent.class).subscribe(event -> DiscordGuildCache.instance().removeChannel(event.getChannel().getId().asLong()));
+        DiscordAPI.gateway.getEventDispatcher().on(NewsChannelCreateEvent.class).subscribe(event -> DiscordGuildCache.instance().putChannel(event.getChannel()));
+        DiscordAPI.gateway.getEventDispatcher().on(NewsChannelUpdateEvent.class).subscribe(event -> DiscordGuildCache.instance().putChannel(event.getCurrent()));
+        DiscordAPI.gateway.getEventDispatcher().on(NewsChannelDeleteEvent.class).subscribe(event -> DiscordGuildCache.instance().removeChannel(event.getChannel().getId().asLong()));
     }
 
     /**
@@ -278,6 +301,7 @@ public class DiscordAPI extends DiscordUtil {
             reconnectState = ConnectionState.CANNOT_RECONNECT;
         } else {
             DiscordAPI.guild = events.get(0).getGuild();
+            DiscordGuildCache.instance().load(DiscordAPI.guild);
         }
     }
 
@@ -308,8 +332,7 @@ public class DiscordAPI extends DiscordUtil {
      */
     private static class DiscordEventListener {
 
-        private static final List<Long> processedMessages = new CopyOnWriteArrayList<>();
-        private static final Timer listTimer = new Timer();
+        private static final ProcessedMessages processedMessages = new ProcessedMessages(5000);
 
         private DiscordEventListener() {
         }
@@ -338,67 +361,68 @@ public class DiscordAPI extends DiscordUtil {
 
         public static void onDiscordMessageEvent(MessageCreateEvent event) {
             Message iMessage = event.getMessage();
-            if (iMessage.getContent() == null || processedMessages.contains(iMessage.getId().asLong())) {
+            if (iMessage.getContent() == null || !processedMessages.add(iMessage.getId().asLong())) {
                 return;
             }
 
-            iMessage.getChannel().timeout(Duration.ofMillis(500)).doOnSuccess(iChannel -> {
-                User iUser = event.getMember().isPresent() ? event.getMember().get() : ((PrivateChannel) iChannel).getRecipients().take(1).singleOrEmpty().block(Duration.ofMillis(500));
+            iMessage.getChannel().timeout(Duration.ofMillis(500)).flatMap(iChannel -> {
+                Mono<User> author = event.getMember().isPresent() ? Mono.just(event.getMember().get())
+                        : ((PrivateChannel) iChannel).getRecipients().take(1).singleOrEmpty().timeout(Duration.ofMillis(500));
 
-                if (iUser == null || (DiscordAPI.selfId.isPresent() && iUser.getId().equals(DiscordAPI.selfId.get()))) {
-                    return;
-                }
+                return author.filter(iUser -> !DiscordAPI.selfId.isPresent() || !iUser.getId().equals(DiscordAPI.selfId.get()))
+                        .flatMap(iUser -> DiscordAPI.instance().isAdministratorAsync(iUser).timeout(Duration.ofMillis(500), Mono.just(false))
+                        .doOnNext(isAdmin -> handleMessage(iUser, iChannel, iMessage, isAdmin)));
+            }).doOnError(e -> com.gmt2001.Console.debug.printStackTrace(e)).subscribe();
+        }
 
-                String username = iUser.getUsername().toLowerCase();
-                String message = iMessage.getContent();
-                String channel;
-                Mono<Boolean> isAdmin = DiscordAPI.instance().isAdministratorAsync(iUser);
-
-                processedMessages.add(iMessage.getId().asLong());
-                listTimer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        processedMessages.remove(iMessage.getId().asLong());
-                    }
-                }, 5000);
-
-                if (iChannel.getType() == Channel.Type.DM) {
-                    channel = "DM";
-                } else {
-                    channel = "#" + ((GuildMessageChannel) iChannel).getName();
-                }
+        private static void handleMessage(User iUser, Channel iChannel, Message iMessage, boolean isAdmin) {
+            String username = iUser.getUsername().toLowerCase();
+            String message = iMessage.getContent();
+            String channel;
 
-                if (message == null || message.isEmpty()) {
-                    return;
-                }
+            if (iChannel.getType() == Channel.Type.DM) {
+                channel = "DM";
+            } else {
+                channel = "#" + ((GuildMessageChannel) iChannel).getName();
+            }
 
-                com.gmt2001.Console.out.println("[DISCORD] [" + channel + "] " + username + ": " + message);
+            if (message == null || message.isEmpty()) {
+                return;
+            }
 
-                if (message.charAt(0) == '!') {
-                    DiscordAPI.instance().parseCommand(iUser, iChannel, iMessage, isAdmin.block(Duration.ofMillis(500)));
-                }
+            com.gmt2001.Console.out.println("[DISCORD] [" + channel + "] " + username + ": " + message);
 
-                EventBus.instance().postAsync(new DiscordChannelMessageEvent(iUser, iChannel, iMessage, isAdmin.block(Duration.ofMillis(500))));
-            }).doOnError(e -> com.gmt2001.Console.debug.printStackTrace(e)).subscribe();
+            if (message.charAt(0) == '!') {
+                DiscordAPI.instance().parseCommand(iUser, iChannel, iMessage, isAdmin);
+            }
+
+            EventBus.instance().postAsync(new DiscordChannelMessageEvent(iUser, iChannel, iMessage, isAdmin));
         }
 
         public static void onDiscordUserJoinEvent(MemberJoinEvent event) {
+            DiscordGuildCache.instance().putMember(event.getMember());
             EventBus.instance().postAsync(new DiscordChannelJoinEvent(event.getMember()));
         }
 
         public static void onDiscordUserLeaveEvent(MemberLeaveEvent event) {
+            DiscordGuildCache.instance().removeMember(event.getUser().getId().asLong());
             EventBus.instance().postAsync(new DiscordChannelPartEvent(event.getUser()));
         }
 
         public static void onDiscordRoleCreateEvent(RoleCreateEvent event) {
+            DiscordGuildCache.instance().putRole(event.getRole());
             EventBus.instance().post(new DiscordRoleCreatedEvent(event.getRole()));
         }
 
         public static void onDiscordRoleUpdateEvent(RoleUpdateEvent event) {
+            DiscordGuildCache.instance().putRole(event.getCurrent());
+            DiscordAPI.instance().clearAdministratorCache();
             EventBus.instance().post(new DiscordRoleUpdatedEvent(event.getCurrent()));
         }
 
         public static void onDiscordRoleDeleteEvent(RoleDeleteEvent event) {
+            DiscordGuildCache.instance().removeRole(event.getRoleId().asLong());
+            DiscordAPI.instance().clearAdministratorCache();
             Role role = event.getRole().get();
 
             if (role == null) {
@@ -432,4 +456,43 @@ public class DiscordAPI extends DiscordUtil {
             }
         }
     }
+
+    /**
+     * Set of recently processed message ids, expired in time buckets instead of with a timer per message.
+     *
+     * Ids are remembered for between one and two bucket lengths.
+     */
+    private static class ProcessedMessages {
+
+        private final long bucketMillis;
+        private Set<Long> current = new HashSet<>();
+        private Set<Long> previous = new HashSet<>();
+        private long currentBucket = 0;
+
+        private ProcessedMessages(long bucketMillis) {
+            this.bucketMillis = bucketMillis;
+        }
+
+        /**
+         * Adds an id to the set.
+         *
+         * @param id
+         * @return false if the id was already processed recently
+         */
+        private synchronized boolean add(long id) {
+            long bucket = System.currentTimeMillis() / bucketMillis;
+
+            if (bucket != currentBucket) {
+                previous = bucket == currentBucket + 1 ? current : new HashSet<>();
+                current = new HashSet<>();
+                currentBucket = bucket;
+            }
+
+            if (previous.contains(id)) {
+                return false;
+            }
+
+            return current.add(id);
+        }
+    }
 }
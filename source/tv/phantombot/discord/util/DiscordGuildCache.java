@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.discord.util;
+
+import discord4j.core.object.entity.Guild;
+import discord4j.core.object.entity.Member;
+import discord4j.core.object.entity.Role;
+import discord4j.core.object.entity.channel.GuildMessageChannel;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local copy of the members, roles, and message channels of the guild.
+ *
+ * Entities are indexed by id and by lower-cased name, and kept up to date from gateway events so lookups by name
+ * do not have to stream the whole guild from Discord4J.
+ *
+ * @author gmt2001
+ */
+public class DiscordGuildCache {
+
+    private static final DiscordGuildCache INSTANCE = new DiscordGuildCache();
+    private static final Pattern MENTION_PATTERN = Pattern.compile("^<[@#][!&]?(\\d+)>$");
+    private final EntityIndex<Member> members = new EntityIndex<>(m -> new String[]{m.getUsername(), m.getDisplayName()});
+    private final EntityIndex<Role> roles = new EntityIndex<>(r -> new String[]{r.getName()});
+    private final EntityIndex<GuildMessageChannel> channels = new EntityIndex<>(c -> new String[]{c.getName()});
+
+    /**
+     * Method to return this class object.
+     *
+     * @return {Object}
+     */
+    public static DiscordGuildCache instance() {
+        return INSTANCE;
+    }
+
+    private DiscordGuildCache() {
+    }
+
+    /**
+     * Method that clears the cache and loads every member, role, and channel of the guild.
+     *
+     * @param guild
+     */
+    public void load(Guild guild) {
+        members.clear();
+        roles.clear();
+        channels.clear();
+
+        if (guild == null) {
+            return;
+        }
+
+        guild.getRoles().doOnNext(this::putRole).doOnError(e -> com.gmt2001.Console.err.logStackTrace(e)).subscribe();
+        guild.getChannels().ofType(GuildMessageChannel.class).doOnNext(this::putChannel).doOnError(e -> com.gmt2001.Console.err.logStackTrace(e)).subscribe();
+        guild.getMembers().doOnNext(this::putMember).doOnError(e -> com.gmt2001.Console.err.logStackTrace(e))
+                .doOnComplete(() -> com.gmt2001.Console.debug.println("DiscordGuildCache loaded " + members.size() + " members, " + roles.size() + " roles, "
+                + channels.size() + " channels")).subscribe();
+    }
+
+    public void putMember(Member member) {
+        members.put(member.getId().asLong(), member);
+    }
+
+    public void removeMember(long id) {
+        members.remove(id);
+    }
+
+    public void putRole(Role role) {
+        roles.put(role.getId().asLong(), role);
+    }
+
+    public void removeRole(long id) {
+        roles.remove(id);
+    }
+
+    public void putChannel(GuildMessageChannel channel) {
+        channels.put(channel.getId().asLong(), channel);
+    }
+
+    public void removeChannel(long id) {
+        channels.remove(id);
+    }
+
+    /**
+     * Method that finds a member by id, name, display name, or mention.
+     *
+     * @param name
+     * @return
+     */
+    public Optional<Member> findMember(String name) {
+        return members.find(name);
+    }
+
+    public Optional<Member> getMember(long id) {
+        return members.get(id);
+    }
+
+    /**
+     * Method that finds a role by id, name, or mention.
+     *
+     * @param name
+     * @return
+     */
+    public Optional<Role> findRole(String name) {
+        return roles.find(name);
+    }
+
+    public Optional<Role> getRole(long id) {
+        return roles.get(id);
+    }
+
+    /**
+     * Method that finds a message channel by id, name, or mention.
+     *
+     * @param name
+     * @return
+     */
+    public Optional<GuildMessageChannel> findChannel(String name) {
+        return channels.find(name);
+    }
+
+    public Optional<GuildMessageChannel> getChannel(long id) {
+        return channels.get(id);
+    }
+
+    private static Optional<Long> parseId(String value) {
+        Matcher m = MENTION_PATTERN.matcher(value);
+        String id = m.matches() ? m.group(1) : value;
+
+        if (id.isEmpty() || id.length() > 20 || !id.chars().allMatch(Character::isDigit)) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(Long.parseUnsignedLong(id));
+        } catch (NumberFormatException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Id to entity map with a case-insensitive name to id index.
+     */
+    private static class EntityIndex<T> {
+
+        private final Map<Long, T> byId = new ConcurrentHashMap<>();
+        private final Map<Long, String[]> namesById = new ConcurrentHashMap<>();
+        private final Map<String, Set<Long>> byName = new ConcurrentHashMap<>();
+        private final Function<T, String[]> names;
+
+        private EntityIndex(Function<T, String[]> names) {
+            this.names = names;
+        }
+
+        private synchronized void put(long id, T entity) {
+            remove(id);
+
+            String[] keys = names.apply(entity);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keys[i] == null ? null : keys[i].toLowerCase();
+
+                if (keys[i] != null) {
+                    byName.computeIfAbsent(keys[i], k -> ConcurrentHashMap.newKeySet()).add(id);
+                }
+            }
+
+            namesById.put(id, keys);
+            byId.put(id, entity);
+        }
+
+        private synchronized void remove(long id) {
+            String[] keys = namesById.remove(id);
+            byId.remove(id);
+
+            if (keys != null) {
+                for (String key : keys) {
+                    if (key != null) {
+                        byName.computeIfPresent(key, (k, ids) -> {
+                            ids.remove(id);
+                            return ids.isEmpty() ? null : ids;
+                        });
+                    }
+                }
+            }
+        }
+
+        private synchronized void clear() {
+            byId.clear();
+            namesById.clear();
+            byName.clear();
+        }
+
+        private int size() {
+            return byId.size();
+        }
+
+        private Optional<T> get(long id) {
+            return Optional.ofNullable(byId.get(id));
+        }
+
+        private Optional<T> find(String name) {
+            if (name == null || name.isEmpty()) {
+                return Optional.empty();
+            }
+
+            Set<Long> ids = byName.get(name.toLowerCase());
+
+            if (ids != null) {
+                for (Long id : ids) {
+                    T entity = byId.get(id);
+
+                    if (entity != null) {
+                        return Optional.of(entity);
+                    }
+                }
+            }
+
+            Optional<Long> id = parseId(name);
+            return id.isPresent() ? get(id.get()) : Optional.empty();
+        }
+    }
+}
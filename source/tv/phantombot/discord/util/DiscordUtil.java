@@ -42,9 +42,16 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import reactor.core.publisher.Flux;
@@ -69,6 +76,10 @@ public class DiscordUtil {
         "./scripts"
     };
 
+    private static final long ADMINISTRATOR_CACHE_MILLIS = 60000L;
+    private final Map<Long, AdministratorCacheEntry> administratorCache = new ConcurrentHashMap<>();
+    private final Map<String, ChannelSendQueue> sendQueues = new ConcurrentHashMap<>();
+
     public DiscordUtil() {
     }
 
@@ -159,6 +170,112 @@ public class DiscordUtil {
         return getChannelAsync(channelName).flatMap(channel -> sendMessageAsync(channel, message));
     }
 
+    /**
+     * Method to send a message to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channelName
+     * @param message
+     */
+    public void sendMessageQueued(String channelName, String message) {
+        queueSend(channelName, () -> sendMessageAsync(channelName, message));
+    }
+
+    /**
+     * Method to send an embed message to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channelName
+     * @param embed
+     */
+    public void sendMessageEmbedQueued(String channelName, Consumer<? super EmbedCreateSpec> embed) {
+        queueSend(channelName, () -> sendMessageEmbedAsync(channelName, embed));
+    }
+
+    /**
+     * Method to send an embed message to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channelName
+     * @param color
+     * @param message
+     */
+    public void sendMessageEmbedQueued(String channelName, String color, String message) {
+        queueSend(channelName, () -> sendMessageEmbedAsync(channelName, ebd
+                -> ebd.setColor(getColor(color)).setDescription(message)
+        ));
+    }
+
+    /**
+     * Method to send a file to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channelName
+     * @param message
+     * @param fileLocation
+     */
+    public void sendFileQueued(String channelName, String message, String fileLocation) {
+        queueSend(channelName, () -> sendFileAsync(channelName, message, fileLocation));
+    }
+
+    /**
+     * Method to send a file to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channelName
+     * @param fileLocation
+     */
+    public void sendFileQueued(String channelName, String fileLocation) {
+        sendFileQueued(channelName, "", fileLocation);
+    }
+
+    /**
+     * Method to send a message to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channel
+     * @param message
+     */
+    public void sendMessageQueued(MessageChannel channel, String message) {
+        queueSend(channel, () -> sendMessageAsync(channel, message));
+    }
+
+    /**
+     * Method to send an embed message to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channel
+     * @param color
+     * @param message
+     */
+    public void sendMessageEmbedQueued(GuildMessageChannel channel, String color, String message) {
+        queueSend(channel, () -> sendMessageEmbedAsync(channel, color, message));
+    }
+
+    /**
+     * Method to send a file to a channel without waiting for it. Messages queued to the same channel are sent in order.
+     *
+     * @param channel
+     * @param message
+     * @param fileLocation
+     */
+    public void sendFileQueued(GuildMessageChannel channel, String message, String fileLocation) {
+        queueSend(channel, () -> sendFileAsync(channel, message, fileLocation));
+    }
+
+    private void queueSend(String channelName, Supplier<Mono<Message>> send) {
+        String key = sanitizeChannelName(channelName).toLowerCase();
+        Optional<GuildMessageChannel> channel = DiscordGuildCache.instance().findChannel(key);
+
+        if (channel.isPresent()) {
+            key = channel.get().getName().toLowerCase();
+        }
+
+        sendQueues.computeIfAbsent(key, k -> new ChannelSendQueue()).add(send);
+    }
+
+    private void queueSend(MessageChannel channel, Supplier<Mono<Message>> send) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel object was null");
+        }
+
+        String key = channel instanceof GuildMessageChannel ? ((GuildMessageChannel) channel).getName().toLowerCase() : "@" + channel.getId().asString();
+        sendQueues.computeIfAbsent(key, k -> new ChannelSendQueue()).add(send);
+    }
+
     /**
      * Method to send private messages to a user.
      *
@@ -527,9 +644,15 @@ public class DiscordUtil {
 
     public Mono<GuildMessageChannel> getChannelAsync(String channelName) {
         String schannelName = sanitizeChannelName(channelName);
+        Optional<GuildMessageChannel> cached = DiscordGuildCache.instance().findChannel(schannelName);
+
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+
         try {
-            return DiscordAPI.getGuild().getChannels().filter(channel -> channel.getName().equalsIgnoreCase(schannelName)
-                    || channel.getId().asString().equals(schannelName)).take(1).single().map(c -> (GuildMessageChannel) c);
+            return DiscordAPI.getGuild().getChannels().ofType(GuildMessageChannel.class).filter(channel -> channel.getName().equalsIgnoreCase(schannelName)
+                    || channel.getId().asString().equals(schannelName)).take(1).single().doOnNext(DiscordGuildCache.instance()::putChannel);
         } catch (NoSuchElementException ex) {
             com.gmt2001.Console.err.println("Unable to find channelName [" + channelName + "]");
             throw ex;
@@ -548,12 +671,23 @@ public class DiscordUtil {
     }
 
     public Mono<GuildMessageChannel> getChannelByIDAsync(String channelId) {
+        Snowflake id;
+
         try {
-            return DiscordAPI.getGuild().getChannels().filter(channel -> channel.getId().asString().equals(channelId)).take(1).single().map(c -> (GuildMessageChannel) c);
-        } catch (NoSuchElementException ex) {
+            id = Snowflake.of(channelId.trim());
+        } catch (NumberFormatException ex) {
             com.gmt2001.Console.err.println("Unable to find channelId [" + channelId + "]");
-            throw ex;
+            return Mono.error(new NoSuchElementException("Invalid channelId [" + channelId + "]"));
+        }
+
+        Optional<GuildMessageChannel> cached = DiscordGuildCache.instance().getChannel(id.asLong());
+
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
         }
+
+        // A voice or category channel is not a message channel, it is returned as empty.
+        return DiscordAPI.getGuild().getChannelById(id).ofType(GuildMessageChannel.class).doOnNext(DiscordGuildCache.instance()::putChannel);
     }
 
     @Deprecated
@@ -568,6 +702,12 @@ public class DiscordUtil {
      * @return {User}
      */
     public Mono<User> getUserAsync(String userName) {
+        Optional<Member> cached = DiscordGuildCache.instance().findMember(userName);
+
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+
         Flux<Member> members = DiscordAPI.getGuild().getMembers();
 
         if (PhantomBot.getEnableDebugging()) {
@@ -581,7 +721,7 @@ public class DiscordUtil {
             com.gmt2001.Console.debug.println(filteredMembers.count().block());
         }
         try {
-            return filteredMembers.take(1).single().map(m -> (User) m);
+            return filteredMembers.take(1).single().doOnNext(DiscordGuildCache.instance()::putMember).map(m -> (User) m);
         } catch (NoSuchElementException ex) {
             com.gmt2001.Console.err.println("Unable to find userName [" + userName + "]");
             throw ex;
@@ -600,8 +740,14 @@ public class DiscordUtil {
      * @return {User}
      */
     public Mono<User> getUserByIdAsync(long userId) {
+        Optional<Member> cached = DiscordGuildCache.instance().getMember(userId);
+
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+
         try {
-            return DiscordAPI.getGuild().getMembers().filter(user -> user.getId().asLong() == userId).take(1).single().map(m -> (User) m);
+            return DiscordAPI.getGuild().getMembers().filter(user -> user.getId().asLong() == userId).take(1).single().doOnNext(DiscordGuildCache.instance()::putMember).map(m -> (User) m);
         } catch (NoSuchElementException ex) {
             com.gmt2001.Console.err.println("Unable to find userId [" + userId + "]");
             throw ex;
@@ -642,6 +788,12 @@ public class DiscordUtil {
      * @return {Role}
      */
     public Mono<Role> getRoleAsync(String roleName) {
+        Optional<Role> cached = DiscordGuildCache.instance().findRole(roleName);
+
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+
         Flux<Role> roles = DiscordAPI.getGuild().getRoles();
 
         if (PhantomBot.getEnableDebugging()) {
@@ -656,7 +808,7 @@ public class DiscordUtil {
         }
 
         try {
-            return filteredRoles.take(1).single();
+            return filteredRoles.take(1).single().doOnNext(DiscordGuildCache.instance()::putRole);
         } catch (NoSuchElementException ex) {
             com.gmt2001.Console.err.println("Unable to find roleName [" + roleName + "]");
             throw ex;
@@ -675,12 +827,22 @@ public class DiscordUtil {
      * @return {Role}
      */
     public Mono<Role> getRoleByIDAsync(String id) {
+        Snowflake roleId;
+
         try {
-            return DiscordAPI.getGuild().getRoles().filter(role -> role.getId().asString().equalsIgnoreCase(id)).take(1).single();
-        } catch (NoSuchElementException ex) {
+            roleId = Snowflake.of(id.trim());
+        } catch (NumberFormatException ex) {
             com.gmt2001.Console.err.println("Unable to find roleId [" + id + "]");
-            throw ex;
+            return Mono.error(new NoSuchElementException("Invalid roleId [" + id + "]"));
         }
+
+        Optional<Role> cached = DiscordGuildCache.instance().getRole(roleId.asLong());
+
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+
+        return DiscordAPI.getGuild().getRoleById(roleId).doOnNext(DiscordGuildCache.instance()::putRole);
     }
 
     /**
@@ -695,9 +857,7 @@ public class DiscordUtil {
     }
 
     public Mono<Role[]> getRoleObjectsAsync(String... roles) {
-        return Mono.fromCallable(() -> {
-            return Flux.fromArray(roles).map(r -> getRoleAsync(r).block()).toStream().toArray(i -> new Role[i]);
-        });
+        return Flux.fromArray(roles).concatMap(r -> getRoleAsync(r)).collectList().map(l -> l.toArray(new Role[0]));
     }
 
     /**
@@ -902,7 +1062,34 @@ public class DiscordUtil {
             throw new IllegalArgumentException("user object was null");
         }
 
-        return user.asMember(DiscordAPI.getGuild().getId()).onErrorReturn(null).flatMap(m -> m.getBasePermissions()).map(ps -> ps != null && ps.contains(Permission.ADMINISTRATOR));
+        long userId = user.getId().asLong();
+        AdministratorCacheEntry cached = administratorCache.get(userId);
+
+        if (cached != null && cached.expires > System.currentTimeMillis()) {
+            return Mono.just(cached.isAdmin);
+        }
+
+        return user.asMember(DiscordAPI.getGuild().getId()).flatMap(m -> m.getBasePermissions()).map(ps -> ps != null && ps.contains(Permission.ADMINISTRATOR))
+                .defaultIfEmpty(false)
+                .doOnNext(isAdmin -> administratorCache.put(userId, new AdministratorCacheEntry(isAdmin, System.currentTimeMillis() + ADMINISTRATOR_CACHE_MILLIS)))
+                // A failed lookup is not cached, so the next check asks again.
+                .onErrorReturn(false);
+    }
+
+    /**
+     * Method that drops the cached administrator status of a user.
+     *
+     * @param userId
+     */
+    public void clearAdministratorCache(long userId) {
+        administratorCache.remove(userId);
+    }
+
+    /**
+     * Method that drops the cached administrator status of all users.
+     */
+    public void clearAdministratorCache() {
+        administratorCache.clear();
     }
 
     /**
@@ -1158,4 +1345,72 @@ public class DiscordUtil {
         return channel.getLastMessage().block();
     }
 
+
+    private static class AdministratorCacheEntry {
+
+        private final boolean isAdmin;
+        private final long expires;
+
+        private AdministratorCacheEntry(boolean isAdmin, long expires) {
+            this.isAdmin = isAdmin;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Sends the queued messages of one channel one at a time, without blocking the caller.
+     */
+    private static class ChannelSendQueue {
+
+        private final Queue<Supplier<Mono<Message>>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean sending = new AtomicBoolean(false);
+
+        private void add(Supplier<Mono<Message>> send) {
+            queue.add(send);
+            drain();
+        }
+
+        private void drain() {
+            if (!sending.compareAndSet(false, true)) {
+                return;
+            }
+
+            // repeat() sends the queued messages one after the other without growing the stack, even when a send completes right away.
+            Mono.defer(this::sendNext).repeat(() -> !queue.isEmpty()).doFinally(sig -> {
+                sending.set(false);
+
+                // A message added after the last check of the queue and before sending was cleared.
+                if (!queue.isEmpty()) {
+                    drain();
+                }
+            }).subscribe(m -> {
+            }, e -> com.gmt2001.Console.err.printStackTrace(e));
+        }
+
+        private Mono<Message> sendNext() {
+            Supplier<Mono<Message>> send = queue.poll();
+
+            if (send == null) {
+                return Mono.empty();
+            }
+
+            Mono<Message> mono;
+
+            try {
+                mono = send.get();
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+                mono = null;
+            }
+
+            if (mono == null) {
+                return Mono.empty();
+            }
+
+            return mono.onErrorResume(e -> {
+                com.gmt2001.Console.err.printStackTrace(e);
+                return Mono.empty();
+            });
+        }
+    }
 }
@@ -20,6 +20,7 @@ import java.util.Map;
 import tv.phantombot.twitch.irc.TwitchSession;
 
 public class IrcChannelMessageEvent extends IrcMessageEvent {
+    private volatile boolean moderated = false;
 
     /**
      * Class constructor.
@@ -43,4 +44,20 @@ public class IrcChannelMessageEvent extends IrcMessageEvent {
     public IrcChannelMessageEvent(TwitchSession session, String sender, String message, Map<String, String> tags) {
         super(session, sender, message, tags);
     }
+
+    /**
+     * Method that marks the message as punished by moderation, so the ircChannelMessage hooks skip it.
+     */
+    public void setModerated() {
+        this.moderated = true;
+    }
+
+    /**
+     * Method that returns if the message was punished by moderation.
+     *
+     * @return {Boolean}
+     */
+    public boolean isModerated() {
+        return this.moderated;
+    }
 }
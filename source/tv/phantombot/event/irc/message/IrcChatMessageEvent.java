@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.event.irc.message;
+
+import java.util.Map;
+import tv.phantombot.event.command.CommandEvent;
+import tv.phantombot.twitch.irc.TwitchSession;
+
+/**
+ * A chat message sent to the scripts once, which runs moderation, then the command, then the message hooks.
+ */
+public class IrcChatMessageEvent extends IrcModerationEvent {
+    private final CommandEvent commandEvent;
+    private final IrcChannelMessageEvent channelMessageEvent;
+
+    /**
+     * Class constructor.
+     *
+     * @param {TwitchSession}          session
+     * @param {String}                 sender
+     * @param {String}                 message
+     * @param {Map}                    tags
+     * @param {CommandEvent}           commandEvent
+     * @param {IrcChannelMessageEvent} channelMessageEvent
+     */
+    public IrcChatMessageEvent(TwitchSession session, String sender, String message, Map<String, String> tags,
+            CommandEvent commandEvent, IrcChannelMessageEvent channelMessageEvent) {
+        super(session, sender, message, tags);
+
+        this.commandEvent = commandEvent;
+        this.channelMessageEvent = channelMessageEvent;
+    }
+
+    /**
+     * Method that returns the command in the message.
+     *
+     * @return {CommandEvent} The command, or null if the message is not a command
+     */
+    public CommandEvent getCommandEvent() {
+        return this.commandEvent;
+    }
+
+    /**
+     * Method that returns the message which is posted next for the Java listeners and the ircChannelMessage hooks.
+     *
+     * @return {IrcChannelMessageEvent}
+     */
+    public IrcChannelMessageEvent getChannelMessageEvent() {
+        return this.channelMessageEvent;
+    }
+}
@@ -62,13 +62,15 @@ public class Script {
     }
 
     @SuppressWarnings("rawtypes")
-    public void reload() throws IOException {
+    public boolean reload() throws IOException {
         if (killed) {
-            return;
+            return false;
         }
 
-        doDestroyables();
         try {
+            // A script that does not compile leaves the running one in place.
+            compile();
+            doDestroyables();
             load();
             if (file.getPath().endsWith("init.js")) {
                 com.gmt2001.Console.out.println("Reloaded module: init.js");
@@ -77,11 +79,12 @@ public class Script {
                 com.gmt2001.Console.out.println("Reloaded module: " + path);
             }
             fileNotFoundCount = 0;
+            return true;
         } catch (IOException ex) {
             if (ex.getMessage().contains("This could be a caching issue")) {
                 fileNotFoundCount++;
                 if (fileNotFoundCount == 1) {
-                    return;
+                    return false;
                 }
             } else {
                 fileNotFoundCount = 0;
@@ -94,16 +97,20 @@ public class Script {
                 com.gmt2001.Console.err.println("Failed to reload module: " + path + ": " + ex.getMessage());
             }
         }
+
+        return false;
     }
 
     @SuppressWarnings("rawtypes")
-    public void reload(Boolean silent) throws IOException {
+    public boolean reload(Boolean silent) throws IOException {
         if (killed) {
-            return;
+            return false;
         }
 
-        doDestroyables();
         try {
+            // A script that does not compile leaves the running one in place.
+            compile();
+            doDestroyables();
             load();
             if (silent) {
                 if (file.getPath().endsWith("init.js")) {
@@ -114,11 +121,12 @@ public class Script {
                 }
             }
             fileNotFoundCount = 0;
+            return true;
         } catch (IOException ex) {
             if (ex.getMessage().contains("This could be a caching issue")) {
                 fileNotFoundCount++;
                 if (fileNotFoundCount == 1) {
-                    return;
+                    return false;
                 }
             } else {
                 fileNotFoundCount = 0;
@@ -131,6 +139,14 @@ public class Script {
                 com.gmt2001.Console.err.println("Failed to reload module: " + path + ": " + ex.getMessage());
             }
         }
+
+        return false;
+    }
+
+    private void compile() throws IOException {
+        if (!PhantomBot.getEnableRhinoDebugger() && file.getName().endsWith(".js") && !file.getName().startsWith("._")) {
+            ScriptCompiler.instance().get(file);
+        }
     }
 
     public void load() throws IOException {
@@ -148,17 +164,22 @@ public class Script {
         }
 
         /* Enable Error() in JS to provide an object with fileName and lineNumber. */
-        final ContextFactory ctxFactory = new ContextFactory() {
-            @Override
-            protected boolean hasFeature(Context cx, int featureIndex) {
-                switch (featureIndex) {
-                case Context.FEATURE_LOCATION_INFORMATION_IN_ERROR:
-                    return true;
-                default:
-                    return super.hasFeature(cx, featureIndex);
+        final ContextFactory ctxFactory;
+        if (PhantomBot.getEnableRhinoDebugger()) {
+            ctxFactory = new ContextFactory() {
+                @Override
+                protected boolean hasFeature(Context cx, int featureIndex) {
+                    switch (featureIndex) {
+                    case Context.FEATURE_LOCATION_INFORMATION_IN_ERROR:
+                        return true;
+                    default:
+                        return super.hasFeature(cx, featureIndex);
+                    }
                 }
-            }
-        };
+            };
+        } else {
+            ctxFactory = ScriptCompiler.getContextFactory();
+        }
         RhinoException.setStackStyle(StackStyle.MOZILLA);
 
         /* Create Debugger Instance - this opens for only init.js */
@@ -190,14 +211,27 @@ public class Script {
             }
         }
 
+        /* Timers started while the script loads belong to its executor. */
+        String previousOwner = ScriptExecutors.instance().setOwner(getPath().replace('\\', '/').replace("./scripts/", ""));
+
+        /* The debugger steps through interpreted scripts, otherwise run the compiled one. */
         try {
-            context.evaluateString(scope, Files.readString(file.toPath()), file.getName(), 1, null);
+            if (PhantomBot.getEnableRhinoDebugger()) {
+                context.evaluateString(scope, Files.readString(file.toPath()), file.getName(), 1, null);
+            } else {
+                org.mozilla.javascript.Script compiled = ScriptCompiler.instance().get(file);
+                long start = System.nanoTime();
+                compiled.exec(context, scope);
+                ScriptCompiler.instance().recordEvaluation(file, System.nanoTime() - start);
+            }
         } catch (FileNotFoundException ex) {
             throw new IOException("File not found. This could be a caching issue, will retry.");
         } catch (EvaluatorException ex) {
             throw new IOException("JavaScript Error: " + ex.getMessage());
         } catch (IOException ex) {
             throw new IOException(ex.getMessage());
+        } finally {
+            ScriptExecutors.instance().setOwner(previousOwner);
         }
     }
 
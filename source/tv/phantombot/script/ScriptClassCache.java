@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.script;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+/**
+ * Keeps the Java classes generated by Rhino for the scripts in ./cache/scripts, so a script is only compiled again
+ * when its source changes.
+ *
+ * The classes of a script are stored in a folder named after the SHA-256 hash of its source and are defined by a class
+ * loader of their own, which lets the JVM unload them once the script is reloaded. An index maps each script to the
+ * hash it was last compiled from; the folder of a hash no script uses anymore is deleted. The whole cache is dropped
+ * when the version of Rhino changes.
+ *
+ * @author phantombot
+ */
+public class ScriptClassCache {
+    private static final ScriptClassCache INSTANCE = new ScriptClassCache();
+    private static final Path CACHE_DIR = Paths.get("./cache/scripts");
+    private static final Path INDEX = CACHE_DIR.resolve("index.properties");
+    private static final String VERSION_KEY = "@rhino";
+    private static final String CLASS_PREFIX = "tv.phantombot.script.compiled.Script_";
+    private static final int OPTIMIZATION_LEVEL = 9;
+    private final Properties index = new Properties();
+    private final Map<String, Loaded> loaded = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private boolean opened = false;
+    private boolean writable = true;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static ScriptClassCache instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private ScriptClassCache() {
+    }
+
+    /**
+     * Method that returns a script compiled from a source, from the cache if it was compiled before.
+     *
+     * @param context The context of the calling thread
+     * @param path The absolute path of the script
+     * @param hash The SHA-256 hash of the source
+     * @param fileName The name of the script, used in error messages
+     * @param source
+     * @return
+     * @throws IOException If the classes can not be defined
+     */
+    public org.mozilla.javascript.Script load(Context context, String path, String hash, String fileName, String source) throws IOException {
+        open(context);
+
+        Path dir = CACHE_DIR.resolve(hash);
+        Map<String, byte[]> classes = read(dir, hash);
+        org.mozilla.javascript.Script script = null;
+
+        if (classes != null) {
+            try {
+                script = define(hash, classes);
+                hits.incrementAndGet();
+            } catch (IOException ex) {
+                com.gmt2001.Console.debug.println("Dropping the cached classes of " + fileName + ": " + ex.getMessage());
+                delete(dir);
+            }
+        }
+
+        if (script == null) {
+            classes = compile(context, hash, fileName, source);
+            write(dir, classes);
+            script = define(hash, classes);
+            misses.incrementAndGet();
+        }
+
+        loaded.put(path, new Loaded(classes));
+        update(path, hash);
+
+        return script;
+    }
+
+    /**
+     * Method that returns the number and size of the script classes which are loaded, and the metaspace in use.
+     *
+     * @return
+     */
+    public String getReport() {
+        long classes = 0;
+        long bytes = 0;
+        String metaspace = "unknown";
+
+        for (Loaded entry : loaded.values()) {
+            classes += entry.classes;
+            bytes += entry.bytes;
+        }
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals("Metaspace")) {
+                metaspace = (pool.getUsage().getUsed() / 1048576L) + " MB";
+            }
+        }
+
+        return String.format("Script classes: %d classes, %d KB of bytecode for %d scripts (%d from the cache in %s, %d compiled)."
+                + " JVM metaspace used: %s, classes unloaded: %d",
+                classes, bytes / 1024L, loaded.size(), hits.get(), CACHE_DIR.toString(), misses.get(), metaspace,
+                ManagementFactory.getClassLoadingMXBean().getUnloadedClassCount());
+    }
+
+    /**
+     * Reads the index, dropping the cache if it was made by another version of Rhino and deleting what it does not
+     * reference.
+     */
+    private synchronized void open(Context context) {
+        if (opened) {
+            return;
+        }
+
+        opened = true;
+
+        String version = context.getImplementationVersion() + "/" + OPTIMIZATION_LEVEL;
+
+        try {
+            Files.createDirectories(CACHE_DIR);
+
+            if (Files.isRegularFile(INDEX)) {
+                try (InputStream in = Files.newInputStream(INDEX)) {
+                    index.load(in);
+                }
+            }
+
+            if (!version.equals(index.getProperty(VERSION_KEY))) {
+                index.clear();
+            }
+
+            index.setProperty(VERSION_KEY, version);
+            index.stringPropertyNames().stream().filter((key) -> !key.equals(VERSION_KEY) && !Files.isRegularFile(Paths.get(key)))
+                    .forEach(index::remove);
+
+            Set<String> used = new HashSet<>();
+
+            index.forEach((key, value) -> used.add((String) value));
+
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(CACHE_DIR, Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    if (!used.contains(dir.getFileName().toString())) {
+                        delete(dir);
+                    }
+                }
+            }
+
+            save();
+        } catch (IOException ex) {
+            writable = false;
+            com.gmt2001.Console.err.println("Unable to use the script cache in " + CACHE_DIR + ", scripts will be compiled on each start: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Records the hash a script was compiled from, deleting the classes of its previous hash if nothing else uses them.
+     */
+    private synchronized void update(String path, String hash) {
+        Object previous = index.setProperty(path, hash);
+
+        if (!hash.equals(previous)) {
+            if (previous != null && !index.containsValue(previous)) {
+                delete(CACHE_DIR.resolve((String) previous));
+            }
+
+            save();
+        }
+    }
+
+    private Map<String, byte[]> compile(Context context, String hash, String fileName, String source) {
+        CompilerEnvirons environment = new CompilerEnvirons();
+        environment.initFromContext(context);
+        environment.setOptimizationLevel(OPTIMIZATION_LEVEL);
+
+        Object[] output = new ClassCompiler(environment).compileToClassFiles(source, fileName, 1, CLASS_PREFIX + hash);
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        for (int i = 0; i < output.length; i += 2) {
+            classes.put((String) output[i], (byte[]) output[i + 1]);
+        }
+
+        return classes;
+    }
+
+    private static org.mozilla.javascript.Script define(String hash, Map<String, byte[]> classes) throws IOException {
+        try {
+            Class<?> main = new ScriptClassLoader(classes).loadClass(CLASS_PREFIX + hash);
+            return (org.mozilla.javascript.Script) main.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError ex) {
+            throw new IOException("Unable to define the classes of the script: " + ex, ex);
+        }
+    }
+
+    /**
+     * Reads the classes of a hash, or returns null if they are not cached.
+     */
+    private static Map<String, byte[]> read(Path dir, String hash) {
+        if (!Files.isRegularFile(dir.resolve(CLASS_PREFIX + hash + ".class"))) {
+            return null;
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.class")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                classes.put(name.substring(0, name.length() - 6), Files.readAllBytes(file));
+            }
+        } catch (IOException ex) {
+            com.gmt2001.Console.debug.println("Unable to read the cached classes in " + dir + ": " + ex.getMessage());
+            return null;
+        }
+
+        return classes;
+    }
+
+    /**
+     * Writes the classes of a hash to a temporary folder, then moves it in place so a folder is never seen half written.
+     */
+    private void write(Path dir, Map<String, byte[]> classes) {
+        if (!writable || Files.isDirectory(dir)) {
+            return;
+        }
+
+        Path temp = CACHE_DIR.resolve(dir.getFileName() + ".tmp" + Thread.currentThread().getId());
+
+        try {
+            delete(temp);
+            Files.createDirectories(temp);
+
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                Files.write(temp.resolve(entry.getKey() + ".class"), entry.getValue());
+            }
+
+            try {
+                Files.move(temp, dir, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, dir);
+            }
+        } catch (IOException ex) {
+            // Another thread may have written the same hash first, it will be compiled again on the next start otherwise.
+            com.gmt2001.Console.debug.println("Unable to cache the classes in " + dir + ": " + ex.getMessage());
+            delete(temp);
+        }
+    }
+
+    private void save() {
+        if (!writable) {
+            return;
+        }
+
+        Path temp = CACHE_DIR.resolve("index.properties.tmp");
+
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                index.store(out, "Hash of the source each script was last compiled from");
+            }
+
+            Files.move(temp, INDEX, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            com.gmt2001.Console.debug.println("Unable to save the script cache index: " + ex.getMessage());
+        }
+    }
+
+    private static void delete(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach((p) -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException ex) {
+                    com.gmt2001.Console.debug.println("Unable to delete " + p + ": " + ex.getMessage());
+                }
+            });
+        } catch (IOException ex) {
+            com.gmt2001.Console.debug.println("Unable to delete " + path + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Defines the classes of one script.
+     */
+    private static final class ScriptClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private ScriptClassLoader(Map<String, byte[]> classes) {
+            super(ScriptClassCache.class.getClassLoader());
+            this.classes = new ConcurrentHashMap<>(classes);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            // The bytes are not needed once the class is defined.
+            byte[] bytes = classes.remove(name);
+
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * The size of the classes of a loaded script.
+     */
+    private static final class Loaded {
+        private final int classes;
+        private final long bytes;
+
+        private Loaded(Map<String, byte[]> classes) {
+            this.classes = classes.size();
+            this.bytes = classes.values().stream().mapToLong((b) -> b.length).sum();
+        }
+    }
+}
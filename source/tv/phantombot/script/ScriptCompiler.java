@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.script;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EvaluatorException;
+
+/**
+ * Compiles the scripts ahead of their evaluation.
+ *
+ * At startup every script under ./scripts is read, hashed and compiled to an {@link org.mozilla.javascript.Script} on a
+ * pool of threads while init.js evaluates them one at a time in its own order, so a script is usually compiled by the
+ * time init.js asks for it. A compiled script is kept with the hash of its source and is compiled again only when the
+ * source changes, the generated classes are kept on the disk by {@link ScriptClassCache} so an unchanged script is not
+ * compiled again on the next start either. The time spent compiling and evaluating each script is kept for
+ * {@link #getReport()}.
+ *
+ * @author phantombot
+ */
+public class ScriptCompiler {
+    private static final ScriptCompiler INSTANCE = new ScriptCompiler();
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /* Enable Error() in JS to provide an object with fileName and lineNumber. */
+    private static final ContextFactory FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            switch (featureIndex) {
+            case Context.FEATURE_LOCATION_INFORMATION_IN_ERROR:
+                return true;
+            default:
+                return super.hasFeature(cx, featureIndex);
+            }
+        }
+    };
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS, (r) -> {
+        Thread t = new Thread(r, "tv.phantombot.script.ScriptCompiler");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, CompletableFuture<Compiled>> compiled = new ConcurrentHashMap<>();
+    private final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static ScriptCompiler instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Method that returns the context factory used by the scripts.
+     *
+     * @return
+     */
+    public static ContextFactory getContextFactory() {
+        return FACTORY;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private ScriptCompiler() {
+    }
+
+    /**
+     * Method that starts compiling every script in a folder and its sub folders, without waiting for them.
+     *
+     * @param folder
+     * @param skip Given the module name of a script, such as ./games/roll.js, returns true if it should not be compiled now
+     * @return The number of scripts being compiled
+     */
+    public int precompile(File folder, Predicate<String> skip) {
+        Path root = folder.toPath().toAbsolutePath().normalize();
+        int count = 0;
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+
+                if (!name.endsWith(".js") || name.startsWith("._") || !Files.isRegularFile(path)
+                        || skip.test("./" + root.relativize(path).toString().replace('\\', '/'))) {
+                    continue;
+                }
+
+                String key = key(path.toFile());
+
+                compiled.computeIfAbsent(key, (k) -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return compile(path.toFile(), Files.readString(path));
+                    } catch (IOException ex) {
+                        throw new CompileException(ex);
+                    }
+                }, executor));
+                count++;
+            }
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.println("Failed to list the scripts to compile: " + ex.getMessage());
+        }
+
+        return count;
+    }
+
+    /**
+     * Method that returns a script compiled from the current source of a file, waiting for it if it is being compiled.
+     *
+     * @param file
+     * @return
+     * @throws IOException If the file can not be read or does not compile
+     */
+    public org.mozilla.javascript.Script get(File file) throws IOException {
+        String key = key(file);
+        String source;
+
+        try {
+            source = Files.readString(file.toPath());
+        } catch (FileNotFoundException | NoSuchFileException ex) {
+            throw new IOException("File not found. This could be a caching issue, will retry.");
+        }
+
+        String hash = hash(source);
+        CompletableFuture<Compiled> future = compiled.get(key);
+        Compiled result = null;
+
+        if (future != null) {
+            try {
+                result = future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                // Compiled again below, which throws the error of the current source.
+                result = null;
+            }
+        }
+
+        if (result == null || !result.hash.equals(hash)) {
+            result = compile(file, source);
+            compiled.put(key, CompletableFuture.completedFuture(result));
+        }
+
+        return result.script;
+    }
+
+    /**
+     * Method that keeps the time spent evaluating a script.
+     *
+     * @param file
+     * @param nanos
+     */
+    public void recordEvaluation(File file, long nanos) {
+        timings.computeIfAbsent(key(file), (k) -> new Timing(file)).evaluateNanos = nanos;
+    }
+
+    /**
+     * Method that returns the time spent compiling and evaluating each script, slowest first.
+     *
+     * @return
+     */
+    public String getReport() {
+        List<Timing> list = new ArrayList<>(timings.values());
+        StringBuilder sb = new StringBuilder();
+        long compileNanos = 0;
+        long evaluateNanos = 0;
+        int width = 0;
+
+        list.sort(Comparator.comparingLong((Timing t) -> t.compileNanos + t.evaluateNanos).reversed());
+
+        for (Timing timing : list) {
+            width = Math.max(width, timing.name.length());
+        }
+
+        sb.append("Module load times (compiled on ").append(THREADS).append(" threads):");
+
+        for (Timing timing : list) {
+            if (!timing.name.endsWith("init.js")) {
+                compileNanos += timing.compileNanos;
+                evaluateNanos += timing.evaluateNanos;
+            }
+
+            sb.append(System.lineSeparator()).append(String.format("  %-" + width + "s  compile %6d ms  evaluate %6d ms", timing.name,
+                    timing.compileNanos / 1000000L, timing.evaluateNanos / 1000000L));
+        }
+
+        sb.append(System.lineSeparator()).append(String.format("Total: %d modules, compile %d ms, evaluate %d ms, init.js includes the evaluation of the other modules",
+                list.size(), compileNanos / 1000000L, evaluateNanos / 1000000L));
+        sb.append(System.lineSeparator()).append(ScriptClassCache.instance().getReport());
+
+        return sb.toString();
+    }
+
+    /**
+     * Method that returns the time spent evaluating init.js, which loads all the other modules.
+     *
+     * @return The milliseconds, or 0 if init.js was not loaded
+     */
+    public long getStartupMillis() {
+        return timings.values().stream().filter((t) -> t.name.endsWith("init.js")).mapToLong((t) -> t.evaluateNanos / 1000000L).findFirst().orElse(0L);
+    }
+
+    private Compiled compile(File file, String source) throws IOException {
+        long start = System.nanoTime();
+        Context context = FACTORY.enterContext();
+
+        try {
+            context.setOptimizationLevel(9);
+
+            String hash = hash(source);
+            Compiled result = new Compiled(hash, ScriptClassCache.instance().load(context, key(file), hash, file.getName(), source));
+
+            timings.computeIfAbsent(key(file), (k) -> new Timing(file)).compileNanos = System.nanoTime() - start;
+            return result;
+        } catch (EvaluatorException ex) {
+            throw new IOException("JavaScript Error: " + ex.getMessage());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static String key(File file) {
+        return file.toPath().toAbsolutePath().normalize().toString();
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java runtime has SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A compiled script and the hash of its source.
+     */
+    private static final class Compiled {
+        private final String hash;
+        private final org.mozilla.javascript.Script script;
+
+        private Compiled(String hash, org.mozilla.javascript.Script script) {
+            this.hash = hash;
+            this.script = script;
+        }
+    }
+
+    /**
+     * The time spent on a script.
+     */
+    private static final class Timing {
+        private final String name;
+        private volatile long compileNanos = 0;
+        private volatile long evaluateNanos = 0;
+
+        private Timing(File file) {
+            this.name = file.getPath().replace("\\", "/").replace("./scripts/./", "./").replace("./scripts/", "./");
+        }
+    }
+
+    /**
+     * Carries an IOException out of a compile task.
+     */
+    private static final class CompileException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private CompileException(IOException cause) {
+            super(cause);
+        }
+    }
+}
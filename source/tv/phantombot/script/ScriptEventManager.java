@@ -72,6 +72,11 @@ public class ScriptEventManager implements Listener {
                 String eventName = event.getClass().getSimpleName();
                 ScriptEventHandler e = events.get(eventName);
 
+                // Events without a script handler are only for the Java listeners.
+                if (e == null) {
+                    return;
+                }
+
                 e.handle(event);
 
                 com.gmt2001.Console.debug.println("Dispatched event " + eventName);
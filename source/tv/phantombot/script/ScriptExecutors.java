@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.script;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the script hooks and timers on a fixed set of single threaded executors.
+ *
+ * This is off unless the scriptexecutors property is above 0. When it is on, each module group, the first folder of a
+ * script such as games or systems, is pinned to one executor the first time it is seen, so the hooks and timers of a
+ * group never run at the same time and always run in the order they were posted. Groups on different executors run in
+ * parallel. A call from one module into another still runs on the thread of the caller.
+ *
+ * @author phantombot
+ */
+public class ScriptExecutors {
+    private static final ScriptExecutors INSTANCE = new ScriptExecutors();
+    private final Map<String, Integer> groups = new ConcurrentHashMap<>();
+    private final AtomicInteger nextExecutor = new AtomicInteger(0);
+    private final ThreadLocal<Integer> current = new ThreadLocal<>();
+    private final ThreadLocal<String> owner = new ThreadLocal<>();
+    private volatile Worker[] workers = new Worker[0];
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static ScriptExecutors instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private ScriptExecutors() {
+    }
+
+    /**
+     * Method that starts the executors, called once before the scripts are loaded.
+     *
+     * @param count The number of executors, 0 or less keeps running the hooks on the thread that posts the event
+     */
+    public synchronized void start(int count) {
+        if (count <= 0 || workers.length > 0) {
+            return;
+        }
+
+        workers = new Worker[count];
+
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Worker(i);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "tv.phantombot.script.ScriptExecutors::schedule");
+            t.setDaemon(true);
+            return t;
+        });
+
+        com.gmt2001.Console.out.println("Running the script hooks on " + count + " script executors");
+    }
+
+    /**
+     * Method that stops the executors, the queued tasks are dropped.
+     */
+    public synchronized void kill() {
+        for (Worker worker : workers) {
+            worker.executor.shutdownNow();
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Method that returns if the hooks run on the executors.
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return workers.length > 0;
+    }
+
+    /**
+     * Method that runs a task on the executor of a script.
+     *
+     * @param scriptName The script, such as ./games/roll.js
+     * @param task
+     */
+    public void execute(String scriptName, Runnable task) {
+        execute(executorOf(scriptName), task);
+    }
+
+    /**
+     * Method that sets the script which owns the timers started on this thread outside of an executor, while the script
+     * is loaded or one of its initReady hooks runs.
+     *
+     * @param scriptName The script, such as ./games/roll.js, or null to clear it
+     * @return The previous owner, to set back afterwards
+     */
+    public String setOwner(String scriptName) {
+        String previous = owner.get();
+
+        if (scriptName == null) {
+            owner.remove();
+        } else {
+            owner.set(scriptName);
+        }
+
+        return previous;
+    }
+
+    /**
+     * Method that runs a task after a delay, and again after each interval if it is above 0, on the executor of the
+     * calling thread, or on the one of the owner set with setOwner if it is not called from an executor.
+     *
+     * @param task
+     * @param delay In milliseconds
+     * @param interval In milliseconds, 0 to run once
+     * @return
+     */
+    public Timer schedule(Runnable task, long delay, long interval) {
+        Integer index = current.get();
+        String scriptName = owner.get();
+
+        if (index == null && scriptName == null) {
+            com.gmt2001.Console.debug.println("A timer was started outside of a script executor, it runs on the executor of the core scripts");
+            scriptName = "./core/";
+        }
+
+        int executor = index == null ? executorOf(scriptName) : index;
+        Runnable post = () -> execute(executor, task);
+
+        if (interval > 0) {
+            return new Timer(scheduler.scheduleAtFixedRate(post, Math.max(0, delay), interval, TimeUnit.MILLISECONDS));
+        }
+
+        return new Timer(scheduler.schedule(post, Math.max(0, delay), TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Method that returns the queue and latency of each executor.
+     *
+     * @return
+     */
+    public String getReport() {
+        if (!isEnabled()) {
+            return "Script executors are off, set scriptexecutors in botlogin.txt to use them";
+        }
+
+        List<String> lines = new ArrayList<>();
+
+        for (Worker worker : workers) {
+            List<String> pinned = new ArrayList<>();
+
+            groups.forEach((group, index) -> {
+                if (index == worker.index) {
+                    pinned.add(group);
+                }
+            });
+
+            long completed = worker.completed.get();
+
+            lines.add(String.format("  #%d: queued %d (max %d), completed %d, wait avg %d ms max %d ms, run avg %d ms max %d ms, groups %s",
+                    worker.index, worker.executor.getQueue().size(), worker.maxQueued.get(), completed,
+                    completed == 0 ? 0 : worker.waitNanos.get() / completed / 1000000L, worker.maxWaitNanos.get() / 1000000L,
+                    completed == 0 ? 0 : worker.runNanos.get() / completed / 1000000L, worker.maxRunNanos.get() / 1000000L, pinned));
+        }
+
+        return "Script executors:" + System.lineSeparator() + String.join(System.lineSeparator(), lines);
+    }
+
+    private int executorOf(String scriptName) {
+        String name = scriptName.replace('\\', '/');
+
+        if (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+
+        String group = name.indexOf('/') == -1 ? "." : name.substring(0, name.indexOf('/'));
+
+        // The discord modules are grouped by their own folders.
+        if (group.equals("discord") && name.indexOf('/', 8) != -1) {
+            group = name.substring(0, name.indexOf('/', 8));
+        }
+
+        return groups.computeIfAbsent(group, (g) -> nextExecutor.getAndIncrement() % workers.length);
+    }
+
+    private void execute(int index, Runnable task) {
+        Worker worker = workers[index];
+        long queued = System.nanoTime();
+
+        try {
+            worker.executor.execute(() -> {
+                long start = System.nanoTime();
+
+                try {
+                    task.run();
+                } catch (Exception ex) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                } finally {
+                    long end = System.nanoTime();
+
+                    worker.completed.incrementAndGet();
+                    worker.waitNanos.addAndGet(start - queued);
+                    worker.runNanos.addAndGet(end - start);
+                    worker.maxWaitNanos.accumulateAndGet(start - queued, Math::max);
+                    worker.maxRunNanos.accumulateAndGet(end - start, Math::max);
+                }
+            });
+            worker.maxQueued.accumulateAndGet(worker.executor.getQueue().size(), Math::max);
+        } catch (RejectedExecutionException ex) {
+            com.gmt2001.Console.debug.println("Script executor #" + index + " is stopped, dropping a task");
+        }
+    }
+
+    /**
+     * A timer set by a script, cancel stops it.
+     */
+    public static final class Timer {
+        private final ScheduledFuture<?> future;
+
+        private Timer(ScheduledFuture<?> future) {
+            this.future = future;
+        }
+
+        /**
+         * Method that stops this timer, a run which has been posted to the executor still happens.
+         */
+        public void cancel() {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * One executor and its counters.
+     */
+    private final class Worker {
+        private final int index;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong completed = new AtomicLong(0);
+        private final AtomicLong waitNanos = new AtomicLong(0);
+        private final AtomicLong runNanos = new AtomicLong(0);
+        private final AtomicLong maxWaitNanos = new AtomicLong(0);
+        private final AtomicLong maxRunNanos = new AtomicLong(0);
+        private final AtomicLong maxQueued = new AtomicLong(0);
+
+        private Worker(int index) {
+            this.index = index;
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), (r) -> {
+                Thread t = new Thread(() -> {
+                    current.set(index);
+                    r.run();
+                }, "tv.phantombot.script.ScriptExecutors-" + index);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -16,16 +16,41 @@
  */
 package tv.phantombot.script;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Reloads the scripts when their file changes.
+ *
+ * The folder of each script is registered once with a {@link WatchService}, so the thread sleeps until a file is
+ * written. Editors often write a file in several steps, so the events of a file are coalesced and the script is only
+ * reloaded once no event has come for {@link #DEBOUNCE_MS}. The time from the last write to the reloaded script is
+ * kept for {@link #getReport()}.
+ */
 public class ScriptFileWatcher implements Runnable {
+    private static final long DEBOUNCE_MS = 250;
     private static ScriptFileWatcher instance;
-    private final List<Script> scripts = new CopyOnWriteArrayList<>();
+    private final Map<Path, Script> scripts = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> folders = new ConcurrentHashMap<>();
+    private final Map<Path, Long> pending = new HashMap<>();
+    private final WatchService watcher;
     private final Thread thread;
     private boolean isKilled = false;
+    private long reloads = 0;
+    private long failures = 0;
+    private long totalMillis = 0;
+    private long maxMillis = 0;
 
     /**
      * Method that returns this object.
@@ -45,18 +70,46 @@ public class ScriptFileWatcher implements Runnable {
     private ScriptFileWatcher() {
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
 
+        WatchService service = null;
+
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.println("Unable to watch the scripts for changes, they will not be reloaded: " + ex.getMessage());
+        }
+
+        this.watcher = service;
         this.thread = new Thread(this, "tv.phantombot.script.ScriptFileWatcher::run");
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.thread.start();
+        this.thread.setDaemon(true);
+
+        if (this.watcher != null) {
+            this.thread.start();
+        }
     }
 
     /**
-     * Method to add scripts to the array list.
+     * Method to add a script to watch.
      *
      * @param script - Script to be reloaded.
      */
     public void addScript(Script script) {
-        scripts.add(script);
+        if (watcher == null) {
+            return;
+        }
+
+        Path path = script.getFile().toPath().toAbsolutePath().normalize();
+        Path folder = path.getParent();
+
+        scripts.put(path, script);
+
+        folders.computeIfAbsent(folder, (f) -> {
+            try {
+                return f.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.println("Unable to watch " + f + " for changes: " + ex.getMessage());
+                return null;
+            }
+        });
     }
 
     /**
@@ -64,35 +117,121 @@ public class ScriptFileWatcher implements Runnable {
      */
     public void kill() {
         this.isKilled = true;
+
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ex) {
+                com.gmt2001.Console.debug.printStackTrace(ex);
+            }
+        }
+    }
+
+    /**
+     * Method that returns the number of reloads and the time they took.
+     *
+     * @return
+     */
+    public synchronized String getReport() {
+        return String.format("Script reloads: %d, failed: %d, average %d ms, slowest %d ms, from the last write to the reloaded script",
+                reloads, failures, reloads == 0 ? 0 : totalMillis / reloads, maxMillis);
     }
 
     /**
      * Method that runs on a new thread to reload scripts.
      */
-    @SuppressWarnings("SleepWhileInLoop")
     @Override
     public void run() {
         while (!isKilled) {
             try {
-                for (int i = 0; i < scripts.size(); i++) {
-                    Script script = scripts.get(i);
-                    File file = script.getFile();
-
-                    if (script.isKilled()) {
-                        scripts.remove(i);
-                    } else {
-                        if (file.lastModified() != script.getLastModified()) {
-                            script.setLastModified(file.lastModified());
-                            script.reload();
+                WatchKey key = pending.isEmpty() ? watcher.take() : watcher.poll(nextDeadline() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    Path folder = (Path) key.watchable();
+
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were lost, check every script of the folder.
+                            scripts.keySet().stream().filter((p) -> p.getParent().equals(folder))
+                                    .forEach((p) -> pending.put(p, System.currentTimeMillis() + DEBOUNCE_MS));
+                            continue;
+                        }
+
+                        Path path = folder.resolve((Path) event.context());
+
+                        if (scripts.containsKey(path)) {
+                            pending.put(path, System.currentTimeMillis() + DEBOUNCE_MS);
                         }
                     }
-                    // Sleep a bit here to not grind the user's CPU.
-                    Thread.sleep(1);
+
+                    if (!key.reset()) {
+                        folders.remove(folder);
+                    }
                 }
-                Thread.sleep(100);
-            } catch (IOException | InterruptedException ex) {
+
+                reloadDue();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            } catch (IOException ex) {
                 com.gmt2001.Console.err.printStackTrace(ex);
             }
         }
     }
+
+    private long nextDeadline() {
+        return pending.values().stream().mapToLong(Long::longValue).min().orElse(System.currentTimeMillis());
+    }
+
+    /**
+     * Reloads the scripts which have had no event for the debounce time.
+     */
+    private void reloadDue() throws IOException {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+
+            if (entry.getValue() > now) {
+                continue;
+            }
+
+            it.remove();
+
+            Script script = scripts.get(entry.getKey());
+
+            if (script == null) {
+                continue;
+            }
+
+            if (script.isKilled()) {
+                scripts.remove(entry.getKey());
+                continue;
+            }
+
+            long lastModified = script.getFile().lastModified();
+
+            // Nothing was written since the last reload.
+            if (lastModified == script.getLastModified()) {
+                continue;
+            }
+
+            script.setLastModified(lastModified);
+
+            boolean reloaded = script.reload();
+            long millis = System.currentTimeMillis() - (entry.getValue() - DEBOUNCE_MS);
+
+            synchronized (this) {
+                if (reloaded) {
+                    reloads++;
+                    totalMillis += millis;
+                    maxMillis = Math.max(maxMillis, millis);
+                } else {
+                    failures++;
+                }
+            }
+
+            com.gmt2001.Console.debug.println("Reloaded " + entry.getKey() + " in " + millis + " ms: " + reloaded);
+        }
+    }
 }
@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.scripts.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Class that tracks the command cooldowns for commandCoolDown.js.
+ *
+ * Commands and users are given int ids, and the end of each cooldown is kept in a map from the pair of ids to a
+ * {@link System#nanoTime()} timestamp. Expired cooldowns are not looked for: a timing wheel with one slot per second
+ * remembers which cooldowns end in each second, and the slots that have passed are emptied on the next call.
+ *
+ * A command uses the cooldown set for it with !coolcom, global or per user, or otherwise the default global cooldown.
+ * Moderators skip a cooldown which has started unless mod cooldowns are enabled, though they still start it.
+ *
+ * @author phantombot
+ */
+public class CommandCooldowns {
+    private static final CommandCooldowns INSTANCE = new CommandCooldowns();
+    private static final long SECOND = 1000000000L;
+    private static final int SLOTS = 512;
+    private static final int GLOBAL = 0;
+    private static final int DEFAULT = -1;
+    private final long base = System.nanoTime() - SECOND;
+    private final Map<String, Integer> commandIds = new HashMap<>();
+    private final Map<String, Integer> userIds = new HashMap<>();
+    private final LongLongMap ends = new LongLongMap();
+    private final long[][] wheel = new long[SLOTS][];
+    private final int[] wheelSizes = new int[SLOTS];
+    private long tick;
+    private int defaultSeconds = 5;
+    private boolean modCooldown = false;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static CommandCooldowns instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private CommandCooldowns() {
+        tick = now() / SECOND - 1;
+    }
+
+    /**
+     * Method that sets the cooldown of the commands which don't have one.
+     *
+     * @param seconds
+     */
+    public synchronized void setDefaultSeconds(int seconds) {
+        defaultSeconds = seconds;
+    }
+
+    /**
+     * Method that sets if moderators are held by cooldowns.
+     *
+     * @param modCooldown
+     */
+    public synchronized void setModCooldown(boolean modCooldown) {
+        this.modCooldown = modCooldown;
+    }
+
+    /**
+     * Method that checks the cooldown of a command and, if it is not running, starts it, in one step.
+     *
+     * @param command
+     * @param username
+     * @param isMod
+     * @return 0 if the command can be used, otherwise the milliseconds left
+     */
+    public synchronized long check(String command, String username, boolean isMod) {
+        long now = now();
+        advance(now);
+
+        CommandRegistry.Cooldown cooldown = CommandRegistry.instance().getCooldown(command);
+        long key;
+        int seconds;
+
+        if (cooldown != null && cooldown.seconds > 0) {
+            key = key(commandId(command), cooldown.isGlobal ? GLOBAL : userId(username));
+            seconds = cooldown.seconds;
+        } else {
+            key = key(commandId(command), DEFAULT);
+            seconds = defaultSeconds;
+        }
+
+        long end = ends.get(key);
+
+        if (end > now) {
+            return isMod && !modCooldown ? 0 : toMillis(end - now);
+        }
+
+        start(key, seconds, now);
+        return 0;
+    }
+
+    /**
+     * Method that returns the time left on the cooldown of a command.
+     *
+     * @param command
+     * @param username
+     * @return The milliseconds left, or 0
+     */
+    public synchronized long getRemaining(String command, String username) {
+        long now = now();
+        CommandRegistry.Cooldown cooldown = CommandRegistry.instance().getCooldown(command);
+        Integer cmd = commandIds.get(command);
+
+        if (cmd == null) {
+            return 0;
+        }
+
+        long key;
+
+        if (cooldown != null && cooldown.seconds > 0) {
+            if (cooldown.isGlobal) {
+                key = key(cmd, GLOBAL);
+            } else {
+                Integer user = username == null ? null : userIds.get(username.toLowerCase());
+
+                if (user == null) {
+                    return 0;
+                }
+
+                key = key(cmd, user);
+            }
+        } else {
+            key = key(cmd, DEFAULT);
+        }
+
+        long end = ends.get(key);
+        return end > now ? toMillis(end - now) : 0;
+    }
+
+    /**
+     * Method that returns the time left on the default cooldown of a command, even if one is set with !coolcom.
+     *
+     * @param command
+     * @return The milliseconds left, or 0
+     */
+    public synchronized long getDefaultRemaining(String command) {
+        Integer cmd = commandIds.get(command);
+        long end = cmd == null ? 0 : ends.get(key(cmd, DEFAULT));
+        long now = now();
+        return end > now ? toMillis(end - now) : 0;
+    }
+
+    /**
+     * Method that starts a cooldown.
+     *
+     * @param command
+     * @param isSet true for the cooldown set with !coolcom, false for the default one
+     * @param username The user for a per user cooldown, or null
+     * @param seconds The length, 0 or less clears the cooldown
+     */
+    public synchronized void start(String command, boolean isSet, String username, int seconds) {
+        long now = now();
+        advance(now);
+        start(key(commandId(command), isSet ? (username == null ? GLOBAL : userId(username)) : DEFAULT), seconds, now);
+    }
+
+    /**
+     * Method that ends the global cooldown of a command.
+     *
+     * @param command
+     */
+    public synchronized void clear(String command) {
+        Integer cmd = commandIds.get(command);
+
+        if (cmd != null) {
+            ends.remove(key(cmd, GLOBAL));
+        }
+    }
+
+    /**
+     * Method that ends every cooldown of a command.
+     *
+     * @param command
+     */
+    public synchronized void reset(String command) {
+        Integer cmd = commandIds.get(command);
+
+        if (cmd != null) {
+            ends.removeIf((key) -> (int) (key >>> 32) == cmd);
+        }
+    }
+
+    private void start(long key, int seconds, long now) {
+        if (seconds <= 0) {
+            ends.remove(key);
+            return;
+        }
+
+        long end = now + seconds * SECOND;
+        ends.put(key, end);
+
+        int slot = (int) ((end / SECOND) % SLOTS);
+        long[] bucket = wheel[slot];
+
+        if (bucket == null) {
+            bucket = new long[8];
+        } else if (wheelSizes[slot] == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+
+        bucket[wheelSizes[slot]++] = key;
+        wheel[slot] = bucket;
+    }
+
+    /**
+     * Empties the slots of the seconds that have passed, dropping the cooldowns that ended.
+     */
+    private void advance(long now) {
+        long current = now / SECOND;
+        long from = Math.max(tick + 1, current - SLOTS);
+
+        for (long t = from; t < current; t++) {
+            int slot = (int) (t % SLOTS);
+            long[] bucket = wheel[slot];
+            int size = wheelSizes[slot];
+            int kept = 0;
+
+            for (int i = 0; i < size; i++) {
+                long end = ends.get(bucket[i]);
+
+                if (end == 0) {
+                    continue;
+                }
+
+                if (end <= now) {
+                    ends.remove(bucket[i]);
+                } else if ((end / SECOND) % SLOTS == slot) {
+                    // Ends after a full turn of the wheel, otherwise it was started again and is in another slot.
+                    bucket[kept++] = bucket[i];
+                }
+            }
+
+            wheelSizes[slot] = kept;
+
+            if (kept == 0 && bucket != null && bucket.length > 64) {
+                wheel[slot] = null;
+            }
+        }
+
+        tick = Math.max(tick, current - 1);
+
+        // Once nobody has a cooldown running, the user ids can start over.
+        if (ends.size() == 0 && !userIds.isEmpty()) {
+            userIds.clear();
+        }
+    }
+
+    private int commandId(String command) {
+        return commandIds.computeIfAbsent(command, (k) -> commandIds.size() + 1);
+    }
+
+    private int userId(String username) {
+        return userIds.computeIfAbsent(username.toLowerCase(), (k) -> userIds.size() + 1);
+    }
+
+    private long now() {
+        return System.nanoTime() - base;
+    }
+
+    private static long key(int command, int user) {
+        return ((long) command << 32) | (user & 0xffffffffL);
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, nanos / 1000000L);
+    }
+
+    /**
+     * An open addressing map of long to long, 0 is not a valid key or value.
+     */
+    private static final class LongLongMap {
+        private long[] keys = new long[64];
+        private long[] values = new long[64];
+        private int size = 0;
+
+        private int size() {
+            return size;
+        }
+
+        private long get(long key) {
+            int mask = keys.length - 1;
+
+            for (int i = index(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+
+            return 0;
+        }
+
+        private void put(long key, long value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        private void remove(long key) {
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            // Shift the following entries back so lookups never stop at the hole.
+            int hole = i;
+
+            for (int j = (hole + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = index(keys[j], mask);
+
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+
+            keys[hole] = 0;
+            values[hole] = 0;
+            size--;
+        }
+
+        private void removeIf(LongPredicate predicate) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+
+            keys = new long[oldKeys.length];
+            values = new long[oldValues.length];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0 && !predicate.test(oldKeys[i])) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+
+            keys = new long[capacity];
+            values = new long[capacity];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int index(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.scripts.core;
+
+import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.KeyValue;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONException;
+import org.json.JSONObject;
+import tv.phantombot.PhantomBot;
+
+/**
+ * The registered chat commands, with the settings of the command tables, so a command can be checked without going
+ * to the database.
+ *
+ * Commands, subcommands and aliases are registered by commandRegister.js. The aliases, pricecom, paycom and cooldown
+ * tables are read into an immutable snapshot which is read again on next use once one of those tables is written to.
+ * The few settings used when a command is refused are kept in a separate snapshot, so the frequent writes to the
+ * settings table don't cause the command tables to be read again.
+ *
+ * @author phantombot
+ */
+public class CommandRegistry {
+    private static final CommandRegistry INSTANCE = new CommandRegistry();
+    private static final String[] TABLES = {"aliases", "pricecom", "paycom", "cooldown"};
+    private final Map<String, Command> commands = new ConcurrentHashMap<>();
+    private final Set<String> aliases = ConcurrentHashMap.newKeySet();
+    // Incremented on every write, a snapshot read before the latest write is read again.
+    private final AtomicLong tablesGeneration = new AtomicLong();
+    private final AtomicLong settingsGeneration = new AtomicLong();
+    private volatile Tables tables = null;
+    private volatile Settings settings = null;
+    private volatile boolean listening = false;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static CommandRegistry instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private CommandRegistry() {
+    }
+
+    /**
+     * Method that registers a command, or replaces its script and group if it already exists.
+     *
+     * @param command
+     * @param script
+     * @param groupId
+     */
+    public void register(String command, String script, int groupId) {
+        commands.put(command, new Command(script, groupId, Collections.emptyMap()));
+    }
+
+    /**
+     * Method that registers a subcommand of a registered command.
+     *
+     * @param command
+     * @param subcommand
+     * @param groupId
+     */
+    public void registerSubcommand(String command, String subcommand, int groupId) {
+        commands.computeIfPresent(command, (k, c) -> c.withSubcommand(subcommand, groupId));
+    }
+
+    /**
+     * Method that removes a command and its alias.
+     *
+     * @param command
+     */
+    public void unregister(String command) {
+        commands.remove(command);
+        aliases.remove(command);
+    }
+
+    /**
+     * Method that removes a subcommand.
+     *
+     * @param command
+     * @param subcommand
+     */
+    public void unregisterSubcommand(String command, String subcommand) {
+        commands.computeIfPresent(command, (k, c) -> c.withSubcommand(subcommand, null));
+    }
+
+    public void registerAlias(String alias) {
+        aliases.add(alias);
+    }
+
+    public void unregisterAlias(String alias) {
+        aliases.remove(alias);
+    }
+
+    public boolean exists(String command) {
+        return get(command) != null;
+    }
+
+    public boolean aliasExists(String alias) {
+        return alias != null && aliases.contains(alias);
+    }
+
+    public boolean subcommandExists(String command, String subcommand) {
+        Command c = get(command);
+        return c != null && c.subcommands.containsKey(subcommand);
+    }
+
+    /**
+     * Method that returns the script of a command.
+     *
+     * @param command
+     * @return The script, or null if the command is not registered
+     */
+    public String getScript(String command) {
+        Command c = get(command);
+        return c == null ? null : c.script;
+    }
+
+    /**
+     * Method that returns the group of a command.
+     *
+     * @param command
+     * @return The group, or -1 if the command is not registered
+     */
+    public int getGroup(String command) {
+        Command c = get(command);
+        return c == null ? -1 : c.groupId;
+    }
+
+    /**
+     * Method that returns the group of a subcommand.
+     *
+     * @param command
+     * @param subcommand
+     * @return The group, or -1 if the subcommand is not registered
+     */
+    public int getSubcommandGroup(String command, String subcommand) {
+        Command c = get(command);
+        Integer groupId = c == null ? null : c.subcommands.get(subcommand);
+        return groupId == null ? -1 : groupId;
+    }
+
+    public void updateGroup(String command, int groupId) {
+        commands.computeIfPresent(command, (k, c) -> new Command(c.script, groupId, c.subcommands));
+    }
+
+    public void updateSubcommandGroup(String command, String subcommand, int groupId) {
+        commands.computeIfPresent(command, (k, c) -> c.subcommands.containsKey(subcommand) ? c.withSubcommand(subcommand, groupId) : c);
+    }
+
+    /**
+     * Method that returns the subcommand used by the arguments of a command.
+     *
+     * @param command
+     * @param firstArg
+     * @return The subcommand in lowercase, or an empty string
+     */
+    public String getSubcommand(String command, String firstArg) {
+        if (firstArg == null) {
+            return "";
+        }
+
+        String subcommand = firstArg.toLowerCase();
+        return subcommandExists(command, subcommand) ? subcommand : "";
+    }
+
+    /**
+     * Method that returns true if a price is set for the command or the subcommand.
+     *
+     * @param command
+     * @param subcommand
+     * @return
+     */
+    public boolean hasPrice(String command, String subcommand) {
+        Map<String, Integer> prices = getTables().prices;
+        return (subcommand != null && !subcommand.isEmpty() && prices.containsKey(command + " " + subcommand)) || prices.containsKey(command);
+    }
+
+    /**
+     * Method that returns true if moderators pay for commands too.
+     *
+     * @return
+     */
+    public boolean isPriceForMods() {
+        return getSettings().priceForMods;
+    }
+
+    /**
+     * Method that returns the price of the most specific of the command, subcommand, and subcommand action.
+     *
+     * @param command
+     * @param subcommand
+     * @param action
+     * @return
+     */
+    public int getPrice(String command, String subcommand, String action) {
+        Map<String, Integer> prices = getTables().prices;
+        Integer price = prices.get(command + " " + subcommand + " " + action);
+
+        if (price == null) {
+            price = prices.get(command + " " + subcommand);
+        }
+
+        if (price == null) {
+            price = prices.get(command);
+        }
+
+        return price == null ? 0 : price;
+    }
+
+    /**
+     * Method that returns the cooldown set for a command.
+     *
+     * @param command
+     * @return The cooldown, or null if there is none
+     */
+    Cooldown getCooldown(String command) {
+        return command == null ? null : getTables().cooldowns.get(command);
+    }
+
+    public boolean hasPay(String command) {
+        return getTables().pays.containsKey(command);
+    }
+
+    public int getPay(String command) {
+        return getTables().pays.getOrDefault(command, 0);
+    }
+
+    /**
+     * Method that looks up everything needed to dispatch a command, in one call.
+     *
+     * @param command
+     * @param firstArg The first argument of the command, or null
+     * @return
+     */
+    public Dispatch dispatch(String command, String firstArg) {
+        Tables t = getTables();
+        Settings s = getSettings();
+        Command c = get(command);
+
+        if (c == null) {
+            return new Dispatch(t, s, command, null, null, "", 7);
+        }
+
+        // Resolved from the same command instance, a subcommand removed meanwhile falls back to the group of the command.
+        Integer subcommandGroupId = firstArg == null ? null : c.subcommands.get(firstArg.toLowerCase());
+        String subcommand = subcommandGroupId == null ? "" : firstArg.toLowerCase();
+        String alias = aliasExists(command) ? t.aliases.getOrDefault(command, "") : null;
+        int groupId = subcommandGroupId == null ? c.groupId : subcommandGroupId;
+
+        return new Dispatch(t, s, command, c, alias, subcommand, groupId);
+    }
+
+    private Command get(String command) {
+        return command == null ? null : commands.get(command);
+    }
+
+    /**
+     * Method that marks the snapshots of the command tables and of the settings as stale, they will be read again on next use.
+     */
+    public void invalidate() {
+        tablesGeneration.incrementAndGet();
+        settingsGeneration.incrementAndGet();
+    }
+
+    private Tables getTables() {
+        Tables t = tables;
+
+        if (t == null || t.generation != tablesGeneration.get()) {
+            synchronized (this) {
+                t = tables;
+
+                if (t == null || t.generation != tablesGeneration.get()) {
+                    DataStore dataStore = listen();
+                    // Read before the tables, so a write made while they are being read marks this snapshot as stale.
+                    t = new Tables(dataStore, tablesGeneration.get());
+                    tables = t;
+                }
+            }
+        }
+
+        return t;
+    }
+
+    private Settings getSettings() {
+        Settings s = settings;
+
+        if (s == null || s.generation != settingsGeneration.get()) {
+            synchronized (this) {
+                s = settings;
+
+                if (s == null || s.generation != settingsGeneration.get()) {
+                    DataStore dataStore = listen();
+                    s = new Settings(dataStore, settingsGeneration.get());
+                    settings = s;
+                }
+            }
+        }
+
+        return s;
+    }
+
+    private DataStore listen() {
+        DataStore dataStore = PhantomBot.instance().getDataStore();
+
+        if (!listening) {
+            for (String table : TABLES) {
+                dataStore.addChangeListener(table, tablesGeneration::incrementAndGet);
+            }
+
+            dataStore.addChangeListener("settings", settingsGeneration::incrementAndGet);
+            listening = true;
+        }
+
+        return dataStore;
+    }
+
+    /**
+     * A registered command, replaced instead of modified.
+     */
+    private static class Command {
+        private final String script;
+        private final int groupId;
+        private final Map<String, Integer> subcommands;
+
+        private Command(String script, int groupId, Map<String, Integer> subcommands) {
+            this.script = script;
+            this.groupId = groupId;
+            this.subcommands = subcommands;
+        }
+
+        private Command withSubcommand(String subcommand, Integer groupId) {
+            Map<String, Integer> copy = new HashMap<>(subcommands);
+
+            if (groupId == null) {
+                copy.remove(subcommand);
+            } else {
+                copy.put(subcommand, groupId);
+            }
+
+            return new Command(script, this.groupId, Collections.unmodifiableMap(copy));
+        }
+    }
+
+    /**
+     * Immutable snapshot of the command tables.
+     */
+    private static class Tables {
+        private final long generation;
+        private final Map<String, String> aliases = new HashMap<>();
+        private final Map<String, Integer> prices = new HashMap<>();
+        private final Map<String, Integer> pays = new HashMap<>();
+        private final Map<String, Cooldown> cooldowns = new HashMap<>();
+
+        private Tables(DataStore dataStore, long generation) {
+            this.generation = generation;
+
+            for (KeyValue kv : dataStore.GetKeyValueList("aliases", "")) {
+                aliases.put(kv.getKey(), kv.getValue());
+            }
+
+            readNumbers(dataStore, "pricecom", prices);
+            readNumbers(dataStore, "paycom", pays);
+
+            for (KeyValue kv : dataStore.GetKeyValueList("cooldown", "")) {
+                try {
+                    JSONObject json = new JSONObject(kv.getValue());
+                    cooldowns.put(kv.getKey(), new Cooldown(Integer.parseInt(json.get("seconds").toString()),
+                            json.get("isGlobal").toString().equals("true")));
+                } catch (JSONException | NumberFormatException ex) {
+                    com.gmt2001.Console.err.println("Bad cooldown detected [" + kv.getKey() + "]: " + ex.getMessage());
+                }
+            }
+        }
+
+        private static void readNumbers(DataStore dataStore, String table, Map<String, Integer> map) {
+            for (KeyValue kv : dataStore.GetKeyValueList(table, "")) {
+                try {
+                    map.put(kv.getKey(), (int) Double.parseDouble(kv.getValue()));
+                } catch (NumberFormatException | NullPointerException ex) {
+                    // Like parseInt() in the scripts, a value which isn't a number counts as 0.
+                    map.put(kv.getKey(), 0);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Immutable snapshot of the settings used when a command is refused.
+     */
+    private static class Settings {
+        private final long generation;
+        private final boolean permMessageEnabled;
+        private final boolean cooldownMessageEnabled;
+        private final boolean priceMessageEnabled;
+        private final boolean priceForMods;
+
+        private Settings(DataStore dataStore, long generation) {
+            this.generation = generation;
+            permMessageEnabled = getBoolean(dataStore, "permComMsgEnabled");
+            cooldownMessageEnabled = getBoolean(dataStore, "coolDownMsgEnabled");
+            priceMessageEnabled = getBoolean(dataStore, "priceComMsgEnabled");
+            priceForMods = getBoolean(dataStore, "pricecomMods");
+        }
+
+        private static boolean getBoolean(DataStore dataStore, String key) {
+            return "true".equals(dataStore.GetString("settings", "", key));
+        }
+    }
+
+    /**
+     * A cooldown set with !coolcom.
+     */
+    static class Cooldown {
+        final int seconds;
+        final boolean isGlobal;
+
+        private Cooldown(int seconds, boolean isGlobal) {
+            this.seconds = seconds;
+            this.isGlobal = isGlobal;
+        }
+    }
+
+    /**
+     * Everything needed to dispatch a command.
+     */
+    public static class Dispatch {
+        private final Tables tables;
+        private final Settings settings;
+        private final String command;
+        private final Command c;
+        private final String alias;
+        private final String subcommand;
+        private final int groupId;
+
+        private Dispatch(Tables tables, Settings settings, String command, Command c, String alias, String subcommand, int groupId) {
+            this.tables = tables;
+            this.settings = settings;
+            this.command = command;
+            this.c = c;
+            this.alias = alias;
+            this.subcommand = subcommand;
+            this.groupId = groupId;
+        }
+
+        public boolean exists() {
+            return c != null;
+        }
+
+        public String getScript() {
+            return c == null ? null : c.script;
+        }
+
+        /**
+         * @return What the alias runs, or null if the command is not an alias
+         */
+        public String getAlias() {
+            return alias;
+        }
+
+        /**
+         * @return The subcommand used, or an empty string
+         */
+        public String getSubcommand() {
+            return subcommand;
+        }
+
+        /**
+         * @return The group of the subcommand used, otherwise of the command
+         */
+        public int getGroupId() {
+            return groupId;
+        }
+
+        public boolean hasPrice() {
+            return (!subcommand.isEmpty() && tables.prices.containsKey(command + " " + subcommand)) || tables.prices.containsKey(command);
+        }
+
+        public int getPrice() {
+            Integer price = subcommand.isEmpty() ? null : tables.prices.get(command + " " + subcommand);
+            return price == null ? tables.prices.getOrDefault(command, 0) : price;
+        }
+
+        public boolean hasPay() {
+            return tables.pays.containsKey(command);
+        }
+
+        public int getPay() {
+            return tables.pays.getOrDefault(command, 0);
+        }
+
+        /**
+         * @return The cooldown set with !coolcom, or -1 if there is none
+         */
+        public int getCooldownSeconds() {
+            Cooldown cooldown = tables.cooldowns.get(command);
+            return cooldown == null ? -1 : cooldown.seconds;
+        }
+
+        public boolean isCooldownGlobal() {
+            Cooldown cooldown = tables.cooldowns.get(command);
+            return cooldown == null || cooldown.isGlobal;
+        }
+
+        public boolean isPermMessageEnabled() {
+            return settings.permMessageEnabled;
+        }
+
+        public boolean isCooldownMessageEnabled() {
+            return settings.cooldownMessageEnabled;
+        }
+
+        public boolean isPriceMessageEnabled() {
+            return settings.priceMessageEnabled;
+        }
+
+        public boolean isPriceForMods() {
+            return settings.priceForMods;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tv.phantombot.scripts.core;
+
+import com.gmt2001.datastore.DataStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import tv.phantombot.PhantomBot;
+
+/**
+ * In-memory index of the keywords table.
+ *
+ * Plain keywords are looked up by hashing the words of the message, phrases and regex keywords are
+ * checked in order. The index is built once and rebuilt only when {@link #invalidate()} is called.
+ *
+ * @author phantombot
+ */
+public class KeywordIndex {
+    private static final KeywordIndex INSTANCE = new KeywordIndex();
+    private static final String TABLE = "keywords";
+    private volatile Index index = null;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static KeywordIndex instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private KeywordIndex() {
+    }
+
+    /**
+     * Method that finds the first keyword, in table order, that matches the message.
+     *
+     * @param message
+     * @return The key of the matching keyword, or null if nothing matched.
+     */
+    public String match(String message) {
+        Index idx = getIndex();
+
+        if (idx.size == 0 || message == null) {
+            return null;
+        }
+
+        String[] parts = message.split(" ");
+        int best = Integer.MAX_VALUE;
+
+        if (!idx.caseSensitiveWords.isEmpty() || !idx.caseInsensitiveWords.isEmpty()) {
+            for (String part : parts) {
+                Integer pos = idx.caseSensitiveWords.get(part);
+
+                if (pos != null && pos < best) {
+                    best = pos;
+                }
+
+                pos = idx.caseInsensitiveWords.get(part.toLowerCase());
+
+                if (pos != null && pos < best) {
+                    best = pos;
+                }
+            }
+        }
+
+        if (!idx.others.isEmpty()) {
+            String phraseMessage = String.join(" ", parts) + " ";
+            String phraseMessageLower = phraseMessage.toLowerCase();
+
+            // Entries are sorted by table position, so only those before the best word match need to be checked.
+            for (Entry entry : idx.others) {
+                if (entry.position >= best) {
+                    break;
+                }
+
+                if (entry.matches(message, phraseMessage, phraseMessageLower)) {
+                    best = entry.position;
+                    break;
+                }
+            }
+        }
+
+        return best == Integer.MAX_VALUE ? null : idx.keys[best];
+    }
+
+    /**
+     * Method that drops the in-memory index, it will be rebuilt from the database on next use.
+     */
+    public void invalidate() {
+        index = null;
+    }
+
+    private Index getIndex() {
+        Index idx = index;
+
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+
+                if (idx == null) {
+                    idx = new Index(PhantomBot.instance().getDataStore());
+                    index = idx;
+                }
+            }
+        }
+
+        return idx;
+    }
+
+    /**
+     * A keyword that can't be found with a single word lookup.
+     */
+    private static class Entry {
+        private final int position;
+        private final String phrase;
+        private final boolean isCaseSensitive;
+        private final Pattern pattern;
+
+        private Entry(int position, String phrase, boolean isCaseSensitive, Pattern pattern) {
+            this.position = position;
+            this.phrase = phrase;
+            this.isCaseSensitive = isCaseSensitive;
+            this.pattern = pattern;
+        }
+
+        private boolean matches(String message, String phraseMessage, String phraseMessageLower) {
+            if (pattern != null) {
+                return pattern.matcher(message).find();
+            }
+
+            return (isCaseSensitive ? phraseMessage : phraseMessageLower).contains(phrase);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the keywords table.
+     */
+    private static class Index {
+        private final String[] keys;
+        private final int size;
+        private final Map<String, Integer> caseSensitiveWords = new HashMap<>();
+        private final Map<String, Integer> caseInsensitiveWords = new HashMap<>();
+        private final List<Entry> others = new ArrayList<>();
+
+        private Index(DataStore dataStore) {
+            keys = dataStore.GetKeyList(TABLE, "");
+            size = keys.length;
+
+            for (int i = 0; i < keys.length; i++) {
+                try {
+                    JSONObject json = new JSONObject(dataStore.get(TABLE, keys[i]));
+                    String keyword = json.getString("keyword");
+                    boolean isCaseSensitive = json.optBoolean("isCaseSensitive", false);
+
+                    if (json.optBoolean("isRegex", false)) {
+                        try {
+                            others.add(new Entry(i, null, isCaseSensitive, Pattern.compile(keyword, isCaseSensitive ? 0 : Pattern.CASE_INSENSITIVE)));
+                        } catch (PatternSyntaxException ex) {
+                            com.gmt2001.Console.err.println("Bad regex detected in keyword [" + keys[i] + "]: " + ex.getMessage());
+                        }
+                    } else if (keyword.contains(" ")) {
+                        others.add(new Entry(i, isCaseSensitive ? keyword : keyword.toLowerCase(), isCaseSensitive, null));
+                    } else if (isCaseSensitive) {
+                        caseSensitiveWords.putIfAbsent(keyword, i);
+                    } else {
+                        caseInsensitiveWords.putIfAbsent(keyword.toLowerCase(), i);
+                    }
+                } catch (JSONException ex) {
+                    com.gmt2001.Console.err.println("Bad keyword detected [" + keys[i] + "]: " + ex.getMessage());
+                }
+            }
+        }
+    }
+}
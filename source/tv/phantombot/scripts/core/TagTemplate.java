@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.scripts.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A command response parsed once into literal text and tags, such as {@code (sender)} or {@code (customapi url)}.
+ *
+ * Tags are resolved left to right, the arguments of a tag first, through the {@link Resolver} given to
+ * {@link #render(Resolver)}. Rendering stops at the first tag that cancels, so the tags after it are never resolved.
+ * A tag can resolve asynchronously, in which case rendering carries on with the rest of the response and waits for
+ * it at the end.
+ *
+ * The syntax is the one of commandTags.js: a tag is {@code (name)} or {@code (name args)}, where the arguments start
+ * with a space, {@code =} or {@code |}, and {@code \(}, {@code \)} and {@code \\} are literal characters. Parentheses
+ * that do not form a tag are kept as text.
+ *
+ * @author phantombot
+ */
+public final class TagTemplate {
+
+    private static final int MAX_RAW_DEPTH = 8;
+    private static final long ASYNC_TIMEOUT = 30000L;
+    private final String source;
+    private final Node[] nodes;
+    private final boolean hasTags;
+
+    /**
+     * Resolves a tag.
+     */
+    public interface Resolver {
+
+        /**
+         * @param name The lowercase name of the tag
+         * @param args The arguments, starting with the separator, or an empty string
+         * @return The result, or null if the tag is unknown and should be kept as text
+         */
+        Result resolve(String name, String args);
+    }
+
+    /**
+     * Turns the value of an asynchronous tag into its result, called on the thread rendering the template.
+     */
+    public interface Continuation {
+
+        Result apply(String value);
+    }
+
+    /**
+     * The result of a tag.
+     */
+    public static final class Result {
+
+        /**
+         * Cancels the whole response.
+         */
+        public static final Result CANCEL = new Result(null, false, false, true, null, null);
+        private final String text;
+        private final boolean cache;
+        private final boolean raw;
+        private final boolean cancel;
+        private final CompletableFuture<String> future;
+        private final Continuation then;
+
+        private Result(String text, boolean cache, boolean raw, boolean cancel, CompletableFuture<String> future, Continuation then) {
+            this.text = text;
+            this.cache = cache;
+            this.raw = raw;
+            this.cancel = cancel;
+            this.future = future;
+            this.then = then;
+        }
+
+        /**
+         * @param text The text to output
+         * @param cache If the same tag with the same arguments should reuse this result in the rest of the response
+         * @param raw If the text can contain tags which should be resolved as well
+         * @return
+         */
+        public static Result of(String text, boolean cache, boolean raw) {
+            return new Result(text == null ? "" : text, cache, raw, false, null, null);
+        }
+
+        /**
+         * @param future The value, usually the content of an HTTP request started by the resolver
+         * @param then Turns the value into the result, may be null to output the value as-is
+         * @return
+         */
+        public static Result async(CompletableFuture<String> future, Continuation then) {
+            return new Result(null, false, false, false, future, then);
+        }
+    }
+
+    private TagTemplate(String source, Node[] nodes, boolean hasTags) {
+        this.source = source;
+        this.nodes = nodes;
+        this.hasTags = hasTags;
+    }
+
+    /**
+     * Parses a response.
+     *
+     * @param source
+     * @return
+     */
+    public static TagTemplate compile(String source) {
+        Parser parser = new Parser(source == null ? "" : source);
+        List<Node> list = new ArrayList<>();
+        parser.sequence(list, false);
+        return new TagTemplate(parser.s, list.toArray(new Node[list.size()]), parser.tags > 0);
+    }
+
+    /**
+     * Returns the text this template was parsed from.
+     *
+     * @return
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns true if the response contains at least one tag.
+     *
+     * @return
+     */
+    public boolean hasTags() {
+        return hasTags;
+    }
+
+    /**
+     * Resolves the tags of the response.
+     *
+     * @param resolver
+     * @return The response, or null if a tag cancelled it
+     */
+    public String render(Resolver resolver) {
+        Render r = new Render(resolver);
+        Output out = new Output(r, true);
+
+        if (!r.render(nodes, out)) {
+            out.abandon();
+            return null;
+        }
+
+        return out.finish();
+    }
+
+    /**
+     * One piece of the response.
+     */
+    private abstract static class Node {
+
+        /**
+         * @return false if the response was cancelled
+         */
+        abstract boolean render(Render r, Output out);
+    }
+
+    private static final class Literal extends Node {
+
+        private final String text;
+
+        private Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        boolean render(Render r, Output out) {
+            out.append(text);
+            return true;
+        }
+    }
+
+    /**
+     * Parentheses that are not a tag, around nodes which can contain tags.
+     */
+    private static final class Group extends Node {
+
+        private final String open;
+        private final Node[] children;
+
+        private Group(String open, Node[] children) {
+            this.open = open;
+            this.children = children;
+        }
+
+        @Override
+        boolean render(Render r, Output out) {
+            out.append(open);
+
+            if (!r.render(children, out)) {
+                return false;
+            }
+
+            out.append(")");
+            return true;
+        }
+    }
+
+    private static final class Tag extends Node {
+
+        private final String name;
+        private final String rawName;
+        private final Node[] args;
+
+        private Tag(String rawName, Node[] args) {
+            this.name = rawName.toLowerCase();
+            this.rawName = rawName;
+            this.args = args;
+        }
+
+        @Override
+        boolean render(Render r, Output out) {
+            String argText;
+
+            if (args.length == 0) {
+                argText = "";
+            } else {
+                Output argOut = new Output(r, false);
+
+                if (!r.render(args, argOut)) {
+                    return false;
+                }
+
+                argText = argOut.finish();
+            }
+
+            String key = name + "\0" + argText;
+            String cached = r.cache.get(key);
+
+            if (cached != null) {
+                out.append(cached);
+                return true;
+            }
+
+            Result result = r.resolver.resolve(name, argText);
+
+            if (result == null) {
+                out.append("(").append(rawName).append(argText).append(")");
+                return true;
+            } else if (result.cancel) {
+                return false;
+            } else if (result.future != null) {
+                return out.append(new Pending(result));
+            }
+
+            String text = result.raw ? r.renderRaw(result.text) : result.text;
+
+            if (text == null) {
+                return false;
+            }
+
+            if (result.cache) {
+                r.cache.put(key, text);
+            }
+
+            out.append(text);
+            return true;
+        }
+    }
+
+    /**
+     * The state of one call to {@link #render(Resolver)}.
+     */
+    private static final class Render {
+
+        private final Resolver resolver;
+        private final Map<String, String> cache = new HashMap<>();
+        private int depth = 0;
+
+        private Render(Resolver resolver) {
+            this.resolver = resolver;
+        }
+
+        private boolean render(Node[] nodes, Output out) {
+            for (Node node : nodes) {
+                if (!node.render(this, out)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private String renderRaw(String text) {
+            if (depth >= MAX_RAW_DEPTH) {
+                return text;
+            }
+
+            depth++;
+
+            try {
+                Output out = new Output(this, false);
+                return render(compile(text).nodes, out) ? out.finish() : null;
+            } finally {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * An asynchronous tag that has not been waited for yet.
+     */
+    private static final class Pending {
+
+        private final Result result;
+
+        private Pending(Result result) {
+            this.result = result;
+        }
+
+        /**
+         * @return The text, or null to cancel the response
+         */
+        private String await(Render r) {
+            String value;
+
+            try {
+                value = result.future.get(ASYNC_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | TimeoutException ex) {
+                result.future.cancel(true);
+                com.gmt2001.Console.err.println("Failed to resolve a command tag: " + ex.getMessage());
+                value = "";
+            }
+
+            if (result.then == null) {
+                return value == null ? "" : value;
+            }
+
+            Result then = result.then.apply(value == null ? "" : value);
+
+            if (then == null) {
+                return "";
+            } else if (then.cancel) {
+                return null;
+            }
+
+            return then.raw ? r.renderRaw(then.text) : then.text;
+        }
+    }
+
+    /**
+     * The rendered pieces of a response. Asynchronous tags are kept as {@link Pending} until {@link #finish()}, unless
+     * the output is the arguments of another tag, which need to be known right away.
+     */
+    private static final class Output {
+
+        private final Render r;
+        private final boolean deferred;
+        private final StringBuilder sb = new StringBuilder();
+        private List<Object> parts = null;
+
+        private Output(Render r, boolean deferred) {
+            this.r = r;
+            this.deferred = deferred;
+        }
+
+        private Output append(String text) {
+            sb.append(text);
+            return this;
+        }
+
+        /**
+         * @return false if the tag cancelled the response
+         */
+        private boolean append(Pending pending) {
+            if (!deferred) {
+                String text = pending.await(r);
+
+                if (text == null) {
+                    return false;
+                }
+
+                sb.append(text);
+                return true;
+            }
+
+            if (parts == null) {
+                parts = new ArrayList<>();
+            }
+
+            parts.add(sb.toString());
+            sb.setLength(0);
+            parts.add(pending);
+            return true;
+        }
+
+        /**
+         * @return The text, or null if an asynchronous tag cancelled the response
+         */
+        private String finish() {
+            if (parts == null) {
+                return sb.toString();
+            }
+
+            StringBuilder result = new StringBuilder();
+
+            for (int i = 0; i < parts.size(); i++) {
+                Object part = parts.get(i);
+
+                if (part instanceof Pending) {
+                    String text = ((Pending) part).await(r);
+
+                    if (text == null) {
+                        abandon(i + 1);
+                        return null;
+                    }
+
+                    result.append(text);
+                } else {
+                    result.append((String) part);
+                }
+            }
+
+            return result.append(sb).toString();
+        }
+
+        private void abandon() {
+            abandon(0);
+        }
+
+        private void abandon(int from) {
+            if (parts == null) {
+                return;
+            }
+
+            for (int i = from; i < parts.size(); i++) {
+                if (parts.get(i) instanceof Pending) {
+                    ((Pending) parts.get(i)).result.future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private static final class Parser {
+
+        private final String s;
+        private int pos = 0;
+        private int tags = 0;
+
+        private Parser(String s) {
+            this.s = s;
+        }
+
+        /**
+         * Parses nodes into a list until the end of the text or, when closeable, an unmatched {@code )}.
+         *
+         * @return true if an unmatched {@code )} was consumed
+         */
+        private boolean sequence(List<Node> list, boolean closeable) {
+            StringBuilder text = new StringBuilder();
+
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+
+                if (c == '\\' && pos + 1 < s.length() && isEscapable(s.charAt(pos + 1))) {
+                    text.append(s.charAt(pos + 1));
+                    pos += 2;
+                } else if (c == ')' && closeable) {
+                    pos++;
+                    flush(text, list);
+                    return true;
+                } else if (c == '(') {
+                    flush(text, list);
+                    paren(list);
+                } else {
+                    text.append(c);
+                    pos++;
+                }
+            }
+
+            flush(text, list);
+            return false;
+        }
+
+        private void paren(List<Node> list) {
+            int start = pos++;
+
+            while (pos < s.length() && isNameChar(s.charAt(pos))) {
+                pos++;
+            }
+
+            String name = s.substring(start + 1, pos);
+
+            if (pos < s.length() && s.charAt(pos) == ')') {
+                pos++;
+                tags++;
+                list.add(new Tag(name, new Node[0]));
+                return;
+            }
+
+            boolean isTag = pos < s.length() && isSeparator(s.charAt(pos));
+            List<Node> children = new ArrayList<>();
+            int mark = list.size();
+
+            if (!sequence(children, true)) {
+                // Never closed, the parenthesis is text and what follows it is part of the enclosing sequence.
+                list.add(new Literal("(" + name));
+                list.addAll(children);
+                return;
+            }
+
+            // Arguments can not contain parentheses that are not a tag, like in commandTags.js.
+            if (isTag && children.stream().noneMatch((n) -> n instanceof Group)) {
+                tags++;
+                list.add(mark, new Tag(name, children.toArray(new Node[children.size()])));
+            } else {
+                list.add(mark, new Group("(" + name, children.toArray(new Node[children.size()])));
+            }
+        }
+
+        private static void flush(StringBuilder text, List<Node> list) {
+            if (text.length() > 0) {
+                list.add(new Literal(text.toString()));
+                text.setLength(0);
+            }
+        }
+
+        private static boolean isEscapable(char c) {
+            return c == '(' || c == ')' || c == '\\';
+        }
+
+        private static boolean isNameChar(char c) {
+            return c != '\\' && c != '(' && c != ')' && c != '|' && c != '=' && !Character.isWhitespace(c);
+        }
+
+        private static boolean isSeparator(char c) {
+            return c == '|' || c == '=' || Character.isWhitespace(c);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.scripts.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parsed command responses, so a response is only parsed again after it is edited.
+ *
+ * Custom commands are cached by command name and dropped with {@link #invalidate(String)} when the command is
+ * edited or removed. Other responses, such as the lang entries used by the games, are cached by their text in a
+ * small LRU.
+ *
+ * @author phantombot
+ */
+public class TagTemplateCache {
+    private static final TagTemplateCache INSTANCE = new TagTemplateCache();
+    private static final int TEXT_CACHE_SIZE = 1000;
+    private final Map<String, TagTemplate> byKey = new ConcurrentHashMap<>();
+    private final Map<String, TagTemplate> byText = new LinkedHashMap<String, TagTemplate>(128, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TagTemplate> eldest) {
+            return size() > TEXT_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static TagTemplateCache instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private TagTemplateCache() {
+    }
+
+    /**
+     * Method that returns the parsed response of a command.
+     *
+     * @param key The command
+     * @param text The response, it is parsed again if it is not the text that was cached for the command
+     * @return
+     */
+    public TagTemplate get(String key, String text) {
+        TagTemplate template = byKey.get(key);
+
+        if (template == null || !template.getSource().equals(text)) {
+            template = TagTemplate.compile(text);
+            byKey.put(key, template);
+        }
+
+        return template;
+    }
+
+    /**
+     * Method that returns a parsed response which does not belong to a command.
+     *
+     * @param text
+     * @return
+     */
+    public TagTemplate get(String text) {
+        synchronized (byText) {
+            TagTemplate template = byText.get(text);
+
+            if (template == null) {
+                template = TagTemplate.compile(text);
+                byText.put(text, template);
+            }
+
+            return template;
+        }
+    }
+
+    /**
+     * Method that drops the parsed response of a command.
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        byKey.remove(key);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tv.phantombot.scripts.core;
+
+import com.gmt2001.datastore.DataStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import tv.phantombot.PhantomBot;
+
+/**
+ * In-memory index of the words tracked by the word counter.
+ *
+ * The wordCounter table is read once and kept in memory until it is invalidated. Each chat message is
+ * tokenized once and the tokens are looked up in a hash set. Counter increments are buffered and written
+ * to the database periodically.
+ *
+ * @author phantombot
+ */
+public class WordCounter {
+    private static final WordCounter INSTANCE = new WordCounter();
+    private static final String TABLE = "wordCounter";
+    private static final Pattern WORD_PATTERN = Pattern.compile("\\w+");
+    private static final Pattern SPLIT_PATTERN = Pattern.compile("\\W+");
+    private static final long FLUSH_INTERVAL = 30;
+    private final ScheduledExecutorService flushService = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "tv.phantombot.scripts.core.WordCounter::flush");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private volatile Index index = null;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static WordCounter instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private WordCounter() {
+        flushService.scheduleAtFixedRate(() -> {
+            try {
+                flush();
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Method that checks a chat message against the tracked words, and buffers an increment for the first match.
+     *
+     * @param message
+     * @return The word that was counted, or null if no tracked word was found.
+     */
+    public String countMessage(String message) {
+        Index idx = getIndex();
+
+        if (idx.isEmpty() || message == null || message.isEmpty()) {
+            return null;
+        }
+
+        String lower = message.toLowerCase();
+
+        if (!idx.words.isEmpty()) {
+            for (String token : SPLIT_PATTERN.split(lower)) {
+                if (!token.isEmpty() && idx.words.contains(token)) {
+                    increment(token);
+                    return token;
+                }
+            }
+        }
+
+        for (int i = 0; i < idx.patterns.size(); i++) {
+            if (idx.patterns.get(i).matcher(lower).find()) {
+                String word = idx.patternWords.get(i);
+                increment(word);
+                return word;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Method that returns the current count of a word, including increments which have not been written yet.
+     *
+     * @param word
+     * @return
+     */
+    public long getCount(String word) {
+        word = word.toLowerCase();
+        Long amount = pending.get(word);
+
+        return PhantomBot.instance().getDataStore().GetLong(TABLE, "", word) + (amount == null ? 0 : amount);
+    }
+
+    /**
+     * Method that checks if a word is being tracked.
+     *
+     * @param word
+     * @return
+     */
+    public boolean exists(String word) {
+        Index idx = getIndex();
+        word = word.toLowerCase();
+
+        return idx.words.contains(word) || idx.patternWords.contains(word);
+    }
+
+    /**
+     * Method that starts tracking a word.
+     *
+     * @param word
+     */
+    public void add(String word) {
+        word = word.toLowerCase();
+        pending.remove(word);
+        PhantomBot.instance().getDataStore().set(TABLE, word, "0");
+        invalidate();
+    }
+
+    /**
+     * Method that stops tracking a word.
+     *
+     * @param word
+     */
+    public void remove(String word) {
+        word = word.toLowerCase();
+        pending.remove(word);
+        PhantomBot.instance().getDataStore().del(TABLE, word);
+        invalidate();
+    }
+
+    /**
+     * Method that drops the in-memory index, it will be reloaded from the database on next use.
+     */
+    public void invalidate() {
+        index = null;
+    }
+
+    /**
+     * Method that writes all buffered increments to the database.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        DataStore dataStore = PhantomBot.instance().getDataStore();
+        Index idx = getIndex();
+
+        for (String word : new ArrayList<>(pending.keySet())) {
+            // Removing and merging are atomic, an increment after the remove starts a new entry for the next flush.
+            Long amount = pending.remove(word);
+
+            if (amount != null && amount != 0 && (idx.words.contains(word) || idx.patternWords.contains(word))) {
+                dataStore.incr(TABLE, word, amount);
+            }
+        }
+    }
+
+    /**
+     * Method that flushes the buffered increments and stops the flush timer.
+     */
+    public void kill() {
+        flushService.shutdown();
+        flush();
+    }
+
+    private void increment(String word) {
+        pending.merge(word, 1L, Long::sum);
+    }
+
+    private Index getIndex() {
+        Index idx = index;
+
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+
+                if (idx == null) {
+                    idx = new Index(PhantomBot.instance().getDataStore().GetKeyList(TABLE, ""));
+                    index = idx;
+                }
+            }
+        }
+
+        return idx;
+    }
+
+    /**
+     * Immutable snapshot of the tracked words.
+     */
+    private static class Index {
+        private final Set<String> words;
+        private final List<Pattern> patterns = new ArrayList<>();
+        private final List<String> patternWords = new ArrayList<>();
+
+        private Index(String[] keys) {
+            Set<String> set = new HashSet<>();
+
+            for (String key : keys) {
+                String word = key.toLowerCase();
+
+                if (WORD_PATTERN.matcher(word).matches()) {
+                    set.add(word);
+                } else if (!word.isEmpty()) {
+                    // Words with symbols can't be found by tokenizing, so match them the same way the script used to.
+                    patterns.add(Pattern.compile("(?<!\\w)" + Pattern.quote(word) + "(?!\\w)"));
+                    patternWords.add(word);
+                }
+            }
+
+            words = Collections.unmodifiableSet(set);
+        }
+
+        private boolean isEmpty() {
+            return words.isEmpty() && patterns.isEmpty();
+        }
+    }
+}
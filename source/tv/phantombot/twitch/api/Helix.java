@@ -45,10 +45,6 @@ public class Helix {
     private static final String CONTENT_TYPE = "application/json";
     // Timeout which to wait for a response before killing it (5 seconds).
     private static final int TIMEOUT_TIME = 5000;
-    // Time when our limit will reset.
-    private long rateLimitResetEpoch = System.currentTimeMillis();
-    // Our current rate limit before making any requests.
-    private int currentRateLimit = 120;
     // The user's oauth token -- this is required.
     private final String oAuthToken;
     private final String clientid;
@@ -94,65 +90,6 @@ public class Helix {
         DELETE
     };
     
-    /**
-     * Method that update the rate limits in sync.
-     * 
-     * @param limit The number of requests left.
-     * @param reset The time when our limits will reset.
-     */
-    private synchronized void updateRateLimits(int limit, long reset) {
-        currentRateLimit = limit;
-        rateLimitResetEpoch = reset;
-    }
-    
-    /**
-     * Method that gets the reset time for the rate limit.
-     * 
-     * @return 
-     */
-    private synchronized long getLimitResetTime() {
-        return rateLimitResetEpoch;
-    }
-    
-    /**
-     * Method that gets the current rate limits.
-     * 
-     * @return 
-     */
-    private synchronized int getCurrentRateLimit() {
-        return currentRateLimit;
-    }
-    
-    /**
-     * Method that checks if we hit the limit.
-     */
-    private void checkRateLimit() {
-        if (getCurrentRateLimit() <= 0) {
-            try {
-                // Sleep for the time remaining for the limit to reset.
-                Thread.sleep(System.currentTimeMillis() - getLimitResetTime());
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.printStackTrace(ex);
-            }
-        }
-    }
-    
-    /**
-     * Method that handles our rate limits.
-     * 
-     * @param limitReturned The limit returned from Helix.
-     * @param limitResetTimeReturned The reset time for our limit returned from Helix.
-     */
-    private void handleUpdateRateLimits(String limitReturned, String limitResetTimeReturned) {
-        try {
-            // Parse the rate limit returned.
-            updateRateLimits(Integer.parseInt(limitReturned), 
-                    Long.parseLong(limitResetTimeReturned));
-        } catch (NumberFormatException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
-    }
-    
     /**
      * Method that gets data from an InputStream.
      * 
@@ -209,8 +146,8 @@ public class Helix {
         InputStream inStream = null;
         int responseCode = 0;
         
-        // Check our rate limit.
-        checkRateLimit();
+        // Wait for a point in the shared rate limit bucket.
+        TwitchRateLimiter.instance().acquire();
         
         // Update the end point URL, if it is an endpoint and not full URL.
         if (endPoint.startsWith("/")) {
@@ -257,11 +194,8 @@ public class Helix {
             // Get our response code.
             responseCode = connection.getResponseCode();
             
-            // Get the current rate limits.
-            String limit = connection.getHeaderField("Ratelimit-Remaining");
-            String reset = connection.getHeaderField("Ratelimit-Reset");
-            // Handle the current limits.
-            handleUpdateRateLimits(limit, reset);
+            // Correct the shared bucket with the current limits.
+            TwitchRateLimiter.instance().update(connection.getHeaderField("Ratelimit-Limit"), connection.getHeaderField("Ratelimit-Remaining"));
                 
             // Get our response stream.
             if (responseCode == 200) {
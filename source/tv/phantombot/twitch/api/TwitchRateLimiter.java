@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.twitch.api;
+
+/**
+ * Token bucket shared by the requests to the Twitch API.
+ *
+ * The bucket refills evenly over a minute, as Twitch does, and is corrected from the Ratelimit-Limit and
+ * Ratelimit-Remaining headers of each response when Twitch sends them. A request which finds the
+ * bucket empty waits for the next point instead of failing with a 429.
+ *
+ * @author phantombot
+ */
+public class TwitchRateLimiter {
+    private static final TwitchRateLimiter INSTANCE = new TwitchRateLimiter();
+    private static final long REFILL_MILLIS = 60 * 1000;
+    private int limit = 800;
+    private double tokens = 800;
+    private long lastRefill = System.currentTimeMillis();
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static TwitchRateLimiter instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private TwitchRateLimiter() {
+    }
+
+    /**
+     * Method that takes a point from the bucket, waiting for one if it is empty.
+     */
+    public synchronized void acquire() {
+        refill();
+
+        while (tokens < 1) {
+            try {
+                wait(Math.max(1, (long) Math.ceil((1 - tokens) * REFILL_MILLIS / limit)));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            refill();
+        }
+
+        tokens--;
+    }
+
+    /**
+     * Method that corrects the bucket from the headers of a response, missing headers are ignored.
+     *
+     * @param limitHeader Ratelimit-Limit, the size of the bucket
+     * @param remainingHeader Ratelimit-Remaining, the points left
+     */
+    public synchronized void update(String limitHeader, String remainingHeader) {
+        try {
+            if (limitHeader != null) {
+                limit = Math.max(1, Integer.parseInt(limitHeader));
+            }
+
+            if (remainingHeader != null) {
+                refill();
+                tokens = Math.min(limit, Integer.parseInt(remainingHeader));
+            }
+        } catch (NumberFormatException ex) {
+            com.gmt2001.Console.debug.println("Bad rate limit header: " + ex.getMessage());
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Method that returns the points left in the bucket.
+     *
+     * @return
+     */
+    public synchronized int getAvailable() {
+        refill();
+        return (int) tokens;
+    }
+
+    private void refill() {
+        long now = System.currentTimeMillis();
+
+        tokens = Math.min(limit, tokens + (double) (now - lastRefill) * limit / REFILL_MILLIS);
+        lastRefill = now;
+    }
+}
@@ -16,10 +16,10 @@
  */
 package tv.phantombot.twitch.irc;
 
+import com.gmt2001.ExponentialBackoff;
 import java.net.URI;
 import java.nio.channels.NotYetConnectedException;
 import java.util.concurrent.locks.ReentrantLock;
-import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import tv.phantombot.PhantomBot;
 import tv.phantombot.twitch.irc.chat.utils.MessageQueue;
 
@@ -33,7 +33,7 @@ public class TwitchSession extends MessageQueue {
     private final ReentrantLock lock2 = new ReentrantLock();
     private static final long MAX_BACKOFF = 300000L;
     private long lastReconnect;
-    private long nextBackoff = 1000L;
+    private final ExponentialBackoff backoff = new ExponentialBackoff(1000L, MAX_BACKOFF);
 
     /**
      * Method that return this instance.
@@ -100,11 +100,9 @@ public class TwitchSession extends MessageQueue {
     public void sendRaw(String message) {
         try {
             this.twitchWSIRC.send(message);
-        } catch (NotYetConnectedException  ex) {
-            com.gmt2001.Console.err.println("Failed to send message to Twitch [NotYetConnectedException]: " + ex.getMessage());
-        } catch (WebsocketNotConnectedException ex) {
+        } catch (NotYetConnectedException ex) {
             reconnect();
-            com.gmt2001.Console.err.println("Failed to send message to Twitch [WebsocketNotConnectedException]: " + ex.getMessage());
+            com.gmt2001.Console.err.println("Failed to send message to Twitch [NotYetConnectedException]: " + ex.getMessage());
         } catch (Exception ex) {
             com.gmt2001.Console.err.println("Failed to send message to Twitch [" + ex.getClass().getSimpleName() + "]: " + ex.getMessage());
         }
@@ -119,6 +117,24 @@ public class TwitchSession extends MessageQueue {
         sendRaw("PRIVMSG #" + getChannelName() + " :" + message);
     }
 
+    /**
+     * Method that joins another channel on this connection.
+     *
+     * @param {String} channel
+     */
+    public void join(String channel) {
+        this.twitchWSIRC.join(channel);
+    }
+
+    /**
+     * Method that leaves a channel joined with join().
+     *
+     * @param {String} channel
+     */
+    public void part(String channel) {
+        this.twitchWSIRC.part(channel);
+    }
+
     /**
      * Method that will do the moderation check of the bot.
      */
@@ -168,23 +184,25 @@ public class TwitchSession extends MessageQueue {
     public void doReconnect() {
         if (lock2.tryLock()) {
             try {
-                long now = System.currentTimeMillis();
-
-                if (lastReconnect + (MAX_BACKOFF * 2) < now) {
-                    nextBackoff = 1000L;
-                } else {
-                    com.gmt2001.Console.out.println("Delaying next connection attempt to prevent spam, " + (nextBackoff / 1000) + " seconds...");
-                    com.gmt2001.Console.warn.println("Delaying next reconnect " + (nextBackoff / 1000) + " seconds...", true);
-                    Thread.sleep(nextBackoff);
+                while (!PhantomBot.instance().isExiting()) {
+                    long now = System.currentTimeMillis();
+
+                    if (lastReconnect + (MAX_BACKOFF * 2) < now) {
+                        backoff.Reset();
+                    } else {
+                        com.gmt2001.Console.out.println("Delaying next connection attempt to prevent spam...");
+                        com.gmt2001.Console.warn.println("Delaying next reconnect to Twitch", true);
+                        backoff.Backoff();
+                    }
+
+                    lastReconnect = System.currentTimeMillis();
+
+                    if (this.twitchWSIRC.reconnectBlocking()) {
+                        // Should be connected now.
+                        this.setAllowSendMessages(true);
+                        break;
+                    }
                 }
-
-                lastReconnect = now;
-                nextBackoff = Math.min(MAX_BACKOFF, nextBackoff * 2L);
-
-                this.twitchWSIRC.reconnectBlocking();
-
-                // Should be connected now.
-                this.setAllowSendMessages(true);
             } catch (InterruptedException ex) {
                 com.gmt2001.Console.err.printStackTrace(ex);
             } finally {
@@ -16,31 +16,40 @@
  */
 package tv.phantombot.twitch.irc;
 
+import com.gmt2001.wsclient.WSClient;
+import com.gmt2001.wsclient.WsClientFrameHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 import java.net.URI;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.Executors;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.drafts.Draft_6455;
-import org.java_websocket.enums.ReadyState;
-import org.java_websocket.handshake.ServerHandshake;
+import javax.net.ssl.SSLException;
 import tv.phantombot.PhantomBot;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.irc.complete.IrcConnectCompleteEvent;
+import tv.phantombot.twitch.irc.chat.utils.InboundPipeline;
+import tv.phantombot.twitch.irc.chat.utils.JoinRateLimiter;
 
-public class TwitchWSIRC extends WebSocketClient {
+public class TwitchWSIRC implements WsClientFrameHandler {
 
+    // Send a PING after 3 minutes without anything from Twitch, and close if nothing comes back within 30 seconds.
+    private static final int PING_IDLE_SECONDS = 180;
+    private static final long PONG_TIMEOUT_SECONDS = 30;
+    // Twitch allows 20 join attempts per 10 seconds.
+    private static final int JOIN_LIMIT = 20;
+    private static final long JOIN_WINDOW = 10000L;
+    private final URI uri;
     private final TwitchSession session;
     private final String botName;
     private final String channelName;
+    private final WSClient client;
     private String oAuth;
-    private TwitchWSIRCParser twitchWSIRCParser;
-    private long lastPong = System.currentTimeMillis();
-    private long lastPing = 0l;
-    private boolean connecting = true;
+    private volatile TwitchWSIRCParser twitchWSIRCParser;
+    private final InboundPipeline inboundPipeline;
+    private final JoinRateLimiter joinRateLimiter = new JoinRateLimiter(JOIN_LIMIT, JOIN_WINDOW, this::send);
+    private final Set<String> channels = ConcurrentHashMap.newKeySet();
 
     /**
      * Class constructor.
@@ -50,43 +59,16 @@ public class TwitchWSIRC extends WebSocketClient {
      * @param {String} botName
      * @param {String} oAuth
      */
-    public TwitchWSIRC(URI uri, String channelName, String botName, String oAuth, TwitchSession session) {
-        super(uri, new Draft_6455());
-
+    public TwitchWSIRC(URI uri, String channelName, String botName, String oAuth, TwitchSession session) throws SSLException {
         this.uri = uri;
         this.channelName = channelName;
         this.botName = botName;
         this.oAuth = oAuth;
         this.session = session;
-
-        // Create a new ping timer that runs every 30 seconds.
-        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> {
-            Thread.currentThread().setName("tv.phantombot.chat.twitchwsirc.TwitchWSIRC::pingTimer");
-
-            if (this.getReadyState() != ReadyState.OPEN) {
-                return;
-            }
-
-            if (this.connecting) {
-                lastPing = System.currentTimeMillis();
-                lastPong = System.currentTimeMillis();
-                this.connecting = false;
-                return;
-            }
-
-            // if we sent a ping longer than 3 minutes ago, send another one.
-            if (System.currentTimeMillis() > (lastPing + 180000)) {
-                com.gmt2001.Console.debug.println("Sending a PING to Twitch.");
-                lastPing = System.currentTimeMillis();
-                this.send("PING");
-
-                // If Twitch's last pong was more than 3.5 minutes ago, close our connection.
-            } else if (System.currentTimeMillis() > (lastPong + 210000)) {
-                com.gmt2001.Console.out.println("Closing our connection with Twitch since no PONG got sent back.");
-                com.gmt2001.Console.warn.println("Closing our connection with Twitch since no PONG got sent back.", true);
-                this.close();
-            }
-        }, 10, 30, TimeUnit.SECONDS);
+        this.client = new WSClient(uri, PING_IDLE_SECONDS, 0, this);
+        this.inboundPipeline = new InboundPipeline("TwitchWSIRC", InboundPipeline.defaultWorkerCount(), 4096,
+                this::parseLine, this.client::setAutoRead);
+        this.channels.add(channelName.toLowerCase());
     }
 
     public void setOAuth(String oAuth) {
@@ -94,51 +76,126 @@ public class TwitchWSIRC extends WebSocketClient {
     }
 
     /**
-     * Method that sets sockets and connects to Twitch.
+     * Method that connects to Twitch.
      *
      * @param {boolean} reconnect
      */
     public boolean connectWSS(boolean reconnect) {
-        try {
-            if (reconnect) {
-                com.gmt2001.Console.out.println("Reconnecting to Twitch WS-IRC Server (SSL) [" + this.uri.getHost() + "]");
-            } else {
-                com.gmt2001.Console.out.println("Connecting to Twitch WS-IRC Server (SSL) [" + this.uri.getHost() + "]");
+        if (reconnect) {
+            com.gmt2001.Console.out.println("Reconnecting to Twitch WS-IRC Server (SSL) [" + this.uri.getHost() + "]");
+        } else {
+            com.gmt2001.Console.out.println("Connecting to Twitch WS-IRC Server (SSL) [" + this.uri.getHost() + "]");
+        }
+
+        client.setTcpNoDelay(PhantomBot.getTwitchTcpNodelay());
+        return client.connect();
+    }
+
+    /**
+     * Method that drops the current connection, if any, and connects again.
+     *
+     * @return {boolean} true if connected
+     */
+    public boolean reconnectBlocking() throws InterruptedException {
+        com.gmt2001.Console.out.println("Reconnecting to Twitch WS-IRC Server (SSL) [" + this.uri.getHost() + "]");
+        client.setTcpNoDelay(PhantomBot.getTwitchTcpNodelay());
+        return client.reconnectBlocking();
+    }
+
+    /**
+     * Method that sends a raw line to Twitch.
+     *
+     * @param {String} message
+     */
+    public void send(String message) {
+        client.send(message);
+    }
+
+    /**
+     * Method that closes the connection.
+     *
+     * @param {int} code
+     * @param {String} reason
+     */
+    public void close(int code, String reason) {
+        client.close(code, reason);
+    }
+
+    /**
+     * Method that joins an additional channel on this connection, with its own parser. The channel is joined again after
+     * every reconnect.
+     *
+     * @param {String} channel
+     */
+    public void join(String channel) {
+        channel = channel.startsWith("#") ? channel.substring(1).toLowerCase() : channel.toLowerCase();
+
+        if (channels.add(channel)) {
+            TwitchWSIRCParser.instance(this, channel, session);
+
+            if (client.isConnected()) {
+                joinRateLimiter.join(channel);
             }
-            // Get our context.
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            // Init the context.
-            sslContext.init(null, null, null);
-            // Get a socket factory.
-            SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-            // Set TCP no delay.
-            this.setTcpNoDelay(PhantomBot.getTwitchTcpNodelay());
-            // Set the socket.
-            this.setSocketFactory(sslSocketFactory);
-            // Connect.
-            connecting = true;
-            this.connect();
-            return true;
-        } catch (KeyManagementException | NoSuchAlgorithmException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
         }
-        return false;
     }
 
-    synchronized void gotPong() {
-        lastPong = System.currentTimeMillis();
+    /**
+     * Method that leaves a channel joined with join().
+     *
+     * @param {String} channel
+     */
+    public void part(String channel) {
+        channel = channel.startsWith("#") ? channel.substring(1).toLowerCase() : channel.toLowerCase();
+
+        if (!channel.equals(channelName.toLowerCase()) && channels.remove(channel)) {
+            joinRateLimiter.cancel(channel);
+
+            if (client.isConnected()) {
+                send("PART #" + channel);
+            }
+
+            TwitchWSIRCParser.remove(channel);
+        }
+    }
+
+    /**
+     * Method that returns the channels joined on this connection.
+     *
+     * @return {Set}
+     */
+    public Set<String> getChannels() {
+        return Collections.unmodifiableSet(channels);
+    }
+
+    /**
+     * Method that queues the JOIN of every channel, called once logged in.
+     */
+    void joinChannels() {
+        channels.forEach(joinRateLimiter::join);
+    }
+
+    private void parseLine(String line) {
+        TwitchWSIRCParser parser = TwitchWSIRCParser.forLine(line, twitchWSIRCParser);
+
+        if (parser != null) {
+            parser.parseData(line, this);
+        }
+    }
+
+    void gotPong() {
+        com.gmt2001.Console.debug.println("Got a PONG from Twitch.");
     }
 
     /**
      * Callback that is called when we open a connect to Twitch.
      *
-     * @param {ServerHandshake} handshakedata
+     * @param {WSClient} client
      */
     @Override
-    public void onOpen(ServerHandshake handshakedata) {
+    public void handshakeComplete(WSClient client) {
         com.gmt2001.Console.out.println("Connected to " + this.botName + "@" + this.uri.getHost() + " (SSL)");
 
-        this.twitchWSIRCParser = TwitchWSIRCParser.instance(this.getConnection(), channelName, session);
+        this.twitchWSIRCParser = TwitchWSIRCParser.instance(this, channelName, session);
 
         // Send the oauth
         this.send("PASS " + oAuth);
@@ -152,52 +209,76 @@ public class TwitchWSIRC extends WebSocketClient {
     /**
      * Callback that is called when the connection with Twitch is lost.
      *
+     * @param {WSClient} client
      * @param {int} code
      * @param {String} reason
      * @param {boolean} remote
      */
     @Override
-    public void onClose(int code, String reason, boolean remote) {
+    public void onClose(WSClient client, int code, String reason, boolean remote) {
         // Reconnect if the bot isn't shutting down.
         if (!reason.equals("bye")) {
             com.gmt2001.Console.out.println("Lost connection to Twitch WS-IRC. Reconnecting...");
             com.gmt2001.Console.warn.println("Lost connection with Twitch, caused by: ", true);
             com.gmt2001.Console.warn.println("Code [" + code + "] Reason [" + reason + "] Remote Hangup [" + remote + "]", true);
 
-            connecting = true;
+            joinRateLimiter.clear();
             this.session.reconnect();
         } else {
             com.gmt2001.Console.out.println("Connection to Twitch WS-IRC was closed...");
+            inboundPipeline.kill();
+        }
+    }
+
+    /**
+     * Callback that is called when nothing has been received from Twitch for a while.
+     *
+     * @param {WSClient} client
+     * @param {IdleStateEvent} event
+     */
+    @Override
+    public void onIdle(WSClient client, IdleStateEvent event) {
+        if (event.state() == IdleState.READER_IDLE) {
+            com.gmt2001.Console.debug.println("Sending a PING to Twitch.");
+            this.send("PING");
+
+            // If Twitch doesn't answer, close our connection so that we reconnect.
+            client.expectRead(PONG_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         }
     }
 
     /**
      * Callback that is called when we get an error from the socket.
      *
-     * @param {Exception} ex
+     * @param {WSClient} client
+     * @param {Throwable} ex
      */
     @Override
-    public void onError(Exception ex) {
+    public void onError(WSClient client, Throwable ex) {
         com.gmt2001.Console.debug.println("Twitch WS-IRC Exception [" + ex.getClass().getSimpleName() + "]: " + ex);
     }
 
     /**
      * Callback that is called when we get a message from Twitch.
      *
+     * @param {WSClient} client
      * @param {String} message
      */
     @Override
-    public void onMessage(String message) {
+    public void onMessage(WSClient client, String message) {
         if (message.startsWith("PING")) {
             send("PONG");
         }
 
-        try {
-            new Thread(() -> {
-                twitchWSIRCParser.parseData(message, this);
-            }).start();
-        } catch (Exception ex) {
-            twitchWSIRCParser.parseData(message, this);
-        }
+        inboundPipeline.submit(message);
+    }
+
+    /**
+     * Method that returns the inbound message pipeline, for metrics.
+     *
+     * @return
+     */
+    public InboundPipeline getInboundPipeline() {
+        return inboundPipeline;
     }
 }
@@ -17,14 +17,13 @@
 package tv.phantombot.twitch.irc;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingDeque;
-import org.java_websocket.WebSocket;
+import java.util.concurrent.atomic.LongAdder;
 import tv.phantombot.PhantomBot;
 import tv.phantombot.cache.UsernameCache;
 import tv.phantombot.event.EventBus;
@@ -35,7 +34,7 @@ import tv.phantombot.event.irc.channel.IrcChannelUserModeEvent;
 import tv.phantombot.event.irc.clearchat.IrcClearchatEvent;
 import tv.phantombot.event.irc.complete.IrcJoinCompleteEvent;
 import tv.phantombot.event.irc.message.IrcChannelMessageEvent;
-import tv.phantombot.event.irc.message.IrcModerationEvent;
+import tv.phantombot.event.irc.message.IrcChatMessageEvent;
 import tv.phantombot.event.irc.message.IrcPrivateMessageEvent;
 import tv.phantombot.event.twitch.bits.TwitchBitsEvent;
 import tv.phantombot.event.twitch.raid.TwitchRaidEvent;
@@ -58,38 +57,121 @@ public class TwitchWSIRCParser implements Runnable {
     // The user login sent in the anonymous sub gift event from Twitch.
     // See: https://discuss.dev.twitch.tv/t/anonymous-sub-gifting-to-launch-11-15-launch-details/18683
     private static final String ANONYMOUS_GIFTER_TWITCH_USER = "ananonymousgifter";
-    private static TwitchWSIRCParser instance;
+    private static final ConcurrentMap<String, TwitchWSIRCParser> instances = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TwitchWSIRCCommand> parserMap = new ConcurrentHashMap<>(8);
-    private final List<String> moderators = new CopyOnWriteArrayList<>();
+    private final Set<String> moderators = ConcurrentHashMap.newKeySet();
+    private final Set<String> subscribers = ConcurrentHashMap.newKeySet();
     private final ScriptEventManager scriptEventManager = ScriptEventManager.instance();
     private final UsernameCache usernameCache = UsernameCache.instance();
     private final EventBus eventBus = EventBus.instance();
     private final ConcurrentMap<String, SubscriberBulkGifter> bulkSubscriberGifters = new ConcurrentHashMap<>();
     private final BlockingDeque<Map<String, String>> giftedSubscriptionEvents = new LinkedBlockingDeque<>();
-    private WebSocket webSocket;
+    private TwitchWSIRC webSocket;
     private final TwitchSession session;
     private final String channelName;
     private final Thread runThread;
+    private final LongAdder linesParsed = new LongAdder();
+    private volatile boolean isKilled = false;
+
+    /**
+     * Method that returns the parser of a channel, creating it if needed.
+     *
+     * @param {TwitchWSIRC} webSocket
+     * @param {String}      channelName
+     * @param {TwitchSession} session
+     * @return {TwitchWSIRCParser}
+     */
+    public static synchronized TwitchWSIRCParser instance(TwitchWSIRC webSocket, String channelName, TwitchSession session) {
+        TwitchWSIRCParser instance = instances.get(channelName.toLowerCase());
 
-    public static synchronized TwitchWSIRCParser instance(WebSocket webSocket, String channelName, TwitchSession session) {
         if (instance == null) {
             instance = new TwitchWSIRCParser(webSocket, channelName, session);
+            instances.put(channelName.toLowerCase(), instance);
         } else {
             instance.setWebSocket(webSocket);
         }
-        
+
         return instance;
     }
+
+    /**
+     * Method that removes the parser of a channel which was left.
+     *
+     * @param {String} channelName
+     */
+    static synchronized void remove(String channelName) {
+        TwitchWSIRCParser instance = instances.remove(channelName.toLowerCase());
+
+        if (instance != null) {
+            instance.isKilled = true;
+            instance.runThread.interrupt();
+        }
+    }
+
+    /**
+     * Method that picks the parser for the channel a line was sent to. Lines without a channel go to the default parser
+     * of the connection.
+     *
+     * @param {String}            line
+     * @param {TwitchWSIRCParser} defaultParser
+     * @return {TwitchWSIRCParser} The parser, or null if the line is for a channel which has no parser
+     */
+    static TwitchWSIRCParser forLine(String line, TwitchWSIRCParser defaultParser) {
+        String channel = channelOf(line);
+
+        if (channel == null) {
+            return defaultParser;
+        }
+
+        TwitchWSIRCParser parser = instances.get(channel);
+
+        if (parser == null) {
+            // Usually a line for a channel which was just left.
+            com.gmt2001.Console.debug.println("Dropped a line for #" + channel + ", which has no parser");
+        }
+
+        return parser;
+    }
+
+    /**
+     * Method that returns the channel a line was sent to, without the #.
+     *
+     * @param {String} line
+     * @return {String} The channel, or null
+     */
+    static String channelOf(String line) {
+        int start = line.startsWith("@") ? line.indexOf(' ') + 1 : 0;
+        int trailing = line.indexOf(" :", start + 1);
+        int hash = line.indexOf(" #", start);
+
+        if (hash < 0 || (trailing >= 0 && hash > trailing)) {
+            return null;
+        }
+
+        int end = line.indexOf(' ', hash + 2);
+        return line.substring(hash + 2, end < 0 ? line.length() : end).trim().toLowerCase();
+    }
+
+    /**
+     * Method that returns the number of lines parsed for each channel.
+     *
+     * @return {Map}
+     */
+    public static Map<String, Long> getLineCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        instances.forEach((channel, parser) -> counts.put(channel, parser.linesParsed.sum()));
+        return counts;
+    }
     
     /**
      * Class constructor.
      *
-     * @param {WebSocket} webSocket
+     * @param {TwitchWSIRC} webSocket
      * @param {String}    channelName
      * @param {TwitchSession}   session
      */
     @SuppressWarnings("CallToThreadStartDuringObjectConstruction")
-    private TwitchWSIRCParser(WebSocket webSocket, String channelName, TwitchSession session) {
+    private TwitchWSIRCParser(TwitchWSIRC webSocket, String channelName, TwitchSession session) {
         this.webSocket = webSocket;
         this.channelName = channelName;
         this.session = session;
@@ -126,7 +208,7 @@ public class TwitchWSIRCParser implements Runnable {
         this.runThread.start();
     }
     
-    private void setWebSocket(WebSocket webSocket) {
+    private void setWebSocket(TwitchWSIRC webSocket) {
         this.webSocket = webSocket;
     }
 
@@ -135,7 +217,7 @@ public class TwitchWSIRCParser implements Runnable {
      */
     @Override
     public void run() {
-        while (!PhantomBot.isInExitState()) {
+        while (!PhantomBot.isInExitState() && !isKilled) {
             try {
                 Map<String, String> tags = giftedSubscriptionEvents.take();
 
@@ -154,7 +236,9 @@ public class TwitchWSIRCParser implements Runnable {
                     }
                 }
             } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.printStackTrace(ex);
+                if (!isKilled) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                }
             }
         }
     }
@@ -165,6 +249,8 @@ public class TwitchWSIRCParser implements Runnable {
      * @param {String} rawMessage
      */
     public void parseData(String rawMessage, TwitchWSIRC client) {
+        linesParsed.increment();
+
         try {
             if (rawMessage.contains("\n")) {
                 String[] messageList = rawMessage.split("\n");
@@ -314,8 +400,9 @@ public class TwitchWSIRCParser implements Runnable {
      * @param {String} message
      * @param {String} username
      * @param {Map}    tags
+     * @return {CommandEvent}
      */
-    private void parseCommand(String message, String username, Map<String, String> tags) {
+    private CommandEvent parseCommand(String message, String username, Map<String, String> tags) {
         String command = message.substring(1);
         String arguments = "";
 
@@ -326,8 +413,7 @@ public class TwitchWSIRCParser implements Runnable {
             arguments = commandString.substring(commandString.indexOf(" ") + 1);
         }
 
-        // Send the command.
-        scriptEventManager.onEvent(new CommandEvent(username, command, arguments, tags));
+        return new CommandEvent(username, command, arguments, tags);
     }
 
     /**
@@ -350,8 +436,8 @@ public class TwitchWSIRCParser implements Runnable {
         webSocket.send("CAP REQ :twitch.tv/commands");
         webSocket.send("CAP REQ :twitch.tv/tags");
 
-        // Join the channel.
-        webSocket.send("JOIN #" + channelName);
+        // Join the channel, and any other channel shared on this connection.
+        webSocket.joinChannels();
 
         // Log in the console that web joined.
         com.gmt2001.Console.out.println("Channel Joined [#" + channelName + "]");
@@ -374,7 +460,7 @@ public class TwitchWSIRCParser implements Runnable {
         }
 
         // Print the message in the console
-        com.gmt2001.Console.out.println(username + ": " + message);
+        com.gmt2001.Console.out.printlnChat(username + ": " + message);
 
         // Cache the user's display name and ID.
         if (tags.containsKey("display-name") && tags.containsKey("user-id")) {
@@ -386,37 +472,34 @@ public class TwitchWSIRCParser implements Runnable {
             scriptEventManager.onEvent(new TwitchBitsEvent(username, tags.get("bits"), message));
         }
 
-        // Check if the message is a command.
-        if (message.startsWith("!")) {
-            parseCommand(message, username, tags);
-        }
-
-        // Send the moderation event.
-        scriptEventManager.onEvent(new IrcModerationEvent(session, username, message, tags));
-        //eventBus.postAsync(new IrcModerationEvent(session, username, message, tags));
-
-        // Check to see if the user is a channel subscriber.
+        // Check to see if the user became or stopped being a channel subscriber.
         if (tags.containsKey("subscriber") && tags.get("subscriber").equals("1")) {
-            eventBus.postAsync(new IrcPrivateMessageEvent(session, "jtv", "SPECIALUSER " + username + " subscriber", tags));
+            if (subscribers.add(username)) {
+                eventBus.postAsync(new IrcPrivateMessageEvent(session, "jtv", "SPECIALUSER " + username + " subscriber", tags));
+            }
+        } else {
+            subscribers.remove(username);
         }
 
-        // Check to see if the user is a moderator.
+        // Check to see if the user became or stopped being a moderator.
         if (tags.containsKey("user-type")) {
             if (tags.get("user-type").length() > 0) {
-                if (!moderators.contains(username)) {
+                if (moderators.add(username)) {
                     eventBus.postAsync(new IrcChannelUserModeEvent(session, username, "O", true));
-                    moderators.add(username);
-                }
-            } else {
-                if (moderators.contains(username)) {
-                    eventBus.postAsync(new IrcChannelUserModeEvent(session, username, "O", false));
-                    moderators.remove(username);
                 }
+            } else if (moderators.remove(username)) {
+                eventBus.postAsync(new IrcChannelUserModeEvent(session, username, "O", false));
             }
         }
 
-        // Send the message to the scripts.
-        eventBus.post(new IrcChannelMessageEvent(session, username, message, tags));
+        IrcChannelMessageEvent channelMessageEvent = new IrcChannelMessageEvent(session, username, message, tags);
+
+        // Run moderation and then the command first, init.js marks the message if moderation punished it.
+        scriptEventManager.onEvent(new IrcChatMessageEvent(session, username, message, tags,
+                message.startsWith("!") ? parseCommand(message, username, tags) : null, channelMessageEvent));
+
+        // Send the message to the Java listeners and the ircChannelMessage hooks.
+        eventBus.post(channelMessageEvent);
 
         // Print the tags for debugging.
         com.gmt2001.Console.debug.println("IRCv3 Tags: " + tags);
@@ -580,15 +663,13 @@ public class TwitchWSIRCParser implements Runnable {
 
         if (tags.containsKey("user-type")) {
             if (tags.get("user-type").length() > 0) {
-                if (!moderators.contains(username)) {
+                if (moderators.add(username)) {
                     eventBus.postAsync(new IrcChannelUserModeEvent(session, username, "O", true));
-                    moderators.add(username);
                 }
             } else {
                 if (channelName.equals(username)) {
-                    if (!moderators.contains(username)) {
+                    if (moderators.add(username)) {
                         eventBus.postAsync(new IrcChannelUserModeEvent(session, username, "O", true));
-                        moderators.add(username);
                     }
                 } else if (tags.containsKey("display-name") && !tags.get("display-name").equalsIgnoreCase(username)) {
                     com.gmt2001.Console.out.println();
@@ -615,8 +696,7 @@ public class TwitchWSIRCParser implements Runnable {
                         // We're not a mod thus we cannot send messages.
                         session.setAllowSendMessages(false);
                         // Remove the bot from the moderators list.
-                        if (moderators.contains(username)) {
-                            moderators.remove(username);
+                        if (moderators.remove(username)) {
                             eventBus.postAsync(new IrcChannelUserModeEvent(session, username, "O", false));
                         }
                     }
@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.twitch.irc.chat.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, ordered processing of the frames received from Twitch IRC.
+ *
+ * A single reader thread takes frames off a bounded queue, splits them into lines, and hands each line to one of a
+ * fixed number of worker threads. The worker is picked by hashing the user the line belongs to, so lines from the
+ * same user are always handled in the order they were received.
+ *
+ * {@link #submit(String)} never blocks the socket thread. When the frame queue reaches its capacity the read control
+ * is told to stop reading from the socket, and once the queue has drained to half of its capacity it is told to read
+ * again. Frames that were already read while pausing are still queued, nothing is dropped.
+ */
+public class InboundPipeline {
+
+    private static final long REPORT_INTERVAL = TimeUnit.MINUTES.toNanos(5);
+    private final String name;
+    private final Consumer<String> handler;
+    private final Consumer<Boolean> readControl;
+    private final BlockingQueue<Frame> frames;
+    private final int capacity;
+    private final AtomicBoolean paused = new AtomicBoolean(false);
+    private final Worker[] workers;
+    private final Thread readerThread;
+    private volatile boolean isKilled = false;
+
+    private final LongAdder framesIn = new LongAdder();
+    private final LongAdder framesDone = new LongAdder();
+    private final LongAdder linesIn = new LongAdder();
+    private final LongAdder linesOut = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder latencySum = new LongAdder();
+    private final AtomicLong latencyMax = new AtomicLong();
+    private long lastReport = System.nanoTime();
+    private long lastReportLines = 0;
+
+    /**
+     * Class constructor.
+     *
+     * @param name Name used for the threads and the metrics
+     * @param workerCount Number of worker threads
+     * @param capacity Capacity of the frame queue and of each worker queue
+     * @param handler Called with each line, on the worker owning the user of the line
+     */
+    public InboundPipeline(String name, int workerCount, int capacity, Consumer<String> handler) {
+        this(name, workerCount, capacity, handler, null);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param name Name used for the threads and the metrics
+     * @param workerCount Number of worker threads
+     * @param capacity Capacity of the frame queue and of each worker queue
+     * @param handler Called with each line, on the worker owning the user of the line
+     * @param readControl Called with false when the socket should stop being read, and with true when it can be read again
+     */
+    public InboundPipeline(String name, int workerCount, int capacity, Consumer<String> handler, Consumer<Boolean> readControl) {
+        this.name = name;
+        this.handler = handler;
+        this.readControl = readControl;
+        this.capacity = Math.max(2, capacity);
+        this.frames = new LinkedBlockingQueue<>();
+        this.workers = new Worker[Math.max(1, workerCount)];
+
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker(i, capacity);
+        }
+
+        this.readerThread = new Thread(this::read, "tv.phantombot.twitch.irc.chat.utils.InboundPipeline[" + name + "]::read");
+        this.readerThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /**
+     * Returns the default number of workers for this machine.
+     *
+     * @return
+     */
+    public static int defaultWorkerCount() {
+        return Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Queues a raw frame without blocking, and pauses reading from the socket when the queue is full.
+     *
+     * @param frame
+     */
+    public void submit(String frame) {
+        if (isKilled) {
+            return;
+        }
+
+        framesIn.increment();
+        frames.add(new Frame(frame, System.nanoTime()));
+
+        if (frames.size() >= capacity && readControl != null && paused.compareAndSet(false, true)) {
+            stalls.increment();
+            readControl.accept(false);
+
+            // The reader may have drained the queue before the pause was set, in which case it won't resume reading.
+            resumeIfDrained();
+        }
+    }
+
+    private void resumeIfDrained() {
+        if (paused.get() && frames.size() <= capacity / 2 && paused.compareAndSet(true, false)) {
+            readControl.accept(true);
+        }
+    }
+
+    /**
+     * Stops the reader and worker threads. Lines which are still queued are dropped.
+     */
+    public void kill() {
+        isKilled = true;
+        readerThread.interrupt();
+
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of frames and lines waiting to be handled.
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        int depth = frames.size();
+
+        for (Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+
+        return depth;
+    }
+
+    public long getFramesIn() {
+        return framesIn.sum();
+    }
+
+    public long getLinesIn() {
+        return linesIn.sum();
+    }
+
+    public long getLinesOut() {
+        return linesOut.sum();
+    }
+
+    /**
+     * Returns the number of times reading from the socket was paused because the pipeline was full.
+     *
+     * @return
+     */
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    /**
+     * Returns the average time, in microseconds, between a frame being received and its lines being handled.
+     *
+     * @return
+     */
+    public long getAverageLatencyMicros() {
+        long out = linesOut.sum();
+        return out == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(latencySum.sum() / out);
+    }
+
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencyMax.get());
+    }
+
+    /**
+     * Returns a one line summary of the metrics.
+     *
+     * @return
+     */
+    public String getMetrics() {
+        return "frames=" + getFramesIn() + " lines=" + getLinesIn() + " handled=" + getLinesOut() + " depth=" + getQueueDepth()
+                + " stalls=" + getStalls() + " latencyAvg=" + getAverageLatencyMicros() + "us latencyMax=" + getMaxLatencyMicros() + "us";
+    }
+
+    /**
+     * Waits until every queued line has been handled.
+     *
+     * @param timeout
+     * @param unit
+     * @return true if the pipeline drained before the timeout
+     * @throws InterruptedException
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (framesDone.sum() < getFramesIn() || getLinesOut() < getLinesIn()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+
+            Thread.sleep(1);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the key used to pick the worker of a line: the login of the user the line is about, or the server prefix.
+     *
+     * Moderation and notice lines come from the server, so they are keyed on their target user instead, which keeps
+     * them in order with that user's own messages.
+     *
+     * @param line
+     * @return
+     */
+    public static String partitionKey(String line) {
+        int start = 0;
+
+        if (line.startsWith("@")) {
+            start = line.indexOf(' ');
+
+            if (start < 0) {
+                return "";
+            }
+
+            start++;
+        }
+
+        if (!line.startsWith(":", start)) {
+            return "";
+        }
+
+        int end = start + 1;
+        while (end < line.length()) {
+            char c = line.charAt(end);
+
+            if (c == '!' || c == ' ') {
+                break;
+            }
+
+            end++;
+        }
+
+        int command = line.indexOf(' ', end);
+
+        if (command > 0) {
+            command++;
+
+            if (isCommand(line, command, "CLEARCHAT")) {
+                // The user that was timed out or banned is the trailing parameter, a full chat clear has none.
+                int trailing = line.indexOf(" :", command);
+
+                if (trailing > 0) {
+                    return line.substring(trailing + 2).trim();
+                }
+            } else if (isCommand(line, command, "CLEARMSG") || isCommand(line, command, "USERNOTICE")) {
+                String login = tagValue(line, start - 1, "login");
+
+                if (login != null) {
+                    return login;
+                }
+            }
+        }
+
+        return line.substring(start + 1, end);
+    }
+
+    private static boolean isCommand(String line, int at, String command) {
+        int end = at + command.length();
+        return line.startsWith(command, at) && (end == line.length() || line.charAt(end) == ' ');
+    }
+
+    private static String tagValue(String line, int tagsEnd, String name) {
+        if (tagsEnd <= 0) {
+            return null;
+        }
+
+        String key = name + "=";
+        int at = line.indexOf(key, 1);
+
+        while (at > 0 && at < tagsEnd) {
+            char before = line.charAt(at - 1);
+
+            if (before == '@' || before == ';') {
+                int valueEnd = line.indexOf(';', at);
+                return line.substring(at + key.length(), valueEnd < 0 || valueEnd > tagsEnd ? tagsEnd : valueEnd);
+            }
+
+            at = line.indexOf(key, at + 1);
+        }
+
+        return null;
+    }
+
+    private void read() {
+        while (!isKilled) {
+            try {
+                Frame frame = frames.take();
+                resumeIfDrained();
+
+                if (frame.data.contains("\n")) {
+                    for (String line : frame.data.split("\n")) {
+                        dispatch(line, frame.received);
+                    }
+                } else {
+                    dispatch(frame.data, frame.received);
+                }
+
+                framesDone.increment();
+
+                report();
+            } catch (InterruptedException ex) {
+                if (!isKilled) {
+                    com.gmt2001.Console.debug.printStackTrace(ex);
+                }
+            }
+        }
+    }
+
+    private void dispatch(String line, long received) throws InterruptedException {
+        if (line.isEmpty()) {
+            return;
+        }
+
+        linesIn.increment();
+        Worker worker = workers[Math.floorMod(partitionKey(line).hashCode(), workers.length)];
+        worker.queue.put(new Frame(line, received));
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+
+        if (now - lastReport < REPORT_INTERVAL) {
+            return;
+        }
+
+        long lines = getLinesIn();
+        double rate = (lines - lastReportLines) / ((now - lastReport) / 1000000000.0);
+        lastReport = now;
+        lastReportLines = lines;
+
+        com.gmt2001.Console.debug.println("InboundPipeline[" + name + "] " + String.format("%.1f", rate) + " lines/s " + getMetrics());
+    }
+
+    /**
+     * A frame, or a single line once split, with the time it was received.
+     */
+    private static class Frame {
+
+        private final String data;
+        private final long received;
+
+        private Frame(String data, long received) {
+            this.data = data;
+            this.received = received;
+        }
+    }
+
+    /**
+     * A worker thread with its own queue.
+     */
+    private class Worker implements Runnable {
+
+        private final BlockingQueue<Frame> queue;
+        private final Thread thread;
+
+        private Worker(int id, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "tv.phantombot.twitch.irc.chat.utils.InboundPipeline[" + name + "]::worker-" + id);
+            this.thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!isKilled) {
+                try {
+                    Frame line = queue.take();
+
+                    try {
+                        handler.accept(line.data);
+                    } catch (Exception ex) {
+                        com.gmt2001.Console.err.printStackTrace(ex);
+                    }
+
+                    long latency = System.nanoTime() - line.received;
+                    latencySum.add(latency);
+                    latencyMax.accumulateAndGet(latency, Math::max);
+                    linesOut.increment();
+                } catch (InterruptedException ex) {
+                    if (!isKilled) {
+                        com.gmt2001.Console.debug.printStackTrace(ex);
+                    }
+                }
+            }
+        }
+    }
+}
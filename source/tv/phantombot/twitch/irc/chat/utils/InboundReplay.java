@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.twitch.irc.chat.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Replays a captured Twitch IRC log through an {@link InboundPipeline} and prints the throughput, latency, and
+ * whether the order of each user's lines was kept.
+ *
+ * The log must contain one raw IRC line per line, blank lines and lines starting with # are skipped. Each line is
+ * run through the same tag and prefix splitting as TwitchWSIRCParser, without dispatching any events.
+ *
+ * Usage: java -cp PhantomBot.jar tv.phantombot.twitch.irc.chat.utils.InboundReplay &lt;log&gt; [workers] [capacity] [passes]
+ */
+public final class InboundReplay {
+
+    private InboundReplay() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: InboundReplay <log> [workers] [capacity] [passes]");
+            System.exit(1);
+        }
+
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : InboundPipeline.defaultWorkerCount();
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8).stream()
+                .filter(l -> !l.isEmpty() && !l.startsWith("#")).collect(Collectors.toList());
+
+        for (int i = 0; i < passes; i++) {
+            System.out.println("Pass " + (i + 1) + ": " + replay(lines, workers, capacity));
+        }
+    }
+
+    /**
+     * Feeds the lines through a new pipeline, one frame per line, and waits for them to be handled.
+     *
+     * @param lines
+     * @param workers
+     * @param capacity
+     * @return A summary of the run
+     * @throws InterruptedException
+     */
+    public static String replay(List<String> lines, int workers, int capacity) throws InterruptedException {
+        // Single line frames are handed to the workers as-is, so the line instance identifies its position in the log.
+        Map<String, Long> sequence = new IdentityHashMap<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            sequence.put(lines.get(i), (long) i);
+        }
+
+        Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+        LongAdder outOfOrder = new LongAdder();
+        // Collects the parse results, so the parsing can't be optimized away.
+        LongAdder parsed = new LongAdder();
+
+        InboundPipeline pipeline = new InboundPipeline("replay", workers, capacity, line -> {
+            parsed.add(parse(line));
+
+            Long seq = sequence.get(line);
+            if (seq != null) {
+                Long previous = lastSeen.put(InboundPipeline.partitionKey(line), seq);
+
+                if (previous != null && previous > seq) {
+                    outOfOrder.increment();
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        for (String line : lines) {
+            pipeline.submit(line);
+        }
+
+        boolean drained = pipeline.awaitDrained(5, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        pipeline.kill();
+
+        return String.format("%d lines in %dms (%.0f lines/s) workers=%d outOfOrder=%d parsed=%d%s %s", lines.size(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                lines.size() / (elapsed / 1000000000.0), workers, outOfOrder.sum(), parsed.sum(), drained ? "" : " (timed out)", pipeline.getMetrics());
+    }
+
+    /**
+     * Method that splits the tags, prefix and message of a line.
+     *
+     * @param line
+     * @return The number of tags and parts found
+     */
+    private static int parse(String line) {
+        String[] parts = line.split(" :", 3);
+        Map<String, String> tags = new HashMap<>();
+
+        if (parts[0].startsWith("@")) {
+            for (String tag : parts[0].substring(1).split(";")) {
+                String[] kv = tag.split("=");
+                tags.putIfAbsent(kv[0], kv.length == 1 ? "" : kv[1]);
+            }
+        }
+
+        return parts.length + tags.size();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.twitch.irc.chat.utils;
+
+import com.gmt2001.wsclient.WSClient;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sends JOIN commands for many channels over one connection without going over the Twitch join rate limit.
+ *
+ * Twitch allows 20 join attempts per 10 seconds for a normal account. Pending joins are sent in order as the window
+ * allows, a channel queued twice is only joined once.
+ */
+public class JoinRateLimiter {
+
+    private final int limit;
+    private final long windowMillis;
+    private final Consumer<String> sender;
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final Deque<Long> sent = new ArrayDeque<>();
+    private boolean scheduled = false;
+
+    /**
+     * Class constructor.
+     *
+     * @param limit Number of joins allowed per window
+     * @param windowMillis Length of the window
+     * @param sender Called with the raw JOIN line to send
+     */
+    public JoinRateLimiter(int limit, long windowMillis, Consumer<String> sender) {
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.sender = sender;
+    }
+
+    /**
+     * Queues a channel to join.
+     *
+     * @param channel The channel, with or without the leading #
+     */
+    public synchronized void join(String channel) {
+        pending.add(channel.startsWith("#") ? channel.substring(1).toLowerCase() : channel.toLowerCase());
+        drain();
+    }
+
+    /**
+     * Removes a channel which has not been joined yet.
+     *
+     * @param channel The channel, with or without the leading #
+     */
+    public synchronized void cancel(String channel) {
+        pending.remove(channel.startsWith("#") ? channel.substring(1).toLowerCase() : channel.toLowerCase());
+    }
+
+    /**
+     * Drops every pending join, used when the connection is lost.
+     */
+    public synchronized void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Returns the number of channels waiting to be joined.
+     *
+     * @return
+     */
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    private synchronized void drain() {
+        long now = System.currentTimeMillis();
+
+        while (!sent.isEmpty() && sent.peekFirst() <= now - windowMillis) {
+            sent.pollFirst();
+        }
+
+        while (!pending.isEmpty() && sent.size() < limit) {
+            String channel = pending.iterator().next();
+            pending.remove(channel);
+
+            try {
+                sender.accept("JOIN #" + channel);
+                sent.addLast(now);
+            } catch (Exception ex) {
+                com.gmt2001.Console.debug.println("Failed to join #" + channel + ": " + ex.getMessage());
+            }
+        }
+
+        if (!pending.isEmpty() && !scheduled) {
+            scheduled = true;
+            WSClient.group().schedule(() -> {
+                synchronized (this) {
+                    scheduled = false;
+                    drain();
+                }
+            }, Math.max(1L, sent.peekFirst() + windowMillis - now), TimeUnit.MILLISECONDS);
+        }
+    }
+}
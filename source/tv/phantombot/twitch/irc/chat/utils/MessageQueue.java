@@ -16,9 +16,9 @@
  */
 package tv.phantombot.twitch.irc.chat.utils;
 
+import java.nio.channels.NotYetConnectedException;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
-import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import tv.phantombot.PhantomBot;
 import tv.phantombot.twitch.irc.TwitchSession;
 
@@ -147,9 +147,9 @@ public class MessageQueue implements Runnable {
 
                     // Send the message.
                     session.sendRaw("PRIVMSG #" + this.channelName + " :" + message.getMessage());
-                    com.gmt2001.Console.out.println("[CHAT] " + message.getMessage());
+                    com.gmt2001.Console.out.printlnChat("[CHAT] " + message.getMessage());
                 }
-            } catch (WebsocketNotConnectedException ex) {
+            } catch (NotYetConnectedException ex) {
                 com.gmt2001.Console.err.println("Failed to send message due to being disconnected from Twitch IRC.");
                 this.setAllowSendMessages(false);
                 session.reconnect();
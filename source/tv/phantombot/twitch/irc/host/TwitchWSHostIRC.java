@@ -21,23 +21,20 @@
  */
 package tv.phantombot.twitch.irc.host;
 
+import com.gmt2001.ExponentialBackoff;
+import com.gmt2001.wsclient.WSClient;
+import com.gmt2001.wsclient.WsClientFrameHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.drafts.Draft_6455;
-import org.java_websocket.handshake.ServerHandshake;
+import javax.net.ssl.SSLException;
 import tv.phantombot.PhantomBot;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.twitch.host.TwitchHostedEvent;
@@ -54,7 +51,7 @@ public class TwitchWSHostIRC {
     private final ReentrantLock lock2 = new ReentrantLock();
     private static final long MAX_BACKOFF = 300000L;
     private long lastReconnect;
-    private long nextBackoff = 1000L;
+    private final ExponentialBackoff backoff = new ExponentialBackoff(1000L, MAX_BACKOFF);
 
     /**
      * Creates an instance for a Twitch WS Host IRC Session
@@ -96,7 +93,7 @@ public class TwitchWSHostIRC {
                 com.gmt2001.Console.err.println("Unable to connect to Twitch Data Host Feed. Exiting PhantomBot");
                 PhantomBot.exitError();
             }
-        } catch (URISyntaxException ex) {
+        } catch (URISyntaxException | SSLException ex) {
             com.gmt2001.Console.debug.printStackTrace(ex);
             com.gmt2001.Console.err.println("TwitchWSHostIRC URI Failed. Exiting PhantomBot.");
             PhantomBot.exitError();
@@ -164,18 +161,21 @@ public class TwitchWSHostIRC {
     public void doReconnect() {
         if (lock2.tryLock()) {
             try {
-                long now = System.currentTimeMillis();
+                while (!PhantomBot.instance().isExiting() && !this.twitchWSHostIRCWS.badOauth) {
+                    long now = System.currentTimeMillis();
 
-                if (lastReconnect + (MAX_BACKOFF * 2) < now) {
-                    nextBackoff = 1000L;
-                } else {
-                    Thread.sleep(nextBackoff);
+                    if (lastReconnect + (MAX_BACKOFF * 2) < now) {
+                        backoff.Reset();
+                    } else {
+                        backoff.Backoff();
+                    }
+
+                    lastReconnect = System.currentTimeMillis();
+
+                    if (this.twitchWSHostIRCWS.reconnectBlocking()) {
+                        break;
+                    }
                 }
-                
-                lastReconnect = now;
-                nextBackoff = Math.min(MAX_BACKOFF, nextBackoff * 2L);
-                
-                this.twitchWSHostIRCWS.reconnectBlocking();
             } catch (InterruptedException ex) {
                 com.gmt2001.Console.err.printStackTrace(ex);
             } finally {
@@ -187,8 +187,9 @@ public class TwitchWSHostIRC {
     /**
      * Class for handling the physical connection to Twitch WS-IRC for the Data Host Feed.
      */
-    private class TwitchWSHostIRCWS extends WebSocketClient {
+    private class TwitchWSHostIRCWS implements WsClientFrameHandler {
         private TwitchWSHostIRC twitchWSHostIRC;
+        private final WSClient client;
         private boolean badOauth = false;
         private boolean connected = false;
         private final String channelName;
@@ -197,8 +198,6 @@ public class TwitchWSHostIRC {
         private final EventBus eventBus;
         private Pattern hostPattern = Pattern.compile("PRIVMSG \\w+ :(\\w+) is now hosting you for up to (\\d+) viewers");
         private Pattern hostPatternNoViewers = Pattern.compile("PRIVMSG \\w+ :(\\w+) is now hosting you.");
-        private long lastPing = 0L;
-        private boolean sentPing = false;
 
         private int sendPingWaitTime = Integer.parseInt(System.getProperty("ircsendpingwait", "480000"));
         private int pingWaitTime = Integer.parseInt(System.getProperty("ircpingwait", "600000"));
@@ -209,9 +208,7 @@ public class TwitchWSHostIRC {
          * @param  channel  Name of Twitch Channel for which this instance is created.
          * @param  oauth    OAuth key to use for authentication.
          */
-        private TwitchWSHostIRCWS(TwitchWSHostIRC twitchWSHostIRC, URI uri) {
-            super(uri, new Draft_6455(), null, 5000);
-
+        private TwitchWSHostIRCWS(TwitchWSHostIRC twitchWSHostIRC, URI uri) throws SSLException {
             if (twitchWSHostIRC.GetChannelName().startsWith("#")) {
                 channelName = twitchWSHostIRC.GetChannelName().substring(1);
             } else {
@@ -220,7 +217,6 @@ public class TwitchWSHostIRC {
             login = channelName;
             oAuth = twitchWSHostIRC.GetOAuth();
             eventBus = twitchWSHostIRC.GetEventBus();
-            this.uri = uri;
             this.twitchWSHostIRC = twitchWSHostIRC;
 
             /* Lowest value for sendPingWaitTime is 3 minutes. This is based on research that shows that Azure Cloud Services
@@ -242,14 +238,8 @@ public class TwitchWSHostIRC {
                 pingWaitTime = sendPingWaitTime + 120000;
             }
 
-            try {
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                sslContext.init(null, null, null);
-                SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-                this.setSocketFactory(sslSocketFactory);
-            } catch (KeyManagementException | NoSuchAlgorithmException ex) {
-                com.gmt2001.Console.err.println(ex.getMessage());
-            }
+            // Send a PING when nothing was received for sendPingWaitTime, give up if still nothing by pingWaitTime.
+            this.client = new WSClient(uri, sendPingWaitTime / 1000, 0, this);
         }
 
         /**
@@ -257,15 +247,30 @@ public class TwitchWSHostIRC {
          *
          * @param {String} message
          */
-        @Override
         public void send(String message) {
             try {
-                super.send(message);
+                client.send(message);
             } catch (Exception  ex) {
                 com.gmt2001.Console.out.println("Failed to send message: " + ex.getMessage());
             }
         }
 
+        /**
+         * Closes the websocket.
+         */
+        public void close() {
+            client.close();
+        }
+
+        /**
+         * Drops the current connection and connects again.
+         *
+         * @return  boolean  true if connected
+         */
+        public boolean reconnectBlocking() throws InterruptedException {
+            return client.reconnectBlocking();
+        }
+
         /**
          * Exposes the connected status of the object.
          *
@@ -281,23 +286,17 @@ public class TwitchWSHostIRC {
          * @return  boolean  true on success and false on failure
          */
         public boolean connectWSS() {
-            try {
-                connect();
-                return true;
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println(ex.getMessage());
-                return false;
-            }
+            return client.connect();
         }
 
         /**
          * Callback for connection opening to WS-IRC.  Calls send() directly to login to Twitch
          * IRC rather than sendAddQueue().
          *
-         * @param  ServerHandShake  Handshake data provided by WebSocketClient
+         * @param  WSClient  The client that connected
          */
         @Override
-        public void onOpen(ServerHandshake handshakedata) {
+        public void handshakeComplete(WSClient client) {
             send("PASS " + oAuth);
             send("NICK " + login);
         }
@@ -305,12 +304,15 @@ public class TwitchWSHostIRC {
         /**
          * Callback for connection closed from WS-IRC.
          *
+         * @param  WSClient The client that was closed
          * @param  int      Exit code
          * @param  String   Reason for the connection closing
          * @param  boolean  Remote closed connection or local did
          */
         @Override
-        public void onClose(int code, String reason, boolean remote) {
+        public void onClose(WSClient client, int code, String reason, boolean remote) {
+            connected = false;
+
             if (!badOauth) {
                 com.gmt2001.Console.out.println("Lost connection to Twitch Host Data Feed, retrying in 10 seconds");
                 com.gmt2001.Console.debug.println("Code [" + code + "] Reason [" + reason + "] Remote Hangup [" + remote + "]");
@@ -321,22 +323,19 @@ public class TwitchWSHostIRC {
         /**
          * Callback for incoming messages from WS-IRC.
          *
+         * @param  WSClient The client that received the message
          * @param  String  Incoming message
          */
         @Override
-        public void onMessage(String message) {
+        public void onMessage(WSClient client, String message) {
             if (message.startsWith("PING")) {
                 com.gmt2001.Console.debug.println("Got a PING from Twitch Host Data Feed");
-                sentPing = false;
-                lastPing = System.currentTimeMillis();
                 sendPong();
                 return;
             }
 
             if (message.startsWith(":tmi.twitch.tv PONG")) {
                 com.gmt2001.Console.debug.println("Got a PONG from Twitch Host Data Feed");
-                sentPing = false;
-                lastPing = System.currentTimeMillis();
                 return;
             }
 
@@ -345,16 +344,11 @@ public class TwitchWSHostIRC {
                 if (message.contains("002 " + channelName + " :")) {
                     connected = true;
                     com.gmt2001.Console.out.println("Connected to Twitch Host Data Feed");
-                    lastPing = System.currentTimeMillis();
-                    checkPingTime();
 
                     // All caches wait 20 seconds, so wait 20 seconds here too.
-                    try {
-                        Thread.sleep(20 * 1000);
-                    } catch (InterruptedException ex) {
-                        com.gmt2001.Console.debug.println("TwitchWSIRC: Failed to sleep: [InterruptedException] " + ex.getMessage());
-                    }
-                    eventBus.postAsync(new TwitchHostsInitializedEvent());
+                    WSClient.group().schedule(() -> {
+                        eventBus.postAsync(new TwitchHostsInitializedEvent());
+                    }, 20, TimeUnit.SECONDS);
                 } else {
                     connected = false;
                     badOauth = true;
@@ -401,10 +395,11 @@ public class TwitchWSHostIRC {
          * Callback for errors from WebSockets. Do not log the
          * ArrayIndexOutOfBoundsException, this is tossed by the API.
          *
-         * @param  Exception  Java Exception thrown from WebSockets API
+         * @param  WSClient   The client that failed
+         * @param  Throwable  Java Exception thrown from WebSockets API
          */
         @Override
-        public void onError(Exception ex) {
+        public void onError(WSClient client, Throwable ex) {
             if (!ex.toString().contains("ArrayIndexOutOfBoundsException")) {
                 com.gmt2001.Console.debug.println("Twitch WS-IRC (Host Data) Exception: " + ex);
             }
@@ -418,26 +413,19 @@ public class TwitchWSHostIRC {
         }
 
         /**
-         * Timer for checking to ensure that PINGs are received on a timely basis from Twitch
-         * and if not a reconnection is requested, this also attempts to send a PING after a
-         * period of time.
+         * Callback for when nothing was received for sendPingWaitTime. Sends a PING to Twitch and
+         * closes the connection, which triggers a reconnect, if nothing comes back by pingWaitTime.
+         *
+         * @param  WSClient        The client that is idle
+         * @param  IdleStateEvent  The idle event
          */
-        private void checkPingTime() {
-            ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
-            service.scheduleAtFixedRate(() -> {
-                Thread.currentThread().setName("tv.phantombot.twitchwsirc.TwitchWSHostIRC::checkPingTime");
-                
-                if (System.currentTimeMillis() - lastPing >= sendPingWaitTime && !sentPing) {
-                    com.gmt2001.Console.debug.println("Sending a PING to Twitch (Host Data) to Verify Connection");
-                    sentPing = true;
-                    send("PING :tmi.twitch.tv");
-                }
-                
-                if (System.currentTimeMillis() - lastPing >= pingWaitTime) {
-                    com.gmt2001.Console.debug.println("PING not Detected from Twitch (Host Data) - Forcing Reconnect (Timeout is " + pingWaitTime + "ms)");
-                    close();
-                }
-            }, 1, 1, TimeUnit.MINUTES);
+        @Override
+        public void onIdle(WSClient client, IdleStateEvent event) {
+            if (event.state() == IdleState.READER_IDLE) {
+                com.gmt2001.Console.debug.println("Sending a PING to Twitch (Host Data) to Verify Connection");
+                send("PING :tmi.twitch.tv");
+                client.expectRead(pingWaitTime - sendPingWaitTime, TimeUnit.MILLISECONDS);
+            }
         }
     }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.twitch.pubsub;
+
+import com.gmt2001.json.JsonReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The fields we use from a PubSub frame, read with {@link JsonReader} instead of building a JSONObject tree.
+ *
+ * A frame looks like {"type":"MESSAGE","nonce":"...","error":"...","data":{"topic":"...","message":"{...}"}}, where
+ * message is another JSON document, bound by {@link ModeratorAction#parse(String)} or
+ * {@link Redemption#parse(String)} depending on the topic.
+ */
+final class PubSubMessage {
+
+    final String type;
+    final String nonce;
+    final String error;
+    final String topic;
+    final String message;
+
+    private PubSubMessage(String type, String nonce, String error, String topic, String message) {
+        this.type = type;
+        this.nonce = nonce;
+        this.error = error;
+        this.topic = topic;
+        this.message = message;
+    }
+
+    /**
+     * Reads a frame.
+     *
+     * @param json
+     * @return
+     */
+    static PubSubMessage parse(String json) {
+        JsonReader reader = new JsonReader(json);
+        String type = null;
+        String nonce = "";
+        String error = "";
+        String topic = "";
+        String message = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = reader.nextOptString(null);
+                    break;
+                case "nonce":
+                    nonce = reader.nextOptString("");
+                    break;
+                case "error":
+                    error = reader.nextOptString("");
+                    break;
+                case "data":
+                    if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "topic":
+                                topic = reader.nextOptString("");
+                                break;
+                            case "message":
+                                message = reader.nextOptString(null);
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new PubSubMessage(type, nonce, error, topic, message);
+    }
+
+    /**
+     * A chat_moderator_actions message, data.moderation_action, data.args, etc.
+     */
+    static final class ModeratorAction {
+
+        final String action;
+        final List<String> args;
+        final String createdBy;
+        final String targetUserId;
+        final String msgId;
+
+        private ModeratorAction(String action, List<String> args, String createdBy, String targetUserId, String msgId) {
+            this.action = action;
+            this.args = args;
+            this.createdBy = createdBy;
+            this.targetUserId = targetUserId;
+            this.msgId = msgId;
+        }
+
+        /**
+         * Reads the message of a chat_moderator_actions frame.
+         *
+         * @param json
+         * @return The action, or null if it is missing the action, the args, or who did it; targetUserId is null when the message has none
+         */
+        static ModeratorAction parse(String json) {
+            JsonReader reader = new JsonReader(json);
+            String action = null;
+            List<String> args = null;
+            String createdBy = null;
+            String targetUserId = null;
+            String msgId = "";
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("data") || reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "moderation_action":
+                            action = reader.nextOptString(null);
+                            break;
+                        case "args":
+                            if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                                reader.skipValue();
+                                break;
+                            }
+
+                            args = new ArrayList<>(3);
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                args.add(reader.nextOptString(""));
+                            }
+                            reader.endArray();
+                            break;
+                        case "created_by":
+                            createdBy = reader.nextOptString(null);
+                            break;
+                        case "target_user_id":
+                            targetUserId = reader.nextOptString(null);
+                            break;
+                        case "msg_id":
+                            msgId = reader.nextOptString("");
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+
+            if (action == null || args == null || args.isEmpty() || createdBy == null) {
+                return null;
+            }
+
+            return new ModeratorAction(action, args, createdBy, targetUserId, msgId);
+        }
+    }
+
+    /**
+     * A channel-points-channel-v1 message, data.redemption.
+     */
+    static final class Redemption {
+
+        final String id;
+        final String rewardId;
+        final String rewardTitle;
+        final int rewardCost;
+        final String rewardPrompt;
+        final String userId;
+        final String userLogin;
+        final String userDisplayName;
+        final String userInput;
+        final String status;
+
+        private Redemption(String id, String rewardId, String rewardTitle, int rewardCost, String rewardPrompt, String userId,
+                String userLogin, String userDisplayName, String userInput, String status) {
+            this.id = id;
+            this.rewardId = rewardId;
+            this.rewardTitle = rewardTitle;
+            this.rewardCost = rewardCost;
+            this.rewardPrompt = rewardPrompt;
+            this.userId = userId;
+            this.userLogin = userLogin;
+            this.userDisplayName = userDisplayName;
+            this.userInput = userInput;
+            this.status = status;
+        }
+
+        /**
+         * Reads the message of a channel-points-channel-v1 frame.
+         *
+         * @param json
+         * @return The redemption, or null if there is none
+         */
+        static Redemption parse(String json) {
+            JsonReader reader = new JsonReader(json);
+            Redemption redemption = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("data") || reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("redemption") && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                        redemption = readRedemption(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+
+            return redemption;
+        }
+
+        private static Redemption readRedemption(JsonReader reader) {
+            String id = "";
+            String rewardId = "";
+            String rewardTitle = "";
+            int rewardCost = 0;
+            String rewardPrompt = "";
+            String userId = "";
+            String userLogin = "";
+            String userDisplayName = null;
+            String userInput = "";
+            String status = "";
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        id = reader.nextOptString("");
+                        break;
+                    case "user_input":
+                        userInput = reader.nextOptString("");
+                        break;
+                    case "status":
+                        status = reader.nextOptString("");
+                        break;
+                    case "user":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "id":
+                                    userId = reader.nextOptString("");
+                                    break;
+                                case "login":
+                                    userLogin = reader.nextOptString("");
+                                    break;
+                                case "display_name":
+                                    userDisplayName = reader.nextOptString(null);
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    case "reward":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "id":
+                                    rewardId = reader.nextOptString("");
+                                    break;
+                                case "title":
+                                    rewardTitle = reader.nextOptString("");
+                                    break;
+                                case "cost":
+                                    rewardCost = reader.nextInt();
+                                    break;
+                                case "prompt":
+                                    rewardPrompt = reader.nextOptString("");
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new Redemption(id, rewardId, rewardTitle, rewardCost, rewardPrompt, userId, userLogin,
+                    userDisplayName == null ? userLogin : userDisplayName, userInput, status);
+        }
+    }
+}
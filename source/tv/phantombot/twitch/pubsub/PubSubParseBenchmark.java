@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.twitch.pubsub;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares reading PubSub frames with org.json, as TwitchPubSub used to, against {@link PubSubMessage}.
+ *
+ * The log must contain one raw PubSub frame per line, blank lines and lines starting with # are skipped. Without a
+ * log, a moderation action and a channel points redemption are used.
+ *
+ * Usage: java -cp PhantomBot.jar tv.phantombot.twitch.pubsub.PubSubParseBenchmark [log] [iterations]
+ */
+public final class PubSubParseBenchmark {
+
+    private static final List<String> SAMPLES = Arrays.asList(
+            "{\"type\":\"MESSAGE\",\"data\":{\"topic\":\"chat_moderator_actions.12345.12345\",\"message\":\"{\\\"type\\\":\\\"moderation_action\\\",\\\"data\\\":{\\\"type\\\":\\\"chat_login_moderation\\\",\\\"moderation_action\\\":\\\"timeout\\\",\\\"args\\\":[\\\"someviewer\\\",\\\"600\\\",\\\"spam\\\"],\\\"created_by\\\":\\\"somemod\\\",\\\"created_by_user_id\\\":\\\"23456\\\",\\\"msg_id\\\":\\\"\\\",\\\"target_user_id\\\":\\\"34567\\\",\\\"target_user_login\\\":\\\"\\\",\\\"from_automod\\\":false}}\"}}",
+            "{\"type\":\"MESSAGE\",\"data\":{\"topic\":\"channel-points-channel-v1.12345\",\"message\":\"{\\\"type\\\":\\\"reward-redeemed\\\",\\\"data\\\":{\\\"timestamp\\\":\\\"2021-03-01T20:02:54.186Z\\\",\\\"redemption\\\":{\\\"id\\\":\\\"6f7e2a4c-5d6f-4b0a-9a3e-1c2d3e4f5a6b\\\",\\\"user\\\":{\\\"id\\\":\\\"34567\\\",\\\"login\\\":\\\"someviewer\\\",\\\"display_name\\\":\\\"SomeViewer\\\"},\\\"channel_id\\\":\\\"12345\\\",\\\"redeemed_at\\\":\\\"2021-03-01T20:02:54.186Z\\\",\\\"reward\\\":{\\\"id\\\":\\\"0a1b2c3d-4e5f-6a7b-8c9d-0e1f2a3b4c5d\\\",\\\"channel_id\\\":\\\"12345\\\",\\\"title\\\":\\\"Hydrate\\\",\\\"prompt\\\":\\\"Make the streamer drink water\\\",\\\"cost\\\":500,\\\"is_user_input_required\\\":false,\\\"is_sub_only\\\":false,\\\"image\\\":null,\\\"default_image\\\":{\\\"url_1x\\\":\\\"https://static-cdn.jtvnw.net/custom-reward-images/default-1.png\\\",\\\"url_2x\\\":\\\"https://static-cdn.jtvnw.net/custom-reward-images/default-2.png\\\",\\\"url_4x\\\":\\\"https://static-cdn.jtvnw.net/custom-reward-images/default-4.png\\\"},\\\"background_color\\\":\\\"#00C7AC\\\",\\\"is_enabled\\\":true,\\\"is_paused\\\":false,\\\"is_in_stock\\\":true,\\\"max_per_stream\\\":{\\\"is_enabled\\\":false,\\\"max_per_stream\\\":0},\\\"should_redemptions_skip_request_queue\\\":false},\\\"user_input\\\":\\\"\\\",\\\"status\\\":\\\"UNFULFILLED\\\"}}}\"}}",
+            "{\"type\":\"PONG\"}");
+
+    private static long sink = 0;
+
+    private PubSubParseBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> frames = SAMPLES;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        if (args.length > 0) {
+            frames = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8).stream()
+                    .filter(l -> !l.isEmpty() && !l.startsWith("#")).collect(Collectors.toList());
+        }
+
+        // Warm up both paths before measuring.
+        run(frames, iterations / 4, true);
+        run(frames, iterations / 4, false);
+
+        System.out.println("org.json:  " + run(frames, iterations, true));
+        System.out.println("streaming: " + run(frames, iterations, false));
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static String run(List<String> frames, int iterations, boolean orgJson) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = bean.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            for (String frame : frames) {
+                sink += orgJson ? readOrgJson(frame) : readStreaming(frame);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long bytes = bean.getThreadAllocatedBytes(thread) - allocated;
+        long ops = (long) iterations * frames.size();
+
+        return String.format("%d frames, %.0f ns/frame, %d bytes/frame", ops, (double) elapsed / ops, bytes / ops);
+    }
+
+    private static int readOrgJson(String frame) {
+        JSONObject messageObj = new JSONObject(frame);
+
+        if (!messageObj.has("type") || !messageObj.has("data")) {
+            return 0;
+        }
+
+        JSONObject dataObj = messageObj.getJSONObject("data");
+        JSONObject data = new JSONObject(dataObj.getString("message")).getJSONObject("data");
+
+        if (dataObj.getString("topic").startsWith("channel-points-channel-v1")) {
+            data = data.getJSONObject("redemption");
+            return data.getString("id").length() + data.getJSONObject("user").getString("login").length()
+                    + data.getJSONObject("reward").getString("title").length() + data.getJSONObject("reward").getInt("cost");
+        }
+
+        JSONArray args = data.getJSONArray("args");
+        return data.getString("moderation_action").length() + data.getString("created_by").length() + args.getString(0).length()
+                + data.getString("target_user_id").length();
+    }
+
+    private static int readStreaming(String frame) {
+        PubSubMessage message = PubSubMessage.parse(frame);
+
+        if (message.type == null || message.message == null) {
+            return 0;
+        }
+
+        if (message.topic.startsWith("channel-points-channel-v1")) {
+            PubSubMessage.Redemption data = PubSubMessage.Redemption.parse(message.message);
+            return data.id.length() + data.userLogin.length() + data.rewardTitle.length() + data.rewardCost;
+        }
+
+        PubSubMessage.ModeratorAction data = PubSubMessage.ModeratorAction.parse(message.message);
+        return data.action.length() + data.createdBy.length() + data.args.get(0).length() + (data.targetUserId == null ? 0 : data.targetUserId.length());
+    }
+}
@@ -23,21 +23,18 @@ package tv.phantombot.twitch.pubsub;
 
 import com.gmt2001.ExponentialBackoff;
 import com.gmt2001.Logger;
+import com.gmt2001.wsclient.WSClient;
+import com.gmt2001.wsclient.WsClientFrameHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 import java.net.URI;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.drafts.Draft_6455;
-import org.java_websocket.handshake.ServerHandshake;
-import org.json.JSONArray;
+import javax.net.ssl.SSLException;
 import org.json.JSONException;
 import org.json.JSONObject;
 import tv.phantombot.PhantomBot;
@@ -55,6 +52,10 @@ public class TwitchPubSub {
 
     private static final long BACKOFF_RESET_MS = 300000L;
     private static final int BACKOFF_MAX = 20;
+    // Since PubSub does not send pings, we need to send one at least every 5 minutes to keep our connection opened.
+    private static final int PING_IDLE_SECONDS = 294;
+    // Twitch asks to reconnect if the PONG doesn't come back within 10 seconds.
+    private static final long PONG_TIMEOUT_SECONDS = 10;
     private static final Map<String, TwitchPubSub> instances = new ConcurrentHashMap<>();
     private final Map<String, String> messageCache = new ConcurrentHashMap<>();
     private final Map<String, Long> timeoutCache = new ConcurrentHashMap<>();
@@ -168,7 +169,7 @@ public class TwitchPubSub {
         try {
             reconnecting = true;
             this.lastConnectAttempt = Calendar.getInstance().getTimeInMillis();
-            this.twitchPubSubWS.reconnectBlocking();
+            this.twitchPubSubWS.client.reconnectBlocking();
         } catch (InterruptedException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         } finally {
@@ -179,10 +180,10 @@ public class TwitchPubSub {
     /**
      * Private class for the websocket.
      */
-    private class TwitchPubSubWS extends WebSocketClient {
+    private class TwitchPubSubWS implements WsClientFrameHandler {
 
         private final TwitchPubSub twitchPubSub;
-        private final Timer timer = new Timer("tv.phantombot.twitchwsirc.TwitchPubSub");
+        private final WSClient client;
         private final int channelId;
         private String oAuth;
         private final int botId;
@@ -197,24 +198,12 @@ public class TwitchPubSub {
          * @param {int} botId The bot user id.
          * @param {string} oauth The bots tmi oauth token.
          */
-        private TwitchPubSubWS(URI uri, TwitchPubSub twitchPubSub, int channelId, int botId, String oAuth) {
-            super(uri, new Draft_6455(), null, 5000);
-
-            this.uri = uri;
+        private TwitchPubSubWS(URI uri, TwitchPubSub twitchPubSub, int channelId, int botId, String oAuth) throws SSLException {
+            this.client = new WSClient(uri, 0, PING_IDLE_SECONDS, this);
             this.channelId = channelId;
             this.botId = botId;
             this.oAuth = oAuth;
             this.twitchPubSub = twitchPubSub;
-            this.startTimer();
-
-            try {
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                sslContext.init(null, null, null);
-                SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-                this.setSocketFactory(sslSocketFactory);
-            } catch (KeyManagementException | NoSuchAlgorithmException ex) {
-                com.gmt2001.Console.err.println("TwitchPubSubWS failed to connect: " + ex.getMessage());
-            }
         }
 
         public void setOAuth(String oAuth) {
@@ -225,7 +214,7 @@ public class TwitchPubSub {
          * Closes this class.
          */
         public void delete() {
-            close();
+            client.close();
         }
 
         /**
@@ -236,112 +225,109 @@ public class TwitchPubSub {
          */
         public Boolean connectWSS(Boolean reconnect) {
             if (!reconnect) {
-                com.gmt2001.Console.debug.println("Connecting to Twitch PubSub-Edge (SSL) [" + this.uri.getHost() + "]");
+                com.gmt2001.Console.debug.println("Connecting to Twitch PubSub-Edge (SSL) [" + this.client.getURI().getHost() + "]");
             } else {
-                com.gmt2001.Console.debug.println("Reconnecting to Twitch PubSub-Edge (SSL) [" + this.uri.getHost() + "]");
+                com.gmt2001.Console.debug.println("Reconnecting to Twitch PubSub-Edge (SSL) [" + this.client.getURI().getHost() + "]");
             }
 
-            try {
-                connect();
-                return true;
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("TwitchPubSubWS failed to connect: " + ex.getMessage());
-                return false;
-            }
-        }
-
-        /**
-         * Used to start the ping timer for PubSub. Since PubSub does not send pings, we need to requests them to keep our connection opened. We will
-         * send a PING request every 4.9 minutes. Twitch recommends every 5 minutes.
-         */
-        private void startTimer() {
-            this.timer.schedule(new PingTask(), 7000, 294000);
+            return client.connect();
         }
 
         /**
-         * This purges the ping timer. It is used when the user tries to connect with a bad oauth token.
+         * Sends a message to the socket.
+         *
+         * @param {String} message
          */
-        private void closeTimer() {
-            this.timer.cancel();
-            this.timer.purge();
+        private void send(String message) {
+            try {
+                client.send(message);
+            } catch (Exception ex) {
+                com.gmt2001.Console.debug.println("TwitchPubSubWS failed to send: " + ex.getMessage());
+            }
         }
 
         /**
-         * This function parses the message we get from PubSub. Since everything is sent in a jsonObject there is a bit of checks to do.
+         * This function parses the message we get from PubSub. The message of the frame is another JSON document which is read
+         * according to its topic.
          *
-         * @param {jsonObject} message Message we get from PubSub.
+         * @param {PubSubMessage} message Message we get from PubSub.
          */
-        private void parse(JSONObject message) throws JSONException {
-            JSONObject dataObj;
-            JSONObject messageObj;
-            JSONObject data;
-
-            if (message.has("data")) {
-                dataObj = message.getJSONObject("data");
-                if (dataObj.has("message")) {
-                    messageObj = new JSONObject(dataObj.getString("message"));
-                    data = messageObj.getJSONObject("data");
-                    if (dataObj.getString("topic").startsWith("channel-points-channel-v1")) {
-                        data = data.getJSONObject("redemption");
-                        com.gmt2001.Console.out.println("Channel points redeemed by " + data.getJSONObject("user").getString("login") + " for reward " + data.getJSONObject("reward").getString("title"));
-                        EventBus.instance().postAsync(new PubSubChannelPointsEvent(
-                                data.getString("id"), data.getJSONObject("reward").getString("id"), data.getJSONObject("user").getString("id"),
-                                data.getJSONObject("user").getString("login"), data.getJSONObject("user").optString("display_name", data.getJSONObject("user").getString("login")), data.getJSONObject("reward").getString("title"),
-                                data.getJSONObject("reward").getInt("cost"), data.getJSONObject("reward").optString("prompt"), data.optString("user_input"), data.optString("status")
-                        ));
-                    } else if (dataObj.getString("topic").startsWith("chat_moderator_actions")) {
-                        if (data.has("moderation_action") && data.has("args") && data.has("created_by")) {
-                            JSONArray args = data.getJSONArray("args");
-                            String action = data.getString("moderation_action");
-                            String creator = data.getString("created_by");
-                            String args1 = args.getString(0);
-                            String args2 = (args.length() == 2 || args.length() == 3 ? args.getString(1) : "");
-                            String args3 = (args.length() == 3 ? args.getString(2) : "");
-
-                            if (timeoutCache.containsKey(data.getString("target_user_id")) && (timeoutCache.get(data.getString("target_user_id")) - System.currentTimeMillis()) > 0) {
-                                return;
-                            }
-
-                            timeoutCache.put(data.getString("target_user_id"), System.currentTimeMillis() + 1500);
-                            switch (action) {
-                                case "delete":
-                                    this.log(args1 + "'s message was deleted by " + creator);
-                                    EventBus.instance().postAsync(new PubSubModerationDeleteEvent(args1, creator, args2));
-                                    break;
-                                case "timeout":
-                                    this.log(args1 + " has been timed out by " + creator + " for " + args2 + " seconds. " + (args3.length() == 0 ? "" : "Reason: " + args3));
-                                    EventBus.instance().postAsync(new PubSubModerationTimeoutEvent(args1, creator, (messageCache.containsKey(args1.toLowerCase()) ? messageCache.get(args1.toLowerCase()) : ""), args3, args2));
-                                    break;
-                                case "untimeout":
-                                    this.log(args1 + " has been un-timed out by " + creator + ".");
-                                    EventBus.instance().postAsync(new PubSubModerationUnTimeoutEvent(args1, creator));
-                                    break;
-                                case "ban":
-                                    this.log(args1 + " has been banned by " + creator + ". " + (args2.length() == 0 ? "" : "Reason: " + args2));
-                                    EventBus.instance().postAsync(new PubSubModerationBanEvent(args1, creator, (messageCache.containsKey(args1.toLowerCase()) ? messageCache.get(args1.toLowerCase()) : ""), args2));
-                                    break;
-                                case "unban":
-                                    this.log(args1 + " has been un-banned by " + creator + ".");
-                                    EventBus.instance().postAsync(new PubSubModerationUnBanEvent(args1, creator));
-                                    break;
-                                case "mod":
-                                    this.log(args1 + " has been modded by " + creator + ".");
-                                    break;
-                                case "unmod":
-                                    this.log(args1 + " has been un-modded by " + creator + ".");
-                                    break;
-                                case "twitchbot_rejected":
-                                    this.log("Message (" + args2 + ") from " + args1 + " has been rejected by AutoMod.");
-                                    break;
-                                case "denied_twitchbot_message":
-                                    this.log(creator + " denied a message from " + args1 + ". Message id: " + data.getString("msg_id") + ".");
-                                    break;
-                                case "approved_twitchbot_message":
-                                    this.log(creator + " allowed a message from " + args1 + ". Message id: " + data.getString("msg_id") + ".");
-                                    break;
-                            }
-                        }
+        private void parse(PubSubMessage message) {
+            if (message.message == null) {
+                return;
+            }
+
+            if (message.topic.startsWith("channel-points-channel-v1")) {
+                PubSubMessage.Redemption data = PubSubMessage.Redemption.parse(message.message);
+
+                if (data == null) {
+                    return;
+                }
+
+                com.gmt2001.Console.out.println("Channel points redeemed by " + data.userLogin + " for reward " + data.rewardTitle);
+                EventBus.instance().postAsync(new PubSubChannelPointsEvent(
+                        data.id, data.rewardId, data.userId, data.userLogin, data.userDisplayName, data.rewardTitle,
+                        data.rewardCost, data.rewardPrompt, data.userInput, data.status
+                ));
+            } else if (message.topic.startsWith("chat_moderator_actions")) {
+                PubSubMessage.ModeratorAction data = PubSubMessage.ModeratorAction.parse(message.message);
+
+                if (data == null) {
+                    return;
+                }
+
+                List<String> args = data.args;
+                String action = data.action;
+                String creator = data.createdBy;
+                String args1 = args.get(0);
+                String args2 = (args.size() == 2 || args.size() == 3 ? args.get(1) : "");
+                String args3 = (args.size() == 3 ? args.get(2) : "");
+
+                // Actions without a target (clear, slow, etc.) are not deduplicated.
+                if (data.targetUserId != null && !data.targetUserId.isEmpty()) {
+                    if (timeoutCache.containsKey(data.targetUserId) && (timeoutCache.get(data.targetUserId) - System.currentTimeMillis()) > 0) {
+                        return;
                     }
+
+                    timeoutCache.put(data.targetUserId, System.currentTimeMillis() + 1500);
+                }
+
+                switch (action) {
+                    case "delete":
+                        this.log(args1 + "'s message was deleted by " + creator);
+                        EventBus.instance().postAsync(new PubSubModerationDeleteEvent(args1, creator, args2));
+                        break;
+                    case "timeout":
+                        this.log(args1 + " has been timed out by " + creator + " for " + args2 + " seconds. " + (args3.length() == 0 ? "" : "Reason: " + args3));
+                        EventBus.instance().postAsync(new PubSubModerationTimeoutEvent(args1, creator, (messageCache.containsKey(args1.toLowerCase()) ? messageCache.get(args1.toLowerCase()) : ""), args3, args2));
+                        break;
+                    case "untimeout":
+                        this.log(args1 + " has been un-timed out by " + creator + ".");
+                        EventBus.instance().postAsync(new PubSubModerationUnTimeoutEvent(args1, creator));
+                        break;
+                    case "ban":
+                        this.log(args1 + " has been banned by " + creator + ". " + (args2.length() == 0 ? "" : "Reason: " + args2));
+                        EventBus.instance().postAsync(new PubSubModerationBanEvent(args1, creator, (messageCache.containsKey(args1.toLowerCase()) ? messageCache.get(args1.toLowerCase()) : ""), args2));
+                        break;
+                    case "unban":
+                        this.log(args1 + " has been un-banned by " + creator + ".");
+                        EventBus.instance().postAsync(new PubSubModerationUnBanEvent(args1, creator));
+                        break;
+                    case "mod":
+                        this.log(args1 + " has been modded by " + creator + ".");
+                        break;
+                    case "unmod":
+                        this.log(args1 + " has been un-modded by " + creator + ".");
+                        break;
+                    case "twitchbot_rejected":
+                        this.log("Message (" + args2 + ") from " + args1 + " has been rejected by AutoMod.");
+                        break;
+                    case "denied_twitchbot_message":
+                        this.log(creator + " denied a message from " + args1 + ". Message id: " + data.msgId + ".");
+                        break;
+                    case "approved_twitchbot_message":
+                        this.log(creator + " allowed a message from " + args1 + ". Message id: " + data.msgId + ".");
+                        break;
                 }
             }
         }
@@ -361,9 +347,9 @@ public class TwitchPubSub {
          * Handles the event of when the socket opens, it also sends the login information and the topics we can to listen to.
          */
         @Override
-        public void onOpen(ServerHandshake handshakedata) {
+        public void handshakeComplete(WSClient client) {
             try {
-                com.gmt2001.Console.debug.println("Connected to Twitch PubSub-Edge (SSL) [" + this.uri.getHost() + "]");
+                com.gmt2001.Console.debug.println("Connected to Twitch PubSub-Edge (SSL) [" + this.client.getURI().getHost() + "]");
 
                 if (TwitchValidate.instance().hasAPIScope("channel:moderate")) {
                     String[] type = new String[]{"chat_moderator_actions." + (TwitchValidate.instance().getAPIUserID().equalsIgnoreCase("" + this.channelId) ? "" : this.botId + ".") + this.channelId};
@@ -407,9 +393,8 @@ public class TwitchPubSub {
          * @param {boolean} remote Says if its a remote issue or not.
          */
         @Override
-        public void onClose(int code, String reason, boolean remote) {
+        public void onClose(WSClient client, int code, String reason, boolean remote) {
             com.gmt2001.Console.debug.println("Code [" + code + "] Reason [" + reason + "] Remote Hangup [" + remote + "]");
-            closeTimer();
 
             if (remote && !this.hasModerator && !this.hasRedemptions) {
                 com.gmt2001.Console.out.println("Disconnected from Twitch PubSub due to no valid topic subscriptions");
@@ -426,7 +411,7 @@ public class TwitchPubSub {
          * @param {Exception} ex Exception message that the socket sent.
          */
         @Override
-        public void onError(Exception ex) {
+        public void onError(WSClient client, Throwable ex) {
             if (!ex.toString().contains("ArrayIndexOutOfBoundsException")) {
                 com.gmt2001.Console.debug.println("TwitchPubSubWS Exception: " + ex);
             }
@@ -438,73 +423,80 @@ public class TwitchPubSub {
          * @param {String} message Message the socket sent.
          */
         @Override
-        public void onMessage(String message) {
+        public void onMessage(WSClient client, String message) {
             try {
-                JSONObject messageObj = new JSONObject(message);
+                if (PhantomBot.getEnableDebugging()) {
+                    com.gmt2001.Console.debug.println("[PubSub Raw Message] " + message);
+                }
 
-                com.gmt2001.Console.debug.println("[PubSub Raw Message] " + messageObj);
+                PubSubMessage messageObj = PubSubMessage.parse(message);
 
-                if (!messageObj.has("type")) {
+                if (messageObj.type == null) {
                     return;
                 }
 
-                if (messageObj.getString("type").equalsIgnoreCase("response")) {
-                    if (messageObj.getString("nonce").equalsIgnoreCase("moderator")) {
-                        this.hasModerator = !(messageObj.has("error") && messageObj.getString("error").length() > 0);
+                if (messageObj.type.equalsIgnoreCase("response")) {
+                    if (messageObj.nonce.equalsIgnoreCase("moderator")) {
+                        this.hasModerator = messageObj.error.isEmpty();
                         com.gmt2001.Console.debug.println("Got chat_moderator_actions response " + this.hasModerator);
                         if (!this.hasModerator) {
                             com.gmt2001.Console.err.println("WARNING: This APIOauth token was rejected for Moderation Feed (You can ignore the error if you aren't using this feature)");
-                            com.gmt2001.Console.debug.println("TwitchPubSubWS Error: " + messageObj.getString("error"));
+                            com.gmt2001.Console.debug.println("TwitchPubSubWS Error: " + messageObj.error);
                             return;
                         }
-                    } else if (messageObj.getString("nonce").equalsIgnoreCase("redemptions")) {
-                        this.hasRedemptions = !(messageObj.has("error") && messageObj.getString("error").length() > 0);
+                    } else if (messageObj.nonce.equalsIgnoreCase("redemptions")) {
+                        this.hasRedemptions = messageObj.error.isEmpty();
                         com.gmt2001.Console.debug.println("Got channel-points-channel-v1 response " + this.hasRedemptions);
                         if (!this.hasRedemptions) {
                             com.gmt2001.Console.err.println("WARNING: This APIOauth token was rejected for Channel Points (You can ignore the error if you aren't using this feature)");
-                            com.gmt2001.Console.debug.println("TwitchPubSubWS Error: " + messageObj.getString("error"));
+                            com.gmt2001.Console.debug.println("TwitchPubSubWS Error: " + messageObj.error);
                             return;
                         }
                     }
-                } else if (messageObj.has("error") && messageObj.getString("error").length() > 0) {
-                    com.gmt2001.Console.err.println("TwitchPubSubWS Error: " + messageObj.getString("error"));
+                } else if (!messageObj.error.isEmpty()) {
+                    com.gmt2001.Console.err.println("TwitchPubSubWS Error: " + messageObj.error);
                     return;
                 }
 
-                if (messageObj.getString("type").equalsIgnoreCase("reconnect")) {
+                if (messageObj.type.equalsIgnoreCase("reconnect")) {
                     com.gmt2001.Console.out.println("Received RECONNECT from Twitch PubSub");
                     this.twitchPubSub.reconnect(true);
                     return;
                 }
 
-                if (messageObj.getString("type").equalsIgnoreCase("pong")) {
+                if (messageObj.type.equalsIgnoreCase("pong")) {
                     com.gmt2001.Console.debug.println("TwitchPubSubWS: Got a PONG.");
                     return;
                 }
 
                 parse(messageObj);
-            } catch (JSONException ex) {
+            } catch (IllegalStateException | NumberFormatException ex) {
                 com.gmt2001.Console.err.logStackTrace(ex);
             }
         }
 
         /**
-         * Class for the PING timer. Since PubSub doesn't send PINGS we need to request them.
+         * Sends a PING when nothing was sent for a while. Since PubSub doesn't send PINGS we need to request them.
+         *
+         * @param {WSClient} client
+         * @param {IdleStateEvent} event
          */
-        private class PingTask extends TimerTask {
+        @Override
+        public void onIdle(WSClient client, IdleStateEvent event) {
+            if (event.state() != IdleState.WRITER_IDLE) {
+                return;
+            }
 
-            @Override
-            public void run() {
-                try {
-                    JSONObject jsonObject = new JSONObject();
+            try {
+                JSONObject jsonObject = new JSONObject();
 
-                    jsonObject.put("type", "PING");
+                jsonObject.put("type", "PING");
 
-                    send(jsonObject.toString());
-                    com.gmt2001.Console.debug.println("TwitchPubSubWS: Sent a PING.");
-                } catch (JSONException ex) {
-                    com.gmt2001.Console.err.logStackTrace(ex);
-                }
+                send(jsonObject.toString());
+                com.gmt2001.Console.debug.println("TwitchPubSubWS: Sent a PING.");
+                client.expectRead(PONG_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (JSONException ex) {
+                com.gmt2001.Console.err.logStackTrace(ex);
             }
         }
     }
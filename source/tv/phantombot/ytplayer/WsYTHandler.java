@@ -20,7 +20,6 @@ import com.gmt2001.httpwsserver.WebSocketFrameHandler;
 import com.gmt2001.httpwsserver.WsFrameHandler;
 import com.gmt2001.httpwsserver.auth.WsAuthenticationHandler;
 import com.gmt2001.httpwsserver.auth.WsSharedRWTokenAuthenticationHandler;
-import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
@@ -31,7 +30,6 @@ import io.netty.util.AttributeKey;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Queue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -68,6 +66,7 @@ public class WsYTHandler implements WsFrameHandler {
     private static final AttributeKey<Date> ATTR_LAST_PONG = AttributeKey.valueOf("lastPong");
     private static final String[] ALLOWED_DB_QUERY_TABLES = new String[]{"modules", "ytSettings", "yt_playlists_registry"};
     private static final String[] ALLOWED_DB_UPDATE_TABLES = new String[]{"ytSettings"};
+    private static final long LATEST_DELAY_MS = 250;
     private final WsAuthenticationHandler authHandler;
     private int currentVolume;
     private int currentState = -10;
@@ -78,21 +77,25 @@ public class WsYTHandler implements WsFrameHandler {
     public WsYTHandler(String ytAuthRO, String ytAuth) {
         authHandler = new WsSharedRWTokenAuthenticationHandler(ytAuthRO, ytAuth, 10);
         executor.scheduleAtFixedRate(() -> {
-            Queue<Channel> channels = WebSocketFrameHandler.getWsSessions("/ws/ytplayer");
             Calendar cal = Calendar.getInstance();
             cal.add(Calendar.SECOND, -12);
 
-            channels.forEach((c) -> {
-                if (c.attr(ATTR_LAST_PONG).get().before(cal.getTime())) {
-                    c.writeAndFlush(WebSocketFrameHandler.prepareCloseWebSocketFrame(WebSocketCloseStatus.POLICY_VIOLATION));
-                    c.close();
-                } else {
-                    JSONStringer jsonObject = new JSONStringer();
+            JSONStringer jsonObject = new JSONStringer();
+            jsonObject.object().key("ping").value("ping").endObject();
+            WebSocketFrame ping = WebSocketFrameHandler.prepareTextWebSocketResponse(jsonObject.toString());
 
-                    jsonObject.object().key("ping").value("ping").endObject();
-                    c.writeAndFlush(WebSocketFrameHandler.prepareTextWebSocketResponse(jsonObject.toString()));
-                }
-            });
+            try {
+                WebSocketFrameHandler.forEachWsSession("/ws/ytplayer", (c) -> {
+                    if (c.attr(ATTR_LAST_PONG).get().before(cal.getTime())) {
+                        c.writeAndFlush(WebSocketFrameHandler.prepareCloseWebSocketFrame(WebSocketCloseStatus.POLICY_VIOLATION));
+                        c.close();
+                    } else {
+                        c.writeAndFlush(ping.retainedDuplicate());
+                    }
+                });
+            } finally {
+                ping.release();
+            }
         }, 3, 3, TimeUnit.SECONDS);
     }
 
@@ -287,7 +290,14 @@ public class WsYTHandler implements WsFrameHandler {
                         EventBus.instance().postAsync(new YTPlayerRequestSonglistEvent());
                         break;
                     case "playlist":
-                        EventBus.instance().postAsync(new YTPlayerRequestPlaylistEvent());
+                        YTPlaylist playlist = YTPlaylist.getActive();
+
+                        // Answered from memory unless a video still has to be looked up on YouTube.
+                        if (playlist != null && playlist.isComplete()) {
+                            WebSocketFrameHandler.sendWsFrame(ctx, frame, WebSocketFrameHandler.prepareTextWebSocketResponse(playlist.toJSON(playlist.getName())));
+                        } else {
+                            EventBus.instance().postAsync(new YTPlayerRequestPlaylistEvent());
+                        }
                         break;
                     case "currentsong":
                         EventBus.instance().postAsync(new YTPlayerRequestCurrentSongEvent());
@@ -393,4 +403,14 @@ public class WsYTHandler implements WsFrameHandler {
     public void sendJSONToAll(String jsonString) {
         WebSocketFrameHandler.broadcastWsFrame("/ws/ytplayer", WebSocketFrameHandler.prepareTextWebSocketResponse(jsonString));
     }
+
+    /**
+     * Sends an update which replaces the previous one of the same topic, such as the playlist, a burst of them only sends the last one.
+     *
+     * @param topic
+     * @param jsonString
+     */
+    public void sendLatestJSONToAll(String topic, String jsonString) {
+        WebSocketFrameHandler.broadcastLatestWsFrame("/ws/ytplayer", topic, WebSocketFrameHandler.prepareTextWebSocketResponse(jsonString), LATEST_DELAY_MS);
+    }
 }
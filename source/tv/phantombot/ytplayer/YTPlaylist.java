@@ -0,0 +1,742 @@
+/*
+ * Copyright (C) 2016-2021 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.ytplayer;
+
+import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.KeyValue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import tv.phantombot.PhantomBot;
+
+/**
+ * A song request playlist kept in memory, so youtubePlayer.js does not read the playlist table for every lookup.
+ *
+ * The videos of a ytPlaylist_ table are kept in the order of their keys, with an index from the video id to the
+ * video and an index of the trigrams of the titles, which are read from the ytcache table, for !findsong. The play
+ * order is a permutation of the positions, so shuffling does not copy the videos. A removed video is only marked as
+ * removed until enough of them pile up to compact the list.
+ *
+ * Changes are written to the table in batches, either once {@link #FLUSH_ROWS} rows are pending or after
+ * {@link #FLUSH_DELAY_MS}. Writes to the table made by anything else make the playlist read it again on next use.
+ *
+ * @author phantombot
+ */
+public class YTPlaylist {
+    private static final Map<String, YTPlaylist> PLAYLISTS = new ConcurrentHashMap<>();
+    private static final int FLUSH_ROWS = 100;
+    private static final long FLUSH_DELAY_MS = 2000;
+    private static final long FLUSH_RETRY_MS = 30000;
+    private static final int MIN_COMPACT = 64;
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "tv.phantombot.ytplayer.YTPlaylist::flush");
+        t.setDaemon(true);
+        return t;
+    });
+    private static volatile YTPlaylist active;
+    private final String table;
+    private final DataStore dataStore;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> byVideoId = new HashMap<>();
+    private final Map<Long, List<Entry>> byTrigram = new HashMap<>();
+    private final Map<String, String> pendingSet = new LinkedHashMap<>();
+    private final Set<String> pendingRemove = new LinkedHashSet<>();
+    private int[] order = new int[16];
+    private int orderSize = 0;
+    private int cursor = 0;
+    private int remaining = 0;
+    private int live = 0;
+    private int removed = 0;
+    private int lastKey = -1;
+    private boolean random = false;
+    private String name;
+    private ScheduledFuture<?> flushTask;
+    private volatile boolean stale = true;
+    private volatile Thread flushThread;
+
+    /**
+     * Method that returns the playlist of a table, read on first use.
+     *
+     * @param table The table, such as ytPlaylist_default
+     * @return
+     */
+    public static YTPlaylist get(String table) {
+        return PLAYLISTS.computeIfAbsent(table, (t) -> new YTPlaylist(t, PhantomBot.instance().getDataStore()));
+    }
+
+    /**
+     * Method that forgets the playlist of a table which was removed, dropping its pending writes.
+     *
+     * @param table
+     */
+    public static void delete(String table) {
+        YTPlaylist playlist = PLAYLISTS.remove(table);
+
+        if (playlist != null) {
+            playlist.drop();
+
+            if (active == playlist) {
+                active = null;
+            }
+        }
+    }
+
+    /**
+     * Method that sets the playlist being played, which is sent to the players asking for it.
+     *
+     * @param table
+     * @param name The name shown on the player
+     */
+    public static void setActive(String table, String name) {
+        YTPlaylist playlist = get(table);
+
+        synchronized (playlist) {
+            playlist.name = name;
+        }
+
+        active = playlist;
+    }
+
+    /**
+     * Method that returns the playlist being played.
+     *
+     * @return The playlist, or null
+     */
+    public static YTPlaylist getActive() {
+        return active;
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param table
+     * @param dataStore
+     */
+    private YTPlaylist(String table, DataStore dataStore) {
+        this.table = table;
+        this.dataStore = dataStore;
+        this.name = table;
+
+        dataStore.addChangeListener(table, this::changed);
+    }
+
+    /**
+     * Method that returns the number of videos.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        load();
+        return live;
+    }
+
+    /**
+     * Method that returns the number of videos left to play before the playlist starts over.
+     *
+     * @return
+     */
+    public synchronized int remaining() {
+        load();
+        return remaining;
+    }
+
+    /**
+     * Method that returns if a video is in the playlist.
+     *
+     * @param videoId
+     * @return
+     */
+    public synchronized boolean contains(String videoId) {
+        load();
+        return byVideoId.containsKey(videoId);
+    }
+
+    /**
+     * Method that adds a video after the last key, it is played before the playlist starts over.
+     *
+     * @param videoId
+     * @param title The title, or null if it is not known
+     * @param seconds The length
+     * @return The key of the video, or -2 if it is already in the playlist
+     */
+    public synchronized int add(String videoId, String title, int seconds) {
+        load();
+
+        if (byVideoId.containsKey(videoId)) {
+            return -2;
+        }
+
+        Entry entry = new Entry(++lastKey, videoId, title, seconds);
+        append(entry);
+
+        // Played at a random point of what is left, or last.
+        int at = random ? ThreadLocalRandom.current().nextInt(cursor, orderSize + 1) : orderSize;
+
+        growOrder();
+
+        if (at < orderSize) {
+            // The video already at that point moves to the end.
+            order[orderSize] = order[at];
+            entries.get(order[orderSize]).orderIndex = orderSize;
+        }
+
+        order[at] = entry.slot;
+        entry.orderIndex = at;
+        orderSize++;
+        remaining++;
+
+        pendingRemove.remove(Integer.toString(entry.key));
+        pendingSet.put(Integer.toString(entry.key), videoId);
+        pendingSet.put("lastkey", Integer.toString(lastKey));
+        scheduleFlush();
+
+        return entry.key;
+    }
+
+    /**
+     * Method that removes a video.
+     *
+     * @param videoId
+     * @return false if the video was not in the playlist
+     */
+    public synchronized boolean remove(String videoId) {
+        load();
+
+        Entry entry = byVideoId.remove(videoId);
+
+        if (entry == null) {
+            return false;
+        }
+
+        entry.removed = true;
+        live--;
+        removed++;
+
+        if (entry.orderIndex >= cursor) {
+            remaining--;
+        }
+
+        pendingSet.remove(Integer.toString(entry.key));
+        pendingRemove.add(Integer.toString(entry.key));
+        scheduleFlush();
+
+        if (removed >= MIN_COMPACT && removed > live) {
+            compact();
+        }
+
+        return true;
+    }
+
+    /**
+     * Method that sets the title and length of a video once they are known.
+     *
+     * @param videoId
+     * @param title
+     * @param seconds
+     */
+    public synchronized void setInfo(String videoId, String title, int seconds) {
+        load();
+
+        Entry entry = byVideoId.get(videoId);
+
+        if (entry != null && title != null && !title.equals(entry.title)) {
+            entry.setTitle(title);
+            entry.seconds = seconds;
+            index(entry);
+        }
+    }
+
+    /**
+     * Method that starts the play order over.
+     *
+     * @param random true to shuffle it, otherwise the videos play in the order of their keys
+     */
+    public synchronized void reset(boolean random) {
+        load();
+        this.random = random;
+        buildOrder();
+    }
+
+    /**
+     * Method that returns the next video to play.
+     *
+     * @return The video id, or null once every video was played, then {@link #reset(boolean)} starts over
+     */
+    public synchronized String next() {
+        load();
+
+        while (cursor < orderSize) {
+            Entry entry = entries.get(order[cursor++]);
+
+            if (!entry.removed) {
+                remaining--;
+                return entry.videoId;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Method that returns the video at a position of the play order.
+     *
+     * @param position From 0
+     * @return The video id, or null
+     */
+    public synchronized String getVideoIdAt(int position) {
+        load();
+
+        int seen = 0;
+
+        for (int i = 0; i < orderSize && position >= 0; i++) {
+            Entry entry = entries.get(order[i]);
+
+            if (!entry.removed && seen++ == position) {
+                return entry.videoId;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Method that returns the videos in the play order.
+     *
+     * @return
+     */
+    public synchronized String[] getVideoIds() {
+        load();
+
+        String[] out = new String[live];
+        int n = 0;
+
+        for (int i = 0; i < orderSize; i++) {
+            Entry entry = entries.get(order[i]);
+
+            if (!entry.removed) {
+                out[n++] = entry.videoId;
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Method that returns the videos of which the title is not known.
+     *
+     * @return
+     */
+    public synchronized String[] getMissingInfo() {
+        load();
+        return byVideoId.values().stream().filter((e) -> e.title == null).map((e) -> e.videoId).toArray(String[]::new);
+    }
+
+    /**
+     * Method that returns the first video in the play order of which the title contains some text, ignoring the case.
+     *
+     * @param search
+     * @return The video id, or null
+     */
+    public synchronized String findByTitle(String search) {
+        load();
+
+        String query = search.trim().toLowerCase();
+
+        if (query.isEmpty()) {
+            return null;
+        }
+
+        List<Entry> candidates = entries;
+
+        // Only the videos which have the least common trigram of the search can match.
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            List<Entry> list = byTrigram.get(trigram(query, i));
+
+            if (list == null) {
+                return null;
+            }
+
+            if (list.size() < candidates.size()) {
+                candidates = list;
+            }
+        }
+
+        Entry best = null;
+
+        for (Entry entry : candidates) {
+            if (!entry.removed && entry.titleLower != null && entry.titleLower.contains(query) && (best == null || entry.orderIndex < best.orderIndex)) {
+                best = entry;
+            }
+        }
+
+        return best == null ? null : best.videoId;
+    }
+
+    /**
+     * Method that returns if the title of every video is known.
+     *
+     * @return
+     */
+    public synchronized boolean isComplete() {
+        load();
+        return byVideoId.values().stream().noneMatch((e) -> e.title == null);
+    }
+
+    /**
+     * Method that returns the name given to {@link #setActive(String, String)}.
+     *
+     * @return
+     */
+    public synchronized String getName() {
+        return name;
+    }
+
+    /**
+     * Method that returns the playlist as sent to the player, videos of which the title is not known are left out.
+     *
+     * @param playlistName The name shown on the player
+     * @return
+     * @throws JSONException
+     */
+    public synchronized String toJSON(String playlistName) throws JSONException {
+        load();
+
+        JSONStringer json = new JSONStringer();
+
+        json.object().key("playlistname").value(playlistName).key("playlist").array();
+
+        for (int i = 0; i < orderSize; i++) {
+            Entry entry = entries.get(order[i]);
+
+            if (!entry.removed && entry.title != null) {
+                json.object().key("song").value(entry.videoId).key("title").value(entry.title)
+                        .key("duration").value(String.format("%02d:%02d", entry.seconds / 60, entry.seconds % 60)).endObject();
+            }
+        }
+
+        return json.endArray().endObject().toString();
+    }
+
+    /**
+     * Method that writes the pending changes to the table now. The changes which could not be written are kept and
+     * tried again later.
+     *
+     * @return false if some changes could not be written
+     */
+    public synchronized boolean flush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+
+        if (pendingSet.isEmpty() && pendingRemove.isEmpty()) {
+            return true;
+        }
+
+        boolean setWritten;
+        boolean removeWritten;
+        flushThread = Thread.currentThread();
+
+        try {
+            setWritten = pendingSet.isEmpty() || dataStore.SetBatchString(table, "", pendingSet.keySet().toArray(new String[0]),
+                    pendingSet.values().toArray(new String[0]));
+            removeWritten = pendingRemove.isEmpty() || dataStore.RemoveBatchKey(table, "", pendingRemove.toArray(new String[0]));
+        } finally {
+            flushThread = null;
+        }
+
+        if (setWritten) {
+            pendingSet.clear();
+        }
+
+        if (removeWritten) {
+            pendingRemove.clear();
+        }
+
+        if (!setWritten || !removeWritten) {
+            com.gmt2001.Console.err.println("Failed to save the playlist " + table + ", trying again in " + (FLUSH_RETRY_MS / 1000) + " seconds");
+            flushTask = FLUSHER.schedule(this::flush, FLUSH_RETRY_MS, TimeUnit.MILLISECONDS);
+            return false;
+        }
+
+        return true;
+    }
+
+    private void changed() {
+        // Our own writes do not need the table to be read again.
+        if (Thread.currentThread() != flushThread) {
+            stale = true;
+        }
+    }
+
+    private synchronized void drop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+
+        pendingSet.clear();
+        pendingRemove.clear();
+        stale = true;
+    }
+
+    private void scheduleFlush() {
+        if (pendingSet.size() + pendingRemove.size() >= FLUSH_ROWS) {
+            flush();
+        } else if (flushTask == null) {
+            flushTask = FLUSHER.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reads the table if it changed since it was last read.
+     */
+    private void load() {
+        if (!stale) {
+            return;
+        }
+
+        // Reading the table now would drop the changes which are not in it yet.
+        if (!flush()) {
+            return;
+        }
+
+        stale = false;
+
+        KeyValue[] rows = dataStore.GetKeyValueList(table, "");
+        List<int[]> keys = new ArrayList<>();
+        Map<Integer, String> videoIds = new HashMap<>();
+
+        lastKey = -1;
+
+        for (KeyValue row : rows) {
+            if (row.getKey().equals("lastkey")) {
+                lastKey = Math.max(lastKey, parseInt(row.getValue(), -1));
+                continue;
+            }
+
+            int key = parseInt(row.getKey(), -1);
+
+            if (key >= 0 && row.getValue() != null) {
+                keys.add(new int[]{key});
+                videoIds.put(key, row.getValue());
+                lastKey = Math.max(lastKey, key);
+            }
+        }
+
+        keys.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        String[] ids = new String[keys.size()];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = videoIds.get(keys.get(i)[0]);
+        }
+
+        String[] info = ids.length == 0 ? new String[0] : dataStore.GetStrings("ytcache", "", ids);
+
+        entries.clear();
+        byVideoId.clear();
+        byTrigram.clear();
+        live = 0;
+        removed = 0;
+
+        for (int i = 0; i < ids.length; i++) {
+            String title = null;
+            int seconds = 0;
+
+            if (info[i] != null) {
+                try {
+                    JSONObject json = new JSONObject(info[i]);
+                    title = json.optString("title", null);
+                    seconds = json.optInt("time", 0);
+                } catch (JSONException ex) {
+                    com.gmt2001.Console.debug.println("Invalid ytcache entry for " + ids[i] + ": " + ex.getMessage());
+                }
+            }
+
+            append(new Entry(keys.get(i)[0], ids[i], title, seconds));
+        }
+
+        buildOrder();
+
+        if (!pendingRemove.isEmpty()) {
+            com.gmt2001.Console.debug.println("Removing " + pendingRemove.size() + " duplicate videos from " + table);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Adds an entry, unless its video is already in the playlist.
+     *
+     * @param entry
+     * @return false if the video was a duplicate, its key is then queued to be removed from the table
+     */
+    private boolean append(Entry entry) {
+        if (byVideoId.putIfAbsent(entry.videoId, entry) != null) {
+            pendingSet.remove(Integer.toString(entry.key));
+            pendingRemove.add(Integer.toString(entry.key));
+            return false;
+        }
+
+        entry.slot = entries.size();
+        entries.add(entry);
+        live++;
+        index(entry);
+        return true;
+    }
+
+    private void index(Entry entry) {
+        if (entry.titleLower == null) {
+            return;
+        }
+
+        for (int i = 0; i + 3 <= entry.titleLower.length(); i++) {
+            List<Entry> list = byTrigram.computeIfAbsent(trigram(entry.titleLower, i), (k) -> new ArrayList<>(4));
+
+            if (list.isEmpty() || list.get(list.size() - 1) != entry) {
+                list.add(entry);
+            }
+        }
+    }
+
+    private void buildOrder() {
+        order = new int[Math.max(16, entries.size())];
+        orderSize = 0;
+
+        for (Entry entry : entries) {
+            if (!entry.removed) {
+                order[orderSize++] = entry.slot;
+            }
+        }
+
+        if (random) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+
+            for (int i = orderSize - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+        }
+
+        for (int i = 0; i < orderSize; i++) {
+            entries.get(order[i]).orderIndex = i;
+        }
+
+        cursor = 0;
+        remaining = orderSize;
+    }
+
+    private void growOrder() {
+        if (orderSize == order.length) {
+            order = Arrays.copyOf(order, order.length * 2);
+        }
+    }
+
+    /**
+     * Drops the removed videos, keeping the play order and what is left to play.
+     */
+    private void compact() {
+        List<Entry> kept = new ArrayList<>(live);
+        int[] newOrder = new int[Math.max(16, live)];
+        int newCursor = 0;
+        int n = 0;
+
+        for (Entry entry : entries) {
+            if (!entry.removed) {
+                entry.slot = kept.size();
+                kept.add(entry);
+            }
+        }
+
+        for (int i = 0; i < orderSize; i++) {
+            Entry entry = entries.get(order[i]);
+
+            if (!entry.removed) {
+                if (i < cursor) {
+                    newCursor++;
+                }
+
+                entry.orderIndex = n;
+                newOrder[n++] = entry.slot;
+            }
+        }
+
+        entries.clear();
+        entries.addAll(kept);
+        order = newOrder;
+        orderSize = n;
+        cursor = newCursor;
+        removed = 0;
+
+        byTrigram.clear();
+        entries.forEach(this::index);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static int parseInt(String s, int fallback) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
+    /**
+     * A video of the playlist.
+     */
+    private static final class Entry {
+        private final int key;
+        private final String videoId;
+        private String title;
+        private String titleLower;
+        private int seconds;
+        private int slot;
+        private int orderIndex;
+        private boolean removed = false;
+
+        private Entry(int key, String videoId, String title, int seconds) {
+            this.key = key;
+            this.videoId = videoId;
+            this.seconds = seconds;
+            setTitle(title);
+        }
+
+        private void setTitle(String title) {
+            this.title = title;
+            this.titleLower = title == null ? null : title.toLowerCase();
+        }
+    }
+}